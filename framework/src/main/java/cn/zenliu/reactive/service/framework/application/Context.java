@@ -25,7 +25,11 @@ package cn.zenliu.reactive.service.framework.application;
 import cn.zenliu.reactive.service.framework.config.Conf;
 import cn.zenliu.reactive.service.framework.config.ServerConf;
 import cn.zenliu.reactive.service.framework.spi.Api;
+import cn.zenliu.reactive.service.plugin.PluginManager;
+import cn.zenliu.reactive.service.plugin.caffeine.CaffeineManager;
+import cn.zenliu.reactive.service.util.ServiceIndex;
 import cn.zenliu.reactive.service.util.Tuple;
+import com.typesafe.config.ConfigException;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.Slf4JLoggerFactory;
 import lombok.experimental.UtilityClass;
@@ -46,7 +50,7 @@ public class Context {
     public final Conf config = Conf.load();
 
     private void findApi() {
-        ServiceLoader.load(Api.class).forEach(apis::add);
+        apis.addAll(ServiceIndex.load(Api.class));
     }
 
     private void configuration() {
@@ -54,6 +58,21 @@ public class Context {
         InternalLoggerFactory.setDefaultFactory(Slf4JLoggerFactory.INSTANCE);
     }
 
+    /**
+     * configure cache manager when caffeine is present and configured,
+     * snapshot of caches is restored in background, server bind is not blocked
+     */
+    private void plugins() {
+        if (!Caches.AVAILABLE) return;
+        final Conf caffeine;
+        try {
+            caffeine = config.getConf("caffeine", 0);
+        } catch (ConfigException.Missing e) {
+            return;
+        }
+        Caches.configure(caffeine.toProperties("caffeine"));
+    }
+
     private void parseServer() {
         servers = config
             .getConf("servers", 0)
@@ -103,6 +122,7 @@ public class Context {
 
     public void start(String[] args) {
         configuration();
+        plugins();
         findApi();
         parseServer();
         if (servers.isEmpty()) {
@@ -114,4 +134,24 @@ public class Context {
     public Optional<Server> getServer(String name) {
         return Optional.ofNullable(servers.get(name));
     }
+
+    /**
+     * isolate caffeine, only touched when it's on class path
+     */
+    static final class Caches {
+        static final boolean AVAILABLE = isAvailable();
+
+        static void configure(Properties conf) {
+            PluginManager.getHardInstance().getPluginOfNeeded(CaffeineManager.class, false).configuration(conf);
+        }
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("com.github.benmanes.caffeine.cache.Caffeine");
+                return true;
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+    }
 }
@@ -24,18 +24,32 @@ package cn.zenliu.reactive.service.framework.application;
 
 import cn.zenliu.reactive.service.framework.config.ServerConf;
 import cn.zenliu.reactive.service.framework.config.ServerType;
+import cn.zenliu.reactive.service.framework.config.StaticResource;
+import cn.zenliu.reactive.service.framework.internal.CoalescingHandler;
 import cn.zenliu.reactive.service.framework.internal.DisposableUdpServer;
+import cn.zenliu.reactive.service.framework.internal.StaticResourceHandler;
 import cn.zenliu.reactive.service.framework.spi.Api;
+import cn.zenliu.reactive.service.framework.spi.Cached;
+import cn.zenliu.reactive.service.framework.spi.Coalesce;
 import cn.zenliu.reactive.service.framework.spi.Rest;
 import cn.zenliu.reactive.service.framework.spi.RestApi;
 import cn.zenliu.reactive.service.framework.spi.TlsConfigurator;
+import cn.zenliu.reactive.service.framework.util.BodyLimit;
+import cn.zenliu.reactive.service.framework.util.PayloadTooLargeException;
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import cn.zenliu.reactive.service.framework.util.ResponseCache;
+import cn.zenliu.reactive.service.util.ServiceIndex;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import lombok.NonNull;
 import lombok.Synchronized;
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
 import reactor.netty.DisposableServer;
 import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.HttpServerRoutes;
 import reactor.netty.http.websocket.WebsocketInbound;
 import reactor.netty.http.websocket.WebsocketOutbound;
 import reactor.netty.tcp.SslProvider;
@@ -46,8 +60,10 @@ import reactor.util.annotation.Nullable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -64,6 +80,8 @@ public class Server {
     private DisposableServer instance = null;
     private final InternalLogger log = InternalLoggerFactory.getInstance(this.getClass());
     private volatile int reflectApiMode = 0;
+    private final List<Consumer<? super HttpServerRoutes>> routes = new ArrayList<>();
+    private final List<ResponseCache> caches = new ArrayList<>();
 
     @NonNull
     static Optional<Server> createFromConfig(String name, ServerConf conf) {
@@ -113,6 +131,10 @@ public class Server {
 
     public void close() {
         if (instance != null) instance.disposeNow();
+        synchronized (caches) {
+            caches.forEach(ResponseCache::close);
+            caches.clear();
+        }
     }
 
     /**
@@ -135,7 +157,7 @@ public class Server {
 
     public void autoConfigTLS() {
         if (isRunning()) return;
-        final Iterator<TlsConfigurator> configurators = ServiceLoader.load(TlsConfigurator.class).iterator();
+        final Iterator<TlsConfigurator> configurators = ServiceIndex.load(TlsConfigurator.class).iterator();
         if (!configurators.hasNext()) return;
         if (http != null) {
             configurators.forEachRemaining(e -> {
@@ -185,6 +207,102 @@ public class Server {
         }
     }
 
+    /**
+     * build handler of a @RestApi method, with body limit bound and 413 on overflow,
+     * route ({@code server:url}) is put in subscriber context as {@link RequestUtil#ROUTE},
+     * GET method marked with {@link Coalesce} shares response of concurrent identical requests,
+     * GET method marked with {@link Cached} is answered from a {@link ResponseCache} first, which is closed with server
+     */
+    private BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> restHandler(Api api, Method m, RestApi ann, String url) {
+        final String route = name + ":" + url;
+        BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler = invokeHandler(api, m, ann, route);
+        if (ann.method() != RestApi.RestMethod.GET) return handler;
+        final Coalesce coalesce = m.getAnnotation(Coalesce.class);
+        if (coalesce != null) {
+            log.debug("[API]<Rest> " + api.getName() + "#" + m.getName() + " coalesced");
+            handler = new CoalescingHandler(route, coalesce, handler);
+        }
+        final Cached cached = m.getAnnotation(Cached.class);
+        if (cached != null) {
+            log.debug("[API]<Rest> " + api.getName() + "#" + m.getName() + " cached for " + cached.ttl() + " " + cached.unit());
+            final ResponseCache cache = new ResponseCache(route, cached);
+            synchronized (caches) {
+                caches.add(cache);
+            }
+            handler = cache.wrap(handler);
+        }
+        return handler;
+    }
+
+    private BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> invokeHandler(Api api, Method m, RestApi ann, String route) {
+        final BodyLimit limit = BodyLimit.of(conf, ann);
+        return (rq, rs) -> {
+            if (RequestUtil.isOverLimit(rq, limit)) return RequestUtil.sendPayloadTooLarge(rs);
+            rq.withConnection(c -> c.channel().attr(RequestUtil.BODY_LIMIT).set(limit));
+            final Publisher<Void> result;
+            try {
+                //noinspection unchecked
+                result = (Publisher<Void>) m.invoke(api, rq, rs);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            return Mono.from(result)
+                .onErrorResume(PayloadTooLargeException.class, e ->
+                    rs.hasSentHeaders() ? Mono.error(e) : RequestUtil.sendPayloadTooLarge(rs))
+                .subscriberContext(ctx -> ctx.put(RequestUtil.ROUTE, route));
+        };
+    }
+
+    private static boolean isHandlerMethod(Method m) {
+        return m.getReturnType() == Publisher.class //must return Publisher<Void>
+            //&& m.getGenericReturnType() ==//must return Publisher<Void>
+            && m.getParameterCount() == 2; //must 2 param
+    }
+
+    private static boolean isStaticMethod(Method m) {
+        return m.getAnnotation(RestApi.class).method() == RestApi.RestMethod.STATIC
+            && m.getParameterCount() == 0
+            && (Path.class.isAssignableFrom(m.getReturnType()) || StaticResource.class.isAssignableFrom(m.getReturnType()));
+    }
+
+    @Nullable
+    private StaticResource staticResourceOf(Api api, Method m) {
+        try {
+            final Object v = m.invoke(api);
+            if (v instanceof Path) return StaticResource.of(v.toString());
+            else if (v instanceof StaticResource) return (StaticResource) v;
+            return null;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void staticRoute(HttpServerRoutes r, String url, StaticResource res) {
+        final StaticResourceHandler handler = new StaticResourceHandler(url, res);
+        r.route(handler.predicate(), handler);
+        log.debug("[STATIC] " + res.getRoot() + " register on " + name + "[" + url + "]");
+    }
+
+    /**
+     * register a static resource route,should be called before server started
+     *
+     * @param res static resource
+     */
+    public void registerStatic(@NonNull StaticResource res) {
+        if (http == null) throw new IllegalStateException("static resource only support on http server");
+        final String url = urlBuilder("", res.getUrl()).orElse("/");
+        routes.add(r -> staticRoute(r, url, res));
+    }
+
+    /**
+     * apply all routes at once, static resources from config are the last
+     */
+    private void applyRoutes(HttpServerRoutes r) {
+        routes.forEach(c -> c.accept(r));
+        conf.getStatics().forEach(res ->
+            staticRoute(r, urlBuilder("", res.getUrl()).orElse("/"), res));
+    }
+
     public void registerApi(Api api) {
         if (http != null && api instanceof Api.HttpApi) {
             Class<? extends Api> clz = api.getClass();
@@ -192,9 +310,7 @@ public class Server {
                 final List<Method> methods = Arrays.stream(clz.getMethods())
                     .filter(m -> Modifier.isPublic(m.getModifiers())//must accessible
                         && m.isAnnotationPresent(RestApi.class)  //must with @RestApi annotation
-                        && m.getReturnType() == Publisher.class //must return Publisher<Void>
-                        //&& m.getGenericReturnType() ==//must return Publisher<Void>
-                        && m.getParameterCount() == 2 //must 2 param
+                        && (isHandlerMethod(m) || isStaticMethod(m))
                     )
                     .peek(m -> m.setAccessible(true))
                     .collect(Collectors.toList());
@@ -205,7 +321,7 @@ public class Server {
                         "use both Reflect Api Mode (with @Rest) and Register Mode (via register method) is not allowed!");
                 } else {
                     final String parent = clz.getAnnotation(Rest.class).value().trim();
-                    http = http.route(r -> {
+                    routes.add(r -> {
                         methods.forEach(m -> {
                             final RestApi ann = m.getAnnotation(RestApi.class);
                             final Optional<String> opt = urlBuilder(parent, ann.url());
@@ -216,41 +332,16 @@ public class Server {
 
                                 switch (ann.method()) {
                                     case GET:
-                                        r.get(url, (rq, rs) -> {
-                                            try {
-                                                //noinspection unchecked
-                                                return (Publisher<Void>) m.invoke(api, rq, rs);
-                                            } catch (Throwable e) {
-                                                throw new RuntimeException(e);
-                                            }
-                                        });
+                                        r.get(url, restHandler(api, m, ann, url));
                                         break;
                                     case POST:
-                                        r.post(url, (rq, rs) -> {
-                                            try {        //noinspection unchecked
-                                                return (Publisher<Void>) m.invoke(api, rq, rs);
-                                            } catch (Throwable e) {
-                                                throw new RuntimeException(e);
-                                            }
-                                        });
+                                        r.post(url, restHandler(api, m, ann, url));
                                         break;
                                     case PUT:
-                                        r.put(url, (rq, rs) -> {
-                                            try {        //noinspection unchecked
-                                                return (Publisher<Void>) m.invoke(api, rq, rs);
-                                            } catch (Throwable e) {
-                                                throw new RuntimeException(e);
-                                            }
-                                        });
+                                        r.put(url, restHandler(api, m, ann, url));
                                         break;
                                     case DELETE:
-                                        r.delete(url, (rq, rs) -> {
-                                            try {        //noinspection unchecked
-                                                return (Publisher<Void>) m.invoke(api, rq, rs);
-                                            } catch (Throwable e) {
-                                                throw new RuntimeException(e);
-                                            }
-                                        });
+                                        r.delete(url, restHandler(api, m, ann, url));
                                         break;
                                     case WEBSOCKET:
                                         final Parameter[] params = m.getParameters();
@@ -279,14 +370,13 @@ public class Server {
                                         });
                                         break;*/
                                     case HEAD:
-                                        r.head(url, (rq, rs) -> {
-                                            try {
-                                                //noinspection unchecked
-                                                return (Publisher<Void>) m.invoke(api, rq, rs);
-                                            } catch (Throwable e) {
-                                                throw new RuntimeException(e);
-                                            }
-                                        });
+                                        r.head(url, restHandler(api, m, ann, url));
+                                        break;
+                                    case STATIC:
+                                        final StaticResource res = staticResourceOf(api, m);
+                                        if (res == null) {
+                                            log.warn("[API]<Rest> " + api.getName() + "#" + m.getName() + " is invalid static resource");
+                                        } else staticRoute(r, url, res);
                                         break;
                                 }
                                 log.debug("[API]<Rest> " + api.getName() + "#" + m.getName() + " register on " + name + "[" + ann.method().name() + " " + url + "]");
@@ -302,7 +392,7 @@ public class Server {
                         "use both Reflect Api Mode (with @Rest) and Register Mode (via register method) is not allowed!");
                 }
                 final Api.HttpApi AP = (Api.HttpApi) api;
-                http = http.route(AP::register);
+                routes.add(AP::register);
                 log.debug("[API] " + api.getName() + " register on " + name);
                 reflectApiMode = 1;
             }
@@ -331,7 +421,7 @@ public class Server {
     @Synchronized
     void startWithoutNewThread(@NonNull final Duration timeout) {
         if (http != null) {
-            http.bindUntilJavaShutdown(timeout, d -> this.instance = d);
+            http.route(this::applyRoutes).bindUntilJavaShutdown(timeout, d -> this.instance = d);
         } else if (tcp != null) {
             tcp.bindUntilJavaShutdown(timeout, d -> this.instance = d);
         } else if (udp != null) {
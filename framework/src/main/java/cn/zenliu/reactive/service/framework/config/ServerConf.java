@@ -22,6 +22,9 @@
 package cn.zenliu.reactive.service.framework.config;
 
 
+import cn.zenliu.reactive.service.framework.internal.BodyLimitHandler;
+import cn.zenliu.reactive.service.framework.util.BodyLimit;
+import com.typesafe.config.ConfigMemorySize;
 import com.typesafe.config.Optional;
 import io.netty.channel.ChannelOption;
 import lombok.Data;
@@ -31,6 +34,8 @@ import reactor.netty.tcp.TcpServer;
 import reactor.netty.udp.UdpServer;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 public class ServerConf {
@@ -59,6 +64,26 @@ public class ServerConf {
     private Duration startTimeout = Duration.ofSeconds(5);
     @Optional
     private UDPBroadcast broadcast = null;
+    /**
+     * hard cap of request body on wire, zero means unlimited
+     */
+    @Optional
+    private ConfigMemorySize maxBodySize = ConfigMemorySize.ofBytes(8 * 1024 * 1024);
+    /**
+     * cap of request body after decode of content-encoding
+     */
+    @Optional
+    private ConfigMemorySize maxInflatedBodySize = ConfigMemorySize.ofBytes(32 * 1024 * 1024);
+    /**
+     * decode gzip or deflate request body when read via {@link cn.zenliu.reactive.service.framework.util.RequestUtil}
+     */
+    @Optional
+    private boolean decompressRequest = true;
+    /**
+     * static resource routes, registered after all api routes
+     */
+    @Optional
+    private List<StaticResource> statics = new ArrayList<>();
 
     public HttpServer getHttpServer() {
         if (type != ServerType.HTTP) {
@@ -71,6 +96,11 @@ public class ServerConf {
                 .metrics(metrics)
                 .forwarded(forwarded);
         server = (compress > 0 ? server.compress(compress) : server);
+        final BodyLimit limit = BodyLimit.of(this);
+        if (limit.isLimited()) {
+            server = server.tcpConfiguration(tcp -> tcp.doOnConnection(c ->
+                c.addHandlerFirst(BodyLimitHandler.NAME, new BodyLimitHandler(limit))));
+        }
         return server;
     }
 
@@ -78,28 +108,17 @@ public class ServerConf {
         if (type != ServerType.UDP) {
             throw new IllegalArgumentException("type is not UDP Server");
         }
-        return UdpServer.create()
-                //.host(host)
+        UdpServer server = UdpServer.create()
                 .port(port)
                 .metrics(metrics)
-                .bootstrap(b -> {
-                    b.option(ChannelOption.AUTO_READ, true);
-                    //  b.remoteAddress(InetSocketAddress.createUnresolved("255.255.255.255", port));
-                   /* if(broadcast!=null){
-                        b.option(ChannelOption.SO_BROADCAST,true);
-                        try {
-                            b.option(ChannelOption.IP_MULTICAST_ADDR, InetAddress.getByName(broadcast.getAddr()));
-                        } catch (UnknownHostException e) {
-                            e.printStackTrace();
-                            System.exit(-1);
-                        }
-                        if(broadcast.getTtl()>0) b.option(ChannelOption.IP_MULTICAST_TTL, broadcast.getTtl());
-                    }
-*/
-                    return b;
-                })
+                .bootstrap(b -> b.option(ChannelOption.AUTO_READ, true))
                 .wiretap(wiretap);
-
+        if (broadcast != null) {
+            server = broadcast.configure(server);
+        } else {
+            server = server.host(host);
+        }
+        return server;
     }
 
 
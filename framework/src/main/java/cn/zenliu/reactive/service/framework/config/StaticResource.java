@@ -0,0 +1,81 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StaticResource.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:40:12
+ */
+
+package cn.zenliu.reactive.service.framework.config;
+
+import com.typesafe.config.ConfigMemorySize;
+import com.typesafe.config.Optional;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * static resource route define, used in {@link ServerConf#getStatics()}
+ * or return from a method marked with {@code @RestApi(method = STATIC)}
+ */
+@Data
+public class StaticResource {
+    /**
+     * url prefix, ignored when define via @RestApi
+     */
+    @Optional
+    private String url = "/";
+    /**
+     * root directory of files
+     */
+    private String root;
+    /**
+     * file name used when request a directory,empty to disable
+     */
+    @Optional
+    private String index = "index.html";
+    /**
+     * max-age of Cache-Control, zero means no Cache-Control header
+     */
+    @Optional
+    private Duration maxAge = Duration.ZERO;
+    /**
+     * files not larger than this will be memory mapped and kept, others sent via sendfile
+     */
+    @Optional
+    private ConfigMemorySize mmapThreshold = ConfigMemorySize.ofBytes(64 * 1024);
+    /**
+     * max number of memory mapped files kept
+     */
+    @Optional
+    private int mmapEntries = 256;
+    /**
+     * keep gzip and zstd variants of small compressible files (not larger than mmapThreshold)
+     */
+    @Optional
+    private boolean precompress = true;
+    /**
+     * max bytes of all precompressed variants
+     */
+    @Optional
+    private ConfigMemorySize precompressCapacity = ConfigMemorySize.ofBytes(16 * 1024 * 1024);
+
+    public static StaticResource of(String root) {
+        final StaticResource res = new StaticResource();
+        res.setRoot(root);
+        return res;
+    }
+}
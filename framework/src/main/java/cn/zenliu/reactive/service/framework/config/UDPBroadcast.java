@@ -22,14 +22,102 @@
 package cn.zenliu.reactive.service.framework.config;
 
 import com.typesafe.config.Optional;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.InternetProtocolFamily;
 import lombok.Data;
+import reactor.netty.udp.UdpResources;
+import reactor.netty.udp.UdpServer;
 
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Enumeration;
 
+/**
+ * ip multicast group, used by UDP server or cache invalidation channel
+ */
 @Data
 public class UDPBroadcast {
+    /**
+     * multicast group address, eg: 239.1.1.1
+     */
     private String addr;
     @Optional
     private int ttl =0;
     @Optional
     private int port=4321;
+    /**
+     * name of network interface to join on, empty to pick first up interface support multicast
+     */
+    @Optional
+    private String iface = "";
+    /**
+     * delay to batch messages before send
+     */
+    @Optional
+    private Duration batchDelay = Duration.ofMillis(5);
+    /**
+     * period of empty message, so lost messages are found without waiting next write
+     */
+    @Optional
+    private Duration heartbeat = Duration.ofSeconds(1);
+    /**
+     * max bytes of a datagram, keep below MTU to avoid fragment
+     */
+    @Optional
+    private int maxPacketSize = 1400;
+
+    public InetSocketAddress groupAddress() {
+        try {
+            return new InetSocketAddress(InetAddress.getByName(addr), port);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("invalid multicast address " + addr, e);
+        }
+    }
+
+    public NetworkInterface networkInterface() {
+        try {
+            if (iface != null && !iface.isEmpty()) {
+                final NetworkInterface ni = NetworkInterface.getByName(iface);
+                if (ni == null) throw new IllegalArgumentException("network interface " + iface + " not found");
+                return ni;
+            }
+            NetworkInterface loopback = null;
+            final Enumeration<NetworkInterface> all = NetworkInterface.getNetworkInterfaces();
+            for (NetworkInterface ni : all == null ? Collections.<NetworkInterface>emptyList() : Collections.list(all)) {
+                if (!ni.isUp()) continue;
+                if (ni.isLoopback()) loopback = ni;
+                else if (ni.supportsMulticast()) return ni;
+            }
+            if (loopback == null) throw new IllegalStateException("no network interface for multicast");
+            return loopback;
+        } catch (SocketException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * bind on port of group with reuse address, so several members on one host receive all messages,
+     * and join group once bound
+     */
+    public UdpServer configure(UdpServer server) {
+        final NetworkInterface ni = networkInterface();
+        final InetSocketAddress group = groupAddress();
+        UdpServer s = server
+            .runOn(UdpResources.get(), InternetProtocolFamily.IPv4)
+            //wildcard address, datagrams to group are not delivered to a socket bound on interface address
+            .host("0.0.0.0")
+            .port(port)
+            .option(ChannelOption.SO_REUSEADDR, true)
+            .option(ChannelOption.IP_MULTICAST_IF, ni)
+            .doOnBound(c -> ((DatagramChannel) c.channel()).joinGroup(group, ni).syncUninterruptibly());
+        if (ttl > 0) s = s.option(ChannelOption.IP_MULTICAST_TTL, ttl);
+        return s;
+    }
 }
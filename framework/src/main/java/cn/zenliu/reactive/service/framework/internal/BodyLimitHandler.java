@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: BodyLimitHandler.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:12:40
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.util.BodyLimit;
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * server level hard cap of request body, one instance per connection.
+ * <p>
+ * 1. bind {@link BodyLimit} on channel for {@link RequestUtil}
+ * 2. reject request with declared content-length over limit by 413 before any handler see it
+ * 3. close connection when a chunked body stream over limit
+ */
+public final class BodyLimitHandler extends ChannelInboundHandlerAdapter {
+    public static final String NAME = "reactive.service.bodyLimit";
+    private final BodyLimit limit;
+    private long received;
+    private boolean discarding;
+
+    public BodyLimitHandler(BodyLimit limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            received = 0;
+            discarding = false;
+            ctx.channel().attr(RequestUtil.BODY_LIMIT).set(limit);
+            if (HttpUtil.getContentLength((HttpRequest) msg, -1L) > limit.getMaxBodySize()) {
+                discarding = true;
+                ReferenceCountUtil.release(msg);
+                final FullHttpResponse res = new DefaultFullHttpResponse(
+                    HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                    Unpooled.EMPTY_BUFFER);
+                res.headers()
+                    .setInt(HttpHeaderNames.CONTENT_LENGTH, 0)
+                    .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                ctx.writeAndFlush(res).addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+        }
+        if (msg instanceof HttpContent) {
+            if (discarding) {
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            received += ((HttpContent) msg).content().readableBytes();
+            if (received > limit.getMaxBodySize()) {
+                discarding = true;
+                ReferenceCountUtil.release(msg);
+                ctx.close();
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
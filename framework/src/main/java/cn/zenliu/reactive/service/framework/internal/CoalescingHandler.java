@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CoalescingHandler.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:10:34
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.spi.Coalesce;
+import cn.zenliu.reactive.service.framework.util.CapturedResponse;
+import cn.zenliu.reactive.service.framework.util.Meters;
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import cn.zenliu.reactive.service.util.SingleFlight;
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+/**
+ * handler decorator of {@link Coalesce}, built on {@link SingleFlight}.
+ * <p>
+ * the leader request invokes handler with its response recorded, waiting requests with same key replay the record.
+ * when the record is not shareable (non 200,Set-Cookie,too large...) or the leader failed (error, client gone...),
+ * waiting requests invoke handler by themselves, as the leader writes to its own connection.
+ */
+public final class CoalescingHandler implements BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> {
+    private final BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler;
+    private final SingleFlight<String, CapturedResponse> flights = SingleFlight.create();
+    private final String[] vary;
+    private final long maxSize;
+
+    public CoalescingHandler(@NonNull String route, @NonNull Coalesce conf,
+                             @NonNull BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+        this.handler = handler;
+        this.vary = conf.vary();
+        this.maxSize = conf.maxSize();
+        Meters.counter("http.coalesced", "requests served by response of a concurrent identical request",
+            flights, SingleFlight::shared, "route", route);
+    }
+
+    @Override
+    public Publisher<Void> apply(HttpServerRequest req, HttpServerResponse res) {
+        final String key = RequestUtil.normalizedKey(req, vary);
+        final boolean[] leader = {false};
+        return flights.execute(key, () -> {
+            leader[0] = true;
+            final ResponseCapture capture = new ResponseCapture(res, maxSize);
+            return Mono.from(handler.apply(req, capture)).then(Mono.fromSupplier(capture::captured));
+        })
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .onErrorResume(e -> leader[0] ? Mono.error(e) : Mono.just(Optional.empty()))
+            .flatMap(r -> {
+                if (leader[0]) return Mono.empty();
+                return r.isPresent() ? Mono.from(r.get().send(req, res)) : Mono.from(handler.apply(req, res));
+            });
+    }
+}
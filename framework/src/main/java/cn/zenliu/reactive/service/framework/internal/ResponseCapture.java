@@ -0,0 +1,381 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ResponseCapture.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:07:09
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.util.CapturedResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.cookie.Cookie;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.NettyOutbound;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.WebsocketServerSpec;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+import reactor.util.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * response decorator which records status, headers and body bytes while they are sent.
+ * <p>
+ * outbounds returned by send methods are decorated too, so chained sends are recorded in order.
+ * capture is abandoned on file, websocket, sse or non buffer objects, or body larger than limit.
+ */
+public final class ResponseCapture implements HttpServerResponse {
+    private final HttpServerResponse delegate;
+    private final long maxSize;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final Set<String> tags = new LinkedHashSet<>();
+    private volatile boolean aborted;
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    public ResponseCapture(HttpServerResponse delegate, long maxSize) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return tags added by handler
+     */
+    public Set<String> tags() {
+        return tags;
+    }
+
+    /**
+     * @return recorded response, null if not complete or not cacheable (non 200,Set-Cookie,no-store,private)
+     */
+    @Nullable
+    public CapturedResponse captured() {
+        if (aborted || !cacheable()) return null;
+        return new CapturedResponse(delegate.status(), delegate.responseHeaders(), body.toByteArray());
+    }
+
+    private boolean cacheable() {
+        if (delegate.status().code() != HttpResponseStatus.OK.code()) return false;
+        final HttpHeaders headers = delegate.responseHeaders();
+        if (headers.contains(HttpHeaderNames.SET_COOKIE)) return false;
+        final String cc = headers.get(HttpHeaderNames.CACHE_CONTROL);
+        return cc == null || !(cc.contains("no-store") || cc.contains("private"));
+    }
+
+    /**
+     * body is unknown before headers are sent, so a cacheable response without ETag gets a generated one,
+     * which is kept by the captured record and matched by later hits
+     */
+    void tagIfCacheable() {
+        if (aborted || delegate.hasSentHeaders() || delegate.responseHeaders().contains(HttpHeaderNames.ETAG)) return;
+        if (cacheable())
+            delegate.header(HttpHeaderNames.ETAG,
+                "\"" + Long.toHexString(System.currentTimeMillis()) + '-' + Long.toHexString(SEQ.incrementAndGet()) + '"');
+    }
+
+    void abort() {
+        aborted = true;
+        body.reset();
+    }
+
+    Publisher<? extends ByteBuf> record(Publisher<? extends ByteBuf> source) {
+        return Flux.from(source).doOnNext(this::record);
+    }
+
+    Publisher<?> recordObjects(Publisher<?> source) {
+        return Flux.from(source).doOnNext(this::recordObject);
+    }
+
+    void recordObject(Object o) {
+        if (o instanceof ByteBuf) record((ByteBuf) o);
+        else if (o instanceof ByteBufHolder) record(((ByteBufHolder) o).content());
+        else abort();
+    }
+
+    void record(ByteBuf buf) {
+        if (aborted) return;
+        final int n = buf.readableBytes();
+        if (body.size() + n > maxSize) {
+            abort();
+            return;
+        }
+        final byte[] bytes = new byte[n];
+        buf.getBytes(buf.readerIndex(), bytes);
+        body.write(bytes, 0, n);
+    }
+
+    NettyOutbound wrap(NettyOutbound out) {
+        return out instanceof Outbound ? out : new Outbound(out);
+    }
+
+    /**
+     * decorate outbound returned by send, keep recording on chained send
+     */
+    final class Outbound implements NettyOutbound {
+        private final NettyOutbound target;
+
+        Outbound(NettyOutbound target) {
+            this.target = target;
+        }
+
+        @Override
+        public ByteBufAllocator alloc() {
+            return target.alloc();
+        }
+
+        @Override
+        public NettyOutbound send(Publisher<? extends ByteBuf> dataStream, Predicate<ByteBuf> predicate) {
+            return wrap(target.send(record(dataStream), predicate));
+        }
+
+        @Override
+        public NettyOutbound sendObject(Publisher<?> dataStream, Predicate<Object> predicate) {
+            return wrap(target.sendObject(recordObjects(dataStream), predicate));
+        }
+
+        @Override
+        public NettyOutbound sendObject(Object message) {
+            recordObject(message);
+            return wrap(target.sendObject(message));
+        }
+
+        @Override
+        public <S> NettyOutbound sendUsing(Callable<? extends S> sourceInput, BiFunction<? super Connection, ? super S, ?> mappedInput, Consumer<? super S> sourceCleanup) {
+            abort();
+            return wrap(target.sendUsing(sourceInput, mappedInput, sourceCleanup));
+        }
+
+        @Override
+        public NettyOutbound withConnection(Consumer<? super Connection> withConnection) {
+            target.withConnection(withConnection);
+            return this;
+        }
+
+        @Override
+        public Mono<Void> then() {
+            return target.then();
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Void> s) {
+            target.subscribe(s);
+        }
+    }
+
+    //region outbound
+    @Override
+    public ByteBufAllocator alloc() {
+        return delegate.alloc();
+    }
+
+    @Override
+    public NettyOutbound send(Publisher<? extends ByteBuf> dataStream, Predicate<ByteBuf> predicate) {
+        tagIfCacheable();
+        return wrap(delegate.send(record(dataStream), predicate));
+    }
+
+    @Override
+    public NettyOutbound sendObject(Publisher<?> dataStream, Predicate<Object> predicate) {
+        tagIfCacheable();
+        return wrap(delegate.sendObject(recordObjects(dataStream), predicate));
+    }
+
+    @Override
+    public NettyOutbound sendObject(Object message) {
+        recordObject(message);
+        tagIfCacheable();
+        return wrap(delegate.sendObject(message));
+    }
+
+    @Override
+    public <S> NettyOutbound sendUsing(Callable<? extends S> sourceInput, BiFunction<? super Connection, ? super S, ?> mappedInput, Consumer<? super S> sourceCleanup) {
+        abort();
+        return wrap(delegate.sendUsing(sourceInput, mappedInput, sourceCleanup));
+    }
+
+    @Override
+    public Mono<Void> then() {
+        return delegate.then();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Void> s) {
+        delegate.subscribe(s);
+    }
+    //endregion
+
+    //region response
+    @Override
+    public HttpServerResponse addCookie(Cookie cookie) {
+        delegate.addCookie(cookie);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse addHeader(CharSequence name, CharSequence value) {
+        delegate.addHeader(name, value);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse chunkedTransfer(boolean chunked) {
+        delegate.chunkedTransfer(chunked);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse withConnection(Consumer<? super Connection> withConnection) {
+        delegate.withConnection(withConnection);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse compression(boolean compress) {
+        delegate.compression(compress);
+        return this;
+    }
+
+    @Override
+    public boolean hasSentHeaders() {
+        return delegate.hasSentHeaders();
+    }
+
+    @Override
+    public HttpServerResponse header(CharSequence name, CharSequence value) {
+        delegate.header(name, value);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse headers(HttpHeaders headers) {
+        delegate.headers(headers);
+        return this;
+    }
+
+    @Override
+    public HttpServerResponse keepAlive(boolean keepAlive) {
+        delegate.keepAlive(keepAlive);
+        return this;
+    }
+
+    @Override
+    public HttpHeaders responseHeaders() {
+        return delegate.responseHeaders();
+    }
+
+    @Override
+    public Mono<Void> send() {
+        tagIfCacheable();
+        return delegate.send();
+    }
+
+    @Override
+    public NettyOutbound sendHeaders() {
+        tagIfCacheable();
+        return wrap(delegate.sendHeaders());
+    }
+
+    @Override
+    public Mono<Void> sendNotFound() {
+        return delegate.sendNotFound();
+    }
+
+    @Override
+    public Mono<Void> sendRedirect(String location) {
+        return delegate.sendRedirect(location);
+    }
+
+    @Override
+    public Mono<Void> sendWebsocket(BiFunction<? super WebsocketInbound, ? super WebsocketOutbound, ? extends Publisher<Void>> websocketHandler, WebsocketServerSpec websocketServerSpec) {
+        abort();
+        return delegate.sendWebsocket(websocketHandler, websocketServerSpec);
+    }
+
+    @Override
+    public HttpServerResponse sse() {
+        abort();
+        delegate.sse();
+        return this;
+    }
+
+    @Override
+    public HttpResponseStatus status() {
+        return delegate.status();
+    }
+
+    @Override
+    public HttpServerResponse status(HttpResponseStatus status) {
+        delegate.status(status);
+        return this;
+    }
+
+    @Override
+    public Map<CharSequence, Set<Cookie>> cookies() {
+        return delegate.cookies();
+    }
+
+    @Override
+    public boolean isKeepAlive() {
+        return delegate.isKeepAlive();
+    }
+
+    @Override
+    public boolean isWebsocket() {
+        return delegate.isWebsocket();
+    }
+
+    @Override
+    public HttpMethod method() {
+        return delegate.method();
+    }
+
+    @Override
+    public String fullPath() {
+        return delegate.fullPath();
+    }
+
+    @Override
+    public String uri() {
+        return delegate.uri();
+    }
+
+    @Override
+    public HttpVersion version() {
+        return delegate.version();
+    }
+    //endregion
+}
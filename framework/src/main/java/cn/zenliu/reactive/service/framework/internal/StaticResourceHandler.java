@@ -0,0 +1,296 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StaticResourceHandler.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:40:12
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.config.StaticResource;
+import cn.zenliu.reactive.service.framework.util.PrecompressedCache;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.util.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * serve files under a root directory.
+ * <p>
+ * 1. small files are memory mapped once and sent as slice of the mapped buffer
+ * 2. others are sent via {@link reactor.netty.NettyOutbound#sendFile(Path, long, long)},
+ * which use zero copy FileRegion when no tls or compression in pipeline, never load content into heap
+ * 3. support ETag,Last-Modified with 304, single Range with If-Range
+ * 4. small compressible files are served from a {@link PrecompressedCache} when no Range requested
+ * <p>
+ * file lookup, stat, mapping and compression block, so they run on {@link Schedulers#boundedElastic()}.
+ */
+public final class StaticResourceHandler implements BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> {
+    static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private final String prefix;
+    private final Path root;
+    private final String index;
+    private final String cacheControl;
+    private final long mmapThreshold;
+    private final Map<Path, Mapped> mapped;
+    private final PrecompressedCache precompressed;
+
+    public StaticResourceHandler(@NonNull String prefix, @NonNull StaticResource conf) {
+        this.prefix = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        this.root = Paths.get(conf.getRoot()).toAbsolutePath().normalize();
+        this.index = conf.getIndex() == null ? "" : conf.getIndex().trim();
+        this.cacheControl = conf.getMaxAge().isZero() ? null : "max-age=" + conf.getMaxAge().getSeconds();
+        this.mmapThreshold = conf.getMmapThreshold().toBytes();
+        this.precompressed = conf.isPrecompress() ? new PrecompressedCache(conf.getPrecompressCapacity().toBytes()) : null;
+        final int entries = conf.getMmapEntries();
+        this.mapped = new LinkedHashMap<Path, Mapped>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Mapped> eldest) {
+                if (size() > entries) {
+                    eldest.getValue().buf.release();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return predicate for route of this handler
+     */
+    public Predicate<HttpServerRequest> predicate() {
+        return req -> {
+            if (req.method() != HttpMethod.GET && req.method() != HttpMethod.HEAD) return false;
+            final String path = req.fullPath();
+            return path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/');
+        };
+    }
+
+    @Override
+    public Publisher<Void> apply(HttpServerRequest req, HttpServerResponse res) {
+        return Mono.fromCallable(() -> serve(req, res))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(Mono::from);
+    }
+
+    private Publisher<Void> serve(HttpServerRequest req, HttpServerResponse res) {
+        final Path file = resolve(req.fullPath());
+        if (file == null) return res.sendNotFound();
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return res.sendNotFound();
+        }
+        final long size = attrs.size();
+        final long modified = attrs.lastModifiedTime().toMillis();
+        final String etag = '"' + Long.toHexString(size) + '-' + Long.toHexString(modified) + '"';
+        res.header(HttpHeaderNames.ETAG, etag)
+            .header(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(modified)))
+            .header(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        if (cacheControl != null) res.header(HttpHeaderNames.CACHE_CONTROL, cacheControl);
+        final HttpHeaders headers = req.requestHeaders();
+        if (notModified(headers, etag, modified)) {
+            return res.status(HttpResponseStatus.NOT_MODIFIED).send();
+        }
+        final String type = contentTypeOf(file);
+        res.header(HttpHeaderNames.CONTENT_TYPE, type);
+        long start = 0;
+        long length = size;
+        final String range = headers.get(HttpHeaderNames.RANGE);
+        if (precompressed != null && range == null && size <= mmapThreshold && PrecompressedCache.isCompressible(type)) {
+            final PrecompressedCache.Asset asset = assetOf(file, size, modified, etag, type);
+            final Publisher<Void> sent = asset == null ? null : precompressed.send(req, res, asset);
+            if (sent != null) return sent;
+        }
+        if (range != null && ifRange(headers.get(HttpHeaderNames.IF_RANGE), etag, modified)) {
+            final long[] r = parseRange(range, size);
+            if (r == UNSATISFIABLE) {
+                return res.status(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaderNames.CONTENT_RANGE, "bytes */" + size)
+                    .send();
+            } else if (r != null) {
+                start = r[0];
+                length = r[1] - r[0] + 1;
+                res.status(HttpResponseStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaderNames.CONTENT_RANGE, "bytes " + r[0] + '-' + r[1] + '/' + size);
+            }
+        }
+        res.header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(length));
+        if (req.method() == HttpMethod.HEAD || length == 0) return res.send();
+        if (size <= mmapThreshold) {
+            final ByteBuf buf = mappedOf(file, size, modified);
+            if (buf != null) {
+                //slice shares the reference taken by mappedOf, released once sent
+                return res.send(Mono.just(buf.slice((int) start, (int) length))).then();
+            }
+        }
+        return res.sendFile(file, start, length).then();
+    }
+
+    @Nullable
+    private Path resolve(String fullPath) {
+        String rel = fullPath.length() > prefix.length() ? fullPath.substring(prefix.length()) : "";
+        rel = QueryStringDecoder.decodeComponent(rel);
+        while (rel.startsWith("/")) rel = rel.substring(1);
+        if (rel.indexOf('\0') >= 0) return null;
+        Path file = root.resolve(rel).normalize();
+        if (!file.startsWith(root)) return null;
+        if (Files.isDirectory(file)) {
+            if (index.isEmpty()) return null;
+            file = file.resolve(index);
+        }
+        return Files.isRegularFile(file) && Files.isReadable(file) ? file : null;
+    }
+
+    private static boolean notModified(HttpHeaders headers, String etag, long modified) {
+        final String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                final String t = tag.trim();
+                if (t.equals("*") || t.equals(etag) || (t.startsWith("W/") && t.substring(2).equals(etag)))
+                    return true;
+            }
+            return false;
+        }
+        final String ifModifiedSince = headers.get(HttpHeaderNames.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) return false;
+        final Date since = DateFormatter.parseHttpDate(ifModifiedSince);
+        return since != null && modified / 1000 <= since.getTime() / 1000;
+    }
+
+    /**
+     * @return true if range should be applied
+     */
+    private static boolean ifRange(@Nullable String ifRange, String etag, long modified) {
+        if (ifRange == null) return true;
+        final String v = ifRange.trim();
+        if (v.startsWith("\"")) return v.equals(etag);
+        final Date date = DateFormatter.parseHttpDate(v);
+        return date != null && date.getTime() / 1000 == modified / 1000;
+    }
+
+    static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * only single range is supported,multiple ranges will be served as full content
+     *
+     * @return null to ignore range, {@link #UNSATISFIABLE} or [first,last]
+     */
+    @Nullable
+    static long[] parseRange(String range, long size) {
+        final String v = range.trim();
+        if (!v.startsWith("bytes=") || v.indexOf(',') >= 0) return null;
+        final String spec = v.substring(6).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                if (last.isEmpty()) return null;
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            final long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+            if (start >= size || end < start) return UNSATISFIABLE;
+            if (end >= size) end = size - 1;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return mapped buffer retained for caller, which must release it
+     */
+    @Nullable
+    private ByteBuf mappedOf(Path file, long size, long modified) {
+        synchronized (mapped) {
+            //retained under same lock of replacement and eviction, so never hand out a released mapping
+            final Mapped m = mapped.get(file);
+            if (m != null && m.size == size && m.modified == modified) return m.buf.retain();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                final ByteBuf buf = Unpooled.wrappedBuffer(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                final Mapped old = mapped.put(file, new Mapped(buf, size, modified));
+                if (old != null) old.buf.release();
+                return buf.retain();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    @Nullable
+    private PrecompressedCache.Asset assetOf(Path file, long size, long modified, String etag, String type) {
+        final String key = file.toString();
+        final PrecompressedCache.Asset asset = precompressed.get(key);
+        if (asset != null && etag.equals(asset.getEtag())) return asset;
+        final ByteBuf buf = mappedOf(file, size, modified);
+        if (buf == null) return null;
+        try {
+            return precompressed.put(key, buf, type, etag);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static String contentTypeOf(Path file) {
+        final String type = URLConnection.getFileNameMap().getContentTypeFor(file.getFileName().toString());
+        return type == null ? DEFAULT_CONTENT_TYPE : type;
+    }
+
+    static final class Mapped {
+        final ByteBuf buf;
+        final long size;
+        final long modified;
+
+        Mapped(ByteBuf buf, long size, long modified) {
+            this.buf = buf;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: Cached.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:06:29
+ */
+
+package cn.zenliu.reactive.service.framework.spi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * opt-in response cache of a GET {@link RestApi} method,
+ * see {@link cn.zenliu.reactive.service.framework.util.ResponseCache}
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+    /**
+     * @return time to live of a cached response
+     */
+    long ttl() default 5;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return request headers be part of cache key besides normalized uri (eg: Accept,Accept-Language)
+     */
+    String[] vary() default {};
+
+    /**
+     * @return tags of all responses of this route, used to invalidate
+     */
+    String[] tags() default {};
+
+    /**
+     * @return max bytes of all cached bodies of this route
+     */
+    long maxSize() default 16 * 1024 * 1024;
+
+    /**
+     * @return response body larger than this will not be cached
+     */
+    long maxEntrySize() default 1024 * 1024;
+}
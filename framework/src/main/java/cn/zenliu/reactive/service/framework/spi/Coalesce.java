@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: Coalesce.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:10:34
+ */
+
+package cn.zenliu.reactive.service.framework.spi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * coalesce concurrent identical requests of a GET {@link RestApi} method:
+ * only the first one invokes the handler, others wait and replay its response,
+ * see {@link cn.zenliu.reactive.service.framework.internal.CoalescingHandler}
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesce {
+    /**
+     * @return request headers be part of key besides normalized uri
+     */
+    String[] vary() default {};
+
+    /**
+     * @return response body larger than this will not be shared, waiting requests invoke handler by themselves
+     */
+    long maxSize() default 1024 * 1024;
+}
@@ -31,7 +31,24 @@ import java.lang.annotation.Target;
 public @interface RestApi {
     String url() default "/";
     RestMethod method() default RestMethod.GET;
+
+    /**
+     * @return max bytes of request body on wire, negative means use server config,
+     * can't exceed server config ({@link cn.zenliu.reactive.service.framework.config.ServerConf#getMaxBodySize()})
+     */
+    long maxBodySize() default -1;
+
+    /**
+     * @return max bytes of request body after decompress, negative means use server config
+     */
+    long maxInflatedBodySize() default -1;
+
+    /**
+     * STATIC: method should take no parameter and return a {@link java.nio.file.Path} of root directory
+     * or a {@link cn.zenliu.reactive.service.framework.config.StaticResource},
+     * files under root will be served on url as prefix
+     */
     enum RestMethod {
-        GET, POST, PUT, DELETE, INDEX,WEBSOCKET, HEAD
+        GET, POST, PUT, DELETE, INDEX,WEBSOCKET, HEAD, STATIC
     }
 }
@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: BodyLimit.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:12:40
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import cn.zenliu.reactive.service.framework.config.ServerConf;
+import cn.zenliu.reactive.service.framework.spi.RestApi;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * limits of request body which bound to a request
+ * server limit is the hard cap,route limit could only narrow it
+ */
+@Value
+public class BodyLimit {
+    /**
+     * max bytes of body on wire (before decompress)
+     */
+    long maxBodySize;
+    /**
+     * max bytes of body after decompress
+     */
+    long maxInflatedBodySize;
+    /**
+     * should decode request body with gzip or deflate content-encoding
+     */
+    boolean decompress;
+
+    public static BodyLimit of(@NonNull ServerConf conf) {
+        return new BodyLimit(
+            conf.getMaxBodySize().toBytes(),
+            conf.getMaxInflatedBodySize().toBytes(),
+            conf.isDecompressRequest()
+        );
+    }
+
+    public static BodyLimit of(@NonNull ServerConf conf, @NonNull RestApi api) {
+        final BodyLimit server = of(conf);
+        return new BodyLimit(
+            narrow(server.maxBodySize, api.maxBodySize()),
+            narrow(server.maxInflatedBodySize, api.maxInflatedBodySize()),
+            server.decompress
+        );
+    }
+
+    /**
+     * @return true if limit should be checked
+     */
+    public boolean isLimited() {
+        return maxBodySize > 0;
+    }
+
+    private static long narrow(long server, long route) {
+        if (route < 0) return server;
+        if (server <= 0) return route;
+        return Math.min(server, route);
+    }
+}
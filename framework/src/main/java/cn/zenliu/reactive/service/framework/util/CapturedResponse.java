@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CapturedResponse.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:06:48
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.AsciiString;
+import lombok.Getter;
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.util.annotation.Nullable;
+
+import java.util.zip.CRC32;
+
+/**
+ * a complete response recorded from a handler, could be replayed on other requests
+ */
+public final class CapturedResponse {
+    //HttpHeaderNames.KEEP_ALIVE is deprecated, still a hop-by-hop header of http/1.0 clients
+    private static final AsciiString KEEP_ALIVE = AsciiString.cached("keep-alive");
+    @Getter
+    private final HttpResponseStatus status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    @Getter
+    private final String etag;
+    @Getter
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * @param status  status
+     * @param headers response headers, hop-by-hop and length headers will be dropped
+     * @param body    encoded body,not copied
+     */
+    public CapturedResponse(@NonNull HttpResponseStatus status, @NonNull HttpHeaders headers, @NonNull byte[] body) {
+        this.status = status;
+        this.body = body;
+        final String tag = headers.get(HttpHeaderNames.ETAG);
+        this.etag = tag == null ? etagOf(body) : tag;
+        this.headers = new DefaultHttpHeaders(false).add(headers)
+            .remove(HttpHeaderNames.CONTENT_LENGTH)
+            .remove(HttpHeaderNames.TRANSFER_ENCODING)
+            .remove(HttpHeaderNames.CONNECTION)
+            .remove(KEEP_ALIVE)
+            .remove(HttpHeaderNames.DATE)
+            .remove(HttpHeaderNames.AGE)
+            .remove(HttpHeaderNames.ETAG);
+    }
+
+    /**
+     * @return bytes of body
+     */
+    public int size() {
+        return body.length;
+    }
+
+    /**
+     * @return copy of headers, without ETag and length headers
+     */
+    public HttpHeaders headers() {
+        return headers.copy();
+    }
+
+    /**
+     * replay on response, answer 304 if If-None-Match of request matches
+     *
+     * @param req request
+     * @param res response
+     * @return publisher
+     */
+    public Publisher<Void> send(@NonNull HttpServerRequest req, @NonNull HttpServerResponse res) {
+        res.status(status);
+        res.responseHeaders().add(headers);
+        res.header(HttpHeaderNames.ETAG, etag)
+            .header(HttpHeaderNames.AGE, String.valueOf((System.currentTimeMillis() - created) / 1000));
+        if (matches(req.requestHeaders().get(HttpHeaderNames.IF_NONE_MATCH), etag)) {
+            return res.status(HttpResponseStatus.NOT_MODIFIED).send();
+        }
+        res.header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(body.length));
+        if (req.method() == HttpMethod.HEAD || body.length == 0) return res.send();
+        return res.send(Mono.just(Unpooled.wrappedBuffer(body))).then();
+    }
+
+    /**
+     * weak comparison of If-None-Match
+     */
+    static boolean matches(@Nullable String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        final String strong = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String tag : ifNoneMatch.split(",")) {
+            final String t = tag.trim();
+            if (t.equals("*") || t.equals(strong) || (t.startsWith("W/") && t.substring(2).equals(strong)))
+                return true;
+        }
+        return false;
+    }
+
+    static String etagOf(byte[] body) {
+        final CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return '"' + Long.toHexString(body.length) + '-' + Long.toHexString(crc.getValue()) + '"';
+    }
+}
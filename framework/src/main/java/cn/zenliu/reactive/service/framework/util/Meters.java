@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: Meters.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:06:25
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * bind function based meters to micrometer global registry,
+ * every method is a no-op when micrometer not on class path,
+ * so components just keep their own counters (eg: LongAdder) and export them here.
+ */
+@UtilityClass
+public class Meters {
+    public final String PREFIX = "reactive.service.";
+    public final boolean AVAILABLE = reactor.util.Metrics.isInstrumentationAvailable();
+
+    /**
+     * register a monotonic counter read from obj
+     *
+     * @param name        meter name, will be prefixed with {@link #PREFIX}
+     * @param description description
+     * @param obj         state object, weak referenced by registry
+     * @param fn          read count from state
+     * @param tags        key value pairs
+     */
+    public <T> void counter(@NonNull String name, String description, @NonNull T obj, @NonNull ToDoubleFunction<T> fn, String... tags) {
+        if (AVAILABLE) Micrometer.counter(PREFIX + name, description, obj, fn, tags);
+    }
+
+    /**
+     * register a gauge read from obj
+     *
+     * @param name        meter name, will be prefixed with {@link #PREFIX}
+     * @param description description
+     * @param obj         state object, weak referenced by registry
+     * @param fn          read value from state
+     * @param tags        key value pairs
+     */
+    public <T> void gauge(@NonNull String name, String description, @NonNull T obj, @NonNull ToDoubleFunction<T> fn, String... tags) {
+        if (AVAILABLE) Micrometer.gauge(PREFIX + name, description, obj, fn, tags);
+    }
+
+    /**
+     * register a timer with percentile histogram
+     *
+     * @param name        meter name, will be prefixed with {@link #PREFIX}
+     * @param description description
+     * @param tags        key value pairs
+     * @return recorder of durations in nanoseconds, a no-op when micrometer not present
+     */
+    public LongConsumer timer(@NonNull String name, String description, String... tags) {
+        return AVAILABLE ? Micrometer.timer(PREFIX + name, description, tags) : NOOP;
+    }
+
+    /**
+     * register a distribution summary with percentile histogram
+     *
+     * @param name        meter name, will be prefixed with {@link #PREFIX}
+     * @param description description
+     * @param tags        key value pairs
+     * @return recorder of amounts, a no-op when micrometer not present
+     */
+    public DoubleConsumer summary(@NonNull String name, String description, String... tags) {
+        return AVAILABLE ? Micrometer.summary(PREFIX + name, description, tags) : NOOP_AMOUNT;
+    }
+
+    /**
+     * remove meters registered by name and tags, owners should call it when closed,
+     * or a new owner registering same meter gets the old one, which is bound to the closed owner.
+     *
+     * @param name meter name, will be prefixed with {@link #PREFIX}
+     * @param tags key value pairs, meters with more tags are removed too
+     */
+    public void remove(@NonNull String name, String... tags) {
+        if (AVAILABLE) Micrometer.remove(PREFIX + name, tags);
+    }
+
+    private final LongConsumer NOOP = nanos -> {
+    };
+    private final DoubleConsumer NOOP_AMOUNT = amount -> {
+    };
+
+    /**
+     * isolate micrometer, only touched when it's on class path
+     */
+    static final class Micrometer {
+        static <T> void counter(String name, String description, T obj, ToDoubleFunction<T> fn, String... tags) {
+            io.micrometer.core.instrument.FunctionCounter.builder(name, obj, fn)
+                .description(description)
+                .tags(tags)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        }
+
+        static <T> void gauge(String name, String description, T obj, ToDoubleFunction<T> fn, String... tags) {
+            io.micrometer.core.instrument.Gauge.builder(name, obj, fn)
+                .description(description)
+                .tags(tags)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        }
+
+        static LongConsumer timer(String name, String description, String... tags) {
+            final io.micrometer.core.instrument.Timer timer = io.micrometer.core.instrument.Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+            return nanos -> timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        static DoubleConsumer summary(String name, String description, String... tags) {
+            final io.micrometer.core.instrument.DistributionSummary summary = io.micrometer.core.instrument.DistributionSummary.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+            return summary::record;
+        }
+
+        static void remove(String name, String... tags) {
+            final io.micrometer.core.instrument.MeterRegistry registry = io.micrometer.core.instrument.Metrics.globalRegistry;
+            registry.find(name).tags(tags).meters().forEach(registry::remove);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PayloadTooLargeException.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:12:40
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import lombok.Getter;
+
+/**
+ * raised when request body exceed the {@link BodyLimit}
+ * will be converted to 413 by rest handlers if response not sent yet
+ */
+public class PayloadTooLargeException extends RuntimeException {
+    @Getter
+    private final long limit;
+
+    public PayloadTooLargeException(long limit) {
+        super("request body exceed limit of " + limit + " bytes", null, false, false);
+        this.limit = limit;
+    }
+}
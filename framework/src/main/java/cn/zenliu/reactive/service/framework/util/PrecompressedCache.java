@@ -0,0 +1,358 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PrecompressedCache.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:05:31
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.Getter;
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.util.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * in memory cache of small static or generated responses,
+ * every entry keeps identity, gzip and zstd (when zstd-jni present) variants encoded once,
+ * held as direct buffers and sent with {@link ByteBuf#retainedDuplicate()}.
+ * <p>
+ * variants are chosen by Accept-Encoding and carry their own Content-Encoding,
+ * so the per-response compression of server (ServerConf.compress) will skip them.
+ */
+public final class PrecompressedCache {
+    public static final String GZIP = "gzip";
+    public static final String ZSTD = "zstd";
+    static final boolean ZSTD_AVAILABLE = isZstdAvailable();
+
+    private final long capacity;
+    private final int minCompressSize;
+    private final int gzipLevel;
+    private final int zstdLevel;
+    private final Map<String, Asset> assets = new LinkedHashMap<>(16, 0.75f, true);
+    private long used;
+
+    /**
+     * @param capacity        max bytes of all variants
+     * @param minCompressSize content smaller than this will not be compressed
+     * @param gzipLevel       gzip level 1-9
+     * @param zstdLevel       zstd level 1-22
+     */
+    public PrecompressedCache(long capacity, int minCompressSize, int gzipLevel, int zstdLevel) {
+        this.capacity = capacity;
+        this.minCompressSize = minCompressSize;
+        this.gzipLevel = gzipLevel;
+        this.zstdLevel = zstdLevel;
+    }
+
+    public PrecompressedCache(long capacity) {
+        this(capacity, 256, 9, 19);
+    }
+
+    /**
+     * @param key key
+     * @return cached asset
+     */
+    @Nullable
+    public Asset get(@NonNull String key) {
+        synchronized (assets) {
+            return assets.get(key);
+        }
+    }
+
+    /**
+     * encode and cache content, replace old one
+     *
+     * @param key         key
+     * @param content     raw content,not retained or released
+     * @param contentType content type
+     * @param etag        entity tag of raw content,nullable
+     * @return cached asset
+     */
+    public Asset put(@NonNull String key, @NonNull ByteBuf content, @Nullable String contentType, @Nullable String etag) {
+        final byte[] raw = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), raw);
+        return put(key, raw, contentType, etag);
+    }
+
+    /**
+     * encode and cache content, replace old one
+     *
+     * @param key         key
+     * @param content     raw content
+     * @param contentType content type
+     * @param etag        entity tag of raw content,nullable
+     * @return cached asset
+     */
+    public Asset put(@NonNull String key, @NonNull byte[] content, @Nullable String contentType, @Nullable String etag) {
+        final boolean compress = content.length >= minCompressSize && isCompressible(contentType);
+        final Asset asset = new Asset(
+            contentType,
+            etag,
+            direct(content),
+            compress ? smaller(gzip(content, gzipLevel), content.length) : null,
+            compress && ZSTD_AVAILABLE ? smaller(ZstdCodec.compress(content, zstdLevel), content.length) : null
+        );
+        synchronized (assets) {
+            final Asset old = assets.put(key, asset);
+            if (old != null) {
+                used -= old.size();
+                old.release();
+            }
+            used += asset.size();
+            evict();
+        }
+        return asset;
+    }
+
+    /**
+     * @param key         key
+     * @param contentType content type
+     * @param supplier    supply raw content when not cached
+     * @return cached asset
+     */
+    public Asset computeIfAbsent(@NonNull String key, @Nullable String contentType, @NonNull Supplier<byte[]> supplier) {
+        final Asset asset = get(key);
+        if (asset != null) return asset;
+        return put(key, supplier.get(), contentType, null);
+    }
+
+    public void invalidate(@NonNull String key) {
+        synchronized (assets) {
+            final Asset old = assets.remove(key);
+            if (old != null) {
+                used -= old.size();
+                old.release();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (assets) {
+            assets.values().forEach(Asset::release);
+            assets.clear();
+            used = 0;
+        }
+    }
+
+    /**
+     * @return bytes used by all variants
+     */
+    public long size() {
+        synchronized (assets) {
+            return used;
+        }
+    }
+
+    /**
+     * send the best variant of asset for request
+     *
+     * @param req   request
+     * @param res   response
+     * @param asset asset from this cache
+     * @return publisher, null if the asset was evicted concurrently (caller should send content by itself)
+     */
+    @Nullable
+    public Publisher<Void> send(@NonNull HttpServerRequest req, @NonNull HttpServerResponse res, @NonNull Asset asset) {
+        final String encoding = selectEncoding(
+            req.requestHeaders().get(HttpHeaderNames.ACCEPT_ENCODING),
+            asset.zstd != null,
+            asset.gzip != null);
+        final ByteBuf body;
+        //eviction release under same lock,so the duplicate is always taken from a live buffer
+        synchronized (assets) {
+            if (asset.identity.refCnt() == 0) return null;
+            body = asset.variantOf(encoding).retainedDuplicate();
+        }
+        res.header(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING)
+            .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(body.readableBytes()));
+        if (asset.contentType != null) res.header(HttpHeaderNames.CONTENT_TYPE, asset.contentType);
+        if (encoding != null) res.header(HttpHeaderNames.CONTENT_ENCODING, encoding);
+        if (asset.etag != null)
+            res.header(HttpHeaderNames.ETAG, encoding == null || asset.etag.startsWith("W/") ? asset.etag : "W/" + asset.etag);
+        if (req.method() == HttpMethod.HEAD) {
+            body.release();
+            return res.send();
+        }
+        return res.send(Mono.just(body)).then();
+    }
+
+    /**
+     * @param accept value of Accept-Encoding
+     * @return null for identity,or {@link #ZSTD},{@link #GZIP}
+     */
+    @Nullable
+    static String selectEncoding(@Nullable String accept, boolean zstd, boolean gzip) {
+        if (accept == null || (!zstd && !gzip)) return null;
+        float zstdQ = -1, gzipQ = -1, anyQ = -1;
+        for (String token : accept.split(",")) {
+            final String[] parts = token.trim().split(";");
+            final String name = parts[0].trim().toLowerCase();
+            float q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String p = parts[i].trim();
+                if (p.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(p.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals(ZSTD)) zstdQ = q;
+            else if (name.equals(GZIP) || name.equals("x-gzip")) gzipQ = q;
+            else if (name.equals("*")) anyQ = q;
+        }
+        if (zstdQ < 0) zstdQ = anyQ;
+        if (gzipQ < 0) gzipQ = anyQ;
+        if (!zstd) zstdQ = 0;
+        if (!gzip) gzipQ = 0;
+        if (zstdQ <= 0 && gzipQ <= 0) return null;
+        return zstdQ >= gzipQ ? ZSTD : GZIP;
+    }
+
+    /**
+     * @param contentType content type
+     * @return true if content of this type is worth to compress
+     */
+    public static boolean isCompressible(@Nullable String contentType) {
+        if (contentType == null) return false;
+        final String t = contentType.toLowerCase();
+        return t.startsWith("text/")
+            || t.contains("json")
+            || t.contains("javascript")
+            || t.contains("xml")
+            || t.contains("svg")
+            || t.startsWith("application/wasm");
+    }
+
+    private void evict() {
+        if (used <= capacity) return;
+        final Iterator<Asset> itr = assets.values().iterator();
+        while (used > capacity && itr.hasNext()) {
+            final Asset eldest = itr.next();
+            itr.remove();
+            used -= eldest.size();
+            eldest.release();
+        }
+    }
+
+    @Nullable
+    private static ByteBuf smaller(@Nullable byte[] encoded, int raw) {
+        return encoded == null || encoded.length >= raw ? null : direct(encoded);
+    }
+
+    private static ByteBuf direct(byte[] bytes) {
+        return ByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+    }
+
+    @Nullable
+    private static byte[] gzip(byte[] raw, int level) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gz.write(raw);
+        } catch (IOException e) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isZstdAvailable() {
+        try {
+            Class.forName("com.github.luben.zstd.Zstd");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * isolate zstd-jni, only touched when it's on class path
+     */
+    static final class ZstdCodec {
+        @Nullable
+        static byte[] compress(byte[] raw, int level) {
+            try {
+                return com.github.luben.zstd.Zstd.compress(raw, level);
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * encoded variants of one content
+     */
+    public static final class Asset {
+        @Getter
+        private final String contentType;
+        @Getter
+        private final String etag;
+        private final ByteBuf identity;
+        private final ByteBuf gzip;
+        private final ByteBuf zstd;
+
+        Asset(String contentType, String etag, ByteBuf identity, ByteBuf gzip, ByteBuf zstd) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.zstd = zstd;
+        }
+
+        ByteBuf variantOf(@Nullable String encoding) {
+            if (ZSTD.equals(encoding) && zstd != null) return zstd;
+            if (GZIP.equals(encoding) && gzip != null) return gzip;
+            return identity;
+        }
+
+        public boolean hasVariant(@NonNull String encoding) {
+            return variantOf(encoding) != identity;
+        }
+
+        long size() {
+            return identity.capacity()
+                + (gzip == null ? 0 : gzip.capacity())
+                + (zstd == null ? 0 : zstd.capacity());
+        }
+
+        void release() {
+            identity.release();
+            if (gzip != null) gzip.release();
+            if (zstd != null) zstd.release();
+        }
+    }
+}
@@ -21,16 +21,43 @@
 
 package cn.zenliu.reactive.service.framework.util;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import lombok.NonNull;
 import lombok.experimental.UtilityClass;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
 import reactor.util.annotation.Nullable;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @UtilityClass
 public class RequestUtil {
+    /**
+     * body limit of current request, bound by server (per connection) and override by rest route (per request)
+     */
+    public final AttributeKey<BodyLimit> BODY_LIMIT = AttributeKey.valueOf("reactive.service.bodyLimit");
+    /**
+     * subscriber context key of current rest route ({@code server:url}), put by rest handlers
+     */
+    public final String ROUTE = "reactive.service.route";
 
     /**
      * decode request parameters from request
@@ -42,4 +69,271 @@ public class RequestUtil {
     public Map<String, List<String>> parseQueryParam(HttpServerRequest req) {
         return new QueryStringDecoder(req.uri()).parameters();
     }
+
+    /**
+     * key of request for caching or coalescing
+     *
+     * @param req  request
+     * @param vary request headers be part of key
+     * @return path with sorted query parameters, then values of vary headers
+     */
+    public String normalizedKey(@NonNull HttpServerRequest req, String... vary) {
+        final QueryStringDecoder decoder = new QueryStringDecoder(req.uri());
+        final StringBuilder sb = new StringBuilder(decoder.path());
+        final Map<String, List<String>> params = decoder.parameters();
+        if (!params.isEmpty()) {
+            char sep = '?';
+            for (Map.Entry<String, List<String>> p : new TreeMap<>(params).entrySet()) {
+                for (String v : p.getValue()) {
+                    sb.append(sep).append(p.getKey()).append('=').append(v);
+                    sep = '&';
+                }
+            }
+        }
+        for (String h : vary) {
+            sb.append('\n').append(h).append(':');
+            final List<String> values = req.requestHeaders().getAll(h);
+            if (!values.isEmpty()) sb.append(String.join(",", values));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param req request
+     * @return body limit bound to current request,null if none bound
+     */
+    @Nullable
+    public BodyLimit bodyLimitOf(@NonNull HttpServerRequest req) {
+        final BodyLimit[] holder = new BodyLimit[1];
+        req.withConnection(c -> holder[0] = c.channel().attr(BODY_LIMIT).get());
+        return holder[0];
+    }
+
+    /**
+     * @param req request
+     * @return declared content length or -1 if not declared (chunked)
+     */
+    public long contentLength(@NonNull HttpServerRequest req) {
+        final String length = req.requestHeaders().get(HttpHeaderNames.CONTENT_LENGTH);
+        if (length == null) return -1;
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * check declared content length ,use for reject a request before read any byte of body
+     *
+     * @param req   request
+     * @param limit limit
+     * @return true if declared length is over limit
+     */
+    public boolean isOverLimit(@NonNull HttpServerRequest req, @Nullable BodyLimit limit) {
+        return limit != null && limit.isLimited() && contentLength(req) > limit.getMaxBodySize();
+    }
+
+    /**
+     * send 413 and close connection after response
+     *
+     * @param res response
+     * @return publisher
+     */
+    public Mono<Void> sendPayloadTooLarge(@NonNull HttpServerResponse res) {
+        return res.status(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE)
+            .keepAlive(false)
+            .send();
+    }
+
+    /**
+     * receive body with limit bound on request, decode content-encoding of gzip and deflate if enabled
+     * <b>every buffer is retained,caller must release them</b>
+     *
+     * @param req request
+     * @return body stream, error with {@link PayloadTooLargeException} when exceed limit
+     */
+    public Flux<ByteBuf> receive(@NonNull HttpServerRequest req) {
+        return receive(req, bodyLimitOf(req));
+    }
+
+    /**
+     * receive body with limit, decode content-encoding of gzip and deflate if enabled
+     * <b>every buffer is retained,caller must release them</b>
+     *
+     * @param req   request
+     * @param limit limit,null for no limit and no decompress
+     * @return body stream, error with {@link PayloadTooLargeException} when exceed limit
+     */
+    public Flux<ByteBuf> receive(@NonNull HttpServerRequest req, @Nullable BodyLimit limit) {
+        if (limit == null) return req.receive().retain();
+        if (isOverLimit(req, limit)) return Flux.error(new PayloadTooLargeException(limit.getMaxBodySize()));
+        final Flux<ByteBuf> raw = limited(req.receive().retain(), limit.getMaxBodySize());
+        final ZlibWrapper wrapper = limit.isDecompress() ? wrapperOf(req.requestHeaders().get(HttpHeaderNames.CONTENT_ENCODING)) : null;
+        return (wrapper == null ? raw : inflate(raw, wrapper, limit.getMaxInflatedBodySize()))
+            .doOnDiscard(ByteBuf.class, ReferenceCountUtil::safeRelease);
+    }
+
+    /**
+     * bounded replacement of {@code receive().aggregate()}
+     * <b>the result buffer must be released by caller</b>
+     *
+     * @param req request
+     * @return whole body, error with {@link PayloadTooLargeException} when exceed limit
+     */
+    public Mono<ByteBuf> aggregate(@NonNull HttpServerRequest req) {
+        return aggregate(req, bodyLimitOf(req));
+    }
+
+    /**
+     * bounded replacement of {@code receive().aggregate()}
+     * <b>the result buffer must be released by caller</b>
+     *
+     * @param req   request
+     * @param limit limit, null for no limit
+     * @return whole body, error with {@link PayloadTooLargeException} when exceed limit
+     */
+    public Mono<ByteBuf> aggregate(@NonNull HttpServerRequest req, @Nullable BodyLimit limit) {
+        return Mono.defer(() -> {
+            //buffers are owned here until composed, collectList only releases them when a discard hook is in context
+            final Collected collected = new Collected();
+            return receive(req, limit)
+                .collect(() -> collected, Collected::add)
+                .map(Collected::compose)
+                .doOnError(e -> collected.release())
+                .doOnCancel(collected::release);
+        });
+    }
+
+    /**
+     * buffers received by {@link #aggregate(HttpServerRequest, BodyLimit)}, late arrivals after release are released at once
+     */
+    private static final class Collected {
+        private final List<ByteBuf> buffers = new ArrayList<>();
+        private boolean released;
+
+        synchronized void add(ByteBuf buf) {
+            if (released) buf.release();
+            else buffers.add(buf);
+        }
+
+        synchronized ByteBuf compose() {
+            released = true;
+            final ByteBuf body = RequestUtil.compose(buffers);
+            buffers.clear();
+            return body;
+        }
+
+        synchronized void release() {
+            released = true;
+            buffers.forEach(ReferenceCountUtil::safeRelease);
+            buffers.clear();
+        }
+    }
+
+    /**
+     * @param req request
+     * @return whole body as bytes, empty array if no body
+     */
+    public Mono<byte[]> aggregateBytes(@NonNull HttpServerRequest req) {
+        return aggregate(req).map(buf -> {
+            try {
+                final byte[] bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes);
+                return bytes;
+            } finally {
+                buf.release();
+            }
+        });
+    }
+
+    /**
+     * @param req     request
+     * @param charset charset of body
+     * @return whole body as string
+     */
+    public Mono<String> aggregateString(@NonNull HttpServerRequest req, @NonNull Charset charset) {
+        return aggregate(req).map(buf -> {
+            try {
+                return buf.toString(charset);
+            } finally {
+                buf.release();
+            }
+        });
+    }
+
+    private ByteBuf compose(List<ByteBuf> buffers) {
+        if (buffers.isEmpty()) return Unpooled.EMPTY_BUFFER;
+        if (buffers.size() == 1) return buffers.get(0);
+        final CompositeByteBuf composite = ByteBufAllocator.DEFAULT.compositeBuffer(buffers.size());
+        buffers.forEach(b -> composite.addComponent(true, b));
+        return composite;
+    }
+
+    @Nullable
+    private ZlibWrapper wrapperOf(@Nullable String encoding) {
+        if (encoding == null) return null;
+        final String enc = encoding.trim();
+        if (HttpHeaderValues.GZIP.contentEqualsIgnoreCase(enc) || HttpHeaderValues.X_GZIP.contentEqualsIgnoreCase(enc))
+            return ZlibWrapper.GZIP;
+        if (HttpHeaderValues.DEFLATE.contentEqualsIgnoreCase(enc) || HttpHeaderValues.X_DEFLATE.contentEqualsIgnoreCase(enc))
+            return ZlibWrapper.ZLIB_OR_NONE;
+        return null;
+    }
+
+    private Flux<ByteBuf> limited(Flux<ByteBuf> source, long max) {
+        if (max <= 0) return source;
+        return Flux.defer(() -> {
+            final long[] received = {0};
+            return source.handle((buf, sink) -> {
+                received[0] += buf.readableBytes();
+                if (received[0] > max) {
+                    buf.release();
+                    sink.error(new PayloadTooLargeException(max));
+                } else sink.next(buf);
+            });
+        });
+    }
+
+    /**
+     * streaming inflate via an embedded zlib decoder,only decoded chunks in flight are held
+     */
+    private Flux<ByteBuf> inflate(Flux<ByteBuf> source, ZlibWrapper wrapper, long max) {
+        return Flux.using(
+            () -> new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(wrapper)),
+            ch -> {
+                final long[] inflated = {0};
+                return source
+                    .concatMap(buf -> {
+                        //decoder take the ownership of buf
+                        ch.writeInbound(buf);
+                        try {
+                            return Flux.fromIterable(drain(ch, inflated, max));
+                        } catch (RuntimeException e) {
+                            return Flux.error(e);
+                        }
+                    })
+                    .concatWith(Flux.defer(() -> {
+                        ch.finish();
+                        return Flux.fromIterable(drain(ch, inflated, max));
+                    }));
+            },
+            EmbeddedChannel::finishAndReleaseAll
+        );
+    }
+
+    private List<ByteBuf> drain(EmbeddedChannel ch, long[] inflated, long max) {
+        final List<ByteBuf> out = new ArrayList<>();
+        for (ByteBuf buf = ch.readInbound(); buf != null; buf = ch.readInbound()) {
+            inflated[0] += buf.readableBytes();
+            if (max > 0 && inflated[0] > max) {
+                buf.release();
+                out.forEach(ReferenceCountUtil::safeRelease);
+                throw new PayloadTooLargeException(max);
+            }
+            if (buf.isReadable()) out.add(buf);
+            else buf.release();
+        }
+        return out;
+    }
 }
@@ -0,0 +1,274 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ResponseCache.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:07:34
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import cn.zenliu.reactive.service.framework.internal.ResponseCapture;
+import cn.zenliu.reactive.service.framework.spi.Cached;
+import lombok.Getter;
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.util.annotation.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * response cache of one GET route, enabled by {@link Cached} on a {@link cn.zenliu.reactive.service.framework.spi.RestApi} method.
+ * <p>
+ * 1. key is normalized uri (path with sorted query parameters) plus values of {@link Cached#vary()} headers
+ * 2. only complete 200 responses without Set-Cookie or Cache-Control no-store/private are kept
+ * 3. entries expire after ttl, oldest are evicted when total body bytes over {@link Cached#maxSize()}
+ * 4. responses carry ETag (from handler or generated before the first byte of a miss) and hits are answered with 304 on matched If-None-Match
+ * 5. handlers invalidate by tag via {@link #invalidate(String)}, dynamic tags are added by {@link #tag(HttpServerResponse, String...)},
+ * a miss is not stored if any invalidation of the route happened while it was handled, its body may be stale
+ * 6. hit,miss and eviction counts are exported as meter {@code reactive.service.http.cache} tagged with route
+ * 7. owner must {@link #close()} it when route is dropped, closed cache is no longer invalidated and its meters are removed
+ */
+public final class ResponseCache implements AutoCloseable {
+    private static final Set<ResponseCache> CACHES = new CopyOnWriteArraySet<>();
+    @Getter
+    private final String route;
+    private final long ttl;
+    private final String[] vary;
+    private final Set<String> tags;
+    private final long maxSize;
+    private final long maxEntrySize;
+    //insertion order is also expire order for a fixed ttl
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long used;
+    //bumped by every invalidation, guarded by entries
+    private long invalidations;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(@NonNull String route, @NonNull Cached conf) {
+        this.route = route;
+        this.ttl = conf.unit().toMillis(conf.ttl());
+        this.vary = conf.vary();
+        this.tags = new HashSet<>(Arrays.asList(conf.tags()));
+        this.maxSize = conf.maxSize();
+        this.maxEntrySize = Math.min(conf.maxEntrySize(), conf.maxSize());
+        CACHES.add(this);
+        Meters.counter("http.cache", "response cache of route", this, ResponseCache::hits, "route", route, "result", "hit");
+        Meters.counter("http.cache", "response cache of route", this, ResponseCache::misses, "route", route, "result", "miss");
+        Meters.counter("http.cache.evictions", "response cache evictions of route", this, ResponseCache::evictions, "route", route);
+        Meters.gauge("http.cache.size", "response cache bytes of route", this, ResponseCache::size, "route", route);
+    }
+
+    //region handler
+
+    /**
+     * @param handler handler of route
+     * @return handler answer from cache first
+     */
+    public BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> wrap(
+        @NonNull BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+        return (req, res) -> {
+            final String key = RequestUtil.normalizedKey(req, vary);
+            final CapturedResponse hit = get(key);
+            if (hit != null) {
+                hits.increment();
+                return hit.send(req, res);
+            }
+            misses.increment();
+            final long since = invalidations();
+            final ResponseCapture capture = new ResponseCapture(res, maxEntrySize);
+            return Mono.from(handler.apply(req, capture))
+                .doOnSuccess(v -> {
+                    final CapturedResponse captured = capture.captured();
+                    if (captured != null) put(key, captured, capture.tags(), since);
+                });
+        };
+    }
+
+    /**
+     * add tags to response which is going to be cached, no effect on a non cached response
+     *
+     * @param res  response passed to handler
+     * @param tags tags
+     */
+    public static void tag(@NonNull HttpServerResponse res, String... tags) {
+        if (res instanceof ResponseCapture) Collections.addAll(((ResponseCapture) res).tags(), tags);
+    }
+
+    /**
+     * invalidate entries with tag of all routes
+     *
+     * @param tag tag of route or of response
+     * @return count of removed entries
+     */
+    public static int invalidate(@NonNull String tag) {
+        int n = 0;
+        for (ResponseCache cache : CACHES) n += cache.invalidateTag(tag);
+        return n;
+    }
+
+    /**
+     * clear entries of all routes
+     */
+    public static void invalidateAll() {
+        CACHES.forEach(ResponseCache::clear);
+    }
+    //endregion
+
+    //region store
+    @Nullable
+    CapturedResponse get(String key) {
+        synchronized (entries) {
+            final Entry e = entries.get(key);
+            if (e == null) return null;
+            if (e.expireAt <= System.currentTimeMillis()) {
+                remove(key);
+                evictions.increment();
+                return null;
+            }
+            return e.response;
+        }
+    }
+
+    void put(String key, CapturedResponse response, Set<String> responseTags) {
+        put(key, response, responseTags, invalidations());
+    }
+
+    /**
+     * @param since {@link #invalidations()} when the response started, not stored if any invalidation happened after
+     */
+    void put(String key, CapturedResponse response, Set<String> responseTags, long since) {
+        if (response.size() > maxEntrySize) return;
+        final Entry e = new Entry(response, response.getCreated() + ttl,
+            responseTags.isEmpty() ? Collections.emptySet() : new HashSet<>(responseTags));
+        synchronized (entries) {
+            if (invalidations != since) return;
+            remove(key);
+            entries.put(key, e);
+            used += response.size();
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    long invalidations() {
+        synchronized (entries) {
+            return invalidations;
+        }
+    }
+
+    int invalidateTag(String tag) {
+        synchronized (entries) {
+            //tags of responses in flight are unknown yet
+            invalidations++;
+            if (tags.contains(tag)) {
+                final int n = entries.size();
+                clear();
+                return n;
+            }
+            int n = 0;
+            final Iterator<Entry> itr = entries.values().iterator();
+            while (itr.hasNext()) {
+                final Entry e = itr.next();
+                if (e.tags.contains(tag)) {
+                    itr.remove();
+                    used -= e.response.size();
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * unregister from invalidation of all routes, remove meters and drop entries
+     */
+    @Override
+    public void close() {
+        if (!CACHES.remove(this)) return;
+        Meters.remove("http.cache", "route", route);
+        Meters.remove("http.cache.evictions", "route", route);
+        Meters.remove("http.cache.size", "route", route);
+        clear();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            invalidations++;
+            entries.clear();
+            used = 0;
+        }
+    }
+
+    private void remove(String key) {
+        final Entry old = entries.remove(key);
+        if (old != null) used -= old.response.size();
+    }
+
+    private void evict(long now) {
+        final Iterator<Entry> itr = entries.values().iterator();
+        while (itr.hasNext()) {
+            final Entry e = itr.next();
+            if (used <= maxSize && e.expireAt > now) return;
+            itr.remove();
+            used -= e.response.size();
+            evictions.increment();
+        }
+    }
+    //endregion
+
+    //region stats
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return bytes of cached bodies
+     */
+    public long size() {
+        synchronized (entries) {
+            return used;
+        }
+    }
+    //endregion
+
+    static final class Entry {
+        final CapturedResponse response;
+        final long expireAt;
+        final Set<String> tags;
+
+        Entry(CapturedResponse response, long expireAt, Set<String> tags) {
+            this.response = response;
+            this.expireAt = expireAt;
+            this.tags = tags;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StreamingResponse.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:53:17
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * write a (large) flux into response incrementally with chunked transfer,
+ * items are encoded one by one and requested as the connection drains, so memory stays flat.
+ * <p>
+ * encoder is supplied by caller, the framework not bind to any json library.
+ */
+@UtilityClass
+public class StreamingResponse {
+    public final String NDJSON = "application/x-ndjson";
+    public final String JSON = "application/json";
+    /**
+     * flush when encoded bytes since last flush exceed this
+     */
+    public final int FLUSH_THRESHOLD = 8 * 1024;
+    private final byte[] CLOSE = {']'};
+    private final byte[] EMPTY = {'[', ']'};
+
+    /**
+     * write each item as one line of json (newline delimited json)
+     *
+     * @param res     response
+     * @param items   items
+     * @param encoder encode one item into json without newline
+     */
+    public <T> Publisher<Void> ndjson(@NonNull HttpServerResponse res, @NonNull Flux<T> items, @NonNull Function<? super T, ? extends CharSequence> encoder) {
+        final ByteBufAllocator alloc = res.alloc();
+        res.header(HttpHeaderNames.CONTENT_TYPE, NDJSON);
+        return res.send(items.map(item -> {
+            final CharSequence json = encoder.apply(item);
+            final ByteBuf buf = alloc.buffer(ByteBufUtil.utf8MaxBytes(json) + 1);
+            ByteBufUtil.writeUtf8(buf, json);
+            return buf.writeByte('\n');
+        }), flusher()).then();
+    }
+
+    /**
+     * write items as one json array, element by element
+     *
+     * @param res     response
+     * @param items   items
+     * @param encoder encode one item into json
+     */
+    public <T> Publisher<Void> jsonArray(@NonNull HttpServerResponse res, @NonNull Flux<T> items, @NonNull Function<? super T, ? extends CharSequence> encoder) {
+        final ByteBufAllocator alloc = res.alloc();
+        res.header(HttpHeaderNames.CONTENT_TYPE, JSON);
+        final Flux<ByteBuf> body = items.index().map(t -> {
+            final CharSequence json = encoder.apply(t.getT2());
+            final ByteBuf buf = alloc.buffer(ByteBufUtil.utf8MaxBytes(json) + 1);
+            buf.writeByte(t.getT1() == 0 ? '[' : ',');
+            ByteBufUtil.writeUtf8(buf, json);
+            return buf;
+        });
+        //close the array,or write an empty one when no item
+        final boolean[] opened = {false};
+        return res.send(body.doOnNext(b -> opened[0] = true)
+            .concatWith(Flux.defer(() -> Flux.just(alloc.buffer(2).writeBytes(opened[0] ? CLOSE : EMPTY)))), flusher()).then();
+    }
+
+    /**
+     * flush every {@link #FLUSH_THRESHOLD} bytes, the last chunk is flushed on complete
+     */
+    private Predicate<ByteBuf> flusher() {
+        final int[] pending = {0};
+        return buf -> {
+            pending[0] += buf.readableBytes();
+            if (pending[0] < FLUSH_THRESHOLD) return false;
+            pending[0] = 0;
+            return true;
+        };
+    }
+}
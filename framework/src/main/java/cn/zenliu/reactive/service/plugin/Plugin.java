@@ -23,11 +23,37 @@ package cn.zenliu.reactive.service.plugin;
 
 import lombok.experimental.UtilityClass;
 
+import java.lang.annotation.*;
+
 
 /**
  * Basic Plugin interface
  */
 public interface Plugin {
+    /**
+     * declare plugins must be initialized before this one, mark on the plugin interface.
+     * {@link PluginManager#initialization} will resolve them transitively,
+     * plugins without dependency between each other are initialized in parallel.
+     */
+    @Documented
+    @Inherited
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface DependsOn {
+        Class<? extends Plugin>[] value();
+    }
+
+    /**
+     * called once by {@link PluginManager} after instance created and all dependencies started
+     */
+    default void start() {
+    }
+
+    /**
+     * called once by {@link PluginManager#shutdown()}, in reverse order of start
+     */
+    default void stop() {
+    }
 
 
     /**
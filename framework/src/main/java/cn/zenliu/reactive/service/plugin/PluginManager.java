@@ -23,21 +23,20 @@ package cn.zenliu.reactive.service.plugin;
 
 
 import cn.zenliu.reactive.service.plugin.hikari.HikariManager;
+import cn.zenliu.reactive.service.util.ServiceIndex;
 import cn.zenliu.reactive.service.util.Singleton;
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.lang.ref.SoftReference;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
-import static java.util.ServiceLoader.load;
-
 public interface PluginManager {
     //region SPI define
     <T extends Plugin> Optional<T> getPluginOf(Class<T> clz, boolean preferSPI);
@@ -46,12 +45,29 @@ public interface PluginManager {
 
     /**
      * initialization should be call before all actions
+     * <p>
+     * dependencies declared by {@link Plugin.DependsOn} are resolved transitively and initialized first,
+     * plugins in same level of the dependency graph are created and started in parallel.
      *
      * @param pluginClass classes of plugins which are needed
      * @param preferSPI   if false ,will use reflect to generate instance from plugins
      *                    {@see use static method of getInstance(),eg {@link  HikariManager#getInstance()}}
+     * @throws IllegalStateException when dependencies are circular or a required dependency not available
      */
     void initialization(@NonNull Class<?>[] pluginClass, boolean preferSPI);
+
+    /**
+     * @return time used to create and start each plugin, in order of start
+     */
+    Map<Class<? extends Plugin>, Duration> getInitTimings();
+
+    /**
+     * stop all started plugins in reverse order of start and release them.
+     * <p>
+     * a stopped plugin is never started again: singletons of released plugins are reset,
+     * so next initialization creates new instances.
+     */
+    void shutdown();
     //endregion
 
     //region SPI template
@@ -77,31 +93,73 @@ public interface PluginManager {
                 PluginManager.class
             );
 
+        /**
+         * @return direct dependencies declared on plugin class
+         */
+        List<Class<? extends Plugin>> dependenciesOf(Class<? extends Plugin> clz) {
+            final Plugin.DependsOn dep = clz.getAnnotation(Plugin.DependsOn.class);
+            return dep == null ? Collections.emptyList() : Arrays.asList(dep.value());
+        }
+
+        /**
+         * group plugins by level of dependency graph, each level only depends on previous levels
+         *
+         * @param roots plugins needed
+         * @return levels,contains roots and all dependencies of them
+         * @throws IllegalStateException when dependencies are circular
+         */
+        List<List<Class<? extends Plugin>>> levelsOf(Collection<Class<? extends Plugin>> roots) {
+            final Map<Class<? extends Plugin>, Integer> level = new LinkedHashMap<>();
+            for (Class<? extends Plugin> root : roots) levelOf(root, level, new LinkedHashSet<>());
+            final List<List<Class<? extends Plugin>>> levels = new ArrayList<>();
+            level.forEach((clz, lv) -> {
+                while (levels.size() <= lv) levels.add(new ArrayList<>());
+                levels.get(lv).add(clz);
+            });
+            return levels;
+        }
+
+        private int levelOf(Class<? extends Plugin> clz, Map<Class<? extends Plugin>, Integer> level, LinkedHashSet<Class<? extends Plugin>> path) {
+            final Integer known = level.get(clz);
+            if (known != null) return known;
+            if (!path.add(clz)) {
+                final StringJoiner cycle = new StringJoiner(" -> ");
+                path.forEach(c -> cycle.add(c.getSimpleName()));
+                throw new IllegalStateException("circular plugin dependency: " + cycle.add(clz.getSimpleName()));
+            }
+            int lv = 0;
+            for (Class<? extends Plugin> dep : dependenciesOf(clz)) {
+                lv = Math.max(lv, levelOf(dep, level, path) + 1);
+            }
+            path.remove(clz);
+            level.put(clz, lv);
+            return lv;
+        }
+
         @Slf4j
         final class PluginManagerImpl implements PluginManager {
 
             //region SPI impl
-            private final Map<Class<? extends Plugin>, SoftReference<? extends Plugin>> pluginCache = new ConcurrentHashMap<>();
+            /**
+             * plugins are owned by manager until {@link #shutdown()}, never collected under memory pressure
+             */
+            private final Map<Class<? extends Plugin>, Plugin> pluginCache = new ConcurrentHashMap<>();
+            private final Map<Class<? extends Plugin>, Duration> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+            private final Deque<Plugin> started = new ArrayDeque<>();
 
+            @SuppressWarnings("unchecked")
             @Override
             public <T extends Plugin> Optional<T> getPluginOf(Class<T> clz, boolean preferSPI) {
-                if (pluginCache.containsKey(clz)) {
-                    @SuppressWarnings("unchecked") final T old = (T) pluginCache.get(clz).get();
-                    if (old == null) {
-                        final Optional<T> ins = (preferSPI ? spiInstanceOf(clz) : reflectInstanceOf(clz));
-                        if (ins.isPresent()) {
-                            pluginCache.put(clz, new SoftReference<>(ins.get()));
-                            return ins;
+                final Plugin old = pluginCache.get(clz);
+                if (old != null) return Optional.of((T) old);
+                synchronized (this) {
+                    for (List<Class<? extends Plugin>> level : levelsOf(Collections.singletonList(clz))) {
+                        for (Class<? extends Plugin> c : level) {
+                            if (!pluginCache.containsKey(c)) create(c, preferSPI, c != clz);
                         }
-                    } else return Optional.of(old);
-                } else {
-                    final Optional<T> ins = (preferSPI ? spiInstanceOf(clz) : reflectInstanceOf(clz));
-                    if (ins.isPresent()) {
-                        pluginCache.put(clz, new SoftReference<>(ins.get()));
-                        return ins;
                     }
                 }
-                return Optional.empty();
+                return Optional.ofNullable((T) pluginCache.get(clz));
             }
 
             @Override
@@ -114,61 +172,123 @@ public interface PluginManager {
 
             @Override
             public void initialization(@NonNull Class<?>[] pluginClass, boolean preferSPI) {
+                final Set<Class<? extends Plugin>> roots = new LinkedHashSet<>();
                 Arrays.asList(pluginClass)
                     .forEach(clz -> {
                         if (clz.isInterface() && Plugin.class.isAssignableFrom(clz)) {
                             @SuppressWarnings("unchecked") final Class<? extends Plugin> classI = (Class<? extends Plugin>) clz;
-                            final Optional<? extends Plugin> opt = reflectInstanceOf(classI);
-                            opt.ifPresent(t -> pluginCache.put(classI, new SoftReference<Plugin>(t)));
+                            roots.add(classI);
                         } else {
                             throw new IllegalArgumentException(clz.getCanonicalName() + " is not a plugin");
                         }
                     });
-                if(preferSPI){
-                    final Iterator<Plugin> itr = load(Plugin.class).iterator();
-                    itr.forEachRemaining(p -> {
-                        //if (!preferSPI) pluginCache.putIfAbsent(p.getClass(), new SoftReference<>(p));
-                        //else pluginCache.put(p.getClass(), new SoftReference<>(p));
-                         pluginCache.put(p.getClass(), new SoftReference<>(p));
-                    });
+                synchronized (this) {
+                    for (List<Class<? extends Plugin>> level : levelsOf(roots)) {
+                        Flux.fromIterable(level)
+                            .filter(c -> !pluginCache.containsKey(c))
+                            .flatMap(c -> Mono.fromRunnable(() -> create(c, false, !roots.contains(c)))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                            .then()
+                            .block();
+                    }
+                    if (preferSPI) {
+                        final Iterator<Plugin> itr = ServiceIndex.load(Plugin.class).iterator();
+                        itr.forEachRemaining(p -> {
+                            final Plugin old = pluginCache.put(p.getClass(), p);
+                            if (old == null) start(p.getClass(), p, System.nanoTime());
+                        });
+                    }
+                }
+            }
+
+            @Override
+            public Map<Class<? extends Plugin>, Duration> getInitTimings() {
+                synchronized (timings) {
+                    return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
                 }
+            }
 
+            @Override
+            public synchronized void shutdown() {
+                final List<Plugin> stopping;
+                synchronized (started) {
+                    stopping = new ArrayList<>(started);
+                    started.clear();
+                }
+                for (Plugin p : stopping) {
+                    try {
+                        p.stop();
+                    } catch (Throwable t) {
+                        log.warn("stop plugin {} failed", p.getClass().getName(), t);
+                    }
+                }
+                //stopped instances must not be handed out again by their singleton
+                pluginCache.keySet().forEach(clz -> {
+                    final Singleton<? extends Plugin> singleton = singletonOf(clz);
+                    if (singleton != null) singleton.reset();
+                });
+                pluginCache.clear();
+                timings.clear();
             }
 
-            private <T extends Plugin> Optional<T> spiInstanceOf(Class<T> clz) {
-                final Iterator<T> itr = load(clz).iterator();
-                if (!itr.hasNext()) {
-                    return Optional.empty();
-                } else {
-                    final T instance = itr.next();
-                    pluginCache.put(clz, new SoftReference<>(instance));
-                    return Optional.of(instance);
+            /**
+             * create and start one plugin, all dependencies should be ready
+             *
+             * @param required true if plugin is a dependency of others, missing will be an error
+             */
+            private void create(Class<? extends Plugin> clz, boolean preferSPI, boolean required) {
+                for (Class<? extends Plugin> dep : dependenciesOf(clz)) {
+                    if (!pluginCache.containsKey(dep))
+                        throw new IllegalStateException("plugin " + dep.getCanonicalName() + " required by " + clz.getCanonicalName() + " not available");
+                }
+                final long begin = System.nanoTime();
+                final Optional<? extends Plugin> ins = preferSPI ? spiInstanceOf(clz) : reflectInstanceOf(clz);
+                if (!ins.isPresent()) {
+                    if (required)
+                        throw new IllegalStateException("required plugin of " + clz.getCanonicalName() + " not found");
+                    log.warn("plugin {} not found", clz.getCanonicalName());
+                    return;
+                }
+                start(clz, ins.get(), begin);
+                pluginCache.put(clz, ins.get());
+            }
+
+            private void start(Class<? extends Plugin> clz, Plugin plugin, long begin) {
+                plugin.start();
+                synchronized (started) {
+                    started.push(plugin);
                 }
+                final Duration used = Duration.ofNanos(System.nanoTime() - begin);
+                timings.put(clz, used);
+                log.debug("plugin {} started in {} ms", clz.getSimpleName(), used.toMillis());
+            }
+
+            private <T extends Plugin> Optional<T> spiInstanceOf(Class<T> clz) {
+                final Iterator<T> itr = ServiceIndex.load(clz).iterator();
+                return itr.hasNext() ? Optional.of(itr.next()) : Optional.empty();
             }
+
             @SuppressWarnings("unchecked")
             private <T extends Plugin> Optional<T> reflectInstanceOf(Class<T> clz) {
-                /*try {
-                    final Method callable = clz.getDeclaredMethod("getInstance");
-                    @SuppressWarnings("unchecked") final T instance = (T) callable.invoke(null);
-                    if (instance == null) return Optional.empty();
-                    pluginCache.put(clz, new SoftReference<T>(instance));
-                    return Optional.of(instance);
+                final Singleton<? extends Plugin> singleton = singletonOf(clz);
+                if (singleton == null) return Optional.empty();
+                try {
+                    return (Optional<T>) singleton.getHardReference();
                 } catch (Throwable t) {
                     return Optional.empty();
-                }*/
-                 try {
+                }
+            }
+
+            /**
+             * @return singleton of plugin from static method getSingleton, null if not defined
+             */
+            @SuppressWarnings("unchecked")
+            private Singleton<? extends Plugin> singletonOf(Class<? extends Plugin> clz) {
+                try {
                     final Method callable = clz.getDeclaredMethod("getSingleton");
-                    final Singleton<? extends Plugin> singleton = (Singleton<? extends Plugin>) callable.invoke(null);
-                    if (singleton == null) return Optional.empty();
-                     final Optional<? extends Plugin> hardReference = singleton.getHardReference();
-                     if(hardReference.isPresent()){
-                         final T instance=(T)hardReference.get();
-                         pluginCache.put(clz, new SoftReference<T>(instance));
-                         return Optional.of(instance);
-                     }
-                    return Optional.empty();
+                    return (Singleton<? extends Plugin>) callable.invoke(null);
                 } catch (Throwable t) {
-                    return Optional.empty();
+                    return null;
                 }
             }
 
@@ -176,4 +296,4 @@ public interface PluginManager {
 
         }
     }
-}
\ No newline at end of file
+}
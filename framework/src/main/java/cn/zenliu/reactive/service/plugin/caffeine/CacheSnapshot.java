@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CacheSnapshot.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:26:18
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * binary snapshot of caches
+ * <p>
+ * layout: {@code int magic, int version, long created}, sections of
+ * {@code short nameLen, name, entries of (int keyLen, int valLen, long expireAt, key, value), int -1},
+ * {@code short 0}, {@code int crc32} of all bytes before.
+ * <p>
+ * written to a temp file then moved in place, restored by streaming a memory mapped file;
+ * expireAt is epoch millis, so entries keep their deadline across restart and expired ones are skipped.
+ * sections of caches not created yet are kept until {@link #restorePending}.
+ */
+@Slf4j
+final class CacheSnapshot {
+    static final int MAGIC = 0x52534353; //RSCS
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+    private final Path file;
+    private final Map<String, ByteBuffer> pending = new ConcurrentHashMap<>();
+
+    CacheSnapshot(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return entries written
+     */
+    synchronized long write(Collection<Section<?, ?>> sections) throws IOException {
+        final long now = System.currentTimeMillis();
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        final CRC32 crc = new CRC32();
+        long n = 0;
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+            final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+            for (Section<?, ?> s : sections) n += s.write(out, now);
+            out.writeShort(0);
+            out.flush();
+            final DataOutputStream tail = new DataOutputStream(raw);
+            tail.writeInt((int) crc.getValue());
+            tail.flush();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return n;
+    }
+
+    /**
+     * @param sections persisted caches created, by name, must be a concurrent map
+     * @return entries restored into created caches
+     */
+    long read(Map<String, Section<?, ?>> sections) throws IOException {
+        if (!Files.isRegularFile(file)) return 0;
+        final ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("snapshot too large: " + file);
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (!verify(buf)) {
+            log.warn("snapshot {} is broken, ignored", file);
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        long n = 0;
+        buf.position(HEADER);
+        for (; ; ) {
+            final int len = buf.getShort();
+            if (len <= 0) break;
+            final byte[] name = new byte[len];
+            buf.get(name);
+            final String cache = new String(name, StandardCharsets.UTF_8);
+            final ByteBuffer entries = buf.slice();
+            skip(buf);
+            final Section<?, ?> s = sections.get(cache);
+            if (s != null) {
+                n += s.read(entries, now);
+                continue;
+            }
+            //cache may be created meanwhile, whoever removes the pending one restores it
+            pending.put(cache, entries);
+            final Section<?, ?> created = sections.get(cache);
+            if (created != null) n += restorePending(created);
+        }
+        return n;
+    }
+
+    /**
+     * restore section kept for a cache created after {@link #read}
+     *
+     * @return entries restored
+     */
+    long restorePending(Section<?, ?> section) {
+        final ByteBuffer entries = pending.remove(section.cache.getName());
+        return entries == null ? 0 : section.read(entries, System.currentTimeMillis());
+    }
+
+    static boolean verify(ByteBuffer buf) {
+        final int limit = buf.limit();
+        if (limit < HEADER + 2 + 4 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) return false;
+        final ByteBuffer body = buf.duplicate();
+        body.position(0).limit(limit - 4);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buf.getInt(limit - 4);
+    }
+
+    private static void skip(ByteBuffer buf) {
+        for (; ; ) {
+            final int kl = buf.getInt();
+            if (kl < 0) return;
+            final int vl = buf.getInt();
+            buf.position(buf.position() + 8 + kl + vl);
+        }
+    }
+
+    /**
+     * a persisted cache
+     */
+    static final class Section<K, V> {
+        final NamedCache<K, V> cache;
+        final TtlExpiry expiry;
+        final boolean ttl;
+        final Serializer<K> keys;
+        final Serializer<V> values;
+
+        Section(NamedCache<K, V> cache, CacheSpec spec, TtlExpiry expiry, Serializer<K> keys, Serializer<V> values) {
+            this.cache = cache;
+            this.expiry = expiry;
+            this.ttl = spec.getExpireAfterWrite() != null || spec.getExpireAfterAccess() != null;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        long write(DataOutputStream out, long now) throws IOException {
+            final byte[] name = cache.getName().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            final Policy.VarExpiration<K, V> variable = cache.synchronous().policy().expireVariably().orElse(null);
+            long n = 0;
+            for (Map.Entry<K, V> e : cache.synchronous().asMap().entrySet()) {
+                long expireAt = TtlExpiry.NEVER;
+                if (ttl && variable != null) {
+                    final OptionalLong left = variable.getExpiresAfter(e.getKey(), TimeUnit.MILLISECONDS);
+                    if (!left.isPresent() || left.getAsLong() <= 0) continue;
+                    expireAt = now + left.getAsLong();
+                }
+                final byte[] k, v;
+                try {
+                    k = keys.serialize(e.getKey());
+                    v = values.serialize(e.getValue());
+                } catch (RuntimeException ex) {
+                    log.debug("skip entry of cache {} can not be serialized", cache.getName(), ex);
+                    continue;
+                }
+                out.writeInt(k.length);
+                out.writeInt(v.length);
+                out.writeLong(expireAt);
+                out.write(k);
+                out.write(v);
+                n++;
+            }
+            out.writeInt(-1);
+            return n;
+        }
+
+        /**
+         * entries already in cache are newer and kept
+         */
+        long read(ByteBuffer buf, long now) {
+            final Map<K, V> map = cache.synchronous().asMap();
+            long n = 0;
+            try {
+                for (; ; ) {
+                    final int kl = buf.getInt();
+                    if (kl < 0) return n;
+                    final int vl = buf.getInt();
+                    final long expireAt = buf.getLong();
+                    if (expireAt <= now) {
+                        buf.position(buf.position() + kl + vl);
+                        continue;
+                    }
+                    final byte[] k = new byte[kl];
+                    final byte[] v = new byte[vl];
+                    buf.get(k).get(v);
+                    try {
+                        final K key = keys.deserialize(k);
+                        if (map.containsKey(key)) continue;
+                        final V value = values.deserialize(v);
+                        expiry.restore(key, expireAt);
+                        //a value put meanwhile is newer, not overwritten
+                        if (cache.putIfAbsent(key, value)) n++;
+                        else expiry.discard(key);
+                    } catch (RuntimeException ex) {
+                        log.debug("skip entry of cache {} can not be deserialized", cache.getName(), ex);
+                    }
+                }
+            } catch (BufferUnderflowException ex) {
+                log.warn("section of cache {} is truncated", cache.getName());
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CacheSpec.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:14:58
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.typesafe.config.ConfigMemorySize;
+import com.typesafe.config.Optional;
+import lombok.Data;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * define of a named cache, under {@code caffeine.caches.<name>} of configuration
+ * <p>
+ * {@code caffeine.caches.users { maximumSize: 10000, expireAfterWrite: 10m, refreshAfterWrite: 1m }}
+ */
+@Data
+public class CacheSpec {
+    @Optional
+    private int initialCapacity = -1;
+    /**
+     * max entries, negative means unbounded
+     */
+    @Optional
+    private long maximumSize = -1;
+    /**
+     * max total weight, a weigher must be supplied by configurator of {@link CaffeineManager#getCache}
+     */
+    @Optional
+    private long maximumWeight = -1;
+    @Optional
+    private Duration expireAfterWrite;
+    @Optional
+    private Duration expireAfterAccess;
+    /**
+     * only effect on cache with loader
+     */
+    @Optional
+    private Duration refreshAfterWrite;
+    /**
+     * reference values are not supported by async cache,
+     * such cache is backed by a synchronous one and loads are coalesced
+     */
+    @Optional
+    private boolean softValues;
+    @Optional
+    private boolean weakValues;
+    @Optional
+    private boolean weakKeys;
+    @Optional
+    private boolean recordStats = true;
+    /**
+     * bytes of off-heap second tier, zero to disable, see {@link OffHeapStore}
+     */
+    @Optional
+    private ConfigMemorySize offHeapSize = ConfigMemorySize.ofBytes(0);
+    /**
+     * file to memory map as off-heap tier, empty to use direct memory
+     */
+    @Optional
+    private String offHeapFile = "";
+    @Optional
+    private int offHeapSegments = 16;
+    /**
+     * on access, reload in background when remaining of expireAfterWrite is less than this ratio of it,
+     * stale value is served meanwhile, zero to disable, eg: 0.2
+     */
+    @Optional
+    private double refreshAheadRatio = 0;
+    /**
+     * beta of XFetch probabilistic early refresh on access, zero to disable, 1 is the usual value,
+     * larger refresh earlier, use with expireAfterWrite
+     */
+    @Optional
+    private double xfetchBeta = 0;
+
+    /**
+     * include this cache in snapshot of {@link CaffeineManager}, keys and values must be serializable
+     * by serializers given on creation, see {@link SnapshotSpec}
+     */
+    @Optional
+    private boolean persist;
+
+    boolean refreshAhead() {
+        return expireAfterWrite != null && (refreshAheadRatio > 0 || xfetchBeta > 0);
+    }
+
+    boolean offHeap() {
+        return offHeapSize.toBytes() > 0;
+    }
+
+    /**
+     * @return expiry keeps deadline of entries come back from off-heap tier or snapshot, null when not needed
+     */
+    @Nullable
+    TtlExpiry expiry() {
+        return offHeap() || persist ? new TtlExpiry(expireAfterWrite, expireAfterAccess) : null;
+    }
+
+    boolean referenceValues() {
+        return softValues || weakValues;
+    }
+
+    /**
+     * @return builder with this spec applied, without refresh
+     */
+    public Caffeine<Object, Object> toBuilder() {
+        return toBuilder(expiry());
+    }
+
+    Caffeine<Object, Object> toBuilder(@Nullable TtlExpiry expiry) {
+        final Caffeine<Object, Object> b = Caffeine.newBuilder();
+        if (initialCapacity >= 0) b.initialCapacity(initialCapacity);
+        if (maximumSize >= 0) b.maximumSize(maximumSize);
+        if (maximumWeight >= 0) b.maximumWeight(maximumWeight);
+        if (expiry != null) b.expireAfter(expiry);
+        else {
+            if (expireAfterWrite != null) b.expireAfterWrite(expireAfterWrite);
+            if (expireAfterAccess != null) b.expireAfterAccess(expireAfterAccess);
+        }
+        if (softValues) b.softValues();
+        else if (weakValues) b.weakValues();
+        if (weakKeys) b.weakKeys();
+        if (recordStats) b.recordStats();
+        return b;
+    }
+}
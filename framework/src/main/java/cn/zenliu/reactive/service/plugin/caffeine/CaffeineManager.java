@@ -23,18 +23,113 @@ package cn.zenliu.reactive.service.plugin.caffeine;
 
 import cn.zenliu.reactive.service.plugin.Plugin;
 import cn.zenliu.reactive.service.util.Singleton;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigBeanFactory;
+import com.typesafe.config.ConfigFactory;
+import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * registry of named caches
+ * configuration example
+ * {@code caffeine.default { maximumSize: 10000 } } spec of caches not declared
+ * {@code caffeine.caches.<name> { maximumSize: 1000, expireAfterWrite: 10m, refreshAfterWrite: 1m, softValues: true } }
+ * {@code caffeine.snapshot { file: "data/caches.snapshot", interval: 5m } } snapshot of caches with {@code persist: true}
+ * see {@link CacheSpec} and {@link SnapshotSpec} for all options
+ */
 public interface CaffeineManager extends Plugin {
     //region SPI define
 
+    /**
+     * @param conf properties with prefix {@code caffeine.}, eg: {@code Context.config.getConf("caffeine",0).toProperties("caffeine")}
+     */
+    void configuration(@Nullable Properties conf);
+
+    /**
+     * @param name name of cache
+     * @return spec declared in configuration, or default spec
+     */
+    CacheSpec getSpec(@NonNull String name);
+
+    /**
+     * declare spec of a cache unless it's declared in configuration, for components own their default specs
+     *
+     * @param name name of cache
+     * @param spec default spec of the cache
+     * @return spec takes effect
+     */
+    CacheSpec declare(@NonNull String name, @NonNull CacheSpec spec);
+
+    /**
+     * get or create a cache without loader
+     */
+    <K, V> NamedCache<K, V> getCache(@NonNull String name);
+
+    /**
+     * get or create a cache, loader and configurator only used on creation
+     *
+     * @param name         name of cache
+     * @param loader       default loader, required by refreshAfterWrite
+     * @param configurator customize builder after spec applied, eg: weigher,removalListener
+     */
+    <K, V> NamedCache<K, V> getCache(@NonNull String name,
+                                     @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                     @Nullable Function<Caffeine<Object, Object>, Caffeine<Object, Object>> configurator);
+
+    /**
+     * get or create a cache, loader,configurator and serializers only used on creation
+     *
+     * @param keys   serializer of keys for off-heap tier and snapshot
+     * @param values serializer of values for off-heap tier and snapshot
+     * @throws IllegalArgumentException when spec declares off-heap tier or persist without serializers
+     */
+    <K, V> NamedCache<K, V> getCache(@NonNull String name,
+                                     @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                     @Nullable Function<Caffeine<Object, Object>, Caffeine<Object, Object>> configurator,
+                                     @Nullable Serializer<K> keys,
+                                     @Nullable Serializer<V> values);
+
+    <K, V> Optional<NamedCache<K, V>> findCache(@NonNull String name);
+
+    /**
+     * @return names of declared and created caches
+     */
+    Set<String> getCacheNames();
+
+    /**
+     * write caches with {@link CacheSpec#isPersist()} to snapshot file, on bounded elastic scheduler
+     *
+     * @return entries written, error if snapshot file not configured
+     */
+    Mono<Long> snapshot();
+
+    /**
+     * restore snapshot file on bounded elastic scheduler, entries keep their remaining ttl.
+     * caches not created yet are restored once created.
+     *
+     * @return entries restored into caches already created, error if snapshot file not configured
+     */
+    Mono<Long> restore();
+
     //endregion
 
     //region SPI template
     static Singleton<CaffeineManager> getSingleton() {
         return scope.singleton;
     }
+
     static CaffeineManager getSoftInstance() {
         return scope.singleton.getSoftInstance()
             .orElseThrow(Plugin.scope::InstanceErrorSuppler);
@@ -44,20 +139,173 @@ public interface CaffeineManager extends Plugin {
         return scope.singleton.getHardReference()
             .orElseThrow(Plugin.scope::InstanceErrorSuppler);
     }
+
     //endregion
     @UtilityClass
-    class scope{
+    class scope {
         protected Singleton<CaffeineManager> singleton =
             Singleton.generate(
-              CaffeineManagerImpl::new,
+                CaffeineManagerImpl::new,
                 CaffeineManager.class
             );
+
         @Slf4j
         final class CaffeineManagerImpl implements CaffeineManager {
+            static final String PROP_CAFFEINE = "caffeine";
+            static final String PROP_DEFAULT = PROP_CAFFEINE + ".default";
+            static final String PROP_CACHES = PROP_CAFFEINE + ".caches";
+            static final String PROP_SNAPSHOT = PROP_CAFFEINE + ".snapshot";
+
             //region SPI impl
+            private final Map<String, CacheSpec> specs = new ConcurrentHashMap<>();
+            private final Map<String, NamedCache<?, ?>> caches = new ConcurrentHashMap<>();
+            private volatile CacheSpec defaultSpec = new CacheSpec();
+            private final Map<String, CacheSnapshot.Section<?, ?>> persisted = new ConcurrentHashMap<>();
+            private volatile CacheSnapshot snapshot;
+            private volatile boolean onStop;
+            private volatile Disposable periodic;
+
+            @Override
+            public void configuration(@Nullable Properties conf) {
+                if (conf == null) return;
+                final Config cfg = ConfigFactory.parseProperties(conf);
+                if (cfg.hasPath(PROP_DEFAULT))
+                    defaultSpec = ConfigBeanFactory.create(cfg.getConfig(PROP_DEFAULT), CacheSpec.class);
+                if (cfg.hasPath(PROP_CACHES)) {
+                    final Config declared = cfg.getConfig(PROP_CACHES);
+                    declared.root().keySet().forEach(name -> {
+                        specs.put(name, ConfigBeanFactory.create(declared.getConfig(name), CacheSpec.class));
+                        if (caches.containsKey(name))
+                            log.warn("cache {} already created, new spec will not take effect", name);
+                    });
+                }
+                if (cfg.hasPath(PROP_SNAPSHOT))
+                    configSnapshot(ConfigBeanFactory.create(cfg.getConfig(PROP_SNAPSHOT), SnapshotSpec.class));
+            }
+
+            private void configSnapshot(SnapshotSpec spec) {
+                if (periodic != null) periodic.dispose();
+                periodic = null;
+                if (spec.getFile().isEmpty()) {
+                    snapshot = null;
+                    return;
+                }
+                snapshot = new CacheSnapshot(Paths.get(spec.getFile()));
+                if (spec.isRestore()) restore().subscribe(
+                    n -> log.info("restored {} entries from snapshot {}", n, spec.getFile()),
+                    e -> log.warn("fail to restore snapshot {}", spec.getFile(), e));
+                if (!spec.getInterval().isZero()) periodic = Flux.interval(spec.getInterval(), spec.getInterval())
+                    .onBackpressureDrop()
+                    .concatMap(i -> snapshot().onErrorResume(e -> {
+                        log.warn("fail to write snapshot", e);
+                        return Mono.empty();
+                    }))
+                    .subscribe(n -> log.debug("snapshot {} entries", n));
+                onStop = spec.isOnShutdown();
+            }
+
+            /**
+             * write final snapshot when configured, caches are still usable by plugins stopped later
+             */
+            @Override
+            public void stop() {
+                if (periodic != null) periodic.dispose();
+                periodic = null;
+                final CacheSnapshot snap = snapshot;
+                if (snap == null || !onStop) return;
+                try {
+                    log.info("snapshot {} entries on stop", snap.write(persisted.values()));
+                } catch (Exception e) {
+                    log.warn("fail to write snapshot on stop", e);
+                }
+            }
+
+            @Override
+            public CacheSpec getSpec(@NonNull String name) {
+                return specs.getOrDefault(name, defaultSpec);
+            }
+
+            @Override
+            public CacheSpec declare(@NonNull String name, @NonNull CacheSpec spec) {
+                final CacheSpec declared = specs.putIfAbsent(name, spec);
+                return declared == null ? spec : declared;
+            }
+
+            @Override
+            public <K, V> NamedCache<K, V> getCache(@NonNull String name) {
+                return getCache(name, null, null);
+            }
+
+            @Override
+            public <K, V> NamedCache<K, V> getCache(@NonNull String name,
+                                                    @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                                    @Nullable Function<Caffeine<Object, Object>, Caffeine<Object, Object>> configurator) {
+                return getCache(name, loader, configurator, null, null);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <K, V> NamedCache<K, V> getCache(@NonNull String name,
+                                                    @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                                    @Nullable Function<Caffeine<Object, Object>, Caffeine<Object, Object>> configurator,
+                                                    @Nullable Serializer<K> keys,
+                                                    @Nullable Serializer<V> values) {
+                return (NamedCache<K, V>) caches.computeIfAbsent(name, n -> {
+                    final CacheSpec spec = getSpec(n);
+                    if (spec.getRefreshAfterWrite() != null && loader == null)
+                        log.warn("cache {} have refreshAfterWrite but no loader, refresh is ignored", n);
+                    log.debug("create cache {} with {}", n, spec);
+                    final TtlExpiry expiry = spec.expiry();
+                    if (expiry != null && (spec.offHeap() || spec.isPersist()) && (keys == null || values == null))
+                        throw new IllegalArgumentException("cache " + n + " with off-heap tier or persist requires serializers of keys and values");
+                    final NamedCache<K, V> cache = NamedCache.scope.create(n, spec, expiry, loader, configurator, keys, values);
+                    if (spec.isPersist() && expiry != null) persist(new CacheSnapshot.Section<>(cache, spec, expiry, keys, values));
+                    return cache;
+                });
+            }
+
+            private void persist(CacheSnapshot.Section<?, ?> section) {
+                persisted.put(section.cache.getName(), section);
+                final CacheSnapshot snap = snapshot;
+                if (snap != null) Mono.fromCallable(() -> snap.restorePending(section))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(
+                        c -> log.debug("restored {} entries of cache {}", c, section.cache.getName()),
+                        e -> log.warn("fail to restore cache {}", section.cache.getName(), e));
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <K, V> Optional<NamedCache<K, V>> findCache(@NonNull String name) {
+                return Optional.ofNullable((NamedCache<K, V>) caches.get(name));
+            }
+
+            @Override
+            public Set<String> getCacheNames() {
+                final Set<String> names = new TreeSet<>(specs.keySet());
+                names.addAll(caches.keySet());
+                return names;
+            }
+
+            @Override
+            public Mono<Long> snapshot() {
+                return Mono.fromCallable(() -> snapshotFile().write(persisted.values()))
+                    .subscribeOn(Schedulers.boundedElastic());
+            }
+
+            @Override
+            public Mono<Long> restore() {
+                return Mono.fromCallable(() -> snapshotFile().read(persisted))
+                    .subscribeOn(Schedulers.boundedElastic());
+            }
 
+            private CacheSnapshot snapshotFile() {
+                final CacheSnapshot snap = snapshot;
+                if (snap == null) throw new IllegalStateException("snapshot file not configured");
+                return snap;
+            }
             //endregion
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: HashRing.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:34:48
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * consistent hash ring with virtual nodes, a node is identified by an id (eg: host:port) same on all members.
+ * <p>
+ * the ring is copied on change and read without lock, changes are expected to be rare.
+ *
+ * @param <N> node type
+ */
+public final class HashRing<N> {
+    private final int virtualNodes;
+    private volatile NavigableMap<Long, N> ring = new TreeMap<>();
+    private final Map<String, N> nodes = new LinkedHashMap<>();
+
+    /**
+     * @param virtualNodes points of every node on ring, more points make distribution more even
+     */
+    public HashRing(int virtualNodes) {
+        if (virtualNodes <= 0) throw new IllegalArgumentException("virtualNodes must be positive");
+        this.virtualNodes = virtualNodes;
+    }
+
+    public synchronized HashRing<N> add(@NonNull String id, @NonNull N node) {
+        nodes.put(id, node);
+        rebuild();
+        return this;
+    }
+
+    public synchronized HashRing<N> remove(@NonNull String id) {
+        if (nodes.remove(id) != null) rebuild();
+        return this;
+    }
+
+    /**
+     * @param hash hash of key, eg: {@link OffHeapStore#hash(byte[])} of serialized key
+     * @return owner, null if ring is empty
+     */
+    public N ownerOf(long hash) {
+        final NavigableMap<Long, N> r = ring;
+        if (r.isEmpty()) return null;
+        final Map.Entry<Long, N> e = r.ceilingEntry(hash);
+        return e == null ? r.firstEntry().getValue() : e.getValue();
+    }
+
+    public synchronized Map<String, N> nodes() {
+        return new LinkedHashMap<>(nodes);
+    }
+
+    private void rebuild() {
+        final NavigableMap<Long, N> r = new TreeMap<>();
+        nodes.forEach((id, node) -> {
+            for (int i = 0; i < virtualNodes; i++)
+                r.put(OffHeapStore.hash((id + '#' + i).getBytes(StandardCharsets.UTF_8)), node);
+        });
+        ring = r;
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: InvalidationChannel.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:31:12
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.config.UDPBroadcast;
+import cn.zenliu.reactive.service.framework.util.Meters;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import reactor.netty.udp.UdpServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * cluster wide invalidation of named caches over ip multicast.
+ * <p>
+ * datagram: {@code int magic, long node, long seq, short groups}, groups of
+ * {@code short nameLen, name, int count (-1 for whole cache), (int keyLen, key) * count},
+ * key is serialized by serializer given on attach, so receivers invalidate it directly without scanning cache.
+ * <p>
+ * 1. invalidations are applied locally at once, batched for batchDelay and sent in datagrams within maxPacketSize
+ * 2. every member numbers its datagrams, a gap in sequence of a member flushes all attached caches,
+ * an empty datagram is sent every heartbeat so a lost one is found without waiting next write
+ * 3. own datagrams looped back are ignored
+ * 4. a key too large for one datagram, or not deserializable by a receiver, invalidates whole cache
+ * <p>
+ * members must attach caches with same name and same key serializer.
+ */
+@Slf4j
+public final class InvalidationChannel implements AutoCloseable {
+    static final int MAGIC = 0x52534956; //RSIV
+    static final int HEADER = 4 + 8 + 8 + 2;
+    private final int maxPacketSize;
+    private final Duration batchDelay;
+    private final InetSocketAddress group;
+    private final long node = ThreadLocalRandom.current().nextLong();
+    final AtomicLong seq = new AtomicLong();
+    private final Map<String, Target<?>> targets = new ConcurrentHashMap<>();
+    private final Map<Long, Long> members = new ConcurrentHashMap<>();
+    //cache name to serialized keys, null for whole cache
+    private Map<String, Set<ByteBuffer>> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+    private volatile Connection connection;
+    private volatile Disposable heartbeat;
+
+    private InvalidationChannel(UDPBroadcast conf) {
+        this.maxPacketSize = conf.getMaxPacketSize();
+        this.batchDelay = conf.getBatchDelay();
+        this.group = conf.groupAddress();
+        Meters.counter("cache.invalidations", "invalidation datagrams", sent, LongAdder::sum, "direction", "sent");
+        Meters.counter("cache.invalidations", "invalidation datagrams", received, LongAdder::sum, "direction", "received");
+        Meters.counter("cache.invalidation.gaps", "lost invalidation datagrams found", gaps, LongAdder::sum);
+    }
+
+    /**
+     * join multicast group and start heartbeat
+     *
+     * @param conf multicast group
+     * @return bound channel
+     */
+    public static InvalidationChannel bind(@NonNull UDPBroadcast conf) {
+        final InvalidationChannel ch = new InvalidationChannel(conf);
+        ch.connection = conf.configure(UdpServer.create())
+            .handle((in, out) -> in.receiveObject()
+                .ofType(DatagramPacket.class)
+                .map(p -> decode(p.content()))
+                .filter(m -> m != Message.INVALID)
+                //apply off event loop, in order of arrival
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(ch::apply)
+                .then())
+            .bindNow(Duration.ofSeconds(5));
+        if (!conf.getHeartbeat().isZero())
+            ch.heartbeat = Flux.interval(conf.getHeartbeat(), conf.getHeartbeat())
+                .onBackpressureDrop()
+                .subscribe(i -> ch.flush(true));
+        return ch;
+    }
+
+    /**
+     * apply invalidations from other members to cache
+     *
+     * @param cache cache, same name on all members
+     * @param keys  serializer of key, same on all members and same as off-heap tier of cache if any
+     */
+    public <K> InvalidationChannel attach(@NonNull NamedCache<K, ?> cache, @NonNull Serializer<K> keys) {
+        if (HEADER + 2 + cache.getName().getBytes(StandardCharsets.UTF_8).length + 4 + 4 > maxPacketSize)
+            throw new IllegalArgumentException("name of cache " + cache.getName() + " is too long");
+        targets.put(cache.getName(), new Target<>(cache, keys));
+        return this;
+    }
+
+    /**
+     * invalidate key of attached cache here and on all members
+     */
+    @SuppressWarnings("unchecked")
+    public <K> void invalidate(@NonNull String cache, @NonNull K key) {
+        final Target<K> t = (Target<K>) targetOf(cache);
+        t.cache.invalidate(key);
+        enqueue(cache, ByteBuffer.wrap(t.keys.serialize(key)));
+    }
+
+    /**
+     * invalidate all of attached cache here and on all members
+     */
+    public void invalidateAll(@NonNull String cache) {
+        targetOf(cache).cache.invalidateAll();
+        enqueue(cache, null);
+    }
+
+    public long sent() {
+        return sent.sum();
+    }
+
+    public long received() {
+        return received.sum();
+    }
+
+    /**
+     * @return count of gaps found, each caused a flush of all attached caches
+     */
+    public long gaps() {
+        return gaps.sum();
+    }
+
+    @Override
+    public void close() {
+        if (heartbeat != null) heartbeat.dispose();
+        flush(false);
+        final Connection c = connection;
+        if (c != null) c.disposeNow();
+    }
+
+    private Target<?> targetOf(String cache) {
+        final Target<?> t = targets.get(cache);
+        if (t == null) throw new IllegalArgumentException("cache " + cache + " not attached");
+        return t;
+    }
+
+    private synchronized void enqueue(String cache, @Nullable ByteBuffer key) {
+        if (key == null) pending.put(cache, null);
+        else if (!pending.containsKey(cache) || pending.get(cache) != null)
+            pending.computeIfAbsent(cache, n -> new LinkedHashSet<>()).add(key);
+        if (scheduled) return;
+        scheduled = true;
+        Schedulers.parallel().schedule(() -> flush(false), batchDelay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * send pending invalidations, numbering and writing under lock so datagrams leave in order of sequence
+     *
+     * @param empty send an empty datagram if nothing pending
+     */
+    synchronized void flush(boolean empty) {
+        final Connection c = connection;
+        final Map<String, Set<ByteBuffer>> batch = pending;
+        pending = new LinkedHashMap<>();
+        scheduled = false;
+        if (c == null || c.isDisposed() || (batch.isEmpty() && !empty)) return;
+        ByteBuf buf = packet();
+        int groups = 0;
+        for (Map.Entry<String, Set<ByteBuffer>> e : batch.entrySet()) {
+            final byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            final Set<ByteBuffer> keys = e.getValue();
+            if (keys == null || !fits(name, keys)) {
+                if (buf.readableBytes() + 2 + name.length + 4 > maxPacketSize) {
+                    send(c, buf, groups);
+                    buf = packet();
+                    groups = 0;
+                }
+                buf.writeShort(name.length).writeBytes(name).writeInt(-1);
+                groups++;
+                continue;
+            }
+            int count = 0;
+            int countAt = -1;
+            for (ByteBuffer k : keys) {
+                if (countAt >= 0 && buf.readableBytes() + 4 + k.remaining() > maxPacketSize) {
+                    buf.setInt(countAt, count);
+                    send(c, buf, groups);
+                    buf = packet();
+                    groups = 0;
+                    countAt = -1;
+                }
+                if (countAt < 0) {
+                    if (buf.readableBytes() + 2 + name.length + 4 + 4 + k.remaining() > maxPacketSize) {
+                        send(c, buf, groups);
+                        buf = packet();
+                        groups = 0;
+                    }
+                    buf.writeShort(name.length).writeBytes(name);
+                    countAt = buf.writerIndex();
+                    buf.writeInt(0);
+                    count = 0;
+                    groups++;
+                }
+                buf.writeInt(k.remaining()).writeBytes(k.duplicate());
+                count++;
+            }
+            if (countAt >= 0) buf.setInt(countAt, count);
+        }
+        send(c, buf, groups);
+    }
+
+    /**
+     * @return false if a key can not be sent even in an empty datagram
+     */
+    private boolean fits(byte[] name, Set<ByteBuffer> keys) {
+        for (ByteBuffer k : keys)
+            if (HEADER + 2 + name.length + 4 + 4 + k.remaining() > maxPacketSize) return false;
+        return true;
+    }
+
+    private ByteBuf packet() {
+        return ByteBufAllocator.DEFAULT.buffer(maxPacketSize)
+            .writeInt(MAGIC)
+            .writeLong(node)
+            .writeLong(0)
+            .writeShort(0);
+    }
+
+    private void send(Connection c, ByteBuf buf, int groups) {
+        buf.setLong(12, seq.incrementAndGet()).setShort(20, groups);
+        c.channel().writeAndFlush(new DatagramPacket(buf, group));
+        sent.increment();
+    }
+
+    void apply(Message m) {
+        if (m.node == node) return;
+        received.increment();
+        final Long last = members.get(m.node);
+        if (last != null && m.seq <= last) return;
+        members.put(m.node, m.seq);
+        if (last != null && m.seq != last + 1) {
+            log.warn("lost {} invalidation datagrams from {}, flush all caches", m.seq - last - 1, Long.toHexString(m.node));
+            gaps.increment();
+            targets.values().forEach(t -> t.cache.invalidateAll());
+            return;
+        }
+        m.groups.forEach((name, keys) -> {
+            final Target<?> t = targets.get(name);
+            if (t == null) return;
+            if (keys == null) t.cache.invalidateAll();
+            else t.invalidate(keys);
+        });
+    }
+
+    static Message decode(ByteBuf buf) {
+        try {
+            if (buf.readableBytes() < HEADER || buf.readInt() != MAGIC) return Message.INVALID;
+            final long node = buf.readLong();
+            final long seq = buf.readLong();
+            final int groups = buf.readUnsignedShort();
+            final Map<String, List<byte[]>> keys = new LinkedHashMap<>();
+            for (int i = 0; i < groups; i++) {
+                final String name = buf.readCharSequence(buf.readUnsignedShort(), StandardCharsets.UTF_8).toString();
+                final int count = buf.readInt();
+                if (count < 0) {
+                    keys.put(name, null);
+                    continue;
+                }
+                final List<byte[]> list = keys.containsKey(name) && keys.get(name) == null ? null : keys.computeIfAbsent(name, n -> new ArrayList<>(count));
+                for (int j = 0; j < count; j++) {
+                    final byte[] k = new byte[buf.readInt()];
+                    buf.readBytes(k);
+                    if (list != null) list.add(k);
+                }
+            }
+            return new Message(node, seq, keys);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return Message.INVALID;
+        }
+    }
+
+    static final class Message {
+        static final Message INVALID = new Message(0, 0, null);
+        final long node;
+        final long seq;
+        final Map<String, List<byte[]>> groups;
+
+        Message(long node, long seq, Map<String, List<byte[]>> groups) {
+            this.node = node;
+            this.seq = seq;
+            this.groups = groups;
+        }
+    }
+
+    static final class Target<K> {
+        final NamedCache<K, ?> cache;
+        final Serializer<K> keys;
+
+        Target(NamedCache<K, ?> cache, Serializer<K> keys) {
+            this.cache = cache;
+            this.keys = keys;
+        }
+
+        /**
+         * off-heap tier of a tiered cache is invalidated with key too
+         */
+        void invalidate(List<byte[]> serialized) {
+            for (byte[] k : serialized) {
+                final K key;
+                try {
+                    key = keys.deserialize(k);
+                } catch (RuntimeException e) {
+                    log.warn("key of cache {} can not be deserialized, flush whole cache", cache.getName(), e);
+                    cache.invalidateAll();
+                    return;
+                }
+                cache.invalidate(key);
+            }
+        }
+    }
+}
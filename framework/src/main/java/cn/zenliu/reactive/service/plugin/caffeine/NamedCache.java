@@ -0,0 +1,594 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: NamedCache.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:15:19
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import cn.zenliu.reactive.service.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * a named cache with reactive api, created by {@link CaffeineManager#getCache}
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public interface NamedCache<K, V> {
+    //region define
+    String getName();
+
+    /**
+     * @param key key
+     * @return cached value, or load by loader of cache, empty if absent and no loader
+     */
+    Mono<V> get(@NotNull K key);
+
+    /**
+     * @param key    key
+     * @param loader load value when absent, concurrent loads of same key are coalesced
+     * @return cached or loaded value, empty if loader is empty
+     */
+    Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader);
+
+    /**
+     * @param key key
+     * @return cached value (or in loading), never load
+     */
+    Mono<V> getIfPresent(@NotNull K key);
+
+    void put(@NotNull K key, @NotNull V value);
+
+    /**
+     * atomic put when key absent, eg: restore entries without overwriting newer ones
+     *
+     * @return true if put, false if key present
+     */
+    boolean putIfAbsent(@NotNull K key, @NotNull V value);
+
+    void invalidate(@NotNull K key);
+
+    void invalidateAll();
+
+    long estimatedSize();
+
+    /**
+     * @return stats, all zero when recordStats is off
+     */
+    CacheStats stats();
+
+    /**
+     * @return synchronous view of underlying cache
+     */
+    Cache<K, V> synchronous();
+    //endregion
+
+    @UtilityClass
+    class scope {
+        /**
+         * @param name         name
+         * @param spec         spec
+         * @param loader       default loader, nullable
+         * @param configurator customize builder, nullable
+         * @param expiry       from {@link CacheSpec#expiry()}
+         * @param keys         serializer of keys for off-heap tier, required when declared
+         * @param values       serializer of values for off-heap tier, required when declared
+         * @return async cache or reference valued cache depends on spec, with off-heap tier if declared
+         */
+        <K, V> NamedCache<K, V> create(String name, CacheSpec spec, @Nullable TtlExpiry expiry,
+                                       @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                       @Nullable Function<Caffeine<Object, Object>, Caffeine<Object, Object>> configurator,
+                                       @Nullable Serializer<K> keys, @Nullable Serializer<V> values) {
+            Caffeine<Object, Object> b = spec.toBuilder(expiry);
+            if (configurator != null) b = configurator.apply(b);
+            final NamedCache<K, V> cache;
+            if (expiry != null && spec.offHeap()) {
+                final OffHeapStore store;
+                try {
+                    store = new OffHeapStore(spec.getOffHeapSize().toBytes(), spec.getOffHeapSegments(),
+                        spec.getOffHeapFile().isEmpty() ? null : Paths.get(spec.getOffHeapFile()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                cache = new TieredNamedCache<>(name, spec, loader, b, expiry, store, keys, values);
+            } else cache = build(name, spec, loader, b);
+            bindMeters(cache);
+            return spec.refreshAhead() ? new RefreshAheadNamedCache<>(cache, spec, loader) : cache;
+        }
+
+        <K, V> NamedCache<K, V> build(String name, CacheSpec spec,
+                                      @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                                      Caffeine<Object, Object> b) {
+            final boolean refresh = spec.getRefreshAfterWrite() != null && loader != null;
+            if (refresh) b.refreshAfterWrite(spec.getRefreshAfterWrite());
+            return spec.referenceValues()
+                ? new ReferenceNamedCache<>(name, loader, refresh ? b.build(new BlockingLoader<>(loader)) : b.build())
+                : new AsyncNamedCache<>(name, loader, refresh ? b.buildAsync(new MonoLoader<K, V>(loader)) : b.buildAsync());
+        }
+
+        void bindMeters(NamedCache<?, ?> cache) {
+            final String name = cache.getName();
+            Meters.counter("cache.gets", "cache hits", cache, c -> c.stats().hitCount(), "cache", name, "result", "hit");
+            Meters.counter("cache.gets", "cache misses", cache, c -> c.stats().missCount(), "cache", name, "result", "miss");
+            Meters.counter("cache.evictions", "cache evictions", cache, c -> c.stats().evictionCount(), "cache", name);
+            Meters.counter("cache.loads", "cache loads", cache, c -> c.stats().loadSuccessCount(), "cache", name, "result", "success");
+            Meters.counter("cache.loads", "cache loads", cache, c -> c.stats().loadFailureCount(), "cache", name, "result", "failure");
+            Meters.counter("cache.load.duration", "cache load nanos", cache, c -> c.stats().totalLoadTime(), "cache", name);
+            Meters.gauge("cache.size", "cache estimated size", cache, NamedCache::estimatedSize, "cache", name);
+        }
+
+        final class MonoLoader<K, V> implements AsyncCacheLoader<K, V> {
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+
+            MonoLoader(Function<? super K, ? extends Mono<? extends V>> loader) {
+                this.loader = loader;
+            }
+
+            @Override
+            public @NotNull CompletableFuture<V> asyncLoad(@NotNull K key, @NotNull Executor executor) {
+                return Mono.<V>defer(() -> loader.apply(key)).toFuture();
+            }
+        }
+
+        /**
+         * refresh of synchronous cache runs on executor of caffeine, never on event loop
+         */
+        final class BlockingLoader<K, V> implements CacheLoader<K, V> {
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+
+            BlockingLoader(Function<? super K, ? extends Mono<? extends V>> loader) {
+                this.loader = loader;
+            }
+
+            @Override
+            public @Nullable V load(@NotNull K key) {
+                return loader.apply(key).block();
+            }
+        }
+
+        final class AsyncNamedCache<K, V> implements NamedCache<K, V> {
+            @Getter
+            private final String name;
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+            private final AsyncCache<K, V> cache;
+
+            AsyncNamedCache(String name, @Nullable Function<? super K, ? extends Mono<? extends V>> loader, AsyncCache<K, V> cache) {
+                this.name = name;
+                this.loader = loader;
+                this.cache = cache;
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key) {
+                return loader == null ? getIfPresent(key) : get(key, loader);
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader) {
+                return Mono.defer(() -> Mono.fromFuture(cache.get(key, (k, e) -> Mono.<V>defer(() -> loader.apply(k)).toFuture())));
+            }
+
+            @Override
+            public Mono<V> getIfPresent(@NotNull K key) {
+                return Mono.defer(() -> {
+                    final CompletableFuture<V> f = cache.getIfPresent(key);
+                    return f == null ? Mono.empty() : Mono.fromFuture(f);
+                });
+            }
+
+            @Override
+            public void put(@NotNull K key, @NotNull V value) {
+                cache.put(key, CompletableFuture.completedFuture(value));
+            }
+
+            @Override
+            public boolean putIfAbsent(@NotNull K key, @NotNull V value) {
+                return cache.asMap().putIfAbsent(key, CompletableFuture.completedFuture(value)) == null;
+            }
+
+            @Override
+            public void invalidate(@NotNull K key) {
+                cache.synchronous().invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.synchronous().invalidateAll();
+            }
+
+            @Override
+            public long estimatedSize() {
+                return cache.synchronous().estimatedSize();
+            }
+
+            @Override
+            public CacheStats stats() {
+                return cache.synchronous().stats();
+            }
+
+            @Override
+            public Cache<K, V> synchronous() {
+                return cache.synchronous();
+            }
+        }
+
+        final class ReferenceNamedCache<K, V> implements NamedCache<K, V> {
+            @Getter
+            private final String name;
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+            private final Cache<K, V> cache;
+            private final SingleFlight<K, V> flights = SingleFlight.create();
+
+            ReferenceNamedCache(String name, @Nullable Function<? super K, ? extends Mono<? extends V>> loader, Cache<K, V> cache) {
+                this.name = name;
+                this.loader = loader;
+                this.cache = cache;
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key) {
+                return loader == null ? getIfPresent(key) : get(key, loader);
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader) {
+                return Mono.defer(() -> {
+                    final V v = cache.getIfPresent(key);
+                    if (v != null) return Mono.just(v);
+                    return flights.execute(key, () -> loader.apply(key).doOnNext(r -> cache.put(key, r)));
+                });
+            }
+
+            @Override
+            public Mono<V> getIfPresent(@NotNull K key) {
+                return Mono.fromSupplier(() -> cache.getIfPresent(key));
+            }
+
+            @Override
+            public void put(@NotNull K key, @NotNull V value) {
+                cache.put(key, value);
+            }
+
+            @Override
+            public boolean putIfAbsent(@NotNull K key, @NotNull V value) {
+                return cache.asMap().putIfAbsent(key, value) == null;
+            }
+
+            @Override
+            public void invalidate(@NotNull K key) {
+                cache.invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.invalidateAll();
+            }
+
+            @Override
+            public long estimatedSize() {
+                return cache.estimatedSize();
+            }
+
+            @Override
+            public CacheStats stats() {
+                return cache.stats();
+            }
+
+            @Override
+            public Cache<K, V> synchronous() {
+                return cache;
+            }
+        }
+            /**
+         * L1 is a caffeine cache, L2 is an {@link OffHeapStore}:
+         * values are written through to L2 when loaded or put, L1 misses look up L2 before loader,
+         * L2 hits are promoted to L1 with their original deadline.
+         */
+        final class TieredNamedCache<K, V> implements NamedCache<K, V> {
+            private final NamedCache<K, V> l1;
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+            @Getter
+            private final OffHeapStore store;
+            private final TtlExpiry expiry;
+            private final Serializer<K> keys;
+            private final Serializer<V> values;
+
+            TieredNamedCache(String name, CacheSpec spec,
+                             @Nullable Function<? super K, ? extends Mono<? extends V>> loader,
+                             Caffeine<Object, Object> b, TtlExpiry expiry, OffHeapStore store,
+                             Serializer<K> keys, Serializer<V> values) {
+                this.loader = loader;
+                this.store = store;
+                this.expiry = expiry;
+                this.keys = keys;
+                this.values = values;
+                //refresh of L1 writes through too
+                this.l1 = build(name, spec, loader == null ? null : writeThrough(loader), b);
+                Meters.counter("cache.offheap.gets", "off-heap tier hits", store, OffHeapStore::hits, "cache", name, "result", "hit");
+                Meters.counter("cache.offheap.gets", "off-heap tier misses", store, OffHeapStore::misses, "cache", name, "result", "miss");
+                Meters.counter("cache.offheap.evictions", "off-heap tier evictions", store, OffHeapStore::evictions, "cache", name);
+                Meters.gauge("cache.offheap.size", "off-heap tier entries", store, OffHeapStore::size, "cache", name);
+            }
+
+            private Function<K, Mono<V>> writeThrough(Function<? super K, ? extends Mono<? extends V>> loader) {
+                return k -> Mono.<V>defer(() -> loader.apply(k)).doOnNext(v -> write(k, v));
+            }
+
+            private void write(K key, V value) {
+                store.put(keys.serialize(key), values.serialize(value), expiry.deadlineOf(key, System.currentTimeMillis()));
+            }
+
+            /**
+             * @return value from L2, deadline is registered for the promotion to L1
+             */
+            private Mono<V> fromL2(K key) {
+                return Mono.fromSupplier(() -> {
+                    final OffHeapStore.Entry e = store.get(keys.serialize(key));
+                    if (e == null) return null;
+                    expiry.restore(key, e.getExpireAt());
+                    return values.deserialize(e.getValue());
+                });
+            }
+
+            @Override
+            public String getName() {
+                return l1.getName();
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key) {
+                return loader == null ? getIfPresent(key) : get(key, loader);
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader) {
+                final Function<K, Mono<V>> load = writeThrough(loader);
+                return l1.get(key, k -> fromL2(k).switchIfEmpty(Mono.defer(() -> load.apply(k))));
+            }
+
+            @Override
+            public Mono<V> getIfPresent(@NotNull K key) {
+                return l1.getIfPresent(key)
+                    .switchIfEmpty(Mono.defer(() -> fromL2(key).doOnNext(v -> l1.put(key, v))));
+            }
+
+            @Override
+            public void put(@NotNull K key, @NotNull V value) {
+                //L2 first, a restored deadline is consumed by L1
+                write(key, value);
+                l1.put(key, value);
+            }
+
+            @Override
+            public boolean putIfAbsent(@NotNull K key, @NotNull V value) {
+                //deadline taken before L1 consumes it
+                final long expireAt = expiry.deadlineOf(key, System.currentTimeMillis());
+                if (!l1.putIfAbsent(key, value)) return false;
+                store.put(keys.serialize(key), values.serialize(value), expireAt);
+                return true;
+            }
+
+            @Override
+            public void invalidate(@NotNull K key) {
+                l1.invalidate(key);
+                store.remove(keys.serialize(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                l1.invalidateAll();
+                store.clear();
+            }
+
+            @Override
+            public long estimatedSize() {
+                return l1.estimatedSize();
+            }
+
+            @Override
+            public CacheStats stats() {
+                return l1.stats();
+            }
+
+            @Override
+            public Cache<K, V> synchronous() {
+                return l1.synchronous();
+            }
+        }
+
+        /**
+         * early refresh on access, the value in cache is returned and one background reload runs per key:
+         * <p>
+         * 1. refresh-ahead: when remaining ttl &lt; refreshAheadRatio * ttl
+         * 2. XFetch: when {@code -delta * beta * ln(random) >= remaining ttl},
+         * delta is the moving average of load time of this cache,
+         * so slow loads and hot keys (more accesses, more draws) start earlier
+         * 3. a failed reload is logged, the cached value is kept until it expires
+         */
+        @Slf4j
+        final class RefreshAheadNamedCache<K, V> implements NamedCache<K, V> {
+            private final NamedCache<K, V> cache;
+            private final Function<? super K, ? extends Mono<? extends V>> loader;
+            private final long ttl;
+            private final double ratio;
+            private final double beta;
+            private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+            //moving average of load nanos
+            private final AtomicLong delta = new AtomicLong(Double.doubleToLongBits(0));
+            private final LongAdder aheads = new LongAdder();
+            private final LongAdder xfetches = new LongAdder();
+
+            RefreshAheadNamedCache(NamedCache<K, V> cache, CacheSpec spec, @Nullable Function<? super K, ? extends Mono<? extends V>> loader) {
+                this.cache = cache;
+                this.loader = loader;
+                this.ttl = spec.getExpireAfterWrite().toNanos();
+                this.ratio = spec.getRefreshAheadRatio();
+                this.beta = spec.getXfetchBeta();
+                Meters.counter("cache.refreshes", "early refreshes", aheads, LongAdder::sum, "cache", cache.getName(), "trigger", "ahead");
+                Meters.counter("cache.refreshes", "early refreshes", xfetches, LongAdder::sum, "cache", cache.getName(), "trigger", "xfetch");
+            }
+
+            private Function<K, Mono<V>> timed(Function<? super K, ? extends Mono<? extends V>> loader) {
+                return k -> Mono.defer(() -> {
+                    final long start = System.nanoTime();
+                    return Mono.<V>from(loader.apply(k)).doOnSuccess(v -> record(System.nanoTime() - start));
+                });
+            }
+
+            private void record(long nanos) {
+                for (; ; ) {
+                    final long bits = delta.get();
+                    final double avg = Double.longBitsToDouble(bits);
+                    final double next = avg == 0 ? nanos : avg + 0.2 * (nanos - avg);
+                    if (delta.compareAndSet(bits, Double.doubleToLongBits(next))) return;
+                }
+            }
+
+            /**
+             * @return remaining nanos of entry, negative if unknown
+             */
+            long remaining(K key) {
+                final Policy<K, V> policy = cache.synchronous().policy();
+                final Optional<Policy.VarExpiration<K, V>> variable = policy.expireVariably();
+                if (variable.isPresent()) return variable.get().getExpiresAfter(key, TimeUnit.NANOSECONDS).orElse(-1);
+                return policy.expireAfterWrite()
+                    .map(e -> {
+                        final OptionalLong age = e.ageOf(key, TimeUnit.NANOSECONDS);
+                        return age.isPresent() ? e.getExpiresAfter(TimeUnit.NANOSECONDS) - age.getAsLong() : -1;
+                    })
+                    .orElse(-1L);
+            }
+
+            /**
+             * @return true if should refresh now
+             */
+            boolean shouldRefresh(long remaining) {
+                if (remaining < 0) return false;
+                if (ratio > 0 && remaining < ratio * ttl) {
+                    aheads.increment();
+                    return true;
+                }
+                if (beta > 0) {
+                    final double d = Double.longBitsToDouble(delta.get());
+                    final double rnd = 1 - ThreadLocalRandom.current().nextDouble(); //(0,1]
+                    if (-d * beta * Math.log(rnd) >= remaining) {
+                        xfetches.increment();
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private void maybeRefresh(K key, Function<K, Mono<V>> load) {
+                if (!shouldRefresh(remaining(key)) || !refreshing.add(key)) return;
+                load.apply(key)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doFinally(s -> refreshing.remove(key))
+                    .subscribe(v -> cache.put(key, v),
+                        e -> log.warn("fail to refresh {} of cache {}", key, cache.getName(), e));
+            }
+
+            @Override
+            public String getName() {
+                return cache.getName();
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key) {
+                return loader == null ? cache.get(key) : get(key, loader);
+            }
+
+            @Override
+            public Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader) {
+                final Function<K, Mono<V>> load = timed(loader);
+                return cache.get(key, load).doOnNext(v -> maybeRefresh(key, load));
+            }
+
+            @Override
+            public Mono<V> getIfPresent(@NotNull K key) {
+                return cache.getIfPresent(key);
+            }
+
+            @Override
+            public void put(@NotNull K key, @NotNull V value) {
+                cache.put(key, value);
+            }
+
+            @Override
+            public boolean putIfAbsent(@NotNull K key, @NotNull V value) {
+                return cache.putIfAbsent(key, value);
+            }
+
+            @Override
+            public void invalidate(@NotNull K key) {
+                cache.invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.invalidateAll();
+            }
+
+            @Override
+            public long estimatedSize() {
+                return cache.estimatedSize();
+            }
+
+            @Override
+            public CacheStats stats() {
+                return cache.stats();
+            }
+
+            @Override
+            public Cache<K, V> synchronous() {
+                return cache.synchronous();
+            }
+        }
+    }
+}
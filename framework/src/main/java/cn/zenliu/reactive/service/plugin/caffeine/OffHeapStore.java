@@ -0,0 +1,382 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: OffHeapStore.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:18:54
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import io.netty.util.internal.PlatformDependent;
+import lombok.Getter;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bytes store out of java heap, the second tier of {@link NamedCache}
+ * <p>
+ * 1. space is split into segments, each segment is a ring log in a direct or memory mapped buffer with own lock
+ * 2. entries are appended, the oldest are overwritten when ring wraps (FIFO eviction)
+ * 3. index is a primitive open addressing table of 64 bit key hash to log position, about 32 bytes heap per entry,
+ * key bytes are kept in log and compared on lookup
+ * 4. entry layout: int key length, int value length, long expire at (epoch millis), key bytes, value bytes
+ */
+public final class OffHeapStore implements AutoCloseable {
+    static final int HEADER = 16;
+    private final Segment[] segments;
+    private final int mask;
+    @Getter
+    private final long capacity;
+    private final Path file;
+    private final FileChannel channel;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity total bytes
+     * @param segments count of segments, rounded to power of two
+     * @param file     memory mapped file used as space, null to use direct memory
+     * @throws IOException when map file failed
+     */
+    public OffHeapStore(long capacity, int segments, @Nullable Path file) throws IOException {
+        int n = Integer.highestOneBit(Math.max(1, segments));
+        while (capacity / n > Integer.MAX_VALUE - 8) n <<= 1;
+        final int size = (int) (capacity / n);
+        this.segments = new Segment[n];
+        this.mask = n - 1;
+        this.capacity = (long) size * n;
+        this.file = file;
+        if (file != null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (int i = 0; i < n; i++)
+                this.segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, (long) i * size, size));
+        } else {
+            channel = null;
+            for (int i = 0; i < n; i++) this.segments[i] = new Segment(ByteBuffer.allocateDirect(size));
+        }
+    }
+
+    /**
+     * @return false if entry larger than a segment
+     */
+    public boolean put(@NonNull byte[] key, @NonNull byte[] value, long expireAt) {
+        final long h = hash(key);
+        return segmentOf(h).put(h, key, value, expireAt, evictions);
+    }
+
+    /**
+     * @return entry, null if absent,evicted or expired
+     */
+    @Nullable
+    public Entry get(@NonNull byte[] key) {
+        final long h = hash(key);
+        final Entry e = segmentOf(h).get(h, key, System.currentTimeMillis(), evictions);
+        if (e == null) misses.increment();
+        else hits.increment();
+        return e;
+    }
+
+    public void remove(@NonNull byte[] key) {
+        final long h = hash(key);
+        segmentOf(h).remove(h);
+    }
+
+    /**
+     * @param hash hash of key, see {@link #hash(byte[])}
+     */
+    void remove(long hash) {
+        segmentOf(hash).remove(hash);
+    }
+
+    public void clear() {
+        for (Segment s : segments) s.clear();
+    }
+
+    /**
+     * @return count of indexed entries, may include evicted ones not swept yet
+     */
+    public long size() {
+        long n = 0;
+        for (Segment s : segments) n += s.size();
+        return n;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment s : segments) s.release();
+        if (channel != null) {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> 40) & mask];
+    }
+
+    /**
+     * FNV-1a with murmur3 finalizer, never zero
+     */
+    static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    public static final class Entry {
+        @Getter
+        private final byte[] value;
+        @Getter
+        private final long expireAt;
+
+        Entry(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    static final class Segment {
+        private ByteBuffer buf;
+        private final int capacity;
+        private final LongLongMap index = new LongLongMap(64);
+        //total bytes appended, include skipped tail, position of entries are in this space
+        private long written;
+        private long swept;
+
+        Segment(ByteBuffer buf) {
+            this.buf = buf;
+            this.capacity = buf.capacity();
+        }
+
+        synchronized boolean put(long hash, byte[] key, byte[] value, long expireAt, LongAdder evictions) {
+            final int len = HEADER + key.length + value.length;
+            if (len > capacity || buf == null) return false;
+            int phys = (int) (written % capacity);
+            if (phys + len > capacity) {
+                written += capacity - phys;
+                phys = 0;
+            }
+            buf.putInt(phys, key.length);
+            buf.putInt(phys + 4, value.length);
+            buf.putLong(phys + 8, expireAt);
+            final ByteBuffer b = buf.duplicate();
+            b.position(phys + HEADER);
+            b.put(key);
+            b.put(value);
+            index.put(hash, written);
+            written += len;
+            if (written - swept >= capacity / 2) sweep(evictions);
+            return true;
+        }
+
+        @Nullable
+        synchronized Entry get(long hash, byte[] key, long now, LongAdder evictions) {
+            if (buf == null) return null;
+            final long pos = index.get(hash);
+            if (pos < 0) return null;
+            if (pos < written - capacity) {
+                index.remove(hash);
+                evictions.increment();
+                return null;
+            }
+            final int phys = (int) (pos % capacity);
+            final int kl = buf.getInt(phys);
+            final int vl = buf.getInt(phys + 4);
+            final long expireAt = buf.getLong(phys + 8);
+            if (expireAt <= now) {
+                index.remove(hash);
+                return null;
+            }
+            if (kl != key.length) return null;
+            for (int i = 0; i < kl; i++) {
+                if (buf.get(phys + HEADER + i) != key[i]) return null;
+            }
+            final byte[] value = new byte[vl];
+            final ByteBuffer b = buf.duplicate();
+            b.position(phys + HEADER + kl);
+            b.get(value);
+            return new Entry(value, expireAt);
+        }
+
+        synchronized void remove(long hash) {
+            index.remove(hash);
+        }
+
+        synchronized void clear() {
+            index.clear();
+            written = 0;
+            swept = 0;
+        }
+
+        synchronized long size() {
+            return index.size();
+        }
+
+        synchronized void release() {
+            index.clear();
+            if (buf != null) PlatformDependent.freeDirectBuffer(buf);
+            buf = null;
+        }
+
+        private void sweep(LongAdder evictions) {
+            final long floor = written - capacity;
+            evictions.add(index.removeIf(pos -> pos < floor));
+            swept = written;
+        }
+    }
+
+    /**
+     * open addressing long to long map, zero key is empty slot, missing value is -1
+     */
+    static final class LongLongMap {
+        private long[] keys;
+        private long[] values;
+        private int mask;
+        private int size;
+
+        LongLongMap(int capacity) {
+            init(Integer.highestOneBit(Math.max(4, capacity - 1) << 1));
+        }
+
+        private void init(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private int slot(long key) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                final long k = keys[i];
+                if (k == 0) return -1;
+                if (k == key) return values[i];
+            }
+        }
+
+        void put(long key, long value) {
+            if ((size + 1) * 2 > keys.length) resize();
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                final long k = keys[i];
+                if (k == 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+                if (k == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+        }
+
+        boolean remove(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                final long k = keys[i];
+                if (k == 0) return false;
+                if (k == key) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return count of removed
+         */
+        int removeIf(java.util.function.LongPredicate onValue) {
+            final long[] removing = new long[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && onValue.test(values[i])) removing[n++] = keys[i];
+            }
+            for (int i = 0; i < n; i++) remove(removing[i]);
+            return n;
+        }
+
+        void clear() {
+            init(64);
+        }
+
+        //backward shift deletion, keep probe sequences without tombstone
+        private void removeAt(int i) {
+            keys[i] = 0;
+            size--;
+            int j = i;
+            for (; ; ) {
+                j = (j + 1) & mask;
+                final long k = keys[j];
+                if (k == 0) return;
+                final int home = slot(k);
+                final boolean inRange = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!inRange) {
+                    keys[i] = k;
+                    values[i] = values[j];
+                    keys[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            init(oldKeys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PartitionService.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:35:16
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.spi.Api;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * partitioned cache mode: every key is owned by one node on a {@link HashRing}, only the owner keeps it,
+ * other nodes forward requests to the owner and keep a small near cache, so capacity grows with node count.
+ * <p>
+ * register this as a {@link Api.TcpApi} on a TCP server listen on address of self,
+ * then wrap local caches with {@link #partition}, caches of same name must exist on all nodes.
+ * <p>
+ * frames are length prefixed,
+ * request: {@code byte op, long id, short nameLen, name, int keyLen, key, value},
+ * response: {@code byte status, long id, value}, responses may arrive out of order.
+ * <p>
+ * with a shared secret, server sends a random challenge as the first frame of a connection ({@code status, id 0, nonce}),
+ * client must answer with an {@code AUTH} request of HmacSHA256 of nonce before any other, or connection is closed.
+ * keys and values in java serialization are only accepted with a secret, the port should still be reachable only by peers.
+ */
+@Slf4j
+public final class PartitionService implements Api.TcpApi, AutoCloseable {
+    static final byte GET = 1;
+    static final byte GET_IF_PRESENT = 2;
+    static final byte PUT = 3;
+    static final byte INVALIDATE = 4;
+    static final byte INVALIDATE_ALL = 5;
+    static final byte AUTH = 6;
+    static final byte OK = 0;
+    static final byte MISS = 1;
+    static final byte ERROR = 2;
+    static final byte[] EMPTY = new byte[0];
+    static final int MAX_FRAME = 16 * 1024 * 1024;
+    static final String MAC = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Getter
+    private final String self;
+    private final HashRing<String> ring;
+    @Getter
+    private final Duration timeout;
+    private final Map<String, PeerClient> peers = new ConcurrentHashMap<>();
+    private final Map<String, PartitionedCache<?, ?>> caches = new ConcurrentHashMap<>();
+    @Nullable
+    private final SecretKeySpec secret;
+
+    /**
+     * @param self         id of this node, as host:port of the TCP server this service registered on
+     * @param nodes        ids of all nodes include self
+     * @param virtualNodes points of every node on ring
+     * @param timeout      timeout of request to owner
+     * @param secret       secret shared by all nodes to authenticate peers, null to accept any connection
+     */
+    public PartitionService(@NonNull String self, @NonNull Collection<String> nodes, int virtualNodes, @NonNull Duration timeout,
+                            @Nullable byte[] secret) {
+        this.self = self;
+        this.ring = new HashRing<>(virtualNodes);
+        this.timeout = timeout;
+        this.secret = secret == null ? null : new SecretKeySpec(secret, MAC);
+        setNodes(nodes);
+    }
+
+    public PartitionService(@NonNull String self, @NonNull Collection<String> nodes, int virtualNodes, @NonNull Duration timeout) {
+        this(self, nodes, virtualNodes, timeout, null);
+    }
+
+    public PartitionService(@NonNull String self, @NonNull Collection<String> nodes) {
+        this(self, nodes, 160, Duration.ofSeconds(2));
+    }
+
+    @Override
+    public @NonNull String getName() {
+        return "PartitionService@" + self;
+    }
+
+    /**
+     * change members, keys move to new owners and are loaded there again
+     */
+    public synchronized void setNodes(@NonNull Collection<String> nodes) {
+        final Set<String> next = new HashSet<>(nodes);
+        next.add(self);
+        ring.nodes().keySet().stream().filter(n -> !next.contains(n)).forEach(n -> {
+            ring.remove(n);
+            final PeerClient peer = peers.remove(n);
+            if (peer != null) peer.close();
+        });
+        next.forEach(n -> ring.add(n, n));
+        caches.values().forEach(PartitionedCache::invalidateNear);
+    }
+
+    public Set<String> getNodes() {
+        return ring.nodes().keySet();
+    }
+
+    /**
+     * @param local  local cache keeps keys owned by this node, its loader is used for keys owned here
+     * @param keys   serializer of keys, same on all nodes
+     * @param values serializer of values, same on all nodes
+     * @return partitioned view of cache
+     * @throws IllegalStateException when java serialization is used without secret
+     */
+    public <K, V> PartitionedCache<K, V> partition(@NonNull NamedCache<K, V> local,
+                                                   @NonNull Serializer<K> keys,
+                                                   @NonNull Serializer<V> values) {
+        return partition(local, keys, values, 1024, Duration.ofSeconds(5));
+    }
+
+    /**
+     * @param nearSize   max entries of near cache of keys owned by others, zero to disable
+     * @param nearExpire ttl of near cache entries, bounds staleness of values owned by others
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> PartitionedCache<K, V> partition(@NonNull NamedCache<K, V> local,
+                                                   @NonNull Serializer<K> keys,
+                                                   @NonNull Serializer<V> values,
+                                                   long nearSize,
+                                                   @NonNull Duration nearExpire) {
+        if (secret == null && (keys instanceof Serializer.scope.JavaSerializer || values instanceof Serializer.scope.JavaSerializer))
+            throw new IllegalStateException("cache " + local.getName() + " in java serialization can only be partitioned with a secret");
+        return (PartitionedCache<K, V>) caches.computeIfAbsent(local.getName(),
+            n -> new PartitionedCache<>(this, local, keys, values, nearSize, nearExpire));
+    }
+
+    /**
+     * @return id of owner of key
+     */
+    String ownerOf(byte[] key) {
+        return ring.ownerOf(OffHeapStore.hash(key));
+    }
+
+    boolean isSelf(String node) {
+        return self.equals(node);
+    }
+
+    PeerClient peer(String node) {
+        return peers.computeIfAbsent(node, n -> new PeerClient(n, secret == null ? null : this::sign));
+    }
+
+    /**
+     * @return HmacSHA256 of nonce by secret
+     */
+    byte[] sign(byte[] nonce) {
+        try {
+            final Mac mac = Mac.getInstance(MAC);
+            mac.init(Objects.requireNonNull(secret));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Collection<String> others() {
+        final List<String> others = new ArrayList<>(getNodes());
+        others.remove(self);
+        return others;
+    }
+
+    @Override
+    public @NonNull Publisher<Void> handle(@NonNull NettyInbound in, @NonNull NettyOutbound out) {
+        in.withConnection(c -> c.addHandlerLast(new LengthFieldBasedFrameDecoder(MAX_FRAME, 0, 4, 0, 4)));
+        final Flux<Request> requests = in.receive().map(Request::decode);
+        if (secret == null) return out.send(serve(requests, out));
+        final byte[] nonce = new byte[16];
+        RANDOM.nextBytes(nonce);
+        final byte[] expected = sign(nonce);
+        return out.send(Mono.fromCallable(() -> response(out.alloc(), OK, 0, nonce)))
+            .send(serve(requests.switchOnFirst((first, all) -> {
+                final Request r = first.get();
+                if (r != null && r.op == AUTH && MessageDigest.isEqual(expected, r.value)) return all.skip(1);
+                log.warn("peer of partition service {} not authenticated, connection closed", self);
+                return Flux.error(new SecurityException("peer not authenticated"));
+            }), out));
+    }
+
+    private Flux<ByteBuf> serve(Flux<Request> requests, NettyOutbound out) {
+        return requests
+            .flatMap(r -> serve(r).map(v -> response(out.alloc(), OK, r.id, v))
+                .defaultIfEmpty(response(out.alloc(), MISS, r.id, EMPTY))
+                .onErrorResume(e -> {
+                    log.debug("fail to serve request of cache {}", r.name, e);
+                    return Mono.just(response(out.alloc(), ERROR, r.id, String.valueOf(e).getBytes(StandardCharsets.UTF_8)));
+                }), 256);
+    }
+
+    private Mono<byte[]> serve(Request r) {
+        final PartitionedCache<?, ?> cache = caches.get(r.name);
+        if (cache == null) return Mono.error(new IllegalStateException("cache " + r.name + " not partitioned on " + self));
+        return cache.serve(r.op, r.key, r.value);
+    }
+
+    @Override
+    public void close() {
+        peers.values().forEach(PeerClient::close);
+        peers.clear();
+    }
+
+    //region codec
+    static ByteBuf request(ByteBufAllocator alloc, byte op, long id, byte[] name, byte[] key, @Nullable byte[] value) {
+        final int v = value == null ? 0 : value.length;
+        final int len = 1 + 8 + 2 + name.length + 4 + key.length + v;
+        final ByteBuf buf = alloc.buffer(4 + len)
+            .writeInt(len)
+            .writeByte(op)
+            .writeLong(id)
+            .writeShort(name.length)
+            .writeBytes(name)
+            .writeInt(key.length)
+            .writeBytes(key);
+        if (value != null) buf.writeBytes(value);
+        return buf;
+    }
+
+    static ByteBuf response(ByteBufAllocator alloc, byte status, long id, byte[] value) {
+        return alloc.buffer(4 + 9 + value.length)
+            .writeInt(9 + value.length)
+            .writeByte(status)
+            .writeLong(id)
+            .writeBytes(value);
+    }
+
+    static final class Request {
+        final byte op;
+        final long id;
+        final String name;
+        final byte[] key;
+        final byte[] value;
+
+        Request(byte op, long id, String name, byte[] key, byte[] value) {
+            this.op = op;
+            this.id = id;
+            this.name = name;
+            this.key = key;
+            this.value = value;
+        }
+
+        static Request decode(ByteBuf buf) {
+            final byte op = buf.readByte();
+            final long id = buf.readLong();
+            final String name = buf.readCharSequence(buf.readUnsignedShort(), StandardCharsets.UTF_8).toString();
+            final byte[] key = new byte[buf.readInt()];
+            buf.readBytes(key);
+            final byte[] value = new byte[buf.readableBytes()];
+            buf.readBytes(value);
+            return new Request(op, id, name, key, value);
+        }
+    }
+    //endregion
+}
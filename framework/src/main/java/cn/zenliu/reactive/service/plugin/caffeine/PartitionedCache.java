@@ -0,0 +1,226 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PartitionedCache.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:35:33
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * a cache partitioned by {@link PartitionService}:
+ * keys owned by this node live in local cache, others are requested from owner and kept in near cache for a while.
+ * <p>
+ * 1. owner loads with loader of its local cache, a local loader is only used when owner have none or is unreachable
+ * 2. put and invalidate are forwarded to owner, near cache of this node is updated, near caches of other nodes
+ * are left to expire
+ * 3. {@link #synchronous()}, {@link #putIfAbsent}, {@link #stats()} and {@link #estimatedSize()} are of local partition
+ */
+@Slf4j
+public final class PartitionedCache<K, V> implements NamedCache<K, V> {
+    private final PartitionService service;
+    private final NamedCache<K, V> local;
+    @Nullable
+    private final Cache<K, V> near;
+    private final Serializer<K> keys;
+    private final Serializer<V> values;
+    private final byte[] name;
+    private final LongAdder locals = new LongAdder();
+    private final LongAdder nears = new LongAdder();
+    private final LongAdder remotes = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    PartitionedCache(PartitionService service, NamedCache<K, V> local, Serializer<K> keys, Serializer<V> values,
+                     long nearSize, Duration nearExpire) {
+        this.service = service;
+        this.local = local;
+        this.keys = keys;
+        this.values = values;
+        this.name = local.getName().getBytes(StandardCharsets.UTF_8);
+        this.near = nearSize > 0
+            ? Caffeine.newBuilder().maximumSize(nearSize).expireAfterWrite(nearExpire).build()
+            : null;
+        Meters.counter("cache.partition.gets", "gets of partitioned cache", locals, LongAdder::sum, "cache", getName(), "from", "local");
+        Meters.counter("cache.partition.gets", "gets of partitioned cache", nears, LongAdder::sum, "cache", getName(), "from", "near");
+        Meters.counter("cache.partition.gets", "gets of partitioned cache", remotes, LongAdder::sum, "cache", getName(), "from", "owner");
+        Meters.counter("cache.partition.gets", "gets of partitioned cache", fallbacks, LongAdder::sum, "cache", getName(), "from", "fallback");
+    }
+
+    /**
+     * @return node id of owner of key
+     */
+    public String ownerOf(@NotNull K key) {
+        return service.ownerOf(keys.serialize(key));
+    }
+
+    @Override
+    public String getName() {
+        return local.getName();
+    }
+
+    @Override
+    public Mono<V> get(@NotNull K key) {
+        return get(key, PartitionService.GET, null);
+    }
+
+    @Override
+    public Mono<V> get(@NotNull K key, @NotNull Function<? super K, ? extends Mono<? extends V>> loader) {
+        return get(key, PartitionService.GET, loader);
+    }
+
+    @Override
+    public Mono<V> getIfPresent(@NotNull K key) {
+        return get(key, PartitionService.GET_IF_PRESENT, null);
+    }
+
+    private Mono<V> get(K key, byte op, @Nullable Function<? super K, ? extends Mono<? extends V>> loader) {
+        final byte[] k = keys.serialize(key);
+        final String owner = service.ownerOf(k);
+        if (service.isSelf(owner)) {
+            locals.increment();
+            if (op == PartitionService.GET_IF_PRESENT) return local.getIfPresent(key);
+            return loader == null ? local.get(key) : local.get(key, loader);
+        }
+        final V cached = near == null ? null : near.getIfPresent(key);
+        if (cached != null) {
+            nears.increment();
+            return Mono.just(cached);
+        }
+        return service.peer(owner).request(op, name, k, null, service.getTimeout())
+            .flatMap(r -> {
+                remotes.increment();
+                final byte[] v = r.value();
+                if (v != null) return Mono.just(values.deserialize(v));
+                //owner can't load, load here and hand to owner
+                return loader == null ? Mono.<V>empty() : Mono.<V>from(loader.apply(key))
+                    .doOnNext(value -> forward(PartitionService.PUT, owner, k, values.serialize(value)));
+            })
+            .onErrorResume(e -> {
+                if (loader == null) return Mono.error(e);
+                log.debug("owner {} of key in cache {} unavailable, load locally", owner, getName(), e);
+                fallbacks.increment();
+                return Mono.from(loader.apply(key));
+            })
+            .doOnNext(value -> {
+                if (near != null) near.put(key, value);
+            });
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        final byte[] k = keys.serialize(key);
+        final String owner = service.ownerOf(k);
+        if (service.isSelf(owner)) {
+            local.put(key, value);
+            return;
+        }
+        if (near != null) near.put(key, value);
+        forward(PartitionService.PUT, owner, k, values.serialize(value));
+    }
+
+    /**
+     * of local partition, like {@link #synchronous()}
+     */
+    @Override
+    public boolean putIfAbsent(@NotNull K key, @NotNull V value) {
+        return local.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void invalidate(@NotNull K key) {
+        final byte[] k = keys.serialize(key);
+        final String owner = service.ownerOf(k);
+        if (near != null) near.invalidate(key);
+        if (service.isSelf(owner)) local.invalidate(key);
+        else forward(PartitionService.INVALIDATE, owner, k, null);
+    }
+
+    /**
+     * invalidate all on all nodes
+     */
+    @Override
+    public void invalidateAll() {
+        local.invalidateAll();
+        invalidateNear();
+        service.others().forEach(n -> forward(PartitionService.INVALIDATE_ALL, n, PartitionService.EMPTY, null));
+    }
+
+    void invalidateNear() {
+        if (near != null) near.invalidateAll();
+    }
+
+    private void forward(byte op, String node, byte[] key, @Nullable byte[] value) {
+        service.peer(node).request(op, name, key, value, service.getTimeout())
+            .subscribe(r -> {
+            }, e -> log.warn("fail to forward op {} of cache {} to {}", op, getName(), node, e));
+    }
+
+    /**
+     * serve request from other node
+     *
+     * @return serialized value, empty on miss
+     */
+    Mono<byte[]> serve(byte op, byte[] key, byte[] value) {
+        switch (op) {
+            case PartitionService.GET:
+                return local.get(keys.deserialize(key)).map(values::serialize);
+            case PartitionService.GET_IF_PRESENT:
+                return local.getIfPresent(keys.deserialize(key)).map(values::serialize);
+            case PartitionService.PUT:
+                local.put(keys.deserialize(key), values.deserialize(value));
+                return Mono.just(PartitionService.EMPTY);
+            case PartitionService.INVALIDATE:
+                local.invalidate(keys.deserialize(key));
+                return Mono.just(PartitionService.EMPTY);
+            case PartitionService.INVALIDATE_ALL:
+                local.invalidateAll();
+                invalidateNear();
+                return Mono.just(PartitionService.EMPTY);
+            default:
+                return Mono.error(new IllegalArgumentException("unknown op " + op));
+        }
+    }
+
+    @Override
+    public long estimatedSize() {
+        return local.estimatedSize();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return local.stats();
+    }
+
+    @Override
+    public Cache<K, V> synchronous() {
+        return local.synchronous();
+    }
+}
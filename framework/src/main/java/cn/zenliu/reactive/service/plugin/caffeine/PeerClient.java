@@ -0,0 +1,178 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PeerClient.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:35:16
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.MonoSink;
+import reactor.netty.Connection;
+import reactor.netty.tcp.TcpClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * one multiplexed connection to a peer of {@link PartitionService}, requests are pipelined and matched by id.
+ * connection is made on first request and again after it's closed,
+ * when peers share a secret, the challenge of server is answered before connection is used.
+ */
+@Slf4j
+final class PeerClient implements AutoCloseable {
+    private final String node;
+    private final TcpClient client;
+    @Nullable
+    private final Function<byte[], byte[]> sign;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, MonoSink<Response>> pending = new ConcurrentHashMap<>();
+    private volatile Mono<? extends Connection> connection;
+    private volatile boolean closed;
+
+    /**
+     * @param sign HmacSHA256 of challenge, null when peers are not authenticated
+     */
+    PeerClient(String node, @Nullable Function<byte[], byte[]> sign) {
+        this.node = node;
+        this.sign = sign;
+        final int colon = node.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("node should be host:port, but got " + node);
+        this.client = TcpClient.newConnection()
+            .host(node.substring(0, colon))
+            .port(Integer.parseInt(node.substring(colon + 1)))
+            .doOnConnected(c -> c.addHandlerLast(new LengthFieldBasedFrameDecoder(PartitionService.MAX_FRAME, 0, 4, 0, 4)));
+    }
+
+    Mono<Response> request(byte op, byte[] name, byte[] key, @Nullable byte[] value, Duration timeout) {
+        return Mono.<Response>create(sink -> {
+            final long id = ids.incrementAndGet();
+            pending.put(id, sink);
+            sink.onDispose(() -> pending.remove(id));
+            connect().subscribe(
+                c -> c.channel().writeAndFlush(PartitionService.request(c.channel().alloc(), op, id, name, key, value))
+                    .addListener(f -> {
+                        if (!f.isSuccess()) sink.error(f.cause());
+                    }),
+                sink::error);
+        }).timeout(timeout);
+    }
+
+    private Mono<? extends Connection> connect() {
+        Mono<? extends Connection> c = connection;
+        if (c != null) return c;
+        synchronized (this) {
+            if (closed) return Mono.error(new IOException("client of " + node + " closed"));
+            if (connection == null) connection = client.connect()
+                .flatMap(this::authenticate)
+                .doOnNext(conn -> conn.onDispose(this::disconnected))
+                .doOnError(e -> connection = null)
+                .cache();
+            return connection;
+        }
+    }
+
+    /**
+     * read responses of connection, the first frame is the challenge when authenticated
+     *
+     * @return connection after challenge answered
+     */
+    private Mono<Connection> authenticate(Connection conn) {
+        final MonoProcessor<byte[]> challenge = MonoProcessor.create();
+        final Function<byte[], byte[]> sign = this.sign;
+        conn.inbound().receive().subscribe(buf -> {
+            if (sign != null && !challenge.isTerminated()) {
+                buf.skipBytes(9);
+                final byte[] nonce = new byte[buf.readableBytes()];
+                buf.readBytes(nonce);
+                challenge.onNext(nonce);
+            } else dispatch(buf);
+        }, e -> {
+            if (!challenge.isTerminated()) challenge.onError(e);
+        }, () -> {
+            if (!challenge.isTerminated()) challenge.onError(new IOException("connection to " + node + " closed"));
+        });
+        if (sign == null) return Mono.just(conn);
+        return challenge
+            .flatMap(nonce -> Mono.<Connection>create(sink ->
+                conn.channel().writeAndFlush(PartitionService.request(conn.channel().alloc(), PartitionService.AUTH, 0,
+                    PartitionService.EMPTY, PartitionService.EMPTY, sign.apply(nonce)))
+                    .addListener(f -> {
+                        if (f.isSuccess()) sink.success(conn);
+                        else sink.error(f.cause());
+                    })))
+            .doOnError(e -> conn.dispose());
+    }
+
+    private void disconnected() {
+        connection = null;
+        final IOException e = new IOException("connection to " + node + " closed");
+        pending.values().forEach(s -> s.error(e));
+    }
+
+    private void dispatch(ByteBuf buf) {
+        final byte status = buf.readByte();
+        final long id = buf.readLong();
+        final MonoSink<Response> sink = pending.remove(id);
+        if (sink == null) return;
+        final byte[] value = new byte[buf.readableBytes()];
+        buf.readBytes(value);
+        sink.success(new Response(status, value));
+    }
+
+    @Override
+    public void close() {
+        final Mono<? extends Connection> c;
+        synchronized (this) {
+            closed = true;
+            c = connection;
+        }
+        if (c != null) c.subscribe(Connection::dispose, e -> {
+        });
+    }
+
+    static final class Response {
+        final byte status;
+        final byte[] value;
+
+        Response(byte status, byte[] value) {
+            this.status = status;
+            this.value = value;
+        }
+
+        /**
+         * @return value, null on miss
+         */
+        @Nullable
+        byte[] value() {
+            if (status == PartitionService.ERROR)
+                throw new IllegalStateException(new String(value, StandardCharsets.UTF_8));
+            return status == PartitionService.MISS ? null : value;
+        }
+    }
+}
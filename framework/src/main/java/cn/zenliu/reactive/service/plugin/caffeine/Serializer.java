@@ -0,0 +1,134 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: Serializer.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:18:13
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * convert keys and values of cache to bytes, used by off-heap tier and snapshot
+ *
+ * @param <T> type
+ */
+public interface Serializer<T> {
+    byte[] serialize(@NotNull T value);
+
+    T deserialize(@NotNull byte[] bytes);
+
+    /**
+     * java serialization limited to allowed classes, any other class in the stream is rejected before it's loaded.
+     * <b>only for bytes written by this application</b>, such as off-heap tier and snapshot,
+     * {@link PartitionService} accepts it only when peers are authenticated by a secret.
+     *
+     * @param allowed class names, or packages as {@code com.example.*},
+     *                {@code java.lang.Number} and {@code java.lang.Enum} are always allowed for boxed numbers and enums
+     * @return serializer via java serialization, value must be {@link Serializable}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Serializer<T> java(@NotNull String... allowed) {
+        if (allowed.length == 0) throw new IllegalArgumentException("allowed classes of java serialization are required");
+        return (Serializer<T>) new scope.JavaSerializer(allowed);
+    }
+
+    static Serializer<String> string() {
+        return scope.STRING;
+    }
+
+    @UtilityClass
+    class scope {
+        final Serializer<String> STRING = new Serializer<String>() {
+            @Override
+            public byte[] serialize(@NotNull String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(@NotNull byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        /**
+         * java serialization with class allowlist checked in {@link ObjectInputStream#resolveClass}
+         */
+        final class JavaSerializer implements Serializer<Object> {
+            private final Set<String> classes = new HashSet<>(Arrays.asList("java.lang.Number", "java.lang.Enum"));
+            private final List<String> packages = new ArrayList<>();
+
+            JavaSerializer(String... allowed) {
+                for (String a : allowed) {
+                    if (a.endsWith(".*")) packages.add(a.substring(0, a.length() - 1));
+                    else classes.add(a);
+                }
+            }
+
+            boolean isAllowed(String name) {
+                String n = name;
+                while (n.startsWith("[")) n = n.substring(1);
+                //primitive arrays
+                if (n.length() == 1 && n.length() < name.length()) return true;
+                if (n.startsWith("L") && n.endsWith(";")) n = n.substring(1, n.length() - 1);
+                if (classes.contains(n)) return true;
+                for (String p : packages) if (n.startsWith(p)) return true;
+                return false;
+            }
+
+            @Override
+            public byte[] serialize(@NotNull Object value) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+                try (ObjectOutputStream o = new ObjectOutputStream(out)) {
+                    o.writeObject(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return out.toByteArray();
+            }
+
+            @Override
+            public Object deserialize(@NotNull byte[] bytes) {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+                    @Override
+                    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                        if (!isAllowed(desc.getName()))
+                            throw new InvalidClassException(desc.getName(), "not allowed to deserialize");
+                        return super.resolveClass(desc);
+                    }
+
+                    @Override
+                    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+                        throw new InvalidClassException("proxy", "not allowed to deserialize");
+                    }
+                }) {
+                    return in.readObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
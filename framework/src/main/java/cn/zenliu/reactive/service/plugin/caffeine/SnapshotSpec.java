@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: SnapshotSpec.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:26:18
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import com.typesafe.config.Optional;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * snapshot of caches marked with {@link CacheSpec#isPersist()}, configured under {@code caffeine.snapshot}
+ * eg: {@code caffeine.snapshot { file: "data/caches.snapshot", interval: 5m } }
+ */
+@Data
+public class SnapshotSpec {
+    /**
+     * snapshot file, empty to disable
+     */
+    @Optional
+    private String file = "";
+    /**
+     * period of snapshot, zero to disable
+     */
+    @Optional
+    private Duration interval = Duration.ZERO;
+    /**
+     * write snapshot when plugin stopped by {@link cn.zenliu.reactive.service.plugin.PluginManager#shutdown()}
+     */
+    @Optional
+    private boolean onShutdown = true;
+    /**
+     * restore snapshot in background once configured
+     */
+    @Optional
+    private boolean restore = true;
+}
@@ -0,0 +1,411 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TableCache.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:13:39
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.Getter;
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * query result cache, every entry is tagged with tables it reads from and dropped once any of them is written.
+ * <p>
+ * writes are not tracked by key: each {@link #touch(Collection)} stamps tables with a new sequence,
+ * an entry remembers the sequence when its load started and is stale if any of its tables is stamped later.
+ * so a write during a load also discards the result of that load, and invalidation is O(tables written).
+ * <p>
+ * {@link #touch(Collection)} should be called after writes committed: connections of {@link #track(DataSource)}
+ * do it on commit (used by EbeanManager), ReactiveJdbc from its update helpers, others should call it by themselves.
+ * table names are compared in lower case without schema and quotes.
+ */
+public final class TableCache {
+    @Getter
+    private final String name;
+    private final Cache<Object, Entry> cache;
+    private final AtomicLong seq = new AtomicLong();
+    private final Map<String, Long> stamps = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stales = new LongAdder();
+
+    /**
+     * @param cache storage of entries, size and ttl from its spec
+     */
+    public TableCache(@NonNull NamedCache<Object, Entry> cache) {
+        this.name = cache.getName();
+        this.cache = cache.synchronous();
+        Meters.counter("tablecache.hit", "hits of table cache", hits, LongAdder::sum, "cache", name);
+        Meters.counter("tablecache.miss", "misses of table cache, include stale", misses, LongAdder::sum, "cache", name);
+        Meters.counter("tablecache.stale", "entries dropped as tables written", stales, LongAdder::sum, "cache", name);
+    }
+
+    /**
+     * @param key    key of query, eg: sql and parameters
+     * @param loader load value and tables it read, only subscribed on miss
+     * @return cached or loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> get(@NonNull Object key, @NonNull Supplier<? extends Mono<Tagged<T>>> loader) {
+        return Mono.defer(() -> {
+            final Entry e = cache.getIfPresent(key);
+            if (e != null) {
+                if (isValid(e)) {
+                    hits.increment();
+                    return Mono.just((T) e.value);
+                }
+                stales.increment();
+                cache.asMap().remove(key, e);
+            }
+            misses.increment();
+            final long start = seq.get();
+            return loader.get().map(t -> {
+                final Entry n = new Entry(t.value, t.tables, start);
+                if (isValid(n)) cache.put(key, n);
+                return t.value;
+            });
+        });
+    }
+
+    /**
+     * mark tables written, entries read from them become stale
+     */
+    public void touch(@NonNull Collection<String> tables) {
+        if (tables.isEmpty()) return;
+        final long stamp = seq.incrementAndGet();
+        for (String t : tables) stamps.merge(normalize(t), stamp, Math::max);
+    }
+
+    public void touch(@NonNull String... tables) {
+        touch(Arrays.asList(tables));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStales() {
+        return stales.sum();
+    }
+
+    private boolean isValid(Entry e) {
+        for (String t : e.tables) {
+            final Long stamp = stamps.get(t);
+            if (stamp != null && stamp > e.loaded) return false;
+        }
+        return true;
+    }
+
+    //region jdbc
+
+    /**
+     * data source whose connections touch tables written through them once committed.
+     * <p>
+     * 1. tables are taken by {@link #writtenTablesOf(String)} from sql of prepared statements and calls
+     * 2. they are touched after {@code commit}, or on {@code close} in auto commit, dropped on {@code rollback}
+     * 3. statements created without sql are not seen, their writes should be touched by caller
+     */
+    public DataSource track(@NonNull DataSource dataSource) {
+        return new TrackedDataSource(dataSource, this);
+    }
+
+    final class CommitHandler implements InvocationHandler {
+        private final Connection target;
+        private final Set<String> written = new HashSet<>();
+
+        CommitHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String m = method.getName();
+            if (m.equals("equals")) return proxy == args[0];
+            if (m.equals("hashCode")) return System.identityHashCode(proxy);
+            if ((m.equals("prepareStatement") || m.equals("prepareCall")) && args[0] instanceof String)
+                written.addAll(writtenTablesOf((String) args[0]));
+            else if (m.equals("rollback") && args == null) written.clear();
+            //committed already in auto commit, uncommitted work is rolled back by pool on close otherwise
+            final boolean committed = m.equals("close") && !written.isEmpty() && target.getAutoCommit();
+            final Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (committed || m.equals("commit") || m.equals("setAutoCommit") && (Boolean) args[0]) {
+                if (!written.isEmpty()) touch(new ArrayList<>(written));
+                written.clear();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * data source gives connections tracked by a {@link TableCache}
+     */
+    public static final class TrackedDataSource implements DataSource {
+        @Getter
+        private final DataSource delegate;
+        @Getter
+        private final TableCache cache;
+
+        TrackedDataSource(DataSource delegate, TableCache cache) {
+            this.delegate = delegate;
+            this.cache = cache;
+        }
+
+        private Connection wrap(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(TableCache.class.getClassLoader(), new Class<?>[]{Connection.class},
+                cache.new CommitHandler(connection));
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(delegate.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrap(delegate.getConnection(username, password));
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(delegate)) return iface.cast(delegate);
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return delegate.getParentLogger();
+        }
+    }
+    //endregion
+
+    //region sql
+
+    private static final Set<String> NOT_ALIAS = new HashSet<>(Arrays.asList(
+        "where", "join", "inner", "left", "right", "full", "cross", "natural", "outer", "on", "using",
+        "group", "order", "limit", "offset", "having", "union", "except", "intersect", "set", "values",
+        "select", "for", "fetch", "window", "returning", "as"));
+
+    /**
+     * @return tables after {@code from} and {@code join}, include comma separated from lists and sub queries
+     */
+    public static Set<String> tablesOf(@NonNull String sql) {
+        final List<String> tokens = tokens(sql);
+        final Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            final String k = tokens.get(i).toLowerCase();
+            if (!k.equals("from") && !k.equals("join")) continue;
+            int j = i + 1;
+            while (j < tokens.size() && isIdentifier(tokens.get(j))) {
+                tables.add(normalize(tokens.get(j)));
+                j++;
+                if (j < tokens.size() && tokens.get(j).equalsIgnoreCase("as")) j++;
+                if (j < tokens.size() && isIdentifier(tokens.get(j)) && !NOT_ALIAS.contains(tokens.get(j).toLowerCase())) j++;
+                if (!k.equals("from") || j >= tokens.size() || !tokens.get(j).equals(",")) break;
+                j++;
+            }
+        }
+        return tables;
+    }
+
+    private static final Set<String> WRITES = new HashSet<>(Arrays.asList(
+        "update", "insert", "merge", "replace", "delete", "truncate"));
+
+    /**
+     * @return table written by insert, update, delete, merge, replace or truncate statement, empty for others
+     */
+    public static Set<String> writtenTablesOf(@NonNull String sql) {
+        //leading word checked first, queries are not tokenized
+        int begin = 0;
+        while (begin < sql.length() && Character.isWhitespace(sql.charAt(begin))) begin++;
+        int end = begin;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) end++;
+        final String verb = sql.substring(begin, end).toLowerCase();
+        if (!WRITES.contains(verb)) return Collections.emptySet();
+        final List<String> tokens = tokens(sql);
+        if (!tokens.get(0).equalsIgnoreCase(verb)) return Collections.emptySet();
+        int i;
+        switch (verb) {
+            case "update":
+                i = 1;
+                break;
+            case "insert":
+            case "merge":
+            case "replace":
+            case "delete":
+            case "truncate":
+                i = 1;
+                while (i < tokens.size() && !isIdentifier(tokens.get(i))) i++;
+                if (i < tokens.size() && (tokens.get(i).equalsIgnoreCase("into") || tokens.get(i).equalsIgnoreCase("from")
+                    || tokens.get(i).equalsIgnoreCase("table"))) i++;
+                break;
+            default:
+                return Collections.emptySet();
+        }
+        return i < tokens.size() && isIdentifier(tokens.get(i))
+            ? Collections.singleton(normalize(tokens.get(i)))
+            : Collections.emptySet();
+    }
+
+    /**
+     * @return name in lower case without schema and quotes
+     */
+    public static String normalize(@NonNull String table) {
+        String t = table;
+        final int dot = t.lastIndexOf('.');
+        if (dot >= 0) t = t.substring(dot + 1);
+        final StringBuilder b = new StringBuilder(t.length());
+        for (int i = 0; i < t.length(); i++) {
+            final char c = t.charAt(i);
+            if (c != '"' && c != '`' && c != '[' && c != ']') b.append(Character.toLowerCase(c));
+        }
+        return b.toString();
+    }
+
+    private static boolean isIdentifier(String token) {
+        final char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+    }
+
+    private static List<String> tokens(String sql) {
+        final List<String> tokens = new ArrayList<>();
+        final int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            final char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                i++;
+                while (i < n && sql.charAt(i) != '\'') i++;
+                i++;
+                tokens.add("'");
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '"' || c == '`' || c == '[') {
+                final int begin = i;
+                while (i < n) {
+                    final char d = sql.charAt(i);
+                    if (d == '"' || d == '`' || d == '[') {
+                        final char close = d == '[' ? ']' : d;
+                        i++;
+                        while (i < n && sql.charAt(i) != close) i++;
+                        i++;
+                    } else if (Character.isLetterOrDigit(d) || d == '_' || d == '$' || d == '.') i++;
+                    else break;
+                }
+                tokens.add(sql.substring(begin, Math.min(i, n)));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+    //endregion
+
+    /**
+     * loaded value with tables it read
+     */
+    public static final class Tagged<T> {
+        final T value;
+        final String[] tables;
+
+        private Tagged(T value, String[] tables) {
+            this.value = value;
+            this.tables = tables;
+        }
+
+        public static <T> Tagged<T> of(@NonNull T value, @NonNull Collection<String> tables) {
+            final String[] ts = new String[tables.size()];
+            int i = 0;
+            for (String t : tables) ts[i++] = normalize(t);
+            return new Tagged<>(value, ts);
+        }
+    }
+
+    /**
+     * cached value, with sequence when its load started
+     */
+    public static final class Entry {
+        final Object value;
+        final String[] tables;
+        final long loaded;
+
+        Entry(Object value, String[] tables, long loaded) {
+            this.value = value;
+            this.tables = tables;
+            this.loaded = loaded;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TtlExpiry.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:19:02
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * variable expiry equals to expireAfterWrite / expireAfterAccess of {@link CacheSpec},
+ * but entries put back from other places (off-heap tier, snapshot) keep their original deadline.
+ * <p>
+ * when both write and access ttl defined, write ttl wins on read.
+ */
+final class TtlExpiry implements Expiry<Object, Object> {
+    static final long NEVER = Long.MAX_VALUE;
+    private final long write;
+    private final long access;
+    private final Map<Object, Long> deadlines = new ConcurrentHashMap<>();
+
+    TtlExpiry(@Nullable Duration write, @Nullable Duration access) {
+        this.write = write == null ? NEVER : write.toNanos();
+        this.access = access == null ? NEVER : access.toNanos();
+    }
+
+    /**
+     * @param now epoch millis
+     * @return epoch millis of deadline of an entry written at now
+     */
+    long deadlineOf(long now) {
+        final long ttl = write != NEVER ? write : access;
+        return ttl == NEVER ? NEVER : now + TimeUnit.NANOSECONDS.toMillis(ttl);
+    }
+
+    /**
+     * @param now epoch millis
+     * @return epoch millis of deadline registered by {@link #restore}, or of an entry written at now
+     */
+    long deadlineOf(Object key, long now) {
+        final Long at = deadlines.get(key);
+        return at == null ? deadlineOf(now) : at;
+    }
+
+    /**
+     * next create or update of key uses this deadline instead of ttl
+     *
+     * @param expireAt epoch millis
+     */
+    void restore(Object key, long expireAt) {
+        deadlines.put(key, expireAt);
+    }
+
+    /**
+     * drop deadline registered by {@link #restore} but not used
+     */
+    void discard(Object key) {
+        deadlines.remove(key);
+    }
+
+    private long created(Object key) {
+        final Long at = deadlines.remove(key);
+        if (at == null || at == NEVER) return write != NEVER ? write : access;
+        return Math.max(0, TimeUnit.MILLISECONDS.toNanos(at - System.currentTimeMillis()));
+    }
+
+    @Override
+    public long expireAfterCreate(@NotNull Object key, @NotNull Object value, long currentTime) {
+        return created(key);
+    }
+
+    @Override
+    public long expireAfterUpdate(@NotNull Object key, @NotNull Object value, long currentTime, long currentDuration) {
+        return created(key);
+    }
+
+    @Override
+    public long expireAfterRead(@NotNull Object key, @NotNull Object value, long currentTime, long currentDuration) {
+        return write == NEVER && access != NEVER ? access : currentDuration;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CaffeineCachePlugin.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:11:29
+ */
+
+package cn.zenliu.reactive.service.plugin.ebean;
+
+import cn.zenliu.reactive.service.plugin.caffeine.CacheSpec;
+import cn.zenliu.reactive.service.plugin.caffeine.CaffeineManager;
+import cn.zenliu.reactive.service.plugin.caffeine.NamedCache;
+import cn.zenliu.reactive.service.plugin.caffeine.TableCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.ebean.BackgroundExecutor;
+import io.ebean.cache.*;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ebean L2 cache on named caches of {@link CaffeineManager}, covers bean, natural key, collection ids and query caches.
+ * <p>
+ * cache of an entity type is named {@code ebean-<shortName>}, eg: {@code ebean-Customer_B} for beans,
+ * {@code ebean-Customer_N} for natural keys, {@code ebean-Customer_Q} for queries,
+ * spec is taken from {@code caffeine.caches.<name>} when declared,
+ * otherwise from ebean options: {@code @Cache} tuning or {@code ebean.cacheMaxSize|cacheMaxIdleTime|cacheMaxTimeToLive}
+ * ({@code ebean.queryCache*} for query caches), mapped to maximumSize, expireAfterAccess and expireAfterWrite,
+ * with recordStats on. a declared spec with recordStats off makes hit ratio and statistics of ebean report zero.
+ * <p>
+ * entities marked with {@code @Cache} are then found by id (and natural key) from memory without touching database,
+ * ebean keeps the caches consistent on local writes. notification to other nodes is not supported, caches are local.
+ * <p>
+ * tables of cached beans touched by committed transactions are passed to an optional listener,
+ * used by EbeanManager for its {@link TableCache} when ebean creates its own data source.
+ */
+@Slf4j
+public final class CaffeineCachePlugin implements ServerCachePlugin {
+    public static final String PREFIX = "ebean-";
+    private final Supplier<CaffeineManager> manager;
+    @Nullable
+    private final Consumer<Set<String>> touched;
+
+    /**
+     * @param manager supplier of cache manager, called when ebean creates caches
+     * @param touched listener of tables touched by committed transactions
+     */
+    public CaffeineCachePlugin(@NonNull Supplier<CaffeineManager> manager, @Nullable Consumer<Set<String>> touched) {
+        this.manager = manager;
+        this.touched = touched;
+    }
+
+    public CaffeineCachePlugin(@NonNull Supplier<CaffeineManager> manager) {
+        this(manager, null);
+    }
+
+    public CaffeineCachePlugin() {
+        this(CaffeineManager::getHardInstance);
+    }
+
+    /**
+     * config and executor are not used, caches are created by {@link CaffeineManager}.
+     * ebean 12.3 plugin contract still takes the deprecated {@link io.ebean.config.ServerConfig}
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public ServerCacheFactory create(io.ebean.config.ServerConfig config, BackgroundExecutor executor) {
+        return new Factory(manager.get(), touched);
+    }
+
+    /**
+     * @return spec of ebean cache options, stats are always recorded as ebean reads hit ratio and statistics from them
+     */
+    static CacheSpec specOf(@Nullable ServerCacheOptions options) {
+        final CacheSpec spec = new CacheSpec();
+        spec.setRecordStats(true);
+        if (options == null) return spec;
+        if (options.getMaxSize() > 0) spec.setMaximumSize(options.getMaxSize());
+        if (options.getMaxIdleSecs() > 0) spec.setExpireAfterAccess(Duration.ofSeconds(options.getMaxIdleSecs()));
+        if (options.getMaxSecsToLive() > 0) spec.setExpireAfterWrite(Duration.ofSeconds(options.getMaxSecsToLive()));
+        return spec;
+    }
+
+    static final class Factory implements ServerCacheFactory {
+        private final CaffeineManager manager;
+        @Nullable
+        private final Consumer<Set<String>> touched;
+
+        Factory(CaffeineManager manager, @Nullable Consumer<Set<String>> touched) {
+            this.manager = manager;
+            this.touched = touched;
+        }
+
+        @Override
+        public ServerCache createCache(ServerCacheConfig config) {
+            final String name = PREFIX + config.getShortName();
+            final CacheSpec spec = manager.declare(name, specOf(config.getCacheOptions()));
+            log.debug("ebean {} cache {} with {}", config.getType(), name, spec);
+            if (!spec.isRecordStats())
+                log.warn("ebean cache {} declared with recordStats off, hit ratio and statistics stay zero", name);
+            final NamedCache<Object, Object> cache = manager.getCache(name);
+            return new CaffeineServerCache(cache, spec, config);
+        }
+
+        @Override
+        public ServerCacheNotify createCacheNotify(ServerCacheNotify listener) {
+            return notification -> {
+                if (touched != null) touched.accept(notification.getDependentTables());
+            };
+        }
+    }
+
+    /**
+     * ebean cache view of a named cache, values of query cache are {@link QueryCacheEntry} validated on read
+     */
+    public static final class CaffeineServerCache implements ServerCache {
+        @Getter
+        private final NamedCache<Object, Object> cache;
+        private final Cache<Object, Object> sync;
+        private final long maxSize;
+        @Nullable
+        private final TenantAwareKey tenantKey;
+        @Nullable
+        private final QueryCacheEntryValidate validate;
+        private final LongAdder puts = new LongAdder();
+        private final LongAdder removes = new LongAdder();
+        private final LongAdder clears = new LongAdder();
+
+        CaffeineServerCache(NamedCache<Object, Object> cache, CacheSpec spec, ServerCacheConfig config) {
+            this.cache = cache;
+            this.sync = cache.synchronous();
+            this.maxSize = spec.getMaximumSize();
+            this.tenantKey = config.getTenantProvider() == null ? null : new TenantAwareKey(config.getTenantProvider());
+            this.validate = config.isQueryCache() ? config.getQueryCacheEntryValidate() : null;
+        }
+
+        private Object key(Object key) {
+            return tenantKey == null ? key : tenantKey.key(key);
+        }
+
+        @Override
+        public Object get(Object id) {
+            final Object key = key(id);
+            final Object value = sync.getIfPresent(key);
+            if (value == null || validate == null) return value;
+            final QueryCacheEntry entry = (QueryCacheEntry) value;
+            if (validate.isValid(entry)) return entry.getValue();
+            sync.invalidate(key);
+            removes.increment();
+            return null;
+        }
+
+        @Override
+        public void put(Object id, Object value) {
+            sync.put(key(id), value);
+            puts.increment();
+        }
+
+        @Override
+        public void remove(Object id) {
+            sync.invalidate(key(id));
+            removes.increment();
+        }
+
+        @Override
+        public void clear() {
+            sync.invalidateAll();
+            clears.increment();
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, cache.estimatedSize());
+        }
+
+        @Override
+        public int getHitRatio() {
+            return (int) Math.round(cache.stats().hitRate() * 100);
+        }
+
+        @Override
+        public ServerCacheStatistics getStatistics(boolean reset) {
+            final CacheStats stats = cache.stats();
+            final ServerCacheStatistics s = new ServerCacheStatistics();
+            s.setCacheName(cache.getName());
+            s.setMaxSize((int) Math.min(Integer.MAX_VALUE, maxSize));
+            s.setSize(size());
+            s.setHitCount(stats.hitCount());
+            s.setMissCount(stats.missCount());
+            s.setEvictCount(stats.evictionCount());
+            s.setPutCount(reset ? puts.sumThenReset() : puts.sum());
+            s.setRemoveCount(reset ? removes.sumThenReset() : removes.sum());
+            s.setClearCount(reset ? clears.sumThenReset() : clears.sum());
+            return s;
+        }
+    }
+}
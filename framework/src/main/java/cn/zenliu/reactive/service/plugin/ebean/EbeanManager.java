@@ -21,25 +21,131 @@
 
 package cn.zenliu.reactive.service.plugin.ebean;
 
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
 import cn.zenliu.reactive.service.plugin.Plugin;
+import cn.zenliu.reactive.service.plugin.caffeine.CacheSpec;
+import cn.zenliu.reactive.service.plugin.caffeine.CaffeineManager;
+import cn.zenliu.reactive.service.plugin.caffeine.TableCache;
+import cn.zenliu.reactive.service.plugin.hikari.HikariManager;
+import cn.zenliu.reactive.service.plugin.hikari.RoutingDataSource;
+import cn.zenliu.reactive.service.plugin.hikari.StatementTiming;
+import cn.zenliu.reactive.service.util.BatchLoader;
 import cn.zenliu.reactive.service.util.Singleton;
+import cn.zenliu.reactive.service.util.WriteBehind;
+import com.zaxxer.hikari.HikariDataSource;
 import io.ebean.Database;
 import io.ebean.DatabaseFactory;
+import io.ebean.Query;
+import io.ebean.QueryIterator;
+import io.ebean.Transaction;
+import io.ebean.bean.EntityBean;
+import io.ebean.bean.EntityBeanIntercept;
 import io.ebean.config.DatabaseConfig;
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.Nullable;
 
-import java.util.Optional;
-import java.util.Properties;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.function.Function;
 
+/**
+ * configuration example
+ * {@code ebean.writeBehind.window  milliseconds a write stays in buffer, default 5 }
+ * {@code ebean.writeBehind.maxBatch  flush immediately when buffered writes reach this, default 500 }
+ * {@code ebean.caffeineCache  use {@link CaffeineCachePlugin} as L2 cache when caffeine present, default true }
+ * {@code ebean.readReplicas  use replicas of a {@link RoutingDataSource} as read only data source, default false.
+ * ebean then runs read only transactions and every query outside a transaction on replicas,
+ * which may not see writes just committed: enable only when such queries tolerate replica lag }
+ * {@code caffeine.caches.ebean-tables-<db>  spec of {@link #getTableCache()}, default maximumSize 10000 }
+ * {@code ebean.*  }
+ */
+@Plugin.DependsOn(HikariManager.class)
 public interface EbeanManager extends Plugin {
+    String PROP_WRITE_BEHIND_WINDOW = "ebean.writeBehind.window";
+    String PROP_WRITE_BEHIND_MAX_BATCH = "ebean.writeBehind.maxBatch";
+    String PROP_CAFFEINE_CACHE = "ebean.caffeineCache";
+    String PROP_READ_REPLICAS = "ebean.readReplicas";
+
     //region SPI define
     void init(Properties conf, @Nullable Function<@NonNull DatabaseConfig, @NonNull DatabaseConfig> configurator);
 
     Optional<Database> getDatabase();
+
+    /**
+     * stream query result with {@link Query#findIterate()}, a bean is read only when requested by downstream,
+     * so memory stays flat regardless of result size.
+     * <p>
+     * runs on a scheduler sized to connections of the database,
+     * the transaction of query is held until the flux terminated or cancelled.
+     * route of subscriber context is bound when query executed, see {@link StatementTiming#swapRoute}.
+     *
+     * @param query     query, should not fetch many relations which will be loaded eagerly
+     * @param fetchSize rows fetched from database per round trip
+     * @throws IllegalStateException when not initialized
+     */
+    <T> Flux<T> stream(@NonNull Query<T> query, int fetchSize);
+
+    /**
+     * insert bean with write behind: inserts and updates from concurrent callers are collected for a short window,
+     * then executed in one transaction with jdbc batch (one batch per table).
+     * if the transaction failed, beans are put back to state before it (generated ids, versions, dirty properties),
+     * then writes of it are retried one by one so each caller get its own error.
+     *
+     * @return mono of the bean after inserted
+     * @throws IllegalStateException when not initialized
+     */
+    <T> Mono<T> insertBehind(@NonNull T bean);
+
+    /**
+     * update bean with write behind
+     *
+     * @see #insertBehind(Object)
+     */
+    <T> Mono<T> updateBehind(@NonNull T bean);
+
+    /**
+     * batch loader of beans by a property, loads within window are sent as one {@code where property in (...)} query.
+     * meters are named by database, type and property, so close the loader when no longer used.
+     *
+     * @param type     bean type
+     * @param property property of key, eg: "id"
+     * @param keyOf    read key from bean, should be same as property
+     * @param window   max time a load waits for others, zero for one tick
+     * @param maxBatch max keys in one query
+     * @throws IllegalStateException when not initialized
+     */
+    <K, T> BatchLoader<K, T> loader(@NonNull Class<T> type, @NonNull String property, @NonNull Function<T, K> keyOf,
+                                    @NonNull Duration window, int maxBatch);
+
+    /**
+     * query result cache of this database, entries are dropped when ebean commits changes to tables they read,
+     * of any entity or {@link io.ebean.SqlUpdate}: connections of the data source are tracked by {@link TableCache#track}.
+     * when ebean creates its own data source only commits of cached beans are seen via {@link CaffeineCachePlugin}.
+     * share it with ReactiveJdbc on same database so writes from both sides invalidate both.
+     *
+     * @throws IllegalStateException when not initialized or caffeine not present
+     */
+    TableCache getTableCache();
+
+    /**
+     * find list via {@link #getTableCache()}, tagged with tables in generated sql.
+     * misses are loaded in a transaction on primary, a replica may not have the writes touched before,
+     * with route of subscriber context bound, see {@link StatementTiming#swapRoute}.
+     *
+     * @param key   key of query, eg: name of query and its parameters
+     * @param query query
+     * @return unmodifiable list of beans, shared by callers, must not be modified
+     * @throws IllegalStateException when not initialized or caffeine not present
+     */
+    <T> Mono<List<T>> findCached(@NonNull Object key, @NonNull Query<T> query);
     //endregion
 
     //region SPI template
@@ -65,20 +171,215 @@ public interface EbeanManager extends Plugin {
                 EbeanManagerImpl::new,
                 EbeanManager.class
             );
+        final boolean CAFFEINE_AVAILABLE = isCaffeineAvailable();
 
+        private boolean isCaffeineAvailable() {
+            try {
+                Class.forName("com.github.benmanes.caffeine.cache.Caffeine");
+                return true;
+            } catch (Throwable e) {
+                return false;
+            }
+        }
 
         @Slf4j
         final class EbeanManagerImpl implements EbeanManager {
             //region SPI impl
             private Database ds;
+            private Scheduler scheduler;
+            private WriteBehind<Class<?>, Write, Object> writeBehind;
+            private volatile TableCache tableCache;
 
             @Override
             public void init(Properties conf, @Nullable Function<@NonNull DatabaseConfig, @NonNull DatabaseConfig> configurator) {
                 DatabaseConfig cfg = new DatabaseConfig();
                 cfg.loadFromProperties();
                 cfg.loadFromProperties(conf);
+                if (cfg.getServerCachePlugin() == null && CAFFEINE_AVAILABLE
+                    && Boolean.parseBoolean(conf.getProperty(PROP_CAFFEINE_CACHE, "true")))
+                    cfg.setServerCachePlugin(new CaffeineCachePlugin(CaffeineManager::getHardInstance, this::touched));
                 if (configurator != null) cfg = configurator.apply(cfg);
+                if (CAFFEINE_AVAILABLE) {
+                    final CaffeineManager caches = CaffeineManager.getHardInstance();
+                    final String name = CaffeineCachePlugin.PREFIX + "tables-" + cfg.getName();
+                    final CacheSpec spec = new CacheSpec();
+                    spec.setMaximumSize(10000);
+                    caches.declare(name, spec);
+                    tableCache = new TableCache(caches.getCache(name));
+                }
+                //opt-in: queries without transaction go to replicas too, reads after own writes may miss them
+                if (Boolean.parseBoolean(conf.getProperty(PROP_READ_REPLICAS, "false"))
+                    && cfg.getDataSource() != null && cfg.getReadOnlyDataSource() == null) {
+                    final DataSource raw = StatementTiming.unwrap(cfg.getDataSource());
+                    final StatementTiming timing = StatementTiming.timingOf(cfg.getDataSource());
+                    if (raw instanceof RoutingDataSource) {
+                        final DataSource ro = ((RoutingDataSource) raw).readOnly();
+                        cfg.setReadOnlyDataSource(timing == null ? ro : timing.wrap(ro));
+                    }
+                }
+                final int maxConnections = maxConnectionsOf(cfg);
+                if (tableCache != null) {
+                    //every commit of ebean touches tables it wrote, cached beans or not, sql updates included
+                    if (cfg.getDataSource() != null) cfg.setDataSource(tableCache.track(cfg.getDataSource()));
+                    else if (cfg.getServerCachePlugin() instanceof CaffeineCachePlugin)
+                        log.warn("ebean of {} creates own data source, table cache only sees commits of cached beans", cfg.getName());
+                    else
+                        log.warn("ebean of {} creates own data source and not use CaffeineCachePlugin, table cache will not see commits of ebean", cfg.getName());
+                }
                 ds = DatabaseFactory.create(cfg);
+                if (scheduler != null) scheduler.dispose();
+                scheduler = Schedulers.newBoundedElastic(maxConnections, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "ebean-" + cfg.getName(), 60, true);
+                if (writeBehind != null) writeBehind.close();
+                writeBehind = WriteBehind.create("ebean-" + cfg.getName(),
+                    Duration.ofMillis(Long.parseLong(conf.getProperty(PROP_WRITE_BEHIND_WINDOW, "5"))),
+                    Integer.parseInt(conf.getProperty(PROP_WRITE_BEHIND_MAX_BATCH, "500")),
+                    scheduler,
+                    this::flush);
+            }
+
+            private void touched(Set<String> tables) {
+                final TableCache cache = tableCache;
+                if (cache != null) cache.touch(tables);
+            }
+
+            @Override
+            public TableCache getTableCache() {
+                final TableCache cache = tableCache;
+                if (cache == null) throw new IllegalStateException("table cache not available, ebean not initialized or caffeine not present");
+                return cache;
+            }
+
+            @Override
+            public <T> Mono<List<T>> findCached(@NonNull Object key, @NonNull Query<T> query) {
+                final Database db = ds;
+                final Scheduler on = scheduler;
+                if (db == null || on == null) return Mono.error(new IllegalStateException("ebean not initialized"));
+                return getTableCache().get(key, () -> routed(() -> {
+                    //queries without transaction may go to a lagging replica
+                    try (Transaction txn = db.createTransaction()) {
+                        final List<T> beans = query.usingTransaction(txn).findList();
+                        return TableCache.Tagged.of(Collections.unmodifiableList(beans), TableCache.tablesOf(query.getGeneratedSql()));
+                    }
+                }, on));
+            }
+
+            /**
+             * run blocking work on scheduler with route of subscriber context bound, see {@link StatementTiming#swapRoute}
+             */
+            private static <T> Mono<T> routed(Callable<T> work, Scheduler on) {
+                return Mono.subscriberContext().flatMap(ctx -> {
+                    final String route = ctx.getOrDefault(RequestUtil.ROUTE, null);
+                    return Mono.fromCallable(() -> {
+                        final String prev = StatementTiming.swapRoute(route);
+                        try {
+                            return work.call();
+                        } finally {
+                            StatementTiming.swapRoute(prev);
+                        }
+                    }).subscribeOn(on);
+                });
+            }
+
+            private Map<Class<?>, List<Object>> flush(Map<Class<?>, List<Write>> groups) {
+                int size = 0;
+                for (List<Write> ws : groups.values()) size += ws.size();
+                final Map<Class<?>, List<Object>> results = new LinkedHashMap<>();
+                for (List<Write> ws : groups.values()) for (Write w : ws) w.mark();
+                try (Transaction txn = ds.beginTransaction()) {
+                    txn.setBatchMode(true);
+                    txn.setBatchSize(size);
+                    groups.forEach((type, ws) -> {
+                        final List<Object> beans = new ArrayList<>(ws.size());
+                        for (Write w : ws) {
+                            if (w.insert) ds.insert(w.bean, txn);
+                            else ds.update(w.bean, txn);
+                            beans.add(w.bean);
+                        }
+                        results.put(type, beans);
+                    });
+                    txn.commit();
+                } catch (RuntimeException e) {
+                    //statements executed before failure left ids, versions and loaded state on beans
+                    for (List<Write> ws : groups.values()) for (Write w : ws) w.restore();
+                    throw e;
+                }
+                return results;
+            }
+
+            private static int maxConnectionsOf(DatabaseConfig cfg) {
+                final DataSource raw = cfg.getDataSource() == null ? null : StatementTiming.unwrap(cfg.getDataSource());
+                if (raw instanceof HikariDataSource)
+                    return ((HikariDataSource) raw).getMaximumPoolSize();
+                if (raw instanceof RoutingDataSource)
+                    return ((RoutingDataSource) raw).getPrimary().getMaximumPoolSize()
+                        + ((RoutingDataSource) raw).getReadPoolSize();
+                if (cfg.getDataSourceConfig() != null && cfg.getDataSourceConfig().getMaxConnections() > 0)
+                    return cfg.getDataSourceConfig().getMaxConnections();
+                return Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+            }
+
+            @Override
+            public <T> Flux<T> stream(@NonNull Query<T> query, int fetchSize) {
+                final Scheduler on = scheduler;
+                if (on == null) return Flux.error(new IllegalStateException("ebean not initialized"));
+                return Flux.deferWithContext(ctx -> {
+                    final String route = ctx.getOrDefault(RequestUtil.ROUTE, null);
+                    return Flux.<T, QueryIterator<T>>generate(
+                        () -> {
+                            //statement is executed here, rows fetched later are timed against it
+                            final String prev = StatementTiming.swapRoute(route);
+                            try {
+                                return query.setBufferFetchSizeHint(fetchSize).findIterate();
+                            } finally {
+                                StatementTiming.swapRoute(prev);
+                            }
+                        },
+                        (itr, sink) -> {
+                            if (itr.hasNext()) sink.next(itr.next());
+                            else sink.complete();
+                            return itr;
+                        },
+                        QueryIterator::close);
+                })
+                    .subscribeOn(on);
+            }
+
+            @Override
+            public <T> Mono<T> insertBehind(@NonNull T bean) {
+                return behind(new Write(true, bean));
+            }
+
+            @Override
+            public <T> Mono<T> updateBehind(@NonNull T bean) {
+                return behind(new Write(false, bean));
+            }
+
+            @Override
+            public <K, T> BatchLoader<K, T> loader(@NonNull Class<T> type, @NonNull String property, @NonNull Function<T, K> keyOf,
+                                                   @NonNull Duration window, int maxBatch) {
+                final Database db = ds;
+                final Scheduler on = scheduler;
+                if (db == null || on == null) throw new IllegalStateException("ebean not initialized");
+                return BatchLoader.create(db.getName() + ":" + type.getName() + "." + property, keys -> Mono.fromCallable(() -> {
+                    final Map<K, T> result = new HashMap<>();
+                    for (T bean : db.find(type).where().in(property, keys).findList()) result.put(keyOf.apply(bean), bean);
+                    return result;
+                }).subscribeOn(on), window, maxBatch, Schedulers.parallel());
+            }
+
+            @SuppressWarnings("unchecked")
+            private <T> Mono<T> behind(Write write) {
+                final WriteBehind<Class<?>, Write, Object> wb = writeBehind;
+                if (wb == null) return Mono.error(new IllegalStateException("ebean not initialized"));
+                return wb.submit(write.bean.getClass(), write).map(b -> (T) b);
+            }
+
+            @Override
+            public void stop() {
+                if (writeBehind != null) writeBehind.close();
+                writeBehind = null;
+                if (scheduler != null) scheduler.dispose();
+                scheduler = null;
             }
 
             @Override
@@ -88,6 +389,44 @@ public interface EbeanManager extends Plugin {
             //endregion
 
         }
+
+        final class Write {
+            final boolean insert;
+            final Object bean;
+            /**
+             * fields and state of bean before flush, null when bean not enhanced
+             */
+            private Object[] fields;
+            private boolean fresh;
+            private boolean[] dirty;
+
+            Write(boolean insert, Object bean) {
+                this.insert = insert;
+                this.bean = bean;
+            }
+
+            void mark() {
+                if (!(bean instanceof EntityBean)) return;
+                final EntityBean eb = (EntityBean) bean;
+                final EntityBeanIntercept ib = eb._ebean_getIntercept();
+                fields = new Object[eb._ebean_getPropertyNames().length];
+                for (int i = 0; i < fields.length; i++) fields[i] = eb._ebean_getField(i);
+                fresh = ib.isNew();
+                dirty = ib.getDirtyProperties().clone();
+            }
+
+            /**
+             * put bean back to state of {@link #mark()}, so it can be written again in another transaction
+             */
+            void restore() {
+                if (fields == null) return;
+                final EntityBean eb = (EntityBean) bean;
+                final EntityBeanIntercept ib = eb._ebean_getIntercept();
+                for (int i = 0; i < fields.length; i++) eb._ebean_setField(i, fields[i]);
+                if (fresh) ib.setNew();
+                for (int i = 0; i < dirty.length; i++) if (dirty[i]) ib.markPropertyAsChanged(i);
+            }
+        }
     }
 
 }
\ No newline at end of file
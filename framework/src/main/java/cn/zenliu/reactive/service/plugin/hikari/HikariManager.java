@@ -24,21 +24,103 @@ package cn.zenliu.reactive.service.plugin.hikari;
 
 import cn.zenliu.reactive.service.plugin.Plugin;
 import cn.zenliu.reactive.service.util.Singleton;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Mono;
 
 import javax.sql.DataSource;
-import java.util.Properties;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
 import java.util.function.Function;
 
+/**
+ * configuration example
+ * {@code hikari.*  properties of {@link HikariConfig} for the default (primary) pool }
+ * {@code hikari.pools.<name>.*  named pool, inherits properties of default pool, poolName default to name }
+ * {@code hikari.replicas  string comma separated names of pools used as read replicas of default pool }
+ * {@code hikari.readPolicy  round-robin|least-active, default round-robin }
+ * {@code hikari.replicaRetry  duration a failed replica is skipped before tried again, default 10s }
+ * {@code hikari.tuning.*  {@link PoolTuning} of warmup and adaptive sizing, inherited by named pools }
+ * {@code hikari.timing.enable  wrap default data source by {@link StatementTiming}, default false }
+ * {@code hikari.timing.slowThreshold  duration of slow statement log, default 1s, zero to disable }
+ * {@code hikari.timing.maxQueries  max distinct statements tracked, default 500 }
+ * {@code hikari.snapshots.<name>.*  {@link TableSpec} of a table kept in memory, see {@link #getSnapshot(String)} }
+ */
 public interface HikariManager extends Plugin {
+    String DEFAULT_POOL = "default";
+    String PROP_POOLS = "pools.";
+    String PROP_REPLICAS = "replicas";
+    String PROP_READ_POLICY = "readPolicy";
+    String PROP_REPLICA_RETRY = "replicaRetry";
+    String PROP_TUNING = "tuning.";
+    String PROP_TIMING = "timing.";
+    String PROP_SNAPSHOTS = "snapshots.";
+
     //region SPI define
     void configuration(@Nullable Properties conf);
 
-    DataSource getDataSource(Function<HikariConfig, HikariConfig> configurator);
+    /**
+     * @param configurator applied to default pool when it's created by this call, a later one is ignored with a warning
+     * @return default data source, a {@link RoutingDataSource} when replicas configured
+     */
+    DataSource getDataSource(@Nullable Function<HikariConfig, HikariConfig> configurator);
+
+    /**
+     * @param name name of pool declared in {@code pools}, or {@link #DEFAULT_POOL}
+     * @return pool, created on first use except default one, which is created by {@link #getDataSource} with its configurator
+     * @throws IllegalArgumentException when pool not declared
+     * @throws IllegalStateException    when default pool not created yet
+     */
+    HikariDataSource getPool(@NonNull String name);
+
+    /**
+     * @return names of declared pools, include {@link #DEFAULT_POOL}
+     */
+    Set<String> getPoolNames();
+
+    /**
+     * @param name name of pool declared in {@code pools}, or {@link #DEFAULT_POOL}
+     * @return metrics of pool, see {@link #getPool(String)}
+     * @throws IllegalArgumentException when pool not declared
+     * @throws IllegalStateException    when default pool not created yet
+     */
+    PoolMetrics getPoolMetrics(@NonNull String name);
+
+    /**
+     * @return statement timing of default data source, null when not enabled
+     */
+    @Nullable
+    StatementTiming getStatementTiming();
+
+    /**
+     * reactive facade on the default data source, running on a scheduler sized to the pool.
+     * {@link ReactiveJdbc#readOnly()} routes to replicas when configured
+     *
+     * @param configurator used only when data source not created yet
+     */
+    ReactiveJdbc getReactiveJdbc(@Nullable Function<HikariConfig, HikariConfig> configurator);
+
+    /**
+     * table snapshot declared in {@code snapshots}, loaded via {@link ReactiveJdbc#readOnly()} of default data source.
+     * started on first use and kept refreshing until stop
+     *
+     * @param name name of snapshot
+     * @return snapshot after first load, failed load is retried by next call
+     * @throws IllegalArgumentException when snapshot not declared
+     */
+    Mono<TableSnapshot> getSnapshot(@NonNull String name);
+
+    /**
+     * @return names of declared snapshots
+     */
+    Set<String> getSnapshotNames();
     //endregion
 
     //region SPI template
@@ -68,26 +150,204 @@ public interface HikariManager extends Plugin {
     final class HikariManagerImpl implements HikariManager {
 
         //region SPI impl
-        private Properties conf;
+        private static final Config TIMING_DEFAULTS = ConfigFactory.parseString("timing { enable: false, slowThreshold: 1s, maxQueries: 500 }");
+        private Properties conf = new Properties();
+        private final Map<String, Properties> declared = new LinkedHashMap<>();
+        private List<String> replicaNames = Collections.emptyList();
+        private RoutingDataSource.Policy readPolicy = RoutingDataSource.Policy.ROUND_ROBIN;
+        private Duration replicaRetry = RoutingDataSource.DEFAULT_RETRY_AFTER;
+        private Properties timingConf = new Properties();
+        private final Map<String, Properties> snapshotConf = new LinkedHashMap<>();
+        private StatementTiming timing;
 
         @Override
-        public void configuration(Properties conf) {
-            this.conf = conf;
+        public synchronized void configuration(Properties conf) {
+            this.conf = new Properties();
+            declared.clear();
+            replicaNames = Collections.emptyList();
+            readPolicy = RoutingDataSource.Policy.ROUND_ROBIN;
+            replicaRetry = RoutingDataSource.DEFAULT_RETRY_AFTER;
+            timingConf = new Properties();
+            snapshotConf.clear();
+            if (conf == null) return;
+            final Map<String, Properties> named = new LinkedHashMap<>();
+            conf.stringPropertyNames().forEach(key -> {
+                final String value = conf.getProperty(key);
+                if (key.startsWith(PROP_POOLS)) {
+                    final int dot = key.indexOf('.', PROP_POOLS.length());
+                    if (dot < 0) return;
+                    named.computeIfAbsent(key.substring(PROP_POOLS.length(), dot), k -> new Properties())
+                        .setProperty(key.substring(dot + 1), value);
+                } else if (key.equals(PROP_REPLICAS)) {
+                    final List<String> names = new ArrayList<>();
+                    for (String n : value.split(",")) if (!n.trim().isEmpty()) names.add(n.trim());
+                    replicaNames = names;
+                } else if (key.equals(PROP_READ_POLICY)) {
+                    readPolicy = RoutingDataSource.Policy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+                } else if (key.equals(PROP_REPLICA_RETRY)) {
+                    replicaRetry = ConfigFactory.parseMap(Collections.singletonMap(key, value)).getDuration(key);
+                } else if (key.startsWith(PROP_TIMING)) {
+                    timingConf.setProperty(key, value);
+                } else if (key.startsWith(PROP_SNAPSHOTS)) {
+                    final int dot = key.indexOf('.', PROP_SNAPSHOTS.length());
+                    if (dot < 0) return;
+                    snapshotConf.computeIfAbsent(key.substring(PROP_SNAPSHOTS.length(), dot), k -> new Properties())
+                        .setProperty(key.substring(dot + 1), value);
+                } else this.conf.setProperty(key, value);
+            });
+            named.forEach((name, own) -> {
+                final Properties p = new Properties();
+                this.conf.stringPropertyNames().forEach(k -> p.setProperty(k, this.conf.getProperty(k)));
+                p.setProperty("poolName", name);
+                own.stringPropertyNames().forEach(k -> p.setProperty(k, own.getProperty(k)));
+                declared.put(name, p);
+            });
+            for (String r : replicaNames)
+                if (!declared.containsKey(r)) throw new IllegalArgumentException("replica pool " + r + " not declared");
         }
 
+        private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+        private final Map<String, PoolMetrics> metrics = new HashMap<>();
+        private final List<PoolController> controllers = new ArrayList<>();
         private DataSource dsHolder;
+        private ReactiveJdbc jdbc;
+        private final Map<String, TableSnapshot> snapshots = new HashMap<>();
+        private final Map<String, Mono<TableSnapshot>> snapshotLoads = new HashMap<>();
 
         @Override
-        public DataSource getDataSource(Function<HikariConfig, HikariConfig> configurator) {
+        public synchronized DataSource getDataSource(@Nullable Function<HikariConfig, HikariConfig> configurator) {
+            if (dsHolder != null && configurator != null)
+                log.warn("default data source already created, configurator is not applied");
             if (dsHolder == null) {
-                HikariConfig config = new HikariConfig(conf);
-                if (configurator != null) {
-                    config = configurator.apply(config);
+                final HikariDataSource primary = create(DEFAULT_POOL, conf, configurator);
+                if (replicaNames.isEmpty()) dsHolder = primary;
+                else {
+                    final List<HikariDataSource> replicas = new ArrayList<>();
+                    for (String r : replicaNames) replicas.add(getPool(r));
+                    dsHolder = new RoutingDataSource(primary, replicas, readPolicy, replicaRetry);
+                }
+                final Config tc = ConfigFactory.parseProperties(timingConf).withFallback(TIMING_DEFAULTS).getConfig("timing");
+                if (tc.getBoolean("enable")) {
+                    timing = new StatementTiming(primary.getPoolName() == null ? DEFAULT_POOL : primary.getPoolName(),
+                        tc.getDuration("slowThreshold"), tc.getInt("maxQueries"));
+                    dsHolder = timing.wrap(dsHolder);
                 }
-                dsHolder = new HikariDataSource(config);
             }
             return dsHolder;
         }
+
+        @Override
+        public synchronized HikariDataSource getPool(@NonNull String name) {
+            if (DEFAULT_POOL.equals(name)) {
+                //not created here, or a configurator passed to getDataSource later would be lost
+                final HikariDataSource pool = pools.get(DEFAULT_POOL);
+                if (pool == null) throw new IllegalStateException("default pool not created yet, call getDataSource or getReactiveJdbc first");
+                return pool;
+            }
+            HikariDataSource pool = pools.get(name);
+            if (pool == null) {
+                final Properties p = declared.get(name);
+                if (p == null) throw new IllegalArgumentException("pool " + name + " not declared");
+                pool = create(name, p, null);
+            }
+            return pool;
+        }
+
+        private HikariDataSource create(String name, Properties props, @Nullable Function<HikariConfig, HikariConfig> configurator) {
+            final Properties hikari = new Properties();
+            final Properties tuningProps = new Properties();
+            props.stringPropertyNames().forEach(k ->
+                (k.startsWith(PROP_TUNING) ? tuningProps : hikari).setProperty(k, props.getProperty(k)));
+            final PoolTuning tuning = PoolTuning.of(tuningProps);
+            HikariConfig config = new HikariConfig(hikari);
+            if (configurator != null) {
+                config = configurator.apply(config);
+            }
+            final PoolMetrics pm = new PoolMetrics();
+            if (config.getMetricRegistry() == null && config.getMetricsTrackerFactory() == null)
+                config.setMetricsTrackerFactory(pm);
+            else log.warn("pool {} has its own metrics tracker, pool metrics disabled", name);
+            final HikariDataSource ds = new HikariDataSource(config);
+            pools.put(name, ds);
+            metrics.put(name, pm);
+            if (tuning.isWarmup()) {
+                try {
+                    PoolController.warmup(ds, tuning);
+                } catch (SQLException e) {
+                    log.warn("warmup of pool {} failed", name, e);
+                }
+            }
+            if (tuning.isAdaptive()) controllers.add(new PoolController(ds, pm, tuning).start());
+            return ds;
+        }
+
+        @Override
+        public synchronized StatementTiming getStatementTiming() {
+            return timing;
+        }
+
+        @Override
+        public synchronized PoolMetrics getPoolMetrics(@NonNull String name) {
+            getPool(name);
+            return metrics.get(name);
+        }
+
+        @Override
+        public synchronized Set<String> getPoolNames() {
+            final Set<String> names = new LinkedHashSet<>();
+            names.add(DEFAULT_POOL);
+            names.addAll(declared.keySet());
+            return names;
+        }
+
+        @Override
+        public synchronized ReactiveJdbc getReactiveJdbc(@Nullable Function<HikariConfig, HikariConfig> configurator) {
+            if (jdbc == null) jdbc = ReactiveJdbc.of(getDataSource(configurator));
+            return jdbc;
+        }
+
+        @Override
+        public synchronized Mono<TableSnapshot> getSnapshot(@NonNull String name) {
+            final Mono<TableSnapshot> loading = snapshotLoads.get(name);
+            if (loading != null) return loading;
+            final Properties p = snapshotConf.get(name);
+            if (p == null) throw new IllegalArgumentException("snapshot " + name + " not declared");
+            TableSnapshot snapshot = snapshots.get(name);
+            if (snapshot == null) {
+                snapshot = new TableSnapshot(name, getReactiveJdbc(null).readOnly(), TableSpec.of(p));
+                snapshots.put(name, snapshot);
+            }
+            final Mono<TableSnapshot> load = snapshot.start()
+                .doOnError(e -> {
+                    synchronized (this) {
+                        snapshotLoads.remove(name);
+                    }
+                })
+                .cache();
+            snapshotLoads.put(name, load);
+            return load;
+        }
+
+        @Override
+        public synchronized Set<String> getSnapshotNames() {
+            return new LinkedHashSet<>(snapshotConf.keySet());
+        }
+
+        @Override
+        public synchronized void stop() {
+            snapshots.values().forEach(TableSnapshot::dispose);
+            snapshots.clear();
+            snapshotLoads.clear();
+            if (jdbc != null) jdbc.close();
+            jdbc = null;
+            controllers.forEach(PoolController::dispose);
+            controllers.clear();
+            metrics.clear();
+            pools.values().forEach(HikariDataSource::close);
+            pools.clear();
+            dsHolder = null;
+            timing = null;
+        }
         //endregion
     }}
-}
\ No newline at end of file
+}
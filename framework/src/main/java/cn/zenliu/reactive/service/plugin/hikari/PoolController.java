@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PoolController.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:03:47
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * warmup and adaptive sizing of a pool by {@link PoolTuning}.
+ * <p>
+ * every period:
+ * 1. grow by a quarter (at least one) when average acquire wait exceed targetWait, or acquire timed out,
+ * unless connections are held longer than maxLatency
+ * 2. shrink by one when connections are held longer than maxLatency,
+ * or when no one waits and peak in use is below idleRatio of size
+ * <p>
+ * shrinking only lowers maximumPoolSize, extra connections are retired by hikari when returned idle
+ */
+@Slf4j
+final class PoolController implements Disposable {
+    private final HikariDataSource ds;
+    private final PoolMetrics metrics;
+    private final PoolTuning tuning;
+    private final int min;
+    private final int max;
+    private volatile Disposable task;
+
+    PoolController(HikariDataSource ds, PoolMetrics metrics, PoolTuning tuning) {
+        this.ds = ds;
+        this.metrics = metrics;
+        this.tuning = tuning;
+        this.min = Math.max(1, tuning.getMinSize() > 0 ? tuning.getMinSize() : ds.getMinimumIdle());
+        this.max = Math.max(min, tuning.getMaxSize() > 0 ? tuning.getMaxSize() : ds.getMaximumPoolSize() * 2);
+    }
+
+    /**
+     * schedule sizing on parallel scheduler
+     */
+    PoolController start() {
+        final long period = tuning.getInterval().toMillis();
+        task = Schedulers.parallel().schedulePeriodically(this::tick, period, period, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    private void tick() {
+        try {
+            adjust();
+        } catch (Throwable e) {
+            log.warn("adaptive sizing of pool {} failed", ds.getPoolName(), e);
+        }
+    }
+
+    /**
+     * one step of sizing
+     *
+     * @return maximumPoolSize after adjusted
+     */
+    int adjust() {
+        final HikariConfigMXBean config = ds.getHikariConfigMXBean();
+        final HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+        final PoolMetrics.Period p = metrics.period();
+        final int size = config.getMaximumPoolSize();
+        final boolean waiting = p.timeouts > 0
+            || p.averageWaitNanos() > tuning.getTargetWait().toNanos()
+            || (pool != null && pool.getThreadsAwaitingConnection() > 0);
+        final boolean slow = !tuning.getMaxLatency().isZero()
+            && p.averageUsageMillis() > tuning.getMaxLatency().toMillis();
+        int target = size;
+        if (slow) target = size - 1;
+        else if (waiting) target = size + Math.max(1, size / 4);
+        else if (p.peak < size * tuning.getIdleRatio()) target = size - 1;
+        target = Math.max(min, Math.min(max, target));
+        if (target != size) {
+            log.debug("pool {} resized {} -> {}, wait {}ns, usage {}ms, peak {}",
+                ds.getPoolName(), size, target, p.averageWaitNanos(), p.averageUsageMillis(), p.peak);
+            if (config.getMinimumIdle() > target) config.setMinimumIdle(target);
+            config.setMaximumPoolSize(target);
+        }
+        return target;
+    }
+
+    /**
+     * open minimumIdle connections and prepare statements of {@link PoolTuning#getStatements()} on each.
+     * statement failures are logged and ignored
+     *
+     * @return connections opened
+     */
+    static int warmup(HikariDataSource ds, PoolTuning tuning) throws SQLException {
+        final long begin = System.nanoTime();
+        final List<String> statements = tuning.statementList();
+        final List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < ds.getMinimumIdle(); i++) {
+                final Connection c = ds.getConnection();
+                held.add(c);
+                for (String sql : statements) {
+                    try {
+                        c.prepareStatement(sql).close();
+                        log.trace("pool {} prepared {}", ds.getPoolName(), sql);
+                    } catch (SQLException e) {
+                        log.warn("pool {} prepare warmup statement failed: {}", ds.getPoolName(), sql, e);
+                    }
+                }
+            }
+        } finally {
+            for (Connection c : held) c.close();
+        }
+        log.info("pool {} warmed up {} connections in {}ms", ds.getPoolName(), held.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        return held.size();
+    }
+
+    @Override
+    public void dispose() {
+        final Disposable t = task;
+        if (t != null) t.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        final Disposable t = task;
+        return t == null || t.isDisposed();
+    }
+}
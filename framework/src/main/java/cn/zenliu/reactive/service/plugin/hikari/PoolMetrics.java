@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PoolMetrics.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:03:34
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * metrics of one pool, installed as {@link com.zaxxer.hikari.HikariConfig#setMetricsTrackerFactory}.
+ * <p>
+ * exports gauges {@code hikari.active|idle|pending|total|max}, counters {@code hikari.timeouts|created}
+ * and timers {@code hikari.acquire|usage} with percentile histogram, all tagged by pool name,
+ * removed when pool closed.
+ * also keeps sums of current period for {@link PoolController}
+ */
+public final class PoolMetrics implements MetricsTrackerFactory {
+    private static final String[] METERS = {"hikari.active", "hikari.idle", "hikari.pending", "hikari.total", "hikari.max",
+        "hikari.timeouts", "hikari.created", "hikari.acquire", "hikari.usage"};
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final AtomicInteger inUse = new AtomicInteger();
+    //region period
+    private final LongAdder periodAcquired = new LongAdder();
+    private final LongAdder periodAcquireNanos = new LongAdder();
+    private final LongAdder periodUsed = new LongAdder();
+    private final LongAdder periodUsageMillis = new LongAdder();
+    private final LongAdder periodTimeouts = new LongAdder();
+    private final AtomicInteger periodPeak = new AtomicInteger();
+    //endregion
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats) {
+        final String[] tags = {"pool", poolName};
+        Meters.gauge("hikari.active", "connections in use", stats, PoolStats::getActiveConnections, tags);
+        Meters.gauge("hikari.idle", "idle connections", stats, PoolStats::getIdleConnections, tags);
+        Meters.gauge("hikari.pending", "threads waiting for connection", stats, PoolStats::getPendingThreads, tags);
+        Meters.gauge("hikari.total", "open connections", stats, PoolStats::getTotalConnections, tags);
+        Meters.gauge("hikari.max", "current maximum pool size", stats, PoolStats::getMaxConnections, tags);
+        Meters.counter("hikari.timeouts", "connection acquire timeouts", timeouts, LongAdder::sum, tags);
+        Meters.counter("hikari.created", "connections created", created, LongAdder::sum, tags);
+        return new Tracker(poolName,
+            Meters.timer("hikari.acquire", "time to acquire connection", tags),
+            Meters.timer("hikari.usage", "time a connection held before returned", tags));
+    }
+
+    /**
+     * @return count of acquired connections
+     */
+    public long getAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * @return total nanoseconds spent on acquire
+     */
+    public long getAcquireNanos() {
+        return acquireNanos.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /**
+     * @return connections borrowed and not returned yet
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * take sums of current period and start a new one
+     */
+    Period period() {
+        return new Period(
+            periodAcquired.sumThenReset(),
+            periodAcquireNanos.sumThenReset(),
+            periodUsed.sumThenReset(),
+            periodUsageMillis.sumThenReset(),
+            periodTimeouts.sumThenReset(),
+            periodPeak.getAndSet(inUse.get()));
+    }
+
+    static final class Period {
+        final long acquired;
+        final long acquireNanos;
+        final long used;
+        final long usageMillis;
+        final long timeouts;
+        final int peak;
+
+        Period(long acquired, long acquireNanos, long used, long usageMillis, long timeouts, int peak) {
+            this.acquired = acquired;
+            this.acquireNanos = acquireNanos;
+            this.used = used;
+            this.usageMillis = usageMillis;
+            this.timeouts = timeouts;
+            this.peak = peak;
+        }
+
+        long averageWaitNanos() {
+            return acquired == 0 ? 0 : acquireNanos / acquired;
+        }
+
+        long averageUsageMillis() {
+            return used == 0 ? 0 : usageMillis / used;
+        }
+    }
+
+    final class Tracker implements IMetricsTracker {
+        private final String pool;
+        private final LongConsumer acquireTimer;
+        private final LongConsumer usageTimer;
+
+        Tracker(String pool, LongConsumer acquireTimer, LongConsumer usageTimer) {
+            this.pool = pool;
+            this.acquireTimer = acquireTimer;
+            this.usageTimer = usageTimer;
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long millis) {
+            created.increment();
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long nanos) {
+            acquireTimer.accept(nanos);
+            acquired.increment();
+            acquireNanos.add(nanos);
+            periodAcquired.increment();
+            periodAcquireNanos.add(nanos);
+            periodPeak.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long millis) {
+            usageTimer.accept(TimeUnit.MILLISECONDS.toNanos(millis));
+            inUse.decrementAndGet();
+            periodUsed.increment();
+            periodUsageMillis.add(millis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+            periodTimeouts.increment();
+        }
+
+        /**
+         * called by hikari when pool closed
+         */
+        @Override
+        public void close() {
+            for (String name : METERS) Meters.remove(name, "pool", pool);
+        }
+    }
+}
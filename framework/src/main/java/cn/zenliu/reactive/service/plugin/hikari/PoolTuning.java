@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PoolTuning.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:03:21
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import com.typesafe.config.ConfigBeanFactory;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.Optional;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * tuning of a pool, declared as {@code hikari.tuning.*} and inherited by named pools,
+ * override with {@code hikari.pools.<name>.tuning.*}
+ */
+@Data
+public class PoolTuning {
+    /**
+     * fill minimumIdle connections when pool created, instead of letting first requests pay for it
+     */
+    @Optional
+    private boolean warmup = false;
+    /**
+     * semicolon separated statements prepared on every warmup connection,
+     * only useful when driver caches prepared statements (eg: mysql cachePrepStmts, pgjdbc prepareThreshold)
+     */
+    @Optional
+    private String statements = "";
+    /**
+     * adjust maximumPoolSize by acquire wait and connection usage time
+     */
+    @Optional
+    private boolean adaptive = false;
+    /**
+     * lower bound of adaptive size, zero to use minimumIdle
+     */
+    @Optional
+    private int minSize = 0;
+    /**
+     * upper bound of adaptive size, zero to use twice of maximumPoolSize
+     */
+    @Optional
+    private int maxSize = 0;
+    /**
+     * period of adaptive sizing
+     */
+    @Optional
+    private Duration interval = Duration.ofSeconds(10);
+    /**
+     * pool grows when average acquire wait in period exceed this
+     */
+    @Optional
+    private Duration targetWait = Duration.ofMillis(5);
+    /**
+     * pool never grows and shrinks when average connection usage in period exceed this,
+     * as more connections only add contention to a saturated database. zero to disable
+     */
+    @Optional
+    private Duration maxLatency = Duration.ZERO;
+    /**
+     * pool shrinks when peak connections in use of a quiet period below this ratio of size
+     */
+    @Optional
+    private double idleRatio = 0.5;
+
+    /**
+     * @return statements for warmup
+     */
+    public List<String> statementList() {
+        final List<String> list = new ArrayList<>();
+        for (String s : statements.split(";")) if (!s.trim().isEmpty()) list.add(s.trim());
+        return list;
+    }
+
+    /**
+     * @param props properties under {@code tuning.}, prefix included
+     * @return tuning
+     */
+    static PoolTuning of(Properties props) {
+        if (props.isEmpty()) return new PoolTuning();
+        return ConfigBeanFactory.create(ConfigFactory.parseProperties(props).getConfig("tuning"), PoolTuning.class);
+    }
+}
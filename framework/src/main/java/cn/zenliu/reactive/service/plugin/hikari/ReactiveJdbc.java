@@ -0,0 +1,510 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ReactiveJdbc.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:51:43
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import cn.zenliu.reactive.service.plugin.caffeine.TableCache;
+import cn.zenliu.reactive.service.util.BatchLoader;
+import cn.zenliu.reactive.service.util.WriteBehind;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * reactive facade of a blocking jdbc {@link DataSource}.
+ * <p>
+ * every call runs on a dedicated scheduler with as many threads as connections of the pool,
+ * so callers never pile up more threads than connections, excess calls wait in the scheduler queue.
+ * <p>
+ * time from subscription to connection acquired (queue wait + pool wait) is measured and exported:
+ * {@code jdbc.acquire} timer (count, total, decaying max and histogram), {@code jdbc.acquire.pending} calls waiting,
+ * all tagged by pool name and removed on {@link #close()}.
+ */
+@Slf4j
+public final class ReactiveJdbc implements AutoCloseable {
+    @FunctionalInterface
+    public interface SqlFunction<T, R> {
+        R apply(T t) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @Getter
+    private final String name;
+    @Getter
+    private final DataSource dataSource;
+    @Getter
+    private final Scheduler scheduler;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongConsumer acquireTimer;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param name          pool name, used for thread name and meter tag
+     * @param dataSource    data source
+     * @param threads       max threads, should be same as max connections of data source
+     * @param queueCapacity max calls waiting for a thread
+     */
+    public ReactiveJdbc(@NonNull String name, @NonNull DataSource dataSource, int threads, int queueCapacity) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.scheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "jdbc-" + name, 60, true);
+        this.acquireTimer = Meters.timer("jdbc.acquire", "time waiting for connection", "pool", name);
+        Meters.gauge("jdbc.acquire.pending", "calls waiting for connection", pending, AtomicInteger::doubleValue, "pool", name);
+    }
+
+    /**
+     * scheduler sized to {@link HikariDataSource#getMaximumPoolSize()}
+     */
+    public static ReactiveJdbc of(@NonNull HikariDataSource dataSource) {
+        final String name = dataSource.getPoolName() == null ? "default" : dataSource.getPoolName();
+        return new ReactiveJdbc(name, dataSource, dataSource.getMaximumPoolSize(), Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE);
+    }
+
+    /**
+     * @param dataSource {@link HikariDataSource} or {@link RoutingDataSource}, may be wrapped by {@link StatementTiming}
+     */
+    public static ReactiveJdbc of(@NonNull DataSource dataSource) {
+        final DataSource raw = StatementTiming.unwrap(dataSource);
+        if (raw instanceof HikariDataSource || raw instanceof RoutingDataSource) {
+            final HikariDataSource primary = raw instanceof HikariDataSource ? (HikariDataSource) raw : ((RoutingDataSource) raw).getPrimary();
+            final String name = primary.getPoolName() == null ? "default" : primary.getPoolName();
+            return new ReactiveJdbc(name, dataSource, primary.getMaximumPoolSize(), Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE);
+        }
+        throw new IllegalArgumentException("pool size unknown for " + dataSource.getClass().getName() + ", use constructor");
+    }
+
+    private volatile ReactiveJdbc readOnly;
+    /**
+     * facade of primary, set on {@link #readOnly()} facade
+     */
+    @Nullable
+    private ReactiveJdbc primary;
+
+    /**
+     * facade for read only work, routed to replicas when data source is a {@link RoutingDataSource},
+     * it has own scheduler sized to replicas and shares life of this one.
+     *
+     * @return self when not routing
+     */
+    public ReactiveJdbc readOnly() {
+        final DataSource raw = StatementTiming.unwrap(dataSource);
+        if (!(raw instanceof RoutingDataSource)) return this;
+        ReactiveJdbc ro = readOnly;
+        if (ro == null) {
+            synchronized (this) {
+                ro = readOnly;
+                if (ro == null) {
+                    final RoutingDataSource routing = (RoutingDataSource) raw;
+                    final StatementTiming timing = StatementTiming.timingOf(dataSource);
+                    ro = new ReactiveJdbc(name + "-ro", timing == null ? routing.readOnly() : timing.wrap(routing.readOnly()),
+                        routing.getReadPoolSize(), Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE);
+                    ro.tableCache = tableCache;
+                    ro.primary = this;
+                    readOnly = ro;
+                }
+            }
+        }
+        return ro;
+    }
+
+    //region core
+
+    /**
+     * run function with a connection, connection closed after function returned
+     *
+     * @return mono of function result, empty if result is null
+     */
+    public <T> Mono<T> withConnection(@NonNull SqlFunction<Connection, T> fn) {
+        return Mono.subscriberContext().flatMap(ctx -> {
+            final String route = ctx.getOrDefault(RequestUtil.ROUTE, null);
+            final long submit = System.nanoTime();
+            final AtomicBoolean waiting = new AtomicBoolean(true);
+            pending.incrementAndGet();
+            return Mono.fromCallable(() -> {
+                final String prev = StatementTiming.swapRoute(route);
+                try (Connection c = acquire(submit, waiting)) {
+                    return fn.apply(c);
+                } finally {
+                    StatementTiming.swapRoute(prev);
+                }
+            })
+                .subscribeOn(scheduler)
+                .doFinally(s -> {
+                    if (waiting.compareAndSet(true, false)) pending.decrementAndGet();
+                });
+        });
+    }
+
+    /**
+     * run function in a transaction, commit when returned, rollback when error
+     */
+    public <T> Mono<T> inTransaction(@NonNull SqlFunction<Connection, T> fn) {
+        return withConnection(c -> {
+            final boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                final T result = fn.apply(c);
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private Connection acquire(long submit, AtomicBoolean waiting) throws SQLException {
+        try {
+            return dataSource.getConnection();
+        } finally {
+            if (waiting.compareAndSet(true, false)) pending.decrementAndGet();
+            final long waited = System.nanoTime() - submit;
+            acquired.increment();
+            waitNanos.add(waited);
+            acquireTimer.accept(waited);
+        }
+    }
+    //endregion
+
+    //region helpers
+
+    /**
+     * @return all rows, read into memory before emit
+     */
+    public <T> Flux<T> query(@NonNull String sql, @NonNull RowMapper<T> mapper, Object... params) {
+        return withConnection(c -> {
+            try (PreparedStatement ps = prepare(c, sql, params); ResultSet rs = ps.executeQuery()) {
+                final List<T> rows = new ArrayList<>();
+                while (rs.next()) rows.add(mapper.map(rs));
+                return rows;
+            }
+        }).flatMapIterable(rows -> rows);
+    }
+
+    /**
+     * stream rows with a server side cursor, a row is read only when requested by downstream,
+     * so memory stays flat regardless of result size.
+     * <p>
+     * statement is forward only and read only with fetch size applied,
+     * auto commit is disabled while streaming (needed by some drivers, eg postgresql, to use cursor).
+     * the connection is held until the flux terminated or cancelled.
+     *
+     * @param fetchSize rows fetched from database per round trip
+     */
+    public <T> Flux<T> stream(@NonNull String sql, @NonNull RowMapper<T> mapper, int fetchSize, Object... params) {
+        return Mono.subscriberContext().flatMapMany(ctx -> {
+            final String route = ctx.getOrDefault(RequestUtil.ROUTE, null);
+            final long submit = System.nanoTime();
+            final AtomicBoolean waiting = new AtomicBoolean(true);
+            pending.incrementAndGet();
+            return Flux.<T, Cursor>generate(
+                () -> {
+                    final String prev = StatementTiming.swapRoute(route);
+                    try {
+                        return new Cursor(acquire(submit, waiting), sql, fetchSize, params);
+                    } finally {
+                        StatementTiming.swapRoute(prev);
+                    }
+                },
+                (cursor, sink) -> {
+                    try {
+                        if (cursor.rs.next()) sink.next(mapper.map(cursor.rs));
+                        else sink.complete();
+                    } catch (SQLException e) {
+                        sink.error(e);
+                    }
+                    return cursor;
+                },
+                Cursor::close)
+                .subscribeOn(scheduler)
+                .doFinally(s -> {
+                    if (waiting.compareAndSet(true, false)) pending.decrementAndGet();
+                });
+        });
+    }
+
+    /**
+     * @return first row,empty if no row or mapped to null
+     */
+    public <T> Mono<T> queryOne(@NonNull String sql, @NonNull RowMapper<T> mapper, Object... params) {
+        return withConnection(c -> {
+            try (PreparedStatement ps = prepare(c, sql, params)) {
+                ps.setMaxRows(1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? mapper.map(rs) : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return updated rows
+     */
+    public Mono<Integer> update(@NonNull String sql, Object... params) {
+        return withConnection(c -> {
+            try (PreparedStatement ps = prepare(c, sql, params)) {
+                return ps.executeUpdate();
+            }
+        }).doOnSuccess(n -> touch(sql));
+    }
+
+    /**
+     * execute batch in one transaction
+     *
+     * @return updated rows of each parameter set
+     */
+    public Mono<int[]> batch(@NonNull String sql, @NonNull List<Object[]> params) {
+        return inTransaction(c -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (Object[] p : params) {
+                    bind(ps, p);
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            }
+        }).doOnSuccess(n -> touch(sql));
+    }
+
+    private volatile TableCache tableCache;
+
+    /**
+     * set cache of {@link #queryCached}, shared with {@link #readOnly()} facade.
+     * {@link #update}, {@link #batch} and {@link #writeBehind} touch tables they write,
+     * writes via {@link #withConnection} should call {@link TableCache#touch} after commit
+     *
+     * @param cache cache, may be shared with other facades on same database, eg: EbeanManager#getTableCache
+     * @return this
+     */
+    public ReactiveJdbc setTableCache(@Nullable TableCache cache) {
+        tableCache = cache;
+        final ReactiveJdbc ro = readOnly;
+        if (ro != null && ro != this) ro.tableCache = cache;
+        return this;
+    }
+
+    public Optional<TableCache> getTableCache() {
+        return Optional.ofNullable(tableCache);
+    }
+
+    /**
+     * query via table cache, keyed by sql and parameters (which should have proper equals),
+     * entry is tagged with tables after from and join of sql.
+     * misses are loaded from primary even on {@link #readOnly()} facade, a replica may not have the writes touched before.
+     *
+     * @return all rows, from cache or read into memory before emit
+     * @throws IllegalStateException when table cache not set
+     */
+    public <T> Flux<T> queryCached(@NonNull String sql, @NonNull RowMapper<T> mapper, Object... params) {
+        final TableCache cache = tableCache;
+        if (cache == null) return Flux.error(new IllegalStateException("table cache of " + name + " not set"));
+        final List<Object> key = new ArrayList<>(params.length + 1);
+        key.add(sql);
+        key.addAll(Arrays.asList(params));
+        final ReactiveJdbc loader = primary == null ? this : primary;
+        return cache.<List<T>>get(key, () -> loader.query(sql, mapper, params).collectList()
+            .map(rows -> TableCache.Tagged.of(Collections.unmodifiableList(rows), TableCache.tablesOf(sql))))
+            .flatMapIterable(rows -> rows);
+    }
+
+    private void touch(String sql) {
+        final TableCache cache = tableCache;
+        if (cache != null) cache.touch(TableCache.writtenTablesOf(sql));
+    }
+
+    /**
+     * write behind on this data source, grouped by sql.
+     * each flush runs all buffered statements in one transaction, one jdbc batch per sql,
+     * results are update counts.
+     * <p>
+     * usage: {@code writeBehind.submit("insert into t values(?,?)", new Object[]{1, "a"})}
+     *
+     * @param window   max time a write stays in buffer
+     * @param maxBatch flush immediately when buffered writes reach this
+     */
+    public WriteBehind<String, Object[], Integer> writeBehind(@NonNull Duration window, int maxBatch) {
+        return WriteBehind.create(name, window, maxBatch, scheduler, groups -> {
+            final long submit = System.nanoTime();
+            try (Connection c = acquire(submit, new AtomicBoolean(false))) {
+                final boolean autoCommit = c.getAutoCommit();
+                c.setAutoCommit(false);
+                try {
+                    final Map<String, List<Integer>> results = new LinkedHashMap<>();
+                    for (Map.Entry<String, List<Object[]>> e : groups.entrySet()) {
+                        try (PreparedStatement ps = c.prepareStatement(e.getKey())) {
+                            for (Object[] p : e.getValue()) {
+                                bind(ps, p);
+                                ps.addBatch();
+                            }
+                            final int[] counts = ps.executeBatch();
+                            final List<Integer> list = new ArrayList<>(counts.length);
+                            for (int n : counts) list.add(n);
+                            results.put(e.getKey(), list);
+                        }
+                    }
+                    c.commit();
+                    groups.keySet().forEach(this::touch);
+                    return results;
+                } catch (SQLException | RuntimeException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(autoCommit);
+                }
+            }
+        });
+    }
+
+    /**
+     * batch loader of rows by key, loads within window are sent as one {@code IN (...)} query.
+     * <p>
+     * usage: {@code jdbc.loader("select id,name from item where id in (%s)", rs -> rs.getInt(1), rs -> rs.getString(2), Duration.ZERO, 500)}
+     * <p>
+     * meters are named by pool and sql, so close the loader when no longer used.
+     *
+     * @param sql      query with one {@code %s} which will be replaced by placeholders of keys
+     * @param keyOf    read key of row
+     * @param mapper   read value of row, last row wins when many rows of one key
+     * @param window   max time a load waits for others, zero for one tick
+     * @param maxBatch max keys in one query
+     */
+    public <K, V> BatchLoader<K, V> loader(@NonNull String sql, @NonNull RowMapper<K> keyOf, @NonNull RowMapper<V> mapper,
+                                           @NonNull Duration window, int maxBatch) {
+        return BatchLoader.create(name + ":" + sql, keys -> withConnection(c -> {
+            final StringJoiner holders = new StringJoiner(",");
+            for (int i = 0; i < keys.size(); i++) holders.add("?");
+            try (PreparedStatement ps = prepare(c, String.format(sql, holders), keys.toArray());
+                 ResultSet rs = ps.executeQuery()) {
+                final Map<K, V> result = new HashMap<>();
+                while (rs.next()) result.put(keyOf.map(rs), mapper.map(rs));
+                return result;
+            }
+        }), window, maxBatch, Schedulers.parallel());
+    }
+
+    static final class Cursor {
+        final Connection connection;
+        final boolean autoCommit;
+        final PreparedStatement ps;
+        final ResultSet rs;
+
+        Cursor(Connection connection, String sql, int fetchSize, Object[] params) throws SQLException {
+            this.connection = connection;
+            try {
+                this.autoCommit = connection.getAutoCommit();
+                if (autoCommit) connection.setAutoCommit(false);
+                this.ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                bind(ps, params);
+                this.rs = ps.executeQuery();
+            } catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                rs.close();
+                ps.close();
+                connection.commit();
+                if (autoCommit) connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                log.warn("close cursor failed", e);
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("close connection failed", e);
+                }
+            }
+        }
+    }
+
+    static PreparedStatement prepare(Connection c, String sql, Object[] params) throws SQLException {
+        final PreparedStatement ps = c.prepareStatement(sql);
+        try {
+            bind(ps, params);
+            return ps;
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+    }
+
+    static void bind(PreparedStatement ps, Object[] params) throws SQLException {
+        if (params == null) return;
+        for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+    }
+    //endregion
+
+    //region stats
+    public long getAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * @return total time waiting for connection
+     */
+    public Duration getWaitTime() {
+        return Duration.ofNanos(waitNanos.sum());
+    }
+
+    /**
+     * @return calls waiting for connection now
+     */
+    public int getPending() {
+        return pending.get();
+    }
+    //endregion
+
+    @Override
+    public void close() {
+        final ReactiveJdbc ro = readOnly;
+        if (ro != null) ro.close();
+        scheduler.dispose();
+        Meters.remove("jdbc.acquire", "pool", name);
+        Meters.remove("jdbc.acquire.pending", "pool", name);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: RoutingDataSource.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:00:03
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * data source routes read only work to replicas, others to primary.
+ * <p>
+ * 1. {@link #getConnection()} always returns connection of primary
+ * 2. {@link #readOnly()} is a view returns connection of a replica, selected by {@link Policy},
+ * a replica failed to give connection is skipped, primary is used when all replicas failed or no replica
+ * 3. a failed replica is marked down for {@link #getRetryAfter()} and not tried meanwhile,
+ * so reads do not wait connectionTimeout of a dead replica on each call
+ * 4. ebean uses {@link #readOnly()} as read only data source when {@code ebean.readReplicas} enabled, see EbeanManager
+ */
+@Slf4j
+public final class RoutingDataSource implements DataSource {
+    public enum Policy {
+        ROUND_ROBIN,
+        /**
+         * replica with least active connections
+         */
+        LEAST_ACTIVE
+    }
+
+    public static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(10);
+    @Getter
+    private final HikariDataSource primary;
+    @Getter
+    private final List<HikariDataSource> replicas;
+    @Getter
+    private final Policy policy;
+    @Getter
+    private final Duration retryAfter;
+    private final AtomicInteger next = new AtomicInteger();
+    /**
+     * nano time until which the replica of same index is skipped
+     */
+    private final AtomicLongArray downUntil;
+    private final DataSource readOnly = new ReadOnly();
+
+    public RoutingDataSource(@NonNull HikariDataSource primary, @NonNull List<HikariDataSource> replicas, @NonNull Policy policy) {
+        this(primary, replicas, policy, DEFAULT_RETRY_AFTER);
+    }
+
+    /**
+     * @param retryAfter how long a failed replica is skipped
+     */
+    public RoutingDataSource(@NonNull HikariDataSource primary, @NonNull List<HikariDataSource> replicas, @NonNull Policy policy, @NonNull Duration retryAfter) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.policy = policy;
+        this.retryAfter = retryAfter;
+        this.downUntil = new AtomicLongArray(replicas.size());
+    }
+
+    /**
+     * @return view of this data source, gives connection of replicas
+     */
+    public DataSource readOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return sum of max pool size of replicas, or of primary when no replica
+     */
+    public int getReadPoolSize() {
+        if (replicas.isEmpty()) return primary.getMaximumPoolSize();
+        int size = 0;
+        for (HikariDataSource r : replicas) size += r.getMaximumPoolSize();
+        return size;
+    }
+
+    /**
+     * @param readOnly route to replicas if true
+     */
+    public Connection getConnection(boolean readOnly) throws SQLException {
+        if (!readOnly || replicas.isEmpty()) return primary.getConnection();
+        final int n = replicas.size();
+        final int first = select();
+        for (int i = 0; i < n; i++) {
+            final int idx = (first + i) % n;
+            if (isDown(idx)) continue;
+            final HikariDataSource replica = replicas.get(idx);
+            Connection c = null;
+            try {
+                c = replica.getConnection();
+                c.setReadOnly(true);
+                return c;
+            } catch (SQLException e) {
+                if (c != null) close(c);
+                downUntil.set(idx, System.nanoTime() + retryAfter.toNanos());
+                log.warn("replica {} not available, skipped for {}: {}", replica.getPoolName(), retryAfter, e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * @return true if replica of index failed within {@link #retryAfter}
+     */
+    public boolean isDown(int idx) {
+        final long until = downUntil.get(idx);
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    private static void close(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException e) {
+            log.debug("close connection failed", e);
+        }
+    }
+
+    private int select() {
+        if (policy == Policy.LEAST_ACTIVE) {
+            int best = 0;
+            int min = Integer.MAX_VALUE;
+            final int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                final int idx = (start + i) % replicas.size();
+                if (isDown(idx)) continue;
+                final HikariPoolMXBean pool = replicas.get(idx).getHikariPoolMXBean();
+                final int active = pool == null ? 0 : pool.getActiveConnections();
+                if (active < min) {
+                    min = active;
+                    best = idx;
+                }
+            }
+            return best;
+        }
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    //region DataSource
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(false);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+    //endregion
+
+    final class ReadOnly implements DataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return RoutingDataSource.this.getConnection(true);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return RoutingDataSource.this.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return RoutingDataSource.this.isWrapperFor(iface);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return RoutingDataSource.this.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            RoutingDataSource.this.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            RoutingDataSource.this.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return RoutingDataSource.this.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return RoutingDataSource.this.getParentLogger();
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StatementTiming.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:06:34
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+/**
+ * times statement execution and result fetch of a data source, by normalized sql.
+ * <p>
+ * 1. sql is normalized: literals replaced by {@code ?}, in-lists collapsed, whitespaces folded,
+ * at most {@code maxQueries} distinct statements are tracked, others are counted as {@link #OTHER}
+ * 2. each statement has a log2 histogram of execute time, and total fetch time (ResultSet.next until closed),
+ * exported as timers {@code jdbc.statement} and {@code jdbc.fetch} tagged by data source name and sql
+ * 3. execute or fetch slower than threshold is logged with bound parameter count and route,
+ * route is taken from {@link #swapRoute(String)} of the executing thread, set from request context
+ * by {@link ReactiveJdbc} and by EbeanManager findCached and stream. work shared by requests
+ * (batch loads, write-behind flushes) and ebean calls made directly log route {@code -},
+ * unless caller binds one by {@link #swapRoute(String)}
+ * <p>
+ * connection, statement and result set are wrapped by jdk proxies,
+ * overhead is a proxy dispatch per jdbc call plus two {@link System#nanoTime()} per execute,
+ * see StatementTimingTest.benchmark for a point query (set, execute, next, close) on H2 in memory.
+ */
+@Slf4j
+public final class StatementTiming {
+    public static final String OTHER = "<other>";
+    public static final String NO_ROUTE = "-";
+    private static final ThreadLocal<String> ROUTE = new ThreadLocal<>();
+    private static final Constructor<?> CONNECTION = proxyOf(Connection.class);
+    private static final Constructor<?> STATEMENT = proxyOf(Statement.class);
+    private static final Constructor<?> PREPARED = proxyOf(PreparedStatement.class);
+    private static final Constructor<?> CALLABLE = proxyOf(CallableStatement.class);
+    private static final Constructor<?> RESULT_SET = proxyOf(ResultSet.class);
+
+    @Getter
+    private final String name;
+    private final long slowNanos;
+    private final int maxQueries;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+
+    /**
+     * @param name          name of data source, used as meter tag
+     * @param slowThreshold execute or fetch not shorter than this is logged, zero to disable
+     * @param maxQueries    max distinct normalized statements tracked
+     */
+    public StatementTiming(@NonNull String name, @NonNull Duration slowThreshold, int maxQueries) {
+        this.name = name;
+        this.slowNanos = slowThreshold.isZero() ? Long.MAX_VALUE : slowThreshold.toNanos();
+        this.maxQueries = maxQueries;
+    }
+
+    //region route
+
+    /**
+     * bind route of current thread, statements executed are attributed to it
+     *
+     * @param route route, null to clear
+     * @return previous route, should be restored when work done
+     */
+    @Nullable
+    public static String swapRoute(@Nullable String route) {
+        final String prev = ROUTE.get();
+        if (route == null) ROUTE.remove();
+        else ROUTE.set(route);
+        return prev;
+    }
+
+    /**
+     * @return route bound to current thread, {@code -} when none
+     */
+    public static String route() {
+        final String r = ROUTE.get();
+        return r == null ? NO_ROUTE : r;
+    }
+    //endregion
+
+    //region stats
+
+    /**
+     * @return stats of tracked statements, by normalized sql
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @return stats ordered by total execute and fetch time, descending
+     */
+    public List<Stats> top(int n) {
+        final List<Stats> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingLong(Stats::getTotalNanos).reversed());
+        return list.size() > n ? list.subList(0, n) : list;
+    }
+
+    public void reset() {
+        stats.values().forEach(Stats::reset);
+    }
+
+    Stats statsOf(String sql) {
+        String key = normalized.get(sql);
+        if (key == null) {
+            key = normalize(sql);
+            if (normalized.size() >= maxQueries * 4) normalized.clear();
+            normalized.put(sql, key);
+        }
+        final Stats s = stats.get(key);
+        if (s != null) return s;
+        if (stats.size() >= maxQueries) key = OTHER;
+        return stats.computeIfAbsent(key, k -> new Stats(name, k));
+    }
+
+    /**
+     * replace literals by {@code ?}, collapse in-list of parameters to {@code (?)} and fold whitespaces
+     */
+    static String normalize(String sql) {
+        final StringBuilder b = new StringBuilder(sql.length());
+        final int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            final char c = sql.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') i += 2;
+                        else break;
+                    } else i++;
+                }
+                i++;
+                b.append('?');
+            } else if (Character.isDigit(c) && (b.length() == 0 || !isWordChar(b.charAt(b.length() - 1)))) {
+                while (i < n && (isWordChar(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                b.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) i++;
+                if (b.length() > 0 && i < n) b.append(' ');
+            } else {
+                b.append(c);
+                i++;
+            }
+        }
+        return collapseLists(b.toString());
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String collapseLists(String sql) {
+        if (sql.indexOf('(') < 0) return sql;
+        final StringBuilder b = new StringBuilder(sql.length());
+        int i = 0;
+        final int n = sql.length();
+        while (i < n) {
+            final char c = sql.charAt(i);
+            if (c == '(') {
+                int j = i + 1;
+                boolean list = false;
+                while (true) {
+                    while (j < n && sql.charAt(j) == ' ') j++;
+                    if (j >= n || sql.charAt(j) != '?') break;
+                    j++;
+                    while (j < n && sql.charAt(j) == ' ') j++;
+                    if (j < n && sql.charAt(j) == ')') {
+                        list = true;
+                        break;
+                    }
+                    if (j >= n || sql.charAt(j) != ',') break;
+                    j++;
+                }
+                if (list) {
+                    b.append("(?)");
+                    i = j + 1;
+                    continue;
+                }
+            }
+            b.append(c);
+            i++;
+        }
+        return b.toString();
+    }
+
+    /**
+     * timing of one normalized statement
+     */
+    public static final class Stats {
+        static final int BUCKETS = 48;
+        @Getter
+        private final String sql;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder executeNanos = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final LongConsumer executeTimer;
+        private final LongConsumer fetchTimer;
+
+        Stats(String source, String sql) {
+            this.sql = sql;
+            this.executeTimer = Meters.timer("jdbc.statement", "statement execute time", "source", source, "sql", sql);
+            this.fetchTimer = Meters.timer("jdbc.fetch", "result set fetch time", "source", source, "sql", sql);
+        }
+
+        void execute(long nanos) {
+            count.increment();
+            executeNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+            executeTimer.accept(nanos);
+        }
+
+        void fetch(long nanos, long rowCount) {
+            fetchNanos.add(nanos);
+            rows.add(rowCount);
+            fetchTimer.accept(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getExecuteNanos() {
+            return executeNanos.sum();
+        }
+
+        public long getFetchNanos() {
+            return fetchNanos.sum();
+        }
+
+        public long getTotalNanos() {
+            return executeNanos.sum() + fetchNanos.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @param quantile 0 to 1
+         * @return upper bound of execute time at quantile, precision is a power of 2
+         */
+        public long percentileNanos(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += histogram.get(i);
+            if (total == 0) return 0;
+            final long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= Math.max(1, rank)) return Math.min(1L << i, maxNanos.get());
+            }
+            return maxNanos.get();
+        }
+
+        void reset() {
+            count.reset();
+            executeNanos.reset();
+            fetchNanos.reset();
+            rows.reset();
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) histogram.set(i, 0);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" + sql + ", count=" + getCount() + ", execute=" + TimeUnit.NANOSECONDS.toMicros(getExecuteNanos())
+                + "us, fetch=" + TimeUnit.NANOSECONDS.toMicros(getFetchNanos()) + "us, p99=" + TimeUnit.NANOSECONDS.toMicros(percentileNanos(0.99)) + "us}";
+        }
+    }
+    //endregion
+
+    //region wrap
+
+    /**
+     * @return data source gives timed connections
+     */
+    public DataSource wrap(@NonNull DataSource dataSource) {
+        return new TimedDataSource(dataSource, this);
+    }
+
+    /**
+     * @return delegate of a data source wrapped by {@link #wrap(DataSource)}, or itself
+     */
+    public static DataSource unwrap(@NonNull DataSource dataSource) {
+        return dataSource instanceof TimedDataSource ? ((TimedDataSource) dataSource).getDelegate() : dataSource;
+    }
+
+    /**
+     * @return timing of a data source wrapped by {@link #wrap(DataSource)}, or null
+     */
+    @Nullable
+    public static StatementTiming timingOf(@NonNull DataSource dataSource) {
+        return dataSource instanceof TimedDataSource ? ((TimedDataSource) dataSource).getTiming() : null;
+    }
+
+    public Connection wrap(@NonNull Connection connection) {
+        return (Connection) newProxy(CONNECTION, new ConnectionHandler(connection));
+    }
+
+    /**
+     * proxy classes are resolved once, {@link Proxy#newProxyInstance} looks up its cache on every call
+     */
+    private static Constructor<?> proxyOf(Class<?> type) {
+        try {
+            return Proxy.getProxyClass(StatementTiming.class.getClassLoader(), type).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object newProxy(Constructor<?> constructor, InvocationHandler handler) {
+        try {
+            return constructor.newInstance(handler);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void slow(String what, Stats s, long nanos, int params, String route) {
+        if (nanos >= slowNanos)
+            log.warn("slow {} of {} in {}ms, params {}, route {}: {}",
+                what, name, TimeUnit.NANOSECONDS.toMillis(nanos), params, route, s.sql);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isWrapperMethod(Method method) {
+        return method.getName().equals("unwrap") || method.getName().equals("isWrapperFor");
+    }
+
+    final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String m = method.getName();
+            if (m.equals("equals")) return proxy == args[0];
+            if (m.equals("hashCode")) return System.identityHashCode(proxy);
+            final Object result = StatementTiming.invoke(target, method, args);
+            if (result instanceof Statement && (m.equals("createStatement") || m.startsWith("prepare"))) {
+                final Constructor<?> type = m.equals("prepareCall") ? CALLABLE
+                    : m.equals("prepareStatement") ? PREPARED : STATEMENT;
+                final String sql = m.equals("createStatement") ? null : (String) args[0];
+                return newProxy(type, new StatementHandler((Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        @Nullable
+        private final String sql;
+        private Stats prepared;
+        private int params;
+
+        StatementHandler(Statement target, @Nullable String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String m = method.getName();
+            if (m.startsWith("execute")) {
+                final Stats s;
+                if (args != null && args.length > 0 && args[0] instanceof String) s = statsOf((String) args[0]);
+                else if (sql != null) s = prepared == null ? prepared = statsOf(sql) : prepared;
+                else return StatementTiming.invoke(target, method, args);
+                final String route = route();
+                final long begin = System.nanoTime();
+                final Object result = StatementTiming.invoke(target, method, args);
+                final long took = System.nanoTime() - begin;
+                s.execute(took);
+                slow("execute", s, took, params, route);
+                return result instanceof ResultSet ? wrapResultSet((ResultSet) result, s, route) : result;
+            }
+            if (m.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                params = Math.max(params, (Integer) args[0]);
+            } else if (m.equals("clearParameters")) params = 0;
+            final Object result = StatementTiming.invoke(target, method, args);
+            if (result instanceof ResultSet && !isWrapperMethod(method) && sql != null
+                && (m.equals("getResultSet") || m.equals("getGeneratedKeys")))
+                return wrapResultSet((ResultSet) result, statsOf(sql), route());
+            return result;
+        }
+
+        private ResultSet wrapResultSet(ResultSet rs, Stats s, String route) {
+            return (ResultSet) newProxy(RESULT_SET, new ResultSetHandler(rs, s, params, route));
+        }
+    }
+
+    final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Stats stats;
+        private final int params;
+        private final String route;
+        private long nanos;
+        private long rows;
+        private boolean done;
+
+        ResultSetHandler(ResultSet target, Stats stats, int params, String route) {
+            this.target = target;
+            this.stats = stats;
+            this.params = params;
+            this.route = route;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String m = method.getName();
+            if (m.equals("next")) {
+                final long begin = System.nanoTime();
+                final Object result = StatementTiming.invoke(target, method, args);
+                nanos += System.nanoTime() - begin;
+                if ((Boolean) result) rows++;
+                return result;
+            }
+            if (m.equals("close") && !done) {
+                done = true;
+                stats.fetch(nanos, rows);
+                slow("fetch", stats, nanos, params, route);
+            }
+            return StatementTiming.invoke(target, method, args);
+        }
+    }
+
+    /**
+     * data source gives connections wrapped by a {@link StatementTiming}
+     */
+    public static final class TimedDataSource implements DataSource {
+        @Getter
+        private final DataSource delegate;
+        @Getter
+        private final StatementTiming timing;
+
+        TimedDataSource(DataSource delegate, StatementTiming timing) {
+            this.delegate = delegate;
+            this.timing = timing;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return timing.wrap(delegate.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return timing.wrap(delegate.getConnection(username, password));
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(delegate)) return iface.cast(delegate);
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return delegate.getParentLogger();
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,349 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TableSnapshot.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:17:33
+ */
+
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * table kept in memory as an immutable {@link Snapshot}, for hot reference tables read on nearly every request.
+ * <p>
+ * 1. {@link #start()} loads all rows, then polls rows with version not less than the max version seen,
+ * and reloads the whole table every {@link TableSpec#getReloadInterval()}
+ * 2. every change builds a new snapshot with its indexes and swaps it by a volatile write,
+ * readers never block or see a half applied refresh, lookups are plain map reads
+ * 3. rows are unmodifiable maps of lower case column label to jdbc value, keys and index values use jdbc types
+ * (eg: Integer for int column, Long for bigint), lookups must use the same types
+ * <p>
+ * incremental refresh can't see hard deletes or rows committed with a version older than seen (eg: long transactions),
+ * use soft delete column or rely on full reload for them.
+ */
+@Slf4j
+public final class TableSnapshot implements Disposable {
+    @Getter
+    private final String name;
+    @Getter
+    private final TableSpec spec;
+    private final ReactiveJdbc jdbc;
+    private final String key;
+    private final String version;
+    private final String deleted;
+    private final String selectSql;
+    private final String changedSql;
+    private final LongAdder changes = new LongAdder();
+    private volatile Snapshot current;
+    private volatile long reloadedAt;
+    private volatile Disposable polling;
+
+    /**
+     * @param name name of snapshot
+     * @param jdbc facade to load rows, eg: {@link ReactiveJdbc#readOnly()}
+     * @param spec table spec
+     */
+    public TableSnapshot(@NonNull String name, @NonNull ReactiveJdbc jdbc, @NonNull TableSpec spec) {
+        if (spec.getTable() == null || spec.getTable().trim().isEmpty())
+            throw new IllegalArgumentException("table of snapshot " + name + " not defined");
+        this.name = name;
+        this.jdbc = jdbc;
+        this.spec = spec;
+        this.key = spec.getKey().trim().toLowerCase();
+        this.version = spec.getVersion().trim().toLowerCase();
+        this.deleted = spec.getDeleted().trim().toLowerCase();
+        this.selectSql = spec.selectSql();
+        this.changedSql = spec.changedSql();
+        this.current = new Snapshot(Collections.emptyMap(), spec, null, 0);
+    }
+
+    /**
+     * load all rows then poll changes every {@link TableSpec#getInterval()}, meters are registered until disposed
+     *
+     * @return this, after first load
+     */
+    public Mono<TableSnapshot> start() {
+        return reload().doOnSuccess(n -> {
+            final Disposable old = polling;
+            if (old != null) old.dispose();
+            Meters.gauge("snapshot.rows", "rows in table snapshot", this, s -> s.current.size(), "snapshot", name);
+            Meters.gauge("snapshot.age", "seconds since last change or reload of table snapshot", this,
+                s -> (System.currentTimeMillis() - s.current.loadedAt) / 1000.0, "snapshot", name);
+            Meters.counter("snapshot.changes", "rows changed by incremental refresh", changes, LongAdder::sum, "snapshot", name);
+            polling = Flux.interval(spec.getInterval(), spec.getInterval())
+                .onBackpressureDrop()
+                .concatMap(i -> poll()
+                    .onErrorResume(e -> {
+                        log.warn("refresh snapshot {} of {} failed", name, spec.getTable(), e);
+                        return Mono.empty();
+                    }), 1)
+                .subscribe();
+        }).thenReturn(this);
+    }
+
+    private Mono<Integer> poll() {
+        final Duration reload = spec.getReloadInterval();
+        if (!reload.isZero() && System.currentTimeMillis() - reloadedAt >= reload.toMillis()) return reload();
+        return refresh();
+    }
+
+    /**
+     * @return current snapshot, which never changes, take it once for consistent reads of several lookups
+     */
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * load all rows and swap snapshot
+     *
+     * @return rows loaded
+     */
+    public Mono<Integer> reload() {
+        return jdbc.query(selectSql, this::row).collectList().map(rows -> {
+            final Map<Object, Map<String, Object>> byKey = new HashMap<>(rows.size() * 4 / 3 + 1);
+            Comparable<Object> max = null;
+            for (Map<String, Object> row : rows) {
+                max = maxOf(max, row.get(version));
+                if (!isDeleted(row)) byKey.put(keyOf(row), row);
+            }
+            final Snapshot snapshot = new Snapshot(byKey, spec, max, System.currentTimeMillis());
+            synchronized (this) {
+                current = snapshot;
+                reloadedAt = snapshot.loadedAt;
+            }
+            log.debug("snapshot {} of {} reloaded {} rows", name, spec.getTable(), byKey.size());
+            return byKey.size();
+        });
+    }
+
+    /**
+     * apply rows changed since last refresh, swap snapshot when any row changed.
+     * same as {@link #reload()} if version not defined
+     *
+     * @return rows changed
+     */
+    public Mono<Integer> refresh() {
+        final Object since = current.version;
+        if (changedSql == null || since == null) return reload();
+        return jdbc.query(changedSql, this::row, since).collectList().map(rows -> {
+            if (rows.isEmpty()) return 0;
+            synchronized (this) {
+                final Snapshot old = current;
+                Map<Object, Map<String, Object>> byKey = null;
+                Comparable<Object> max = maxOf(null, old.version);
+                int changed = 0;
+                for (Map<String, Object> row : rows) {
+                    max = maxOf(max, row.get(version));
+                    final Object k = keyOf(row);
+                    final Map<String, Object> prev = old.rows.get(k);
+                    final boolean remove = isDeleted(row);
+                    if (remove ? prev == null : row.equals(prev)) continue;
+                    if (byKey == null) byKey = new HashMap<>(old.rows);
+                    if (remove) byKey.remove(k);
+                    else byKey.put(k, row);
+                    changed++;
+                }
+                if (changed == 0) return 0;
+                current = new Snapshot(byKey, spec, max, System.currentTimeMillis());
+                changes.add(changed);
+                log.debug("snapshot {} of {} refreshed {} rows", name, spec.getTable(), changed);
+                return changed;
+            }
+        });
+    }
+
+    /**
+     * @see Snapshot#get(Object)
+     */
+    @Nullable
+    public Map<String, Object> get(@NonNull Object key) {
+        return current.get(key);
+    }
+
+    /**
+     * @see Snapshot#find(String, Object)
+     */
+    public List<Map<String, Object>> find(@NonNull String column, @Nullable Object value) {
+        return current.find(column, value);
+    }
+
+    /**
+     * @see Snapshot#range(String, Object, boolean, Object, boolean)
+     */
+    public List<Map<String, Object>> range(@NonNull String column, @Nullable Object from, boolean fromInclusive,
+                                           @Nullable Object to, boolean toInclusive) {
+        return current.range(column, from, fromInclusive, to, toInclusive);
+    }
+
+    /**
+     * stop polling and remove meters
+     */
+    @Override
+    public void dispose() {
+        final Disposable p = polling;
+        polling = null;
+        if (p != null) p.dispose();
+        Meters.remove("snapshot.rows", "snapshot", name);
+        Meters.remove("snapshot.age", "snapshot", name);
+        Meters.remove("snapshot.changes", "snapshot", name);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return polling == null;
+    }
+
+    private Map<String, Object> row(ResultSet rs) throws SQLException {
+        final ResultSetMetaData meta = rs.getMetaData();
+        final int n = meta.getColumnCount();
+        final Map<String, Object> row = new LinkedHashMap<>(n * 4 / 3 + 1);
+        for (int i = 1; i <= n; i++) row.put(meta.getColumnLabel(i).toLowerCase(), rs.getObject(i));
+        return Collections.unmodifiableMap(row);
+    }
+
+    private Object keyOf(Map<String, Object> row) {
+        final Object k = row.get(key);
+        if (k == null) throw new IllegalStateException("null key " + key + " in snapshot " + name + " of " + spec.getTable());
+        return k;
+    }
+
+    private boolean isDeleted(Map<String, Object> row) {
+        if (deleted.isEmpty()) return false;
+        final Object flag = row.get(deleted);
+        if (flag == null) return false;
+        if (flag instanceof Boolean) return (Boolean) flag;
+        if (flag instanceof Number) return ((Number) flag).longValue() != 0;
+        final String s = flag.toString().trim();
+        return s.equalsIgnoreCase("true") || s.equalsIgnoreCase("y") || s.equals("1");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Comparable<Object> maxOf(@Nullable Comparable<Object> max, @Nullable Object value) {
+        if (!(value instanceof Comparable)) return max;
+        return max == null || max.compareTo(value) < 0 ? (Comparable<Object>) value : max;
+    }
+
+    /**
+     * immutable rows of table with indexes
+     */
+    public static final class Snapshot {
+        private final Map<Object, Map<String, Object>> rows;
+        private final Map<String, Map<Object, List<Map<String, Object>>>> hash;
+        private final Map<String, NavigableMap<Object, List<Map<String, Object>>>> sorted;
+        /**
+         * max version of rows loaded, null if none
+         */
+        @Getter
+        @Nullable
+        private final Object version;
+        /**
+         * millis when built
+         */
+        @Getter
+        private final long loadedAt;
+
+        Snapshot(Map<Object, Map<String, Object>> rows, TableSpec spec, @Nullable Object version, long loadedAt) {
+            this.rows = Collections.unmodifiableMap(rows);
+            this.version = version;
+            this.loadedAt = loadedAt;
+            final Map<String, Map<Object, List<Map<String, Object>>>> hash = new HashMap<>();
+            for (String c : spec.hashIndexList()) hash.put(c.toLowerCase(), index(rows.values(), c.toLowerCase(), new HashMap<>()));
+            this.hash = hash;
+            final Map<String, NavigableMap<Object, List<Map<String, Object>>>> sorted = new HashMap<>();
+            for (String c : spec.sortedIndexList()) sorted.put(c.toLowerCase(), index(rows.values(), c.toLowerCase(), new TreeMap<>()));
+            this.sorted = sorted;
+        }
+
+        private static <M extends Map<Object, List<Map<String, Object>>>> M index(Collection<Map<String, Object>> rows, String column, M index) {
+            for (Map<String, Object> row : rows) {
+                final Object v = row.get(column);
+                if (v != null) index.computeIfAbsent(v, x -> new ArrayList<>(1)).add(row);
+            }
+            index.replaceAll((v, list) -> Collections.unmodifiableList(list));
+            return index;
+        }
+
+        /**
+         * @return unmodifiable rows by key
+         */
+        public Map<Object, Map<String, Object>> rows() {
+            return rows;
+        }
+
+        public int size() {
+            return rows.size();
+        }
+
+        /**
+         * @param key value of key column
+         * @return row, null if not found
+         */
+        @Nullable
+        public Map<String, Object> get(@NonNull Object key) {
+            return rows.get(key);
+        }
+
+        /**
+         * @param column column of a hash index
+         * @param value  value of column
+         * @return rows with the value, null never matches
+         * @throws IllegalArgumentException when no hash index on column
+         */
+        public List<Map<String, Object>> find(@NonNull String column, @Nullable Object value) {
+            final Map<Object, List<Map<String, Object>>> index = hash.get(column.toLowerCase());
+            if (index == null) throw new IllegalArgumentException("no hash index on " + column);
+            if (value == null) return Collections.emptyList();
+            return index.getOrDefault(value, Collections.emptyList());
+        }
+
+        /**
+         * @param column column of a sorted index
+         * @param from   lower bound, null for unbounded
+         * @param to     upper bound, null for unbounded
+         * @return rows in range, ordered by column
+         * @throws IllegalArgumentException when no sorted index on column
+         */
+        public List<Map<String, Object>> range(@NonNull String column, @Nullable Object from, boolean fromInclusive,
+                                               @Nullable Object to, boolean toInclusive) {
+            NavigableMap<Object, List<Map<String, Object>>> index = sorted.get(column.toLowerCase());
+            if (index == null) throw new IllegalArgumentException("no sorted index on " + column);
+            if (from != null) index = index.tailMap(from, fromInclusive);
+            if (to != null) index = index.headMap(to, toInclusive);
+            final List<Map<String, Object>> result = new ArrayList<>();
+            for (List<Map<String, Object>> list : index.values()) result.addAll(list);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TableSpec.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:16:51
+ */
+
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import com.typesafe.config.ConfigBeanFactory;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.Optional;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * table kept in memory by {@link TableSnapshot}, declared as {@code hikari.snapshots.<name>.*}
+ * eg: {@code hikari.snapshots.country { table: country, key: code, hashIndexes: "region", sortedIndexes: "population" } }
+ */
+@Data
+public class TableSpec {
+    /**
+     * table name, schema allowed
+     */
+    private String table;
+    /**
+     * column of primary key, single column only
+     */
+    @Optional
+    private String key = "id";
+    /**
+     * comma separated columns to load, always include key, version and deleted columns
+     */
+    @Optional
+    private String columns = "*";
+    /**
+     * column increased on every insert and update, eg: updated_at or a version number. empty to disable
+     * incremental refresh, then the whole table is reloaded every interval
+     */
+    @Optional
+    private String version = "updated_at";
+    /**
+     * column of soft delete flag, rows with true (or non zero) flag are removed from snapshot. empty if none
+     */
+    @Optional
+    private String deleted = "";
+    /**
+     * comma separated columns of hash indexes, for equal lookups
+     */
+    @Optional
+    private String hashIndexes = "";
+    /**
+     * comma separated columns of sorted indexes, for range lookups, values must be comparable
+     */
+    @Optional
+    private String sortedIndexes = "";
+    /**
+     * period of incremental refresh
+     */
+    @Optional
+    private Duration interval = Duration.ofSeconds(30);
+    /**
+     * period of full reload, which picks up hard deletes and rows committed with older version. zero to disable
+     */
+    @Optional
+    private Duration reloadInterval = Duration.ofHours(1);
+
+    public List<String> hashIndexList() {
+        return split(hashIndexes);
+    }
+
+    public List<String> sortedIndexList() {
+        return split(sortedIndexes);
+    }
+
+    /**
+     * @return select of all rows
+     */
+    String selectSql() {
+        final StringBuilder b = new StringBuilder("select ");
+        if (columns.trim().equals("*")) b.append('*');
+        else {
+            final List<String> cols = split(columns);
+            for (String c : new String[]{key, version, deleted})
+                if (!c.trim().isEmpty() && cols.stream().noneMatch(c.trim()::equalsIgnoreCase)) cols.add(c.trim());
+            b.append(String.join(",", cols));
+        }
+        return b.append(" from ").append(table).toString();
+    }
+
+    /**
+     * @return select of rows with version not less than parameter, null when version not defined
+     */
+    String changedSql() {
+        if (version.trim().isEmpty()) return null;
+        return selectSql() + " where " + version.trim() + " >= ?";
+    }
+
+    private static List<String> split(String value) {
+        final List<String> list = new ArrayList<>();
+        for (String s : value.split(",")) if (!s.trim().isEmpty()) list.add(s.trim());
+        return list;
+    }
+
+    /**
+     * @param props properties of one snapshot, without prefix
+     * @return spec
+     */
+    static TableSpec of(Properties props) {
+        return ConfigBeanFactory.create(ConfigFactory.parseProperties(props), TableSpec.class);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: KeyValueManager.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:41:24
+ */
+
+package cn.zenliu.reactive.service.plugin.kv;
+
+import cn.zenliu.reactive.service.plugin.Plugin;
+import cn.zenliu.reactive.service.util.Singleton;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigBeanFactory;
+import com.typesafe.config.ConfigFactory;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * registry of embedded key value stores for large local state kept off heap and across restarts
+ * configuration example
+ * {@code kv.default { dir: "data/kv" } } spec of stores not declared, files are in {@code <dir>/<name>}
+ * {@code kv.stores.<name> { dir: "data/geo", segmentSize: 256m, compactRatio: 0.5 } }
+ * see {@link StoreSpec} for all options
+ */
+public interface KeyValueManager extends Plugin {
+    //region SPI define
+
+    /**
+     * @param conf properties with prefix {@code kv.}, eg: {@code Context.config.getConf("kv",0).toProperties("kv")}
+     */
+    void configuration(@Nullable Properties conf);
+
+    /**
+     * @param name name of store
+     * @return spec declared in configuration, or default spec
+     */
+    StoreSpec getSpec(@NonNull String name);
+
+    /**
+     * open store on first use, opening replays its segments
+     */
+    KeyValueStore getStore(@NonNull String name);
+
+    Optional<KeyValueStore> findStore(@NonNull String name);
+
+    /**
+     * @return names of declared and opened stores
+     */
+    Set<String> getStoreNames();
+
+    /**
+     * close all opened stores, they are opened again on next {@link #getStore}
+     */
+    void closeAll();
+    //endregion
+
+    //region SPI template
+    static Singleton<KeyValueManager> getSingleton() {
+        return scope.singleton;
+    }
+
+    static KeyValueManager getSoftInstance() {
+        return scope.singleton.getSoftInstance()
+            .orElseThrow(Plugin.scope::InstanceErrorSuppler);
+    }
+
+    static KeyValueManager getHardInstance() {
+        return scope.singleton.getHardReference()
+            .orElseThrow(Plugin.scope::InstanceErrorSuppler);
+    }
+
+    //endregion
+    @UtilityClass
+    class scope {
+        protected Singleton<KeyValueManager> singleton =
+            Singleton.generate(
+                KeyValueManagerImpl::new,
+                KeyValueManager.class
+            );
+
+        @Slf4j
+        final class KeyValueManagerImpl implements KeyValueManager {
+            static final String PROP_KV = "kv";
+            static final String PROP_DEFAULT = PROP_KV + ".default";
+            static final String PROP_STORES = PROP_KV + ".stores";
+
+            //region SPI impl
+            private final Map<String, StoreSpec> specs = new ConcurrentHashMap<>();
+            private final Map<String, KeyValueStore> stores = new ConcurrentHashMap<>();
+            private volatile StoreSpec defaultSpec = new StoreSpec();
+
+            @Override
+            public void configuration(@Nullable Properties conf) {
+                if (conf == null) return;
+                final Config cfg = ConfigFactory.parseProperties(conf);
+                if (cfg.hasPath(PROP_DEFAULT))
+                    defaultSpec = ConfigBeanFactory.create(cfg.getConfig(PROP_DEFAULT), StoreSpec.class);
+                if (cfg.hasPath(PROP_STORES)) {
+                    final Config declared = cfg.getConfig(PROP_STORES);
+                    declared.root().keySet().forEach(name -> {
+                        specs.put(name, ConfigBeanFactory.create(declared.getConfig(name), StoreSpec.class));
+                        if (stores.containsKey(name))
+                            log.warn("store {} already opened, new spec will not take effect", name);
+                    });
+                }
+            }
+
+            @Override
+            public StoreSpec getSpec(@NonNull String name) {
+                return specs.getOrDefault(name, defaultSpec);
+            }
+
+            @Override
+            public KeyValueStore getStore(@NonNull String name) {
+                return stores.computeIfAbsent(name, n -> {
+                    final StoreSpec spec = specs.get(n);
+                    final Path dir = spec != null ? Paths.get(spec.getDir()) : Paths.get(defaultSpec.getDir(), n);
+                    log.debug("open store {} in {}", n, dir);
+                    return KeyValueStore.scope.open(n, dir, spec != null ? spec : defaultSpec);
+                });
+            }
+
+            @Override
+            public Optional<KeyValueStore> findStore(@NonNull String name) {
+                return Optional.ofNullable(stores.get(name));
+            }
+
+            @Override
+            public Set<String> getStoreNames() {
+                final Set<String> names = new TreeSet<>(specs.keySet());
+                names.addAll(stores.keySet());
+                return names;
+            }
+
+            @Override
+            public void closeAll() {
+                stores.values().forEach(KeyValueStore::close);
+                stores.clear();
+            }
+
+            @Override
+            public void stop() {
+                closeAll();
+            }
+            //endregion
+        }
+    }
+}
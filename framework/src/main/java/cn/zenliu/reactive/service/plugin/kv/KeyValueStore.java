@@ -0,0 +1,616 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: KeyValueStore.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:40:54
+ */
+
+package cn.zenliu.reactive.service.plugin.kv;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * embedded key value store of bytes, kept in memory mapped append only segment files with an in memory hash index.
+ * created by {@link KeyValueManager#getStore}
+ * <p>
+ * 1. a record is {@code int crc32, int keyLen, int valueLen (-1 for delete), key, value}
+ * 2. on open, segments are replayed to rebuild index, replay of a segment stops at first torn or broken record
+ * 3. compaction rewrites live records of sealed segments with few live bytes into active segment,
+ * forces segments written to storage and then deletes them
+ * 4. {@link #read} and {@link #view} never allocate on heap for the value, values are read from mapped files
+ */
+public interface KeyValueStore extends AutoCloseable {
+    //region define
+    String getName();
+
+    /**
+     * @return copy of value, empty if absent
+     */
+    Mono<byte[]> get(@NotNull byte[] key);
+
+    /**
+     * copy value into dst without allocation
+     *
+     * @param dst buffer to write value at its position
+     * @return length of value, -1 if absent
+     * @throws BufferOverflowException if remaining of dst is less than value
+     */
+    int read(@NotNull byte[] key, @NotNull ByteBuffer dst);
+
+    /**
+     * @return read only view of value in mapped file, valid until the store is closed, null if absent
+     */
+    @Nullable
+    ByteBuffer view(@NotNull byte[] key);
+
+    boolean contains(@NotNull byte[] key);
+
+    /**
+     * append value, write to mapped file on subscribe, durable after {@link #flush()} or by OS write back
+     */
+    Mono<Void> put(@NotNull byte[] key, @NotNull byte[] value);
+
+    /**
+     * @return true if key existed
+     */
+    Mono<Boolean> delete(@NotNull byte[] key);
+
+    /**
+     * @return live entries, weakly consistent with concurrent writes and compaction
+     */
+    Flux<Map.Entry<byte[], byte[]>> scan();
+
+    long size();
+
+    /**
+     * force mapped segments to storage
+     */
+    Mono<Void> flush();
+
+    /**
+     * @return bytes reclaimed
+     */
+    Mono<Long> compact();
+
+    @Override
+    void close();
+    //endregion
+
+    @UtilityClass
+    class scope {
+        /**
+         * open or create store in directory
+         */
+        KeyValueStore open(String name, Path dir, StoreSpec spec) {
+            try {
+                return new MappedStore(name, dir, spec);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Slf4j
+        final class MappedStore implements KeyValueStore {
+            static final int HEADER = 12;
+            static final int TOMBSTONE = -1;
+            static final String SUFFIX = ".log";
+            private final String name;
+            private final Path dir;
+            private final int segmentSize;
+            private final double compactRatio;
+            private final boolean autoCompact;
+            private final StampedLock lock = new StampedLock();
+            //segments by id, null for deleted
+            private Segment[] segments = new Segment[16];
+            private Segment active;
+            //index: open addressing, zero hash is empty slot, negative location is deleted slot
+            private long[] hashes = new long[1024];
+            private long[] locations = new long[1024];
+            private int used;
+            private int size;
+            private volatile boolean closed;
+
+            MappedStore(String name, Path dir, StoreSpec spec) throws IOException {
+                this.name = name;
+                this.dir = dir;
+                this.segmentSize = (int) Math.min(Integer.MAX_VALUE, spec.getSegmentSize().toBytes());
+                this.compactRatio = spec.getCompactRatio();
+                this.autoCompact = spec.isAutoCompact();
+                Files.createDirectories(dir);
+                final List<Integer> ids;
+                try (Stream<Path> files = Files.list(dir)) {
+                    ids = files.map(p -> p.getFileName().toString())
+                        .filter(n -> n.matches("\\d{8}\\" + SUFFIX))
+                        .map(n -> Integer.parseInt(n.substring(0, 8)))
+                        .sorted()
+                        .collect(Collectors.toList());
+                }
+                for (Integer id : ids) recover(segment(id));
+                if (active == null) active = segment(0);
+                log.debug("store {} opened with {} entries in {} segments", name, size, ids.size());
+            }
+
+            //region segments
+            private Segment segment(int id) throws IOException {
+                final Segment s = new Segment(id, dir.resolve(String.format("%08d", id) + SUFFIX), segmentSize);
+                if (id >= segments.length) segments = Arrays.copyOf(segments, Math.max(id + 1, segments.length * 2));
+                segments[id] = s;
+                active = s;
+                return s;
+            }
+
+            private void recover(Segment s) {
+                final ByteBuffer buf = s.buf;
+                int pos = 0;
+                while (pos + HEADER <= buf.capacity()) {
+                    final int kl = buf.getInt(pos + 4);
+                    final int vl = buf.getInt(pos + 8);
+                    if (kl <= 0) break;
+                    final int len = HEADER + kl + Math.max(vl, 0);
+                    if (vl < TOMBSTONE || len < 0 || pos + len > buf.capacity() || buf.getInt(pos) != crc(buf, pos, len)) {
+                        log.warn("store {} segment {} broken at {}, rest is dropped", name, s.id, pos);
+                        break;
+                    }
+                    final byte[] key = new byte[kl];
+                    for (int i = 0; i < kl; i++) key[i] = buf.get(pos + HEADER + i);
+                    final long h = hash(key);
+                    if (vl == TOMBSTONE) dead(indexRemove(h, key));
+                    else {
+                        dead(indexPut(h, key, location(s.id, pos)));
+                        s.live += len;
+                    }
+                    pos += len;
+                }
+                s.limit = pos;
+            }
+
+            private static int crc(ByteBuffer buf, int pos, int len) {
+                final ByteBuffer b = buf.duplicate();
+                b.limit(pos + len).position(pos + 4);
+                final CRC32 crc = new CRC32();
+                crc.update(b);
+                return (int) crc.getValue();
+            }
+
+            private static long location(int segment, int offset) {
+                return ((long) segment << 32) | offset;
+            }
+
+            private Segment segmentOf(long location) {
+                return segments[(int) (location >>> 32)];
+            }
+
+            private static int offsetOf(long location) {
+                return (int) location;
+            }
+
+            private int lengthOf(long location) {
+                final ByteBuffer buf = segmentOf(location).buf;
+                final int off = offsetOf(location);
+                return HEADER + buf.getInt(off + 4) + Math.max(buf.getInt(off + 8), 0);
+            }
+
+            /**
+             * account a record no longer live
+             */
+            private void dead(long location) {
+                if (location < 0) return;
+                final Segment s = segmentOf(location);
+                if (s != null) s.live -= lengthOf(location);
+            }
+
+            /**
+             * @return location of appended record
+             */
+            private long append(byte[] key, @Nullable byte[] value) throws IOException {
+                final int len = HEADER + key.length + (value == null ? 0 : value.length);
+                if (len > segmentSize) throw new IllegalArgumentException("record of " + len + " bytes exceed segment size");
+                if (active.limit + len > segmentSize) roll();
+                final int off = active.limit;
+                final ByteBuffer b = active.buf.duplicate();
+                b.position(off + 4);
+                b.putInt(key.length).putInt(value == null ? TOMBSTONE : value.length).put(key);
+                if (value != null) b.put(value);
+                active.buf.putInt(off, crc(active.buf, off, len));
+                active.limit += len;
+                return location(active.id, off);
+            }
+
+            private void roll() throws IOException {
+                final Segment sealed = active;
+                segment(sealed.id + 1);
+                if (autoCompact && sealed.live < sealed.limit * compactRatio)
+                    Schedulers.boundedElastic().schedule(() -> compact().subscribe(
+                        n -> log.debug("store {} compacted {} bytes", name, n),
+                        e -> log.warn("store {} fail to compact", name, e)));
+            }
+            //endregion
+
+            //region index
+            static long hash(byte[] key) {
+                long h = 0xcbf29ce484222325L;
+                for (byte b : key) {
+                    h ^= b;
+                    h *= 0x100000001b3L;
+                }
+                h ^= h >>> 33;
+                h *= 0xff51afd7ed558ccdL;
+                h ^= h >>> 33;
+                return h == 0 ? 1 : h;
+            }
+
+            private boolean keyEquals(long location, byte[] key) {
+                final Segment s = segmentOf(location);
+                final int off = offsetOf(location);
+                if (s.buf.getInt(off + 4) != key.length) return false;
+                for (int i = 0; i < key.length; i++) if (s.buf.get(off + HEADER + i) != key[i]) return false;
+                return true;
+            }
+
+            /**
+             * @return slot of key, -1 if absent
+             */
+            private int slotOf(long h, byte[] key) {
+                final int mask = hashes.length - 1;
+                for (int i = (int) h & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                    if (hashes[i] == h && locations[i] >= 0 && keyEquals(locations[i], key)) return i;
+                }
+                return -1;
+            }
+
+            /**
+             * @return previous location, -1 if absent
+             */
+            private long indexPut(long h, byte[] key, long location) {
+                final int slot = slotOf(h, key);
+                if (slot >= 0) {
+                    final long old = locations[slot];
+                    locations[slot] = location;
+                    return old;
+                }
+                if (used + 1 > hashes.length * 0.6) resize();
+                insert(h, location);
+                used++;
+                size++;
+                return -1;
+            }
+
+            private void insert(long h, long location) {
+                final int mask = hashes.length - 1;
+                int i = (int) h & mask;
+                while (hashes[i] != 0) i = (i + 1) & mask;
+                hashes[i] = h;
+                locations[i] = location;
+            }
+
+            private long indexRemove(long h, byte[] key) {
+                final int slot = slotOf(h, key);
+                if (slot < 0) return -1;
+                final long old = locations[slot];
+                locations[slot] = -1;
+                size--;
+                return old;
+            }
+
+            private void resize() {
+                final long[] hs = hashes;
+                final long[] ls = locations;
+                int cap = hs.length;
+                while (size + 1 > cap * 0.4) cap <<= 1;
+                hashes = new long[cap];
+                locations = new long[cap];
+                for (int i = 0; i < hs.length; i++) if (hs[i] != 0 && ls[i] >= 0) insert(hs[i], ls[i]);
+                used = size;
+            }
+            //endregion
+
+            //region api
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            /**
+             * @return location of key, -1 if absent, must hold read lock
+             */
+            private long find(byte[] key) {
+                if (closed) throw new IllegalStateException("store " + name + " closed");
+                final int slot = slotOf(hash(key), key);
+                return slot < 0 ? -1 : locations[slot];
+            }
+
+            @Override
+            public Mono<byte[]> get(@NotNull byte[] key) {
+                return Mono.fromCallable(() -> {
+                    final long stamp = lock.readLock();
+                    try {
+                        final long loc = find(key);
+                        if (loc < 0) return null;
+                        final Segment s = segmentOf(loc);
+                        final int off = offsetOf(loc);
+                        final byte[] value = new byte[s.buf.getInt(off + 8)];
+                        final int start = off + HEADER + key.length;
+                        for (int i = 0; i < value.length; i++) value[i] = s.buf.get(start + i);
+                        return value;
+                    } finally {
+                        lock.unlockRead(stamp);
+                    }
+                });
+            }
+
+            @Override
+            public int read(@NotNull byte[] key, @NotNull ByteBuffer dst) {
+                final long stamp = lock.readLock();
+                try {
+                    final long loc = find(key);
+                    if (loc < 0) return -1;
+                    final Segment s = segmentOf(loc);
+                    final int off = offsetOf(loc);
+                    final int vl = s.buf.getInt(off + 8);
+                    if (dst.remaining() < vl) throw new BufferOverflowException();
+                    final int start = off + HEADER + key.length;
+                    int i = 0;
+                    for (; i + 8 <= vl; i += 8) dst.putLong(s.buf.getLong(start + i));
+                    for (; i < vl; i++) dst.put(s.buf.get(start + i));
+                    return vl;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Nullable
+            @Override
+            public ByteBuffer view(@NotNull byte[] key) {
+                final long stamp = lock.readLock();
+                try {
+                    final long loc = find(key);
+                    if (loc < 0) return null;
+                    final Segment s = segmentOf(loc);
+                    final int off = offsetOf(loc);
+                    final ByteBuffer b = s.buf.asReadOnlyBuffer();
+                    b.position(off + HEADER + key.length).limit(off + HEADER + key.length + s.buf.getInt(off + 8));
+                    return b.slice();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public boolean contains(@NotNull byte[] key) {
+                final long stamp = lock.readLock();
+                try {
+                    return find(key) >= 0;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public Mono<Void> put(@NotNull byte[] key, @NotNull byte[] value) {
+                if (key.length == 0) return Mono.error(new IllegalArgumentException("empty key"));
+                return Mono.fromCallable(() -> {
+                    final long stamp = lock.writeLock();
+                    try {
+                        if (closed) throw new IllegalStateException("store " + name + " closed");
+                        final long loc = append(key, value);
+                        active.live += lengthOf(loc);
+                        dead(indexPut(hash(key), key, loc));
+                        return null;
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                }).then();
+            }
+
+            @Override
+            public Mono<Boolean> delete(@NotNull byte[] key) {
+                return Mono.fromCallable(() -> {
+                    final long stamp = lock.writeLock();
+                    try {
+                        if (closed) throw new IllegalStateException("store " + name + " closed");
+                        final long old = indexRemove(hash(key), key);
+                        if (old < 0) return false;
+                        dead(old);
+                        append(key, null);
+                        return true;
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                });
+            }
+
+            @Override
+            public Flux<Map.Entry<byte[], byte[]>> scan() {
+                return Flux.defer(() -> {
+                    final long[] found;
+                    final long stamp = lock.readLock();
+                    try {
+                        final long[] hs = hashes;
+                        final long[] ls = locations;
+                        found = IntStream.range(0, hs.length)
+                            .filter(i -> hs[i] != 0 && ls[i] >= 0)
+                            .mapToLong(i -> ls[i])
+                            .toArray();
+                    } finally {
+                        lock.unlockRead(stamp);
+                    }
+                    return Flux.fromStream(Arrays.stream(found).mapToObj(this::entryAt)).filter(e -> e.getKey().length > 0);
+                });
+            }
+
+            /**
+             * @return entry at location, empty key if moved by compaction
+             */
+            private Map.Entry<byte[], byte[]> entryAt(long location) {
+                final long stamp = lock.readLock();
+                try {
+                    final Segment s = segmentOf(location);
+                    if (s == null || closed) return new AbstractMap.SimpleImmutableEntry<>(new byte[0], new byte[0]);
+                    final int off = offsetOf(location);
+                    final byte[] key = new byte[s.buf.getInt(off + 4)];
+                    final int vl = s.buf.getInt(off + 8);
+                    final byte[] value = new byte[Math.max(vl, 0)];
+                    final ByteBuffer b = s.buf.duplicate();
+                    b.position(off + HEADER);
+                    b.get(key).get(value);
+                    return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public long size() {
+                final long stamp = lock.readLock();
+                try {
+                    return size;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public Mono<Void> flush() {
+                return Mono.<Void>fromRunnable(() -> {
+                    final List<Segment> live;
+                    final long stamp = lock.readLock();
+                    try {
+                        live = Arrays.stream(segments).filter(s -> s != null).collect(Collectors.toList());
+                    } finally {
+                        lock.unlockRead(stamp);
+                    }
+                    live.forEach(s -> s.buf.force());
+                }).subscribeOn(Schedulers.boundedElastic());
+            }
+
+            @Override
+            public Mono<Long> compact() {
+                return Mono.fromCallable(() -> {
+                    final long stamp = lock.writeLock();
+                    try {
+                        if (closed) return 0L;
+                        long reclaimed = 0;
+                        final int last = active.id;
+                        for (int id = 0; id < last; id++) {
+                            final Segment s = segments[id];
+                            if (s == null || s.live >= s.limit * compactRatio) continue;
+                            reclaimed += compact(s);
+                        }
+                        return reclaimed;
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                }).subscribeOn(Schedulers.boundedElastic());
+            }
+
+            /**
+             * move live records and needed tombstones of segment to active one, force them to storage, then delete it
+             */
+            private long compact(Segment s) throws IOException {
+                final int from = active.id;
+                boolean oldest = true;
+                for (int i = 0; i < s.id; i++) if (segments[i] != null) oldest = false;
+                final ByteBuffer buf = s.buf;
+                int pos = 0;
+                while (pos < s.limit) {
+                    final int kl = buf.getInt(pos + 4);
+                    final int vl = buf.getInt(pos + 8);
+                    final int len = HEADER + kl + Math.max(vl, 0);
+                    final byte[] key = new byte[kl];
+                    for (int i = 0; i < kl; i++) key[i] = buf.get(pos + HEADER + i);
+                    final long h = hash(key);
+                    if (vl == TOMBSTONE) {
+                        //older segment may still have a put of key
+                        if (!oldest && slotOf(h, key) < 0) append(key, null);
+                    } else {
+                        final int slot = slotOf(h, key);
+                        if (slot >= 0 && locations[slot] == location(s.id, pos)) {
+                            final byte[] value = new byte[vl];
+                            for (int i = 0; i < vl; i++) value[i] = buf.get(pos + HEADER + kl + i);
+                            final long loc = append(key, value);
+                            active.live += len;
+                            locations[slot] = loc;
+                        }
+                    }
+                    pos += len;
+                }
+                //copies and segments sealed meanwhile must be durable before the only other copy is gone
+                for (int id = from; id <= active.id; id++) if (segments[id] != null) segments[id].buf.force();
+                segments[s.id] = null;
+                Files.deleteIfExists(s.file);
+                return s.limit - s.live;
+            }
+
+            @Override
+            public void close() {
+                final long stamp = lock.writeLock();
+                try {
+                    if (closed) return;
+                    closed = true;
+                    for (Segment s : segments) if (s != null) s.buf.force();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+            //endregion
+        }
+
+        /**
+         * one mapped log file, unmapped by GC so views stay readable after compaction
+         */
+        final class Segment {
+            final int id;
+            final Path file;
+            final MappedByteBuffer buf;
+            int limit;
+            long live;
+
+            Segment(int id, Path file, int size) throws IOException {
+                this.id = id;
+                this.file = file;
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, ch.size()));
+                }
+            }
+        }
+    }
+}
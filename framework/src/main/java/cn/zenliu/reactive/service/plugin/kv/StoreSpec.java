@@ -0,0 +1,53 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StoreSpec.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:40:54
+ */
+
+package cn.zenliu.reactive.service.plugin.kv;
+
+import com.typesafe.config.ConfigMemorySize;
+import com.typesafe.config.Optional;
+import lombok.Data;
+
+/**
+ * spec of a key value store, declared as {@code kv.stores.<name>} or {@code kv.default}
+ */
+@Data
+public class StoreSpec {
+    /**
+     * directory of segment files, default store spec uses {@code <dir>/<name>}
+     */
+    @Optional
+    private String dir = "data/kv";
+    /**
+     * size of one segment file, a record must fit in one segment
+     */
+    @Optional
+    private ConfigMemorySize segmentSize = ConfigMemorySize.ofBytes(64 * 1024 * 1024);
+    /**
+     * sealed segment with live bytes less than this ratio are rewritten by compaction
+     */
+    @Optional
+    private double compactRatio = 0.5;
+    /**
+     * compact in background when a segment is sealed
+     */
+    @Optional
+    private boolean autoCompact = true;
+}
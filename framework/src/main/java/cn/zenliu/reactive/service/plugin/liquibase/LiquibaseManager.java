@@ -23,6 +23,7 @@ package cn.zenliu.reactive.service.plugin.liquibase;
 
 
 import cn.zenliu.reactive.service.plugin.Plugin;
+import cn.zenliu.reactive.service.plugin.hikari.HikariManager;
 import cn.zenliu.reactive.service.util.Singleton;
 import liquibase.Contexts;
 import liquibase.LabelExpression;
@@ -63,6 +64,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * {@code liquibase.dropAll boolean default false}
  * {@code liquibase.*  }
  */
+@Plugin.DependsOn(HikariManager.class)
 public interface LiquibaseManager extends Plugin {
     //region SPI define
     void createAndUpdate(DataSource ds, Properties prop);
@@ -0,0 +1,288 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: BatchLoader.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:57:17
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * batch loader (data loader): per key loads issued within a short window are gathered into one batch call,
+ * eg: one {@code where id in (...)} query instead of N queries.
+ * <p>
+ * 1. a window of zero gathers loads issued before the dispatch task runs on scheduler (one tick)
+ * 2. results are cached per request when subscriber context is prepared by {@link #requestScope()},
+ * so a key is loaded at most once in a request
+ * 3. a caller cancelled before dispatch is removed from batch, a batch in flight is cancelled when all callers left
+ * 4. meters: timer {@code batchloader.wait} (from load to dispatch) and distribution {@code batchloader.size} (keys per batch),
+ * tagged by name, removed by {@link #close()}
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author Zen.Liu
+ */
+public interface BatchLoader<K, V> extends AutoCloseable {
+    /**
+     * @return lazy mono of value, empty if batch result not contains the key
+     */
+    Mono<V> load(@NotNull K key);
+
+    /**
+     * @return count of batch calls
+     */
+    long batches();
+
+    /**
+     * @return count of keys dispatched
+     */
+    long keys();
+
+    /**
+     * dispatch pending loads and remove meters, loader should not be used after closed
+     */
+    @Override
+    void close();
+
+    /**
+     * @param name      name used as meter tag, should be unique among loaders not closed
+     * @param batch     load values of keys, missing key means no value
+     * @param window    max time a load waits for others
+     * @param maxBatch  dispatch immediately when this many keys gathered
+     * @param scheduler where dispatch runs
+     */
+    static <K, V> BatchLoader<K, V> create(@NotNull String name,
+                                           @NotNull Function<? super Set<K>, ? extends Mono<? extends Map<K, ? extends V>>> batch,
+                                           @NotNull Duration window, int maxBatch, @NotNull Scheduler scheduler) {
+        return new scope.BatchLoaderImpl<>(name, batch, window, maxBatch, scheduler);
+    }
+
+    /**
+     * @return context modifier enables per request cache of all loaders,
+     * eg: {@code handle(req).subscriberContext(BatchLoader.requestScope())}
+     */
+    static Function<Context, Context> requestScope() {
+        return ctx -> ctx.hasKey(scope.CACHE) ? ctx : ctx.put(scope.CACHE, new ConcurrentHashMap<>());
+    }
+
+    @UtilityClass
+    class scope {
+        final Object CACHE = new Object() {
+            @Override
+            public String toString() {
+                return "BatchLoader.CACHE";
+            }
+        };
+
+        final class Waiter<V> {
+            final MonoSink<V> sink;
+            final long enqueued = System.nanoTime();
+            /**
+             * null before dispatched
+             */
+            volatile Batch<?, ?> batch;
+            volatile boolean cancelled;
+
+            Waiter(MonoSink<V> sink) {
+                this.sink = sink;
+            }
+        }
+
+        final class Batch<K, V> {
+            final Map<K, List<Waiter<V>>> waiters;
+            final AtomicInteger alive;
+            volatile Disposable subscription;
+
+            Batch(Map<K, List<Waiter<V>>> waiters) {
+                this.waiters = waiters;
+                int n = 0;
+                for (List<Waiter<V>> list : waiters.values()) n += list.size();
+                this.alive = new AtomicInteger(n);
+                for (List<Waiter<V>> list : waiters.values()) for (Waiter<V> w : list) w.batch = this;
+            }
+
+            void leave() {
+                if (alive.decrementAndGet() == 0) {
+                    final Disposable d = subscription;
+                    if (d != null) d.dispose();
+                }
+            }
+        }
+
+        @Slf4j
+        final class BatchLoaderImpl<K, V> implements BatchLoader<K, V> {
+            private final Function<? super Set<K>, ? extends Mono<? extends Map<K, ? extends V>>> batch;
+            private final long windowNanos;
+            private final int maxBatch;
+            private final Scheduler scheduler;
+            private final LongAdder batches = new LongAdder();
+            private final LongAdder keys = new LongAdder();
+            private final String name;
+            private final LongConsumer waitTimer;
+            private final DoubleConsumer sizes;
+            private Map<K, List<Waiter<V>>> pending = new LinkedHashMap<>();
+            private Disposable timer;
+
+            BatchLoaderImpl(String name, Function<? super Set<K>, ? extends Mono<? extends Map<K, ? extends V>>> batch,
+                            Duration window, int maxBatch, Scheduler scheduler) {
+                this.name = name;
+                this.batch = batch;
+                this.windowNanos = window.toNanos();
+                this.maxBatch = Math.max(1, maxBatch);
+                this.scheduler = scheduler;
+                this.waitTimer = Meters.timer("batchloader.wait", "time from load to dispatch", "name", name);
+                this.sizes = Meters.summary("batchloader.size", "keys per batch", "name", name);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Mono<V> load(@NotNull K key) {
+                return Mono.subscriberContext().flatMap(ctx -> {
+                    final Optional<Map<Object, Map<Object, Mono<?>>>> cache = ctx.getOrEmpty(CACHE);
+                    if (!cache.isPresent()) return enqueue(key);
+                    return (Mono<V>) cache.get()
+                        .computeIfAbsent(this, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(key, k -> enqueue(key).cache());
+                });
+            }
+
+            private Mono<V> enqueue(K key) {
+                return Mono.create(sink -> {
+                    final Waiter<V> waiter = new Waiter<>(sink);
+                    sink.onCancel(() -> cancel(key, waiter));
+                    final Batch<K, V> full;
+                    synchronized (this) {
+                        pending.computeIfAbsent(key, k -> new ArrayList<>(1)).add(waiter);
+                        full = pending.size() >= maxBatch ? drain() : null;
+                        if (full == null && timer == null) {
+                            timer = windowNanos <= 0
+                                ? scheduler.schedule(this::dispatch)
+                                : scheduler.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+                        }
+                    }
+                    if (full != null) scheduler.schedule(() -> send(full));
+                });
+            }
+
+            private void cancel(K key, Waiter<V> waiter) {
+                waiter.cancelled = true;
+                final Batch<?, ?> b = waiter.batch;
+                if (b != null) {
+                    b.leave();
+                    return;
+                }
+                synchronized (this) {
+                    if (waiter.batch != null) {
+                        waiter.batch.leave();
+                        return;
+                    }
+                    final List<Waiter<V>> list = pending.get(key);
+                    if (list != null && list.remove(waiter) && list.isEmpty()) pending.remove(key);
+                }
+            }
+
+            void dispatch() {
+                final Batch<K, V> drained;
+                synchronized (this) {
+                    drained = drain();
+                }
+                if (drained != null) send(drained);
+            }
+
+            /**
+             * take all pending waiters as one batch, should hold lock
+             */
+            private Batch<K, V> drain() {
+                if (timer != null) timer.dispose();
+                timer = null;
+                if (pending.isEmpty()) return null;
+                final Batch<K, V> b = new Batch<>(pending);
+                pending = new LinkedHashMap<>();
+                return b;
+            }
+
+            private void send(Batch<K, V> b) {
+                final Map<K, List<Waiter<V>>> drained = b.waiters;
+                final long now = System.nanoTime();
+                for (List<Waiter<V>> list : drained.values()) for (Waiter<V> w : list) waitTimer.accept(now - w.enqueued);
+                batches.increment();
+                keys.add(drained.size());
+                sizes.accept(drained.size());
+                final Mono<? extends Map<K, ? extends V>> call;
+                try {
+                    call = batch.apply(Collections.unmodifiableSet(drained.keySet()));
+                } catch (Throwable e) {
+                    fail(drained, e);
+                    return;
+                }
+                b.subscription = call.subscribe(
+                    values -> drained.forEach((k, list) -> {
+                        final V v = values == null ? null : values.get(k);
+                        for (Waiter<V> w : list) {
+                            if (v == null) w.sink.success();
+                            else w.sink.success(v);
+                        }
+                    }),
+                    e -> fail(drained, e),
+                    //complete without value: all empty, no effect on sinks already completed
+                    () -> drained.values().forEach(list -> list.forEach(w -> w.sink.success())));
+                if (b.alive.get() <= 0) b.subscription.dispose();
+            }
+
+            private void fail(Map<K, List<Waiter<V>>> drained, Throwable e) {
+                drained.values().forEach(list -> list.forEach(w -> w.sink.error(e)));
+            }
+
+            @Override
+            public long batches() {
+                return batches.sum();
+            }
+
+            @Override
+            public long keys() {
+                return keys.sum();
+            }
+
+            @Override
+            public void close() {
+                dispatch();
+                Meters.remove("batchloader.wait", "name", name);
+                Meters.remove("batchloader.size", "name", name);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ServiceIndex.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:49:18
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * precomputed index of service providers, generated at build time by {@link ServiceIndexProcessor}.
+ * <p>
+ * {@link #load(Class)} is the replacement of {@link ServiceLoader#load(Class)}:
+ * when an index is found, providers are instanced from it alone without looking up class path,
+ * it holds providers of the compilation and of all jars on class path of the build,
+ * providers only added at runtime are not seen. without index, {@link ServiceLoader} is used.
+ * <p>
+ * the index class is {@link #INDEX_CLASS} by default,
+ * can be changed by processor option and system property both named {@link #PROP_INDEX_CLASS},
+ * an empty system property disables the index.
+ */
+public interface ServiceIndex {
+    String INDEX_CLASS = "cn.zenliu.reactive.service.GeneratedServiceIndex";
+    String PROP_INDEX_CLASS = "reactive.service.index";
+
+    //region define
+
+    /**
+     * @param service binary name of service interface
+     * @return new instances of providers of the service, null if service has no provider in the build
+     */
+    @Nullable
+    Object[] providers(String service);
+    //endregion
+
+    /**
+     * @return providers visible from context class loader
+     */
+    static <T> List<T> load(@NonNull Class<T> service) {
+        return load(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @param service service interface
+     * @param loader  class loader to find index and providers
+     * @return providers of service from index, or found by {@link ServiceLoader} if no index
+     * @throws ServiceConfigurationError same as {@link ServiceLoader}
+     */
+    static <T> List<T> load(@NonNull Class<T> service, @Nullable ClassLoader loader) {
+        final ServiceIndex index = scope.indexOf(loader);
+        final List<T> result = new ArrayList<>();
+        if (index == null) {
+            ServiceLoader.load(service, loader).forEach(result::add);
+            return result;
+        }
+        final Object[] providers = index.providers(service.getName());
+        if (providers == null) return result;
+        for (Object p : providers) {
+            if (!service.isInstance(p))
+                throw new ServiceConfigurationError(service.getName() + ": Provider " + p.getClass().getName() + " not a subtype");
+            result.add(service.cast(p));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if index found for class loader
+     */
+    static boolean isIndexed(@Nullable ClassLoader loader) {
+        return scope.indexOf(loader) != null;
+    }
+
+    @UtilityClass
+    class scope {
+        private final ServiceIndex NONE = service -> null;
+        /**
+         * index instance refers its class loader, so held weakly too
+         */
+        private final Map<ClassLoader, WeakReference<ServiceIndex>> indexes = new WeakHashMap<>();
+
+        @Nullable
+        ServiceIndex indexOf(@Nullable ClassLoader loader) {
+            ServiceIndex index;
+            synchronized (indexes) {
+                final WeakReference<ServiceIndex> ref = indexes.get(loader);
+                index = ref == null ? null : ref.get();
+                if (index == null) {
+                    index = find(loader);
+                    indexes.put(loader, new WeakReference<>(index));
+                }
+            }
+            return index == NONE ? null : index;
+        }
+
+        private ServiceIndex find(@Nullable ClassLoader loader) {
+            final String name = System.getProperty(PROP_INDEX_CLASS, INDEX_CLASS);
+            if (name.isEmpty()) return NONE;
+            try {
+                final Class<?> clz = Class.forName(name, true, loader == null ? ClassLoader.getSystemClassLoader() : loader);
+                return (ServiceIndex) clz.newInstance();
+            } catch (ClassNotFoundException e) {
+                return NONE;
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new ServiceConfigurationError("invalid service index " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ServiceIndexProcessor.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:49:52
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * annotation processor generates the {@link ServiceIndex} class, work along with auto-service processor.
+ * <p>
+ * indexed providers:
+ * 1. marked with {@code @AutoService} in current compilation
+ * 2. declared in {@code META-INF/services} of every jar and directory of class path,
+ * class path is taken from option {@link #PROP_CLASS_PATH} and from processor class loader (when it's on class path),
+ * only public providers with public no-arg constructor visible to the compilation are kept, others are warned
+ * <p>
+ * {@link ServiceIndex#load(Class)} then uses the index alone, so it must be generated for the final application module.
+ * <p>
+ * options:
+ * {@code -Areactive.service.index=<class name>} name of generated class, default {@link ServiceIndex#INDEX_CLASS}
+ * {@code -Areactive.service.classpath=<path>} class path to collect provider files, required with {@code annotationProcessorPaths},
+ * which could be filled by {@code maven-dependency-plugin:build-classpath} with {@code outputProperty}
+ * <p>
+ * not registered as a service on purpose: every module depends on framework would generate the same index class.
+ * enable it only for the final application module by naming it in maven-compiler-plugin,
+ * as {@code annotationProcessors} disables discovery, list all processors needed:
+ * <pre>{@code
+ * <annotationProcessorPaths>
+ *     <path>lombok</path>
+ *     <path>auto-service</path>
+ *     <path>reactive-service-framework</path>
+ * </annotationProcessorPaths>
+ * <annotationProcessors>
+ *     <annotationProcessor>lombok.launch.AnnotationProcessorHider$AnnotationProcessor</annotationProcessor>
+ *     <annotationProcessor>com.google.auto.service.processor.AutoServiceProcessor</annotationProcessor>
+ *     <annotationProcessor>cn.zenliu.reactive.service.util.ServiceIndexProcessor</annotationProcessor>
+ * </annotationProcessors>
+ * }</pre>
+ */
+@SupportedAnnotationTypes(ServiceIndexProcessor.AUTO_SERVICE)
+@SupportedOptions({ServiceIndex.PROP_INDEX_CLASS, ServiceIndexProcessor.PROP_CLASS_PATH})
+public final class ServiceIndexProcessor extends AbstractProcessor {
+    static final String AUTO_SERVICE = "com.google.auto.service.AutoService";
+    static final String PROP_CLASS_PATH = "reactive.service.classpath";
+    static final String SERVICES = "META-INF/services/";
+    /**
+     * binary name of service -> binary name of provider -> source name of provider
+     */
+    private final Map<String, Map<String, String>> services = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        if (env.processingOver()) {
+            collectClassPath();
+            generate();
+            return false;
+        }
+        final TypeElement autoService = processingEnv.getElementUtils().getTypeElement(AUTO_SERVICE);
+        if (autoService == null) return false;
+        for (Element e : env.getElementsAnnotatedWith(autoService)) {
+            if (!(e instanceof TypeElement)) continue;
+            final TypeElement provider = (TypeElement) e;
+            for (TypeElement service : servicesOf(provider, autoService)) {
+                services.computeIfAbsent(binaryName(service), k -> new TreeMap<>())
+                    .put(binaryName(provider), provider.getQualifiedName().toString());
+            }
+        }
+        //not claim it, auto-service processor still write META-INF/services
+        return false;
+    }
+
+    private List<TypeElement> servicesOf(TypeElement provider, TypeElement autoService) {
+        final List<TypeElement> result = new ArrayList<>();
+        for (AnnotationMirror mirror : provider.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(autoService)) continue;
+            mirror.getElementValues().forEach((k, v) -> {
+                if (!k.getSimpleName().contentEquals("value")) return;
+                final Object value = v.getValue();
+                final List<?> values = value instanceof List ? (List<?>) value : Collections.singletonList(v);
+                for (Object item : values) {
+                    final Object type = item instanceof AnnotationValue ? ((AnnotationValue) item).getValue() : item;
+                    if (type instanceof DeclaredType)
+                        result.add((TypeElement) ((DeclaredType) type).asElement());
+                }
+            });
+        }
+        return result;
+    }
+
+    //region class path
+    private void collectClassPath() {
+        final Map<String, Set<String>> declared = new TreeMap<>();
+        final Set<String> roots = new LinkedHashSet<>();
+        final String path = processingEnv.getOptions().get(PROP_CLASS_PATH);
+        if (path != null) for (String p : path.split(File.pathSeparator)) if (!p.trim().isEmpty()) roots.add(p.trim());
+        final ClassLoader loader = getClass().getClassLoader();
+        if (loader instanceof URLClassLoader) for (URL url : ((URLClassLoader) loader).getURLs()) {
+            if (!"file".equals(url.getProtocol())) continue;
+            try {
+                roots.add(new File(url.toURI()).getPath());
+            } catch (URISyntaxException | IllegalArgumentException ignored) {
+            }
+        }
+        for (String root : roots) {
+            try {
+                scan(new File(root), declared);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "failed to read services of " + root + ": " + e);
+            }
+        }
+        final Elements elements = processingEnv.getElementUtils();
+        declared.forEach((service, providers) -> providers.forEach(provider -> {
+            final TypeElement type = elements.getTypeElement(provider.replace('$', '.'));
+            if (type == null || !isInstantiable(type)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "provider " + provider + " of " + service + " is not indexed: not visible or without public no-arg constructor");
+                return;
+            }
+            services.computeIfAbsent(service, k -> new TreeMap<>()).putIfAbsent(binaryName(type), type.getQualifiedName().toString());
+        }));
+    }
+
+    private static void scan(File root, Map<String, Set<String>> declared) throws IOException {
+        if (root.isDirectory()) {
+            final File[] files = new File(root, SERVICES).listFiles(File::isFile);
+            if (files == null) return;
+            for (File f : files) {
+                try (InputStream in = new FileInputStream(f)) {
+                    parse(in, declared.computeIfAbsent(f.getName(), k -> new LinkedHashSet<>()));
+                }
+            }
+        } else if (root.isFile()) {
+            try (JarFile jar = new JarFile(root)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry e = entries.nextElement();
+                    if (e.isDirectory() || !e.getName().startsWith(SERVICES) || e.getName().length() == SERVICES.length()) continue;
+                    try (InputStream in = jar.getInputStream(e)) {
+                        parse(in, declared.computeIfAbsent(e.getName().substring(SERVICES.length()), k -> new LinkedHashSet<>()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void parse(InputStream in, Set<String> providers) throws IOException {
+        final BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line = r.readLine(); line != null; line = r.readLine()) {
+            final int comment = line.indexOf('#');
+            final String name = (comment < 0 ? line : line.substring(0, comment)).trim();
+            if (!name.isEmpty()) providers.add(name);
+        }
+    }
+
+    /**
+     * instanced by {@code new} in generated index, same as {@link java.util.ServiceLoader} requires
+     */
+    private static boolean isInstantiable(TypeElement type) {
+        if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getModifiers().contains(Modifier.ABSTRACT)) return false;
+        if (type.getEnclosingElement() instanceof TypeElement && !type.getModifiers().contains(Modifier.STATIC)) return false;
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement())
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) return false;
+        return ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+            .anyMatch(c -> c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC));
+    }
+    //endregion
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void generate() {
+        final String name = processingEnv.getOptions().getOrDefault(ServiceIndex.PROP_INDEX_CLASS, ServiceIndex.INDEX_CLASS);
+        final int dot = name.lastIndexOf('.');
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(name);
+            try (PrintWriter w = new PrintWriter(file.openWriter())) {
+                if (dot > 0) w.println("package " + name.substring(0, dot) + ";\n");
+                w.println("/**\n * generated by " + ServiceIndexProcessor.class.getName() + ", do not edit\n */");
+                w.println("public final class " + name.substring(dot + 1) + " implements " + ServiceIndex.class.getCanonicalName() + " {");
+                w.println("    @Override");
+                w.println("    public Object[] providers(String service) {");
+                w.println("        switch (service) {");
+                services.forEach((service, providers) -> {
+                    w.println("            case \"" + service + "\":");
+                    final StringJoiner ins = new StringJoiner(", ", "new Object[]{", "}");
+                    providers.values().forEach(p -> ins.add("new " + p + "()"));
+                    w.println("                return " + ins + ";");
+                });
+                w.println("            default:");
+                w.println("                return null;");
+                w.println("        }");
+                w.println("    }");
+                w.println("}");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "failed to generate service index " + name + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: SingleFlight.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:10:11
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * single flight: concurrent callers with same key share one in-flight load
+ * <p>
+ * 1. the first subscriber starts the loader, later ones join it until it terminates
+ * 2. a caller leaving (cancel) does not cancel the load for others, the load is cancelled when all callers left
+ * 3. the key is released on complete,error or cancel, so next call starts a new load (nothing is cached)
+ * 4. a caller joined just before the load terminates receives its result, the loader never runs twice
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author Zen.Liu
+ */
+public interface SingleFlight<K, V> {
+    /**
+     * @param key    key
+     * @param loader supply the load, only used when no load in flight for key
+     * @return lazy mono, the load starts (or is joined) when subscribed
+     */
+    Mono<V> execute(@NotNull K key, @NotNull Supplier<? extends Mono<? extends V>> loader);
+
+    /**
+     * @return count of keys in flight
+     */
+    int inFlight();
+
+    /**
+     * @return count of calls which joined a load started by others
+     */
+    long shared();
+
+    static <K, V> SingleFlight<K, V> create() {
+        return new scope.SingleFlightImpl<>();
+    }
+
+    @UtilityClass
+    class scope {
+        final class SingleFlightImpl<K, V> implements SingleFlight<K, V> {
+            private final ConcurrentMap<K, Flight<K, V>> flights = new ConcurrentHashMap<>();
+            private final LongAdder shared = new LongAdder();
+
+            @Override
+            public Mono<V> execute(@NotNull K key, @NotNull Supplier<? extends Mono<? extends V>> loader) {
+                return Mono.defer(() -> {
+                    for (; ; ) {
+                        final Flight<K, V> created = new Flight<>(flights, key);
+                        final Flight<K, V> current = flights.putIfAbsent(key, created);
+                        if (current == null) return created.start(loader);
+                        //a flight cancelled by all of its callers can't be joined
+                        if (current.join()) {
+                            shared.increment();
+                            return current.result();
+                        }
+                        flights.remove(key, current);
+                    }
+                });
+            }
+
+            @Override
+            public int inFlight() {
+                return flights.size();
+            }
+
+            @Override
+            public long shared() {
+                return shared.sum();
+            }
+        }
+
+        /**
+         * one load, its result is kept by a processor, so callers joined at any time before it's released get the result
+         */
+        final class Flight<K, V> {
+            private final ConcurrentMap<K, Flight<K, V>> flights;
+            private final K key;
+            private final MonoProcessor<V> result = MonoProcessor.create();
+            private volatile Disposable load;
+            private int callers;
+            private boolean cancelled;
+
+            Flight(ConcurrentMap<K, Flight<K, V>> flights, K key) {
+                this.flights = flights;
+                this.key = key;
+            }
+
+            Mono<V> start(Supplier<? extends Mono<? extends V>> loader) {
+                join();
+                //not subscribed by processor, which cancels upstream on value
+                load = Mono.<V>defer(loader::get)
+                    //release key before signal to callers, so they could start a new load at once
+                    .doOnTerminate(() -> flights.remove(key, this))
+                    .subscribe(result::onNext, result::onError, result::onComplete);
+                return result();
+            }
+
+            synchronized boolean join() {
+                if (cancelled) return false;
+                callers++;
+                return true;
+            }
+
+            Mono<V> result() {
+                return result.doOnCancel(this::leave);
+            }
+
+            /**
+             * the last caller leaving cancels the load
+             */
+            private void leave() {
+                synchronized (this) {
+                    if (--callers > 0 || result.isTerminated()) return;
+                    cancelled = true;
+                }
+                flights.remove(key, this);
+                final Disposable d = load;
+                if (d != null) d.dispose();
+            }
+        }
+    }
+}
@@ -26,19 +26,26 @@ import lombok.experimental.UtilityClass;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 /**
  * this is just singleton container,use to warp any class as ServiceProvider|Factory singleton container
+ * <p>
+ * instances are created at most once under concurrent first access and published safely,
+ * read path of an existed instance is a single volatile read without locking.
+ * providers from SPI are loaded once per context class loader via {@link ServiceIndex} and cached:
+ * <b>{@link #oneFromSPI} and {@link #allFromSPI} return the same shared provider instances on every call,
+ * not fresh ones like {@link ServiceLoader} does</b>, providers should be stateless or thread safe.
+ * the cache is held softly, so it never pins a class loader once memory is needed.
  *
  * @param <T>
  * @author Zen.Liu
  */
 public interface Singleton<T> {
     /**
-     * get first (maybe random) instance  from SPI (service provider interface)
+     * get first (maybe random) instance  from SPI (service provider interface), shared between calls
      *
      * @param wanna : if not null ,means wanna same as this instance
      * @return available when 1. construct with service provider interface Class. 2. no error happen when use service
@@ -47,7 +54,7 @@ public interface Singleton<T> {
     <F extends T> Optional<F> oneFromSPI(@Nullable Class<F> wanna);
 
     /**
-     * get all instance  from SPI (service provider interface)
+     * get all instance  from SPI (service provider interface), shared between calls
      *
      * @return available when 1. construct with service provider interface Class. 2. no error happen when use service
      * loader
@@ -68,6 +75,12 @@ public interface Singleton<T> {
      */
     Optional<T> getHardReference();
 
+    /**
+     * drop the created soft and hard instances, next get creates a new one from supplier.
+     * used when the instance is no longer usable, eg: a plugin stopped by {@link cn.zenliu.reactive.service.plugin.PluginManager#shutdown()}
+     */
+    void reset();
+
     static <T> Singleton<T> generate(
         @Nullable final Supplier<T> instanceSupplier,
         @Nullable final Class<? extends T> spi) {
@@ -76,13 +89,22 @@ public interface Singleton<T> {
 
     @UtilityClass
     class scope {
-       protected final class SingletonImpl<T> implements Singleton<T> {
-            private SoftReference<T> softReference;
-            private T hardReference;
+        protected final class SingletonImpl<T> implements Singleton<T> {
+            /**
+             * holds the created instance as Optional,so read path need not allocate
+             */
+            private volatile Optional<T> hardReference;
+            private volatile SoftReference<Optional<T>> softReference;
+            /**
+             * providers of last used class loader, others are kept in {@link #providersByLoader}.
+             * provider classes refer their class loader, so lists are held softly or the weak keys never clear
+             */
+            private volatile Providers<T> providers;
+            private final Map<ClassLoader, SoftReference<List<T>>> providersByLoader = new WeakHashMap<>();
             private final Supplier<T> instance;
             private final Class<? extends T> serviceProvider;
 
-           SingletonImpl(final Supplier<T> instance, final Class<? extends T> serviceProvider) {
+            SingletonImpl(final Supplier<T> instance, final Class<? extends T> serviceProvider) {
                 this.instance = instance;
                 this.serviceProvider = serviceProvider;
             }
@@ -90,56 +112,101 @@ public interface Singleton<T> {
             @SuppressWarnings("unchecked")
             @Override
             public <F extends T> Optional<F> oneFromSPI(@Nullable Class<F> wanna) {
-                if (serviceProvider == null) return Optional.empty();
-                try {
-                    final Iterator<? extends T> iterator = ServiceLoader.load(serviceProvider).iterator();
-                    if (wanna != null) {
-                        final AtomicReference<F> instance = new AtomicReference<F>(null);
-                        iterator.forEachRemaining(i -> {
-                            if (wanna.isInstance(i)) instance.set((F) i);
-                        });
-                        return Optional.ofNullable(instance.get());
-                    } else
-                        return Optional.ofNullable(iterator.hasNext() ? (F) iterator.next() : null);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return Optional.empty();
+                final List<T> all = providers();
+                if (all == null) return Optional.empty();
+                if (wanna == null) return Optional.ofNullable(all.isEmpty() ? null : (F) all.get(0));
+                F found = null;
+                for (T i : all) {
+                    if (wanna.isInstance(i)) found = (F) i;
                 }
-
+                return Optional.ofNullable(found);
             }
 
             @Override
             public Optional<List<T>> allFromSPI() {
-                if (serviceProvider == null) return Optional.empty();
-                try {
-                    final Iterator<? extends T> iterator = ServiceLoader.load(serviceProvider).iterator();
-                    final List<T> result = new ArrayList<>();
-                    iterator.forEachRemaining(result::add);
-                    return Optional.ofNullable(result.isEmpty() ? null : result);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return Optional.empty();
-                }
+                final List<T> all = providers();
+                return Optional.ofNullable(all == null || all.isEmpty() ? null : all);
             }
 
             @Override
             public Optional<T> getSoftInstance() {
                 if (instance == null) return Optional.empty();
-                if (softReference == null || softReference.get() == null) {
-                    softReference = new SoftReference<>(instance.get());
+                final SoftReference<Optional<T>> ref = softReference;
+                Optional<T> value = ref == null ? null : ref.get();
+                if (value != null) return value;
+                synchronized (this) {
+                    final SoftReference<Optional<T>> again = softReference;
+                    value = again == null ? null : again.get();
+                    if (value == null) {
+                        value = Optional.ofNullable(instance.get());
+                        if (value.isPresent()) softReference = new SoftReference<>(value);
+                    }
+                    return value;
                 }
-                return Optional.ofNullable(softReference.get());
             }
 
             @Override
             public Optional<T> getHardReference() {
+                Optional<T> value = hardReference;
+                if (value != null) return value;
                 if (instance == null) return Optional.empty();
-                if (hardReference == null) {
-                    hardReference = instance.get();
+                synchronized (this) {
+                    value = hardReference;
+                    if (value == null) {
+                        value = Optional.ofNullable(instance.get());
+                        if (value.isPresent()) hardReference = value;
+                    }
+                    return value;
                 }
-                return Optional.ofNullable(hardReference);
             }
 
+            @Override
+            public synchronized void reset() {
+                hardReference = null;
+                softReference = null;
+            }
+
+            /**
+             * @return unmodifiable providers visible from context class loader, null if failed to load
+             */
+            @Nullable
+            private List<T> providers() {
+                if (serviceProvider == null) return null;
+                final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                final Providers<T> last = providers;
+                if (last != null && last.loader.get() == loader) {
+                    final List<T> list = last.list.get();
+                    if (list != null) return list;
+                }
+                synchronized (providersByLoader) {
+                    SoftReference<List<T>> ref = providersByLoader.get(loader);
+                    List<T> list = ref == null ? null : ref.get();
+                    if (list == null) {
+                        try {
+                            final List<T> result = new ArrayList<>();
+                            result.addAll(ServiceIndex.load(serviceProvider, loader));
+                            list = Collections.unmodifiableList(result);
+                        } catch (Exception | ServiceConfigurationError e) {
+                            e.printStackTrace();
+                            return null;
+                        }
+                        ref = new SoftReference<>(list);
+                        providersByLoader.put(loader, ref);
+                    }
+                    providers = new Providers<>(loader, ref);
+                    return list;
+                }
+            }
+        }
+
+        final class Providers<T> {
+            final WeakReference<ClassLoader> loader;
+            final SoftReference<List<T>> list;
+
+            Providers(ClassLoader loader, SoftReference<List<T>> list) {
+                this.loader = new WeakReference<>(loader);
+                this.list = list;
+            }
         }
     }
 
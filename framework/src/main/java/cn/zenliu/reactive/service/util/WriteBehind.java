@@ -0,0 +1,246 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: WriteBehind.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:55:21
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * write behind: writes submitted by concurrent callers are buffered for a short window (or until size threshold),
+ * then executed together by one {@link Flusher} call, which should run them in one transaction as one batch per group.
+ * <p>
+ * 1. each caller's mono completes with its own result
+ * 2. when a flush failed, writes of it are retried one by one, so each caller get its own result or error
+ * 3. a write cancelled before flushed is dropped
+ *
+ * @param <K> group type, eg: table or sql
+ * @param <W> write type
+ * @param <R> result type
+ * @author Zen.Liu
+ */
+public interface WriteBehind<K, W, R> extends AutoCloseable {
+    @FunctionalInterface
+    interface Flusher<K, W, R> {
+        /**
+         * @param groups writes by group, in order of submit
+         * @return results by group, in same order of writes, null element means empty result
+         * @throws Exception any error, writes will be retried one by one
+         */
+        Map<K, List<R>> flush(Map<K, List<W>> groups) throws Exception;
+    }
+
+    /**
+     * @return lazy mono, the write is buffered when subscribed
+     */
+    Mono<R> submit(@NotNull K group, @NotNull W write);
+
+    /**
+     * flush buffered writes now, on current thread
+     */
+    void flush();
+
+    /**
+     * @return count of writes flushed
+     */
+    long writes();
+
+    /**
+     * @return count of flush calls (transactions)
+     */
+    long commits();
+
+    /**
+     * @return count of writes retried one by one after a failed flush
+     */
+    long fallbacks();
+
+    /**
+     * reject new writes, flush buffered ones and remove meters
+     */
+    @Override
+    void close();
+
+    /**
+     * @param name      name used as meter tag, should be unique among write behinds not closed
+     * @param window    max time a write stays in buffer
+     * @param maxBatch  flush immediately when buffered writes reach this
+     * @param scheduler where flush runs, should be sized to connections
+     * @param flusher   execute writes
+     */
+    static <K, W, R> WriteBehind<K, W, R> create(@NotNull String name, @NotNull Duration window, int maxBatch,
+                                                 @NotNull Scheduler scheduler, @NotNull Flusher<K, W, R> flusher) {
+        return new scope.WriteBehindImpl<>(name, window, maxBatch, scheduler, flusher);
+    }
+
+    @UtilityClass
+    class scope {
+        final class Pending<W, R> {
+            final W write;
+            final MonoSink<R> sink;
+            volatile boolean cancelled;
+
+            Pending(W write, MonoSink<R> sink) {
+                this.write = write;
+                this.sink = sink;
+            }
+
+            void complete(R result) {
+                if (result == null) sink.success();
+                else sink.success(result);
+            }
+        }
+
+        @Slf4j
+        final class WriteBehindImpl<K, W, R> implements WriteBehind<K, W, R> {
+            private final String name;
+            private final long windowNanos;
+            private final int maxBatch;
+            private final Scheduler scheduler;
+            private final Flusher<K, W, R> flusher;
+            private final LongAdder writes = new LongAdder();
+            private final LongAdder commits = new LongAdder();
+            private final LongAdder fallbacks = new LongAdder();
+            private Map<K, List<Pending<W, R>>> buffer = new LinkedHashMap<>();
+            private int buffered;
+            private Disposable timer;
+            private boolean closed;
+
+            WriteBehindImpl(String name, Duration window, int maxBatch, Scheduler scheduler, Flusher<K, W, R> flusher) {
+                this.name = name;
+                this.windowNanos = window.toNanos();
+                this.maxBatch = Math.max(1, maxBatch);
+                this.scheduler = scheduler;
+                this.flusher = flusher;
+                Meters.counter("writebehind.writes", "writes flushed", writes, LongAdder::doubleValue, "name", name);
+                Meters.counter("writebehind.commits", "flush transactions", commits, LongAdder::doubleValue, "name", name);
+                Meters.counter("writebehind.fallbacks", "writes retried one by one", fallbacks, LongAdder::doubleValue, "name", name);
+            }
+
+            @Override
+            public Mono<R> submit(@NotNull K group, @NotNull W write) {
+                return Mono.create(sink -> {
+                    final Pending<W, R> pending = new Pending<>(write, sink);
+                    sink.onCancel(() -> pending.cancelled = true);
+                    final boolean full;
+                    synchronized (this) {
+                        if (closed) {
+                            sink.error(new IllegalStateException("write behind closed"));
+                            return;
+                        }
+                        buffer.computeIfAbsent(group, k -> new ArrayList<>()).add(pending);
+                        full = ++buffered >= maxBatch;
+                        if (!full && timer == null)
+                            timer = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+                    }
+                    if (full) scheduler.schedule(this::flush);
+                });
+            }
+
+            @Override
+            public void flush() {
+                final Map<K, List<Pending<W, R>>> drained;
+                synchronized (this) {
+                    if (buffered == 0) return;
+                    drained = buffer;
+                    buffer = new LinkedHashMap<>();
+                    buffered = 0;
+                    if (timer != null) timer.dispose();
+                    timer = null;
+                }
+                final Map<K, List<W>> groups = new LinkedHashMap<>();
+                drained.forEach((group, list) -> {
+                    list.removeIf(p -> p.cancelled);
+                    if (!list.isEmpty()) {
+                        final List<W> ws = new ArrayList<>(list.size());
+                        for (Pending<W, R> p : list) ws.add(p.write);
+                        groups.put(group, ws);
+                    }
+                });
+                if (groups.isEmpty()) return;
+                try {
+                    final Map<K, List<R>> results = flusher.flush(groups);
+                    commits.increment();
+                    drained.forEach((group, list) -> {
+                        final List<R> rs = results == null ? null : results.get(group);
+                        for (int i = 0; i < list.size(); i++) {
+                            writes.increment();
+                            list.get(i).complete(rs == null || i >= rs.size() ? null : rs.get(i));
+                        }
+                    });
+                } catch (Throwable e) {
+                    log.debug("batch flush failed, retry one by one", e);
+                    drained.forEach((group, list) -> list.forEach(p -> single(group, p)));
+                }
+            }
+
+            private void single(K group, Pending<W, R> p) {
+                fallbacks.increment();
+                try {
+                    final Map<K, List<R>> results = flusher.flush(Collections.singletonMap(group, Collections.singletonList(p.write)));
+                    commits.increment();
+                    writes.increment();
+                    final List<R> rs = results == null ? null : results.get(group);
+                    p.complete(rs == null || rs.isEmpty() ? null : rs.get(0));
+                } catch (Throwable e) {
+                    p.sink.error(e);
+                }
+            }
+
+            @Override
+            public long writes() {
+                return writes.sum();
+            }
+
+            @Override
+            public long commits() {
+                return commits.sum();
+            }
+
+            @Override
+            public long fallbacks() {
+                return fallbacks.sum();
+            }
+
+            @Override
+            public void close() {
+                synchronized (this) {
+                    closed = true;
+                }
+                flush();
+                Meters.remove("writebehind.writes", "name", name);
+                Meters.remove("writebehind.commits", "name", name);
+                Meters.remove("writebehind.fallbacks", "name", name);
+            }
+        }
+    }
+}
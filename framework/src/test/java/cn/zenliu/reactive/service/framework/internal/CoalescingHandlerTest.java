@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CoalescingHandlerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:11:01
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.spi.Coalesce;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingHandlerTest {
+    @Coalesce
+    static void conf() {
+    }
+
+    @Test
+    void coalesce() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CoalescingHandler handler = new CoalescingHandler("test:/hot",
+            CoalescingHandlerTest.class.getDeclaredMethod("conf").getAnnotation(Coalesce.class),
+            (rq, rs) -> rs.sendString(Mono.fromCallable(() -> "hot " + calls.incrementAndGet())
+                .delayElement(Duration.ofMillis(300))));
+        final DisposableServer server = HttpServer.create().port(0)
+            .route(r -> r.get("/hot", handler))
+            .bindNow(Duration.ofSeconds(5));
+        try {
+            final HttpClient client = HttpClient.create().port(server.port());
+            final List<String> bodies = Flux.range(0, 8)
+                .flatMap(i -> client.get().uri(i % 2 == 0 ? "/hot?q=a&p=1" : "/hot?p=1&q=a").responseContent().aggregate().asString())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+            assertNotNull(bodies);
+            assertEquals(8, bodies.size());
+            assertEquals(1, calls.get());
+            assertTrue(bodies.stream().allMatch("hot 1"::equals));
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void leaderFailed() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CoalescingHandler handler = new CoalescingHandler("test:/fail",
+            CoalescingHandlerTest.class.getDeclaredMethod("conf").getAnnotation(Coalesce.class),
+            (rq, rs) -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(300)).then(Mono.error(new IllegalStateException("leader failed")))
+                : rs.sendString(Mono.just("ok")));
+        final DisposableServer server = HttpServer.create().port(0)
+            .route(r -> r.get("/fail", handler))
+            .bindNow(Duration.ofSeconds(5));
+        try {
+            final HttpClient client = HttpClient.create().port(server.port());
+            final List<String> bodies = Flux.range(0, 4)
+                .flatMap(i -> client.get().uri("/fail")
+                    .responseSingle((r, b) -> b.asString().defaultIfEmpty("").map(s -> r.status().code() + " " + s)))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+            assertNotNull(bodies);
+            assertEquals(4, bodies.size());
+            //only the leader sees its error, others served by their own call
+            assertEquals(1, bodies.stream().filter(s -> s.startsWith("500")).count());
+            assertEquals(3, bodies.stream().filter("200 ok"::equals).count());
+        } finally {
+            server.disposeNow();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StaticResourceHandlerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 08:59:30
+ */
+
+package cn.zenliu.reactive.service.framework.internal;
+
+import cn.zenliu.reactive.service.framework.config.StaticResource;
+import com.typesafe.config.ConfigMemorySize;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.util.function.Tuple3;
+import reactor.util.function.Tuples;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaticResourceHandlerTest {
+    static DisposableServer server;
+    static Path root;
+    static final byte[] SMALL = "hello static".getBytes();
+    static final byte[] LARGE = new byte[256 * 1024];
+
+    @BeforeAll
+    static void start() throws Exception {
+        root = Files.createTempDirectory("static");
+        Files.write(root.resolve("small.txt"), SMALL);
+        for (int i = 0; i < LARGE.length; i++) LARGE[i] = (byte) i;
+        Files.write(root.resolve("large.bin"), LARGE);
+        final StaticResource res = StaticResource.of(root.toString());
+        res.setMmapThreshold(ConfigMemorySize.ofBytes(1024));
+        final StaticResourceHandler handler = new StaticResourceHandler("/assets", res);
+        server = HttpServer.create().port(0)
+            .route(r -> r.route(handler.predicate(), handler))
+            .bindNow(Duration.ofSeconds(5));
+    }
+
+    @AfterAll
+    static void stop() {
+        server.disposeNow();
+    }
+
+    private Tuple3<Integer, byte[], String> get(String uri, Consumer<io.netty.handler.codec.http.HttpHeaders> headers) {
+        return HttpClient.create()
+            .port(server.port())
+            .headers(headers)
+            .get()
+            .uri(uri)
+            .responseSingle((res, buf) -> buf.asByteArray()
+                .defaultIfEmpty(new byte[0])
+                .map(b -> Tuples.of(res.status().code(), b, String.valueOf(res.responseHeaders().get(HttpHeaderNames.ETAG)))))
+            .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void serveSmallAndLarge() {
+        assertArrayEquals(SMALL, get("/assets/small.txt", h -> {
+        }).getT2());
+        assertArrayEquals(LARGE, get("/assets/large.bin", h -> {
+        }).getT2());
+    }
+
+    @Test
+    void notFoundAndTraversal() {
+        assertEquals(404, (int) get("/assets/none.txt", h -> {
+        }).getT1());
+        assertEquals(404, (int) get("/assets/..%2F..%2Fetc%2Fpasswd", h -> {
+        }).getT1());
+    }
+
+    @Test
+    void conditional() {
+        final String etag = get("/assets/small.txt", h -> {
+        }).getT3();
+        assertEquals(304, (int) get("/assets/small.txt", h -> h.set(HttpHeaderNames.IF_NONE_MATCH, etag)).getT1());
+    }
+
+    @Test
+    void range() {
+        final Tuple3<Integer, byte[], String> r = get("/assets/large.bin", h -> h.set(HttpHeaderNames.RANGE, "bytes=10-19"));
+        assertEquals(206, (int) r.getT1());
+        assertEquals(10, r.getT2().length);
+        assertEquals(LARGE[10], r.getT2()[0]);
+        final Tuple3<Integer, byte[], String> s = get("/assets/small.txt", h -> h.set(HttpHeaderNames.RANGE, "bytes=-6"));
+        assertEquals("static", new String(s.getT2()));
+        assertEquals(200, (int) get("/assets/small.txt", h -> h
+            .set(HttpHeaderNames.RANGE, "bytes=0-1")
+            .set(HttpHeaderNames.IF_RANGE, "\"stale\"")).getT1());
+        assertEquals(416, (int) get("/assets/small.txt", h -> h.set(HttpHeaderNames.RANGE, "bytes=100-")).getT1());
+    }
+
+    @Test
+    void concurrentEviction() throws Exception {
+        final Path dir = Files.createTempDirectory("evict");
+        Files.write(dir.resolve("a.txt"), "file a".getBytes());
+        Files.write(dir.resolve("b.txt"), "file b".getBytes());
+        final StaticResource conf = StaticResource.of(dir.toString());
+        conf.setMmapEntries(1);
+        final StaticResourceHandler handler = new StaticResourceHandler("/e", conf);
+        final DisposableServer s = HttpServer.create().port(0)
+            .route(r -> r.route(handler.predicate(), handler))
+            .bindNow(Duration.ofSeconds(5));
+        try {
+            final HttpClient client = HttpClient.create().port(s.port());
+            //every request maps a file evicting the other, slices in flight must stay valid
+            final List<Boolean> ok = Flux.range(0, 64)
+                .flatMap(i -> {
+                    final String name = i % 2 == 0 ? "a" : "b";
+                    return client.get().uri("/e/" + name + ".txt").responseContent().aggregate().asString()
+                        .map(("file " + name)::equals);
+                })
+                .collectList()
+                .block(Duration.ofSeconds(10));
+            assertNotNull(ok);
+            assertEquals(64, ok.size());
+            assertTrue(ok.stream().allMatch(Boolean::booleanValue));
+        } finally {
+            s.disposeNow();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PrecompressedCacheTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:02:32
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import com.github.luben.zstd.Zstd;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecompressedCacheTest {
+    static final byte[] JSON;
+
+    static {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) sb.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+        JSON = sb.append("{}]").toString().getBytes();
+    }
+
+    static PrecompressedCache cache = new PrecompressedCache(1024 * 1024);
+    static DisposableServer server;
+
+    @BeforeAll
+    static void start() {
+        server = HttpServer.create().port(0).compress(true)
+            .route(r -> r.get("/data", (rq, rs) -> cache.send(rq, rs,
+                cache.computeIfAbsent("data", "application/json", () -> JSON))))
+            .bindNow(Duration.ofSeconds(5));
+    }
+
+    @AfterAll
+    static void stop() {
+        server.disposeNow();
+        cache.clear();
+    }
+
+    @Test
+    void selectEncoding() {
+        assertNull(PrecompressedCache.selectEncoding(null, true, true));
+        assertEquals("gzip", PrecompressedCache.selectEncoding("gzip, deflate", true, true));
+        assertEquals("zstd", PrecompressedCache.selectEncoding("gzip, zstd", true, true));
+        assertEquals("gzip", PrecompressedCache.selectEncoding("gzip;q=1, zstd;q=0.5", true, true));
+        assertNull(PrecompressedCache.selectEncoding("zstd", false, true));
+        assertEquals("zstd", PrecompressedCache.selectEncoding("*", true, true));
+        assertNull(PrecompressedCache.selectEncoding("gzip;q=0, zstd;q=0", true, true));
+    }
+
+    @Test
+    void eviction() {
+        final PrecompressedCache small = new PrecompressedCache(JSON.length * 2);
+        small.put("a", JSON, "application/json", null);
+        small.put("b", JSON, "application/json", null);
+        small.put("c", JSON, "application/json", null);
+        assertTrue(small.size() <= JSON.length * 2);
+        assertNotNull(small.get("c"));
+        small.clear();
+        assertEquals(0, small.size());
+    }
+
+    private Tuple2<String, byte[]> fetch(String accept) {
+        return HttpClient.create().port(server.port())
+            .headers(h -> h.set(HttpHeaderNames.ACCEPT_ENCODING, accept))
+            .get().uri("/data")
+            .responseSingle((res, buf) -> buf.asByteArray()
+                .map(b -> Tuples.of(String.valueOf(res.responseHeaders().get(HttpHeaderNames.CONTENT_ENCODING)), b)))
+            .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void variants() throws Exception {
+        final Tuple2<String, byte[]> gz = fetch("gzip");
+        assertEquals("gzip", gz.getT1());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gz.getT2()))) {
+            final byte[] b = new byte[4096];
+            for (int n = in.read(b); n > 0; n = in.read(b)) out.write(b, 0, n);
+        }
+        assertArrayEquals(JSON, out.toByteArray());
+
+        final Tuple2<String, byte[]> zs = fetch("zstd");
+        assertEquals("zstd", zs.getT1());
+        assertArrayEquals(JSON, Zstd.decompress(zs.getT2(), JSON.length));
+
+        final Tuple2<String, byte[]> id = fetch("identity");
+        assertEquals("null", id.getT1());
+        assertArrayEquals(JSON, id.getT2());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: RequestUtilTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:12:40
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import cn.zenliu.reactive.service.framework.config.ServerConf;
+import com.typesafe.config.ConfigMemorySize;
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.buffer.UnpooledHeapByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RequestUtilTest {
+    static DisposableServer server;
+
+    @BeforeAll
+    static void start() {
+        final ServerConf conf = new ServerConf();
+        conf.setPort(0);
+        conf.setMaxBodySize(ConfigMemorySize.ofBytes(1024));
+        conf.setMaxInflatedBodySize(ConfigMemorySize.ofBytes(4096));
+        server = conf.getHttpServer()
+            .route(r -> r.post("/ignore", (rq, rs) -> rs.sendString(Mono.just("ok")))
+                .post("/echo", (rq, rs) -> rs.sendString(
+                RequestUtil.aggregateString(rq, StandardCharsets.UTF_8)
+                    .map(s -> String.valueOf(s.length())))
+                .then()
+                .onErrorResume(PayloadTooLargeException.class, e -> RequestUtil.sendPayloadTooLarge(rs))))
+            .bindNow(Duration.ofSeconds(5));
+    }
+
+    @AfterAll
+    static void stop() {
+        server.disposeNow();
+    }
+
+    private int post(byte[] body, boolean gzip, boolean chunked) {
+        return post("/echo", body, gzip, chunked);
+    }
+
+    private int post(String uri, byte[] body, boolean gzip, boolean chunked) {
+        return HttpClient.create()
+            .port(server.port())
+            .headers(h -> {
+                if (gzip) h.set(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+                if (chunked) h.set(HttpHeaderNames.TRANSFER_ENCODING, "chunked");
+            })
+            .post()
+            .uri(uri)
+            .send(chunked ? Flux.just(body).map(Unpooled::wrappedBuffer) : Mono.just(Unpooled.wrappedBuffer(body)))
+            .responseSingle((res, buf) -> Mono.just(res.status().code()))
+            .onErrorReturn(-1)
+            .block(Duration.ofSeconds(5));
+    }
+
+    private static byte[] gzip(byte[] raw) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * allocator of server channels which remembers every buffer allocated
+     */
+    static final class TrackingAllocator extends AbstractByteBufAllocator {
+        final Queue<ByteBuf> allocated = new ConcurrentLinkedQueue<>();
+
+        @Override
+        protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+            final ByteBuf buf = new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+            allocated.add(buf);
+            return buf;
+        }
+
+        @Override
+        protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+            final ByteBuf buf = new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity);
+            allocated.add(buf);
+            return buf;
+        }
+
+        @Override
+        public boolean isDirectBufferPooled() {
+            return false;
+        }
+
+        long leaked() {
+            return allocated.stream().filter(b -> b.refCnt() > 0).count();
+        }
+    }
+
+    @Test
+    void overLimitReleased() throws Exception {
+        final TrackingAllocator alloc = new TrackingAllocator();
+        final ServerConf conf = new ServerConf();
+        conf.setPort(0);
+        conf.setMaxBodySize(ConfigMemorySize.ofBytes(64 * 1024));
+        final DisposableServer tracked = conf.getHttpServer()
+            .tcpConfiguration(tcp -> tcp.option(ChannelOption.ALLOCATOR, alloc))
+            .route(r -> r.post("/echo", (rq, rs) -> rs.send(
+                //route limit under server limit, so chunks reach the aggregation before it fails
+                RequestUtil.aggregate(rq, new BodyLimit(1024, 1024, false)))
+                .then()
+                .onErrorResume(PayloadTooLargeException.class, e -> RequestUtil.sendPayloadTooLarge(rs))))
+            .bindNow(Duration.ofSeconds(5));
+        try {
+            //chunks under limit are collected before the one exceeds
+            final Integer status = HttpClient.create()
+                .port(tracked.port())
+                .headers(h -> h.set(HttpHeaderNames.TRANSFER_ENCODING, "chunked"))
+                .post()
+                .uri("/echo")
+                .send(Flux.range(0, 16).delayElements(Duration.ofMillis(10)).map(i -> Unpooled.wrappedBuffer(new byte[256])))
+                .responseSingle((res, buf) -> Mono.just(res.status().code()))
+                .onErrorReturn(-1)
+                .block(Duration.ofSeconds(5));
+            assertEquals(413, (int) status);
+        } finally {
+            tracked.disposeNow();
+        }
+        for (int i = 0; i < 50 && alloc.leaked() > 0; i++) Thread.sleep(20);
+        assertFalse(alloc.allocated.isEmpty());
+        assertEquals(0, alloc.leaked());
+    }
+
+    @Test
+    void underLimit() {
+        assertEquals(200, post(new byte[512], false, false));
+    }
+
+    @Test
+    void declaredOverLimit() {
+        assertEquals(413, post(new byte[2048], false, false));
+    }
+
+    @Test
+    void rejectedBeforeRoute() {
+        assertEquals(413, post("/ignore", new byte[2048], false, false));
+    }
+
+    @Test
+    void inflatedUnderLimit() throws Exception {
+        assertEquals(200, post(gzip(new byte[4000]), true, false));
+    }
+
+    @Test
+    void inflatedOverLimit() throws Exception {
+        assertEquals(413, post(gzip(new byte[64 * 1024]), true, true));
+    }
+}
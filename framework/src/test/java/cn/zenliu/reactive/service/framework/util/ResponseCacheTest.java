@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ResponseCacheTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:08:08
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import cn.zenliu.reactive.service.framework.spi.Cached;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.util.function.Tuple3;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+    static final AtomicInteger calls = new AtomicInteger();
+    static ResponseCache cache;
+    static DisposableServer server;
+
+    @Cached(ttl = 1, tags = "items", vary = "Accept-Language")
+    static void conf() {
+    }
+
+    @BeforeAll
+    static void start() throws Exception {
+        cache = new ResponseCache("test:/items", ResponseCacheTest.class.getDeclaredMethod("conf").getAnnotation(Cached.class));
+        server = HttpServer.create().port(0)
+            .route(r -> r.get("/items", cache.wrap((rq, rs) -> {
+                final int n = calls.incrementAndGet();
+                ResponseCache.tag(rs, "call:" + n);
+                return rs.header(HttpHeaderNames.CONTENT_TYPE, "text/plain")
+                    .sendString(Mono.just("call "))
+                    .sendString(Mono.just(String.valueOf(n)));
+            })))
+            .bindNow(Duration.ofSeconds(5));
+    }
+
+    @AfterAll
+    static void stop() {
+        server.disposeNow();
+    }
+
+    private Tuple3<Integer, String, String> fetch(String uri, String lang, String etag) {
+        return HttpClient.create().port(server.port())
+            .headers(h -> {
+                if (lang != null) h.set(HttpHeaderNames.ACCEPT_LANGUAGE, lang);
+                if (etag != null) h.set(HttpHeaderNames.IF_NONE_MATCH, etag);
+            })
+            .get().uri(uri)
+            .responseSingle((res, buf) -> buf.asString().defaultIfEmpty("")
+                .map(b -> Tuples.of(res.status().code(), b, String.valueOf(res.responseHeaders().get(HttpHeaderNames.ETAG)))))
+            .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void cache() throws Exception {
+        final Tuple3<Integer, String, String> first = fetch("/items?b=2&a=1", "en", null);
+        final int n = calls.get();
+        assertEquals("call " + n, first.getT2());
+        //same normalized uri
+        final Tuple3<Integer, String, String> hit = fetch("/items?a=1&b=2", "en", null);
+        assertEquals(first.getT2(), hit.getT2());
+        assertEquals(n, calls.get());
+        assertNotEquals("null", first.getT3(), "miss carries the etag of stored record");
+        assertEquals(first.getT3(), hit.getT3());
+        assertTrue(cache.hits() >= 1);
+        //conditional
+        assertEquals(304, fetch("/items?a=1&b=2", "en", hit.getT3()).getT1());
+        //vary header
+        fetch("/items?a=1&b=2", "zh", null);
+        assertEquals(n + 1, calls.get());
+        //dynamic tag
+        assertEquals(1, ResponseCache.invalidate("call:" + n));
+        fetch("/items?a=1&b=2", "en", null);
+        assertEquals(n + 2, calls.get());
+        //route tag
+        assertTrue(ResponseCache.invalidate("items") >= 2);
+        assertEquals(0, cache.size());
+        //ttl
+        fetch("/items?a=1&b=2", "en", null);
+        Thread.sleep(1100);
+        fetch("/items?a=1&b=2", "en", null);
+        assertEquals(n + 4, calls.get());
+        assertTrue(cache.evictions() >= 1);
+    }
+
+    @Test
+    void close() throws Exception {
+        final ResponseCache other = new ResponseCache("test:/other", ResponseCacheTest.class.getDeclaredMethod("conf").getAnnotation(Cached.class));
+        other.put("/other", new CapturedResponse(HttpResponseStatus.OK,
+            new DefaultHttpHeaders(), new byte[]{1}), Collections.singleton("other"));
+        other.close();
+        assertEquals(0, other.size());
+        other.put("/other", new CapturedResponse(HttpResponseStatus.OK,
+            new DefaultHttpHeaders(), new byte[]{1}), Collections.singleton("other"));
+        assertEquals(0, ResponseCache.invalidate("other"), "closed cache is unregistered");
+        assertEquals(1, other.size());
+    }
+
+    @Test
+    void invalidateDuringMiss() throws Exception {
+        final ResponseCache racing = new ResponseCache("test:/racing", ResponseCacheTest.class.getDeclaredMethod("conf").getAnnotation(Cached.class));
+        final long since = racing.invalidations();
+        //handler of the miss read old data, then a writer invalidates before response stored
+        ResponseCache.invalidate("call:1");
+        racing.put("/racing", new CapturedResponse(HttpResponseStatus.OK,
+            new DefaultHttpHeaders(), new byte[]{1}), Collections.emptySet(), since);
+        assertNull(racing.get("/racing"), "stale response not stored");
+        racing.put("/racing", new CapturedResponse(HttpResponseStatus.OK,
+            new DefaultHttpHeaders(), new byte[]{2}), Collections.emptySet(), racing.invalidations());
+        assertNotNull(racing.get("/racing"));
+        racing.close();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StreamingResponseTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:53:34
+ */
+
+package cn.zenliu.reactive.service.framework.util;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingResponseTest {
+    static DisposableServer server;
+    static final AtomicLong requested = new AtomicLong();
+
+    static Flux<Integer> items(int n) {
+        return Flux.range(0, n).doOnRequest(r -> requested.accumulateAndGet(r, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b));
+    }
+
+    @BeforeAll
+    static void start() {
+        server = HttpServer.create().port(0)
+            .route(r -> r
+                .get("/nd", (rq, rs) -> StreamingResponse.ndjson(rs, items(3), i -> "{\"id\":" + i + "}"))
+                .get("/array", (rq, rs) -> StreamingResponse.jsonArray(rs, items(3), String::valueOf))
+                .get("/empty", (rq, rs) -> StreamingResponse.jsonArray(rs, items(0), String::valueOf))
+                .get("/large", (rq, rs) -> StreamingResponse.ndjson(rs, items(200_000), String::valueOf)))
+            .bindNow(Duration.ofSeconds(5));
+    }
+
+    @AfterAll
+    static void stop() {
+        server.disposeNow();
+    }
+
+    static Tuple2<String, String> get(String path) {
+        return HttpClient.create().port(server.port())
+            .get().uri(path)
+            .responseSingle((res, body) -> body.asString().defaultIfEmpty("")
+                .map(s -> Tuples.of(res.responseHeaders().get(HttpHeaderNames.CONTENT_TYPE), s)))
+            .block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void ndjson() {
+        final Tuple2<String, String> r = get("/nd");
+        assertEquals(StreamingResponse.NDJSON, r.getT1());
+        assertEquals("{\"id\":0}\n{\"id\":1}\n{\"id\":2}\n", r.getT2());
+    }
+
+    @Test
+    void jsonArray() {
+        assertEquals("[0,1,2]", get("/array").getT2());
+        final Tuple2<String, String> empty = get("/empty");
+        assertEquals(StreamingResponse.JSON, empty.getT1());
+        assertEquals("[]", empty.getT2());
+    }
+
+    @Test
+    void backpressure() {
+        requested.set(0);
+        final long lines = HttpClient.create().port(server.port())
+            .get().uri("/large")
+            .responseContent()
+            .asString()
+            .map(s -> s.chars().filter(c -> c == '\n').count())
+            .reduce(0L, Long::sum)
+            .block(Duration.ofSeconds(30));
+        assertEquals(200_000, lines);
+        assertTrue(requested.get() < Long.MAX_VALUE, "items should be requested in batches, not unbounded");
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PluginManagerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:44:58
+ */
+
+package cn.zenliu.reactive.service.plugin;
+
+import cn.zenliu.reactive.service.util.Singleton;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginManagerTest {
+    static final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    static class Recorder implements Plugin {
+        final String name;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void start() {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("start " + name);
+        }
+
+        @Override
+        public void stop() {
+            events.add("stop " + name);
+        }
+    }
+
+    static final class RootImpl extends Recorder implements Root {
+        RootImpl() {
+            super("root");
+        }
+    }
+
+    static final class LeftImpl extends Recorder implements Left {
+        LeftImpl() {
+            super("left");
+        }
+    }
+
+    static final class RightImpl extends Recorder implements Right {
+        RightImpl() {
+            super("right");
+        }
+    }
+
+    static final class TopImpl extends Recorder implements Top {
+        TopImpl() {
+            super("top");
+        }
+    }
+
+    interface Root extends Plugin {
+        Singleton<Root> SINGLETON = Singleton.generate(RootImpl::new, null);
+
+        static Singleton<Root> getSingleton() {
+            return SINGLETON;
+        }
+    }
+
+    @Plugin.DependsOn(Root.class)
+    interface Left extends Plugin {
+        static Singleton<Left> getSingleton() {
+            return Singleton.generate(LeftImpl::new, null);
+        }
+    }
+
+    @Plugin.DependsOn(Root.class)
+    interface Right extends Plugin {
+        static Singleton<Right> getSingleton() {
+            return Singleton.generate(RightImpl::new, null);
+        }
+    }
+
+    @Plugin.DependsOn({Left.class, Right.class})
+    interface Top extends Plugin {
+        static Singleton<Top> getSingleton() {
+            return Singleton.generate(TopImpl::new, null);
+        }
+    }
+
+    @Plugin.DependsOn(Loop2.class)
+    interface Loop1 extends Plugin {
+    }
+
+    @Plugin.DependsOn(Loop1.class)
+    interface Loop2 extends Plugin {
+    }
+
+    @Test
+    void levels() {
+        final List<List<Class<? extends Plugin>>> levels = PluginManager.scope.levelsOf(Collections.singletonList(Top.class));
+        assertEquals(3, levels.size());
+        assertEquals(Collections.singletonList(Root.class), levels.get(0));
+        assertEquals(2, levels.get(1).size());
+        assertEquals(Collections.singletonList(Top.class), levels.get(2));
+        assertThrows(IllegalStateException.class, () -> PluginManager.scope.levelsOf(Collections.singletonList(Loop1.class)));
+    }
+
+    @Test
+    void lifecycle() {
+        new PluginManager.scope.PluginManagerImpl().initialization(new Class[]{Root.class}, false);
+        events.clear();
+        final PluginManager m = new PluginManager.scope.PluginManagerImpl();
+        final long begin = System.nanoTime();
+        m.initialization(new Class[]{Top.class}, false);
+        final long used = Duration.ofNanos(System.nanoTime() - begin).toMillis();
+        assertTrue(used < 1100, "left and right should start in parallel, used " + used);
+        assertEquals("start root", events.get(0));
+        assertEquals("start top", events.get(3));
+        final Map<Class<? extends Plugin>, Duration> timings = m.getInitTimings();
+        assertEquals(4, timings.size());
+        timings.values().forEach(d -> assertTrue(d.toMillis() >= 300));
+        final Top top = m.getPluginOfNeeded(Top.class, false);
+        assertSame(top, m.getPluginOfNeeded(Top.class, false));
+        events.clear();
+        m.shutdown();
+        assertEquals("stop top", events.get(0));
+        assertEquals("stop root", events.get(3));
+        assertFalse(m.getInitTimings().containsKey(Top.class));
+    }
+
+    @Test
+    void lazyWithDependencies() {
+        events.clear();
+        final PluginManager m = new PluginManager.scope.PluginManagerImpl();
+        assertTrue(m.getPluginOf(Left.class, false).isPresent());
+        assertEquals(2, events.size());
+        assertEquals("start root", events.get(0));
+        m.shutdown();
+    }
+
+    @Test
+    void restart() {
+        final PluginManager m = new PluginManager.scope.PluginManagerImpl();
+        m.initialization(new Class[]{Root.class}, false);
+        final Root first = m.getPluginOfNeeded(Root.class, false);
+        m.shutdown();
+        events.clear();
+        m.initialization(new Class[]{Root.class}, false);
+        final Root second = m.getPluginOfNeeded(Root.class, false);
+        assertNotSame(first, second);
+        assertEquals(Collections.singletonList("start root"), events);
+        m.shutdown();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CaffeineManagerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:15:57
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.plugin.PluginManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaffeineManagerTest {
+    static CaffeineManager manager() {
+        final CaffeineManager m = PluginManager.getHardInstance().getPluginOfNeeded(CaffeineManager.class, false);
+        final Properties prop = new Properties();
+        prop.setProperty("caffeine.default.maximumSize", "100");
+        prop.setProperty("caffeine.caches.users.maximumSize", "10");
+        prop.setProperty("caffeine.caches.users.expireAfterWrite", "10m");
+        prop.setProperty("caffeine.caches.soft.softValues", "true");
+        prop.setProperty("caffeine.caches.tiered.maximumSize", "10");
+        prop.setProperty("caffeine.caches.tiered.expireAfterWrite", "10m");
+        prop.setProperty("caffeine.caches.tiered.offHeapSize", "4m");
+        prop.setProperty("caffeine.caches.ahead.expireAfterWrite", "1s");
+        prop.setProperty("caffeine.caches.ahead.refreshAheadRatio", "0.5");
+        prop.setProperty("caffeine.caches.xfetch.expireAfterWrite", "1s");
+        prop.setProperty("caffeine.caches.xfetch.xfetchBeta", "1000");
+        prop.setProperty("caffeine.caches.persisted.expireAfterWrite", "10m");
+        prop.setProperty("caffeine.caches.persisted.persist", "true");
+        prop.setProperty("caffeine.caches.late.persist", "true");
+        m.configuration(prop);
+        return m;
+    }
+
+    @Test
+    void spec() {
+        final CaffeineManager m = manager();
+        assertEquals(10, m.getSpec("users").getMaximumSize());
+        assertEquals(Duration.ofMinutes(10), m.getSpec("users").getExpireAfterWrite());
+        assertEquals(100, m.getSpec("other").getMaximumSize());
+        assertTrue(m.getCacheNames().contains("users"));
+    }
+
+    @Test
+    void load() {
+        final CaffeineManager m = manager();
+        final AtomicInteger loads = new AtomicInteger();
+        final NamedCache<Integer, String> users = m.getCache("users",
+            (Integer k) -> Mono.fromCallable(() -> "user" + k + "#" + loads.incrementAndGet()).delayElement(Duration.ofMillis(50)),
+            null);
+        assertSame(users, m.findCache("users").orElse(null));
+        final Long distinct = Flux.range(0, 10)
+            .flatMap(i -> users.get(1))
+            .distinct()
+            .count()
+            .block(Duration.ofSeconds(5));
+        assertEquals(1, distinct);
+        assertEquals(1, loads.get());
+        assertEquals("user1#1", users.getIfPresent(1).block());
+        assertNull(users.getIfPresent(2).block());
+        users.invalidate(1);
+        assertEquals("user1#2", users.get(1).block(Duration.ofSeconds(5)));
+        assertTrue(users.stats().hitCount() > 0);
+    }
+
+    @Test
+    void softValues() {
+        final CaffeineManager m = manager();
+        final AtomicInteger loads = new AtomicInteger();
+        final NamedCache<String, String> soft = m.getCache("soft");
+        final Long count = Flux.range(0, 10)
+            .flatMap(i -> soft.get("k", k -> Mono.fromCallable(() -> k + loads.incrementAndGet()).delayElement(Duration.ofMillis(50))))
+            .count()
+            .block(Duration.ofSeconds(5));
+        assertEquals(10, count);
+        assertEquals(1, loads.get());
+        assertEquals("k1", soft.getIfPresent("k").block());
+        //empty load is not cached
+        assertNull(soft.get("none", k -> Mono.empty()).block());
+        assertNull(soft.getIfPresent("none").block());
+    }
+
+    @Test
+    void offHeapTier() {
+        final CaffeineManager m = manager();
+        final AtomicInteger loads = new AtomicInteger();
+        final NamedCache<Integer, String> tiered = m.getCache("tiered",
+            (Integer k) -> Mono.fromCallable(() -> "v" + k + "#" + loads.incrementAndGet()),
+            null, Serializer.java("java.lang.Integer"), Serializer.string());
+        for (int i = 0; i < 1000; i++) assertEquals("v" + i + "#" + (i + 1), tiered.get(i).block());
+        tiered.synchronous().cleanUp();
+        assertTrue(tiered.estimatedSize() <= 10);
+        //served from off-heap tier, loader not called again
+        for (int i = 0; i < 1000; i++) assertEquals("v" + i + "#" + (i + 1), tiered.get(i).block());
+        assertEquals(1000, loads.get());
+        //promoted to L1 keeps deadline of L2 entry
+        tiered.invalidateAll();
+        tiered.put(-1, "x");
+        tiered.synchronous().invalidate(-1);
+        assertEquals("x", tiered.getIfPresent(-1).block());
+        final long left = tiered.synchronous().policy().expireVariably()
+            .map(p -> p.getExpiresAfter(-1, TimeUnit.SECONDS).orElse(-1))
+            .orElse(-1L);
+        assertTrue(left > 0 && left <= 600);
+    }
+
+    @Test
+    void refreshAhead() throws InterruptedException {
+        final CaffeineManager m = manager();
+        final AtomicInteger loads = new AtomicInteger();
+        final NamedCache<Integer, String> ahead = m.getCache("ahead",
+            (Integer k) -> Mono.fromCallable(() -> "v" + loads.incrementAndGet()),
+            null);
+        assertEquals("v1", ahead.get(1).block());
+        assertEquals("v1", ahead.get(1).block());
+        assertEquals(1, loads.get());
+        Thread.sleep(600);
+        //stale value served, reload in background
+        assertEquals("v1", ahead.get(1).block());
+        Thread.sleep(200);
+        assertEquals(2, loads.get());
+        assertEquals("v2", ahead.getIfPresent(1).block());
+    }
+
+    @Test
+    void xfetch() throws InterruptedException {
+        final CaffeineManager m = manager();
+        final AtomicInteger loads = new AtomicInteger();
+        //slow load with large beta, early refresh is almost certain
+        final NamedCache<Integer, String> xfetch = m.getCache("xfetch",
+            (Integer k) -> Mono.fromCallable(() -> "v" + loads.incrementAndGet()).delayElement(Duration.ofMillis(20)),
+            null);
+        assertEquals("v1", xfetch.get(1).block());
+        Thread.sleep(300);
+        //getIfPresent never triggers, concurrent gets share one reload
+        for (int i = 0; i < 10; i++) assertEquals("v1", xfetch.getIfPresent(1).block());
+        assertEquals(1, loads.get());
+        assertEquals(10, Flux.range(0, 10).flatMap(i -> xfetch.get(1)).filter("v1"::equals).count().block());
+        Thread.sleep(200);
+        assertEquals(2, loads.get());
+        assertEquals("v2", xfetch.getIfPresent(1).block());
+    }
+
+    @Test
+    void snapshot(@TempDir Path dir) throws Exception {
+        final CaffeineManager m = manager();
+        final Path file = dir.resolve("caches.snapshot");
+        final Properties prop = new Properties();
+        prop.setProperty("caffeine.snapshot.file", file.toString());
+        prop.setProperty("caffeine.snapshot.onShutdown", "false");
+        m.configuration(prop);
+        final NamedCache<String, String> persisted = m.getCache("persisted", null, null, Serializer.string(), Serializer.string());
+        for (int i = 0; i < 100; i++) persisted.put("k" + i, "v" + i);
+        assertEquals(100, m.snapshot().block(Duration.ofSeconds(5)));
+        assertTrue(Files.size(file) > 0);
+        //restart
+        persisted.invalidateAll();
+        persisted.put("k0", "newer");
+        assertEquals(99, m.restore().block(Duration.ofSeconds(5)));
+        assertEquals("newer", persisted.getIfPresent("k0").block());
+        assertEquals("v1", persisted.getIfPresent("k1").block());
+        final long left = persisted.synchronous().policy().expireVariably()
+            .map(p -> p.getExpiresAfter("k1", TimeUnit.SECONDS).orElse(-1))
+            .orElse(-1L);
+        assertTrue(left > 500 && left <= 600);
+        //broken file is ignored
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        assertEquals(0, m.restore().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void snapshotOnStop(@TempDir Path dir) {
+        final Path file = dir.resolve("stop.snapshot");
+        final Properties prop = new Properties();
+        prop.setProperty("caffeine.caches.kept.persist", "true");
+        prop.setProperty("caffeine.caches.kept.expireAfterWrite", "10m");
+        prop.setProperty("caffeine.snapshot.file", file.toString());
+        prop.setProperty("caffeine.snapshot.restore", "false");
+        final CaffeineManager first = new CaffeineManager.scope.CaffeineManagerImpl();
+        first.configuration(prop);
+        first.<String, String>getCache("kept", null, null, Serializer.string(), Serializer.string()).put("k", "v");
+        assertFalse(Files.exists(file));
+        first.stop();
+        assertTrue(Files.exists(file), "written on stop");
+        final CaffeineManager second = new CaffeineManager.scope.CaffeineManagerImpl();
+        second.configuration(prop);
+        final NamedCache<String, String> kept = second.getCache("kept", null, null, Serializer.string(), Serializer.string());
+        assertEquals(1, second.restore().block(Duration.ofSeconds(5)));
+        assertEquals("v", kept.getIfPresent("k").block());
+    }
+
+    @Test
+    void snapshotPending(@TempDir Path dir) throws Exception {
+        final CacheSpec spec = manager().getSpec("late");
+        final TtlExpiry expiry = spec.expiry();
+        final NamedCache<String, String> before = NamedCache.scope.create("late", spec, expiry, null, null,
+            Serializer.string(), Serializer.string());
+        before.put("a", "1");
+        final CacheSnapshot snapshot = new CacheSnapshot(dir.resolve("s"));
+        assertEquals(1, snapshot.write(Collections.singletonList(
+            new CacheSnapshot.Section<>(before, spec, expiry, Serializer.string(), Serializer.string()))));
+        //cache not created yet, kept until creation
+        final Map<String, CacheSnapshot.Section<?, ?>> sections = new HashMap<>();
+        assertEquals(0, snapshot.read(sections));
+        final TtlExpiry expiry2 = spec.expiry();
+        final NamedCache<String, String> after = NamedCache.scope.create("late", spec, expiry2, null, null,
+            Serializer.string(), Serializer.string());
+        final CacheSnapshot.Section<String, String> section = new CacheSnapshot.Section<>(after, spec, expiry2,
+            Serializer.string(), Serializer.string());
+        assertEquals(1, snapshot.restorePending(section));
+        assertEquals(0, snapshot.restorePending(section));
+        assertEquals("1", after.getIfPresent("a").block());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: InvalidationChannelTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:31:36
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.framework.config.UDPBroadcast;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationChannelTest {
+    final List<InvalidationChannel> channels = new ArrayList<>();
+    final List<NamedCache<String, String>> caches = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        final UDPBroadcast conf = new UDPBroadcast();
+        conf.setAddr("239.255.42." + ThreadLocalRandom.current().nextInt(1, 250));
+        conf.setPort(ThreadLocalRandom.current().nextInt(20000, 30000));
+        conf.setMaxPacketSize(256);
+        final CacheSpec spec = new CacheSpec();
+        //three in-process members
+        for (int i = 0; i < 3; i++) {
+            final NamedCache<String, String> cache = NamedCache.scope.create("users", spec, null, null, null,
+                Serializer.string(), Serializer.string());
+            for (int k = 0; k < 100; k++) cache.put("k" + k, "v" + k);
+            caches.add(cache);
+            channels.add(InvalidationChannel.bind(conf).attach(cache, Serializer.string()));
+        }
+    }
+
+    @AfterEach
+    void close() {
+        channels.forEach(InvalidationChannel::close);
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) Thread.sleep(20);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void invalidate() throws InterruptedException {
+        //batched into several datagrams of 256 bytes
+        for (int k = 0; k < 50; k++) channels.get(0).invalidate("users", "k" + k);
+        assertNull(caches.get(0).getIfPresent("k0").block());
+        await(() -> caches.get(1).estimatedSize() == 50 && caches.get(2).estimatedSize() == 50);
+        assertNull(caches.get(2).getIfPresent("k49").block());
+        assertEquals("v50", caches.get(2).getIfPresent("k50").block());
+        assertTrue(channels.get(0).sent() > 1);
+        channels.get(1).invalidateAll("users");
+        await(() -> caches.get(0).estimatedSize() == 0 && caches.get(2).estimatedSize() == 0);
+        assertEquals(0, channels.get(2).gaps());
+    }
+
+    @Test
+    void gap() throws InterruptedException {
+        channels.get(0).invalidate("users", "k0");
+        await(() -> caches.get(1).estimatedSize() == 99);
+        //datagrams lost
+        channels.get(0).seq.addAndGet(3);
+        channels.get(0).invalidate("users", "k1");
+        await(() -> caches.get(1).estimatedSize() == 0 && caches.get(2).estimatedSize() == 0);
+        assertEquals(1, channels.get(1).gaps());
+        assertEquals(98, caches.get(0).estimatedSize());
+    }
+
+    @Test
+    void largeKey() throws InterruptedException {
+        final String large = String.join("", Collections.nCopies(300, "x"));
+        caches.forEach(c -> c.put(large, "v"));
+        channels.get(0).invalidate("users", large);
+        assertEquals(100, caches.get(0).estimatedSize());
+        //not fit in a datagram of 256 bytes: whole cache on other members
+        await(() -> caches.get(1).estimatedSize() == 0 && caches.get(2).estimatedSize() == 0);
+    }
+
+    @Test
+    void decode() {
+        assertSame(InvalidationChannel.Message.INVALID, InvalidationChannel.decode(Unpooled.wrappedBuffer(new byte[]{1, 2, 3})));
+    }
+}
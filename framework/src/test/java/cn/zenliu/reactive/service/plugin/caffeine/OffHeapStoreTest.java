@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: OffHeapStoreTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:20:11
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapStoreTest {
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void putGet() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(64 * 1024, 4, null)) {
+            final long never = Long.MAX_VALUE;
+            assertTrue(store.put(bytes("a"), bytes("1"), never));
+            assertTrue(store.put(bytes("b"), bytes("2"), never));
+            assertTrue(store.put(bytes("a"), bytes("3"), never));
+            assertArrayEquals(bytes("3"), store.get(bytes("a")).getValue());
+            assertArrayEquals(bytes("2"), store.get(bytes("b")).getValue());
+            assertNull(store.get(bytes("c")));
+            store.remove(bytes("b"));
+            assertNull(store.get(bytes("b")));
+            //expired
+            store.put(bytes("e"), bytes("x"), System.currentTimeMillis() - 1);
+            assertNull(store.get(bytes("e")));
+            //larger than a segment
+            assertFalse(store.put(bytes("big"), new byte[64 * 1024], never));
+        }
+    }
+
+    @Test
+    void evictOldest() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(16 * 1024, 1, null)) {
+            final byte[] value = new byte[100];
+            for (int i = 0; i < 1000; i++) store.put(bytes("k" + i), value, Long.MAX_VALUE);
+            assertNull(store.get(bytes("k0")));
+            assertNotNull(store.get(bytes("k999")));
+            assertTrue(store.evictions() > 0);
+            assertTrue(store.size() < 1000);
+        }
+    }
+
+    @Test
+    void mapped() throws Exception {
+        final Path file = Files.createTempFile("offheap", ".bin");
+        try (OffHeapStore store = new OffHeapStore(1024 * 1024, 2, file)) {
+            for (int i = 0; i < 1000; i++) store.put(bytes("k" + i), bytes("v" + i), Long.MAX_VALUE);
+            for (int i = 0; i < 1000; i++) assertArrayEquals(bytes("v" + i), store.get(bytes("k" + i)).getValue());
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void index() {
+        final OffHeapStore.LongLongMap map = new OffHeapStore.LongLongMap(4);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random rnd = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            //narrow key space to make collisions and removals frequent
+            final long k = 1 + rnd.nextInt(2048);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(expected.remove(k) != null, map.remove(k));
+            } else {
+                map.put(k, i);
+                expected.put(k, (long) i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((k, v) -> assertEquals((long) v, map.get(k)));
+        assertEquals(expected.size(), map.removeIf(v -> true));
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: PartitionServiceTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:36:03
+ */
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.tcp.TcpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionServiceTest {
+    final List<PartitionService> services = new ArrayList<>();
+    final List<DisposableServer> servers = new ArrayList<>();
+    final List<PartitionedCache<Integer, String>> caches = new ArrayList<>();
+    final AtomicInteger loads = new AtomicInteger();
+    final List<String> nodes = new ArrayList<>();
+    static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+
+    static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        for (int i = 0; i < 3; i++) nodes.add("127.0.0.1:" + freePort());
+        final Serializer<Integer> keys = Serializer.java("java.lang.Integer");
+        for (String node : nodes) {
+            final PartitionService svc = new PartitionService(node, nodes, 160, Duration.ofSeconds(2), SECRET);
+            servers.add(TcpServer.create().host("127.0.0.1").port(Integer.parseInt(node.split(":")[1]))
+                .handle(svc::handle).bindNow());
+            final NamedCache<Integer, String> local = NamedCache.scope.create("users", new CacheSpec(), null,
+                (Integer k) -> Mono.fromCallable(() -> "v" + k + "@" + node + "#" + loads.incrementAndGet()),
+                null, keys, Serializer.string());
+            services.add(svc);
+            caches.add(svc.partition(local, keys, Serializer.string()));
+        }
+    }
+
+    @AfterEach
+    void close() {
+        services.forEach(PartitionService::close);
+        servers.forEach(DisposableServer::disposeNow);
+    }
+
+    @Test
+    void ring() {
+        final HashRing<String> ring = new HashRing<>(160);
+        ring.add("a", "a").add("b", "b").add("c", "c");
+        final Map<String, Integer> count = new HashMap<>();
+        for (int i = 0; i < 30000; i++) count.merge(ring.ownerOf(OffHeapStore.hash(("k" + i).getBytes())), 1, Integer::sum);
+        count.values().forEach(c -> assertTrue(c > 7000 && c < 13000, count::toString));
+        //only keys of removed node move
+        final Map<Integer, String> before = new HashMap<>();
+        for (int i = 0; i < 1000; i++) before.put(i, ring.ownerOf(OffHeapStore.hash(("k" + i).getBytes())));
+        ring.remove("c");
+        before.forEach((k, o) -> {
+            if (!o.equals("c")) assertEquals(o, ring.ownerOf(OffHeapStore.hash(("k" + k).getBytes())));
+        });
+    }
+
+    @Test
+    void partitioned() {
+        final PartitionedCache<Integer, String> first = caches.get(0);
+        final List<String> values = Flux.range(0, 300).flatMap(first::get).collectList().block(Duration.ofSeconds(10));
+        assertEquals(300, values.size());
+        //every key loaded once by its owner and kept only there
+        assertEquals(300, loads.get());
+        assertEquals(300, caches.stream().mapToLong(NamedCache::estimatedSize).sum());
+        caches.forEach(c -> assertTrue(c.estimatedSize() > 50));
+        for (int k = 0; k < 300; k++) {
+            final String v = caches.get(1).get(k).block(Duration.ofSeconds(5));
+            assertNotNull(v);
+            assertTrue(v.startsWith("v" + k + "@" + first.ownerOf(k)));
+        }
+        assertEquals(300, loads.get());
+    }
+
+    @Test
+    void forward() throws InterruptedException {
+        final PartitionedCache<Integer, String> first = caches.get(0);
+        int key = 0;
+        while (first.ownerOf(key).equals(services.get(0).getSelf())) key++;
+        int owner = 1, other = 2;
+        if (!first.ownerOf(key).equals(services.get(1).getSelf())) {
+            owner = 2;
+            other = 1;
+        }
+        first.put(key, "x");
+        final NamedCache<Integer, String> local = caches.get(owner);
+        final int k = key;
+        InvalidationChannelTest.await(() -> "x".equals(local.synchronous().getIfPresent(k)));
+        assertEquals("x", caches.get(other).getIfPresent(key).block(Duration.ofSeconds(5)));
+        first.invalidate(key);
+        InvalidationChannelTest.await(() -> local.synchronous().getIfPresent(k) == null);
+    }
+
+    @Test
+    void fallback() throws IOException {
+        final String self = "127.0.0.1:" + freePort();
+        final String dead = "127.0.0.1:" + freePort();
+        final PartitionService svc = new PartitionService(self, Arrays.asList(self, dead), 16, Duration.ofSeconds(1), SECRET);
+        final PartitionedCache<Integer, String> cache = svc.partition(
+            NamedCache.scope.create("users", new CacheSpec(), null, null, null, null, null),
+            Serializer.java("java.lang.Integer"), Serializer.string());
+        int key = 0;
+        while (!cache.ownerOf(key).equals(dead)) key++;
+        //owner unreachable, load locally
+        assertEquals("y", cache.get(key, k -> Mono.just("y")).block(Duration.ofSeconds(5)));
+        //no loader, error of owner is propagated
+        final int k = key;
+        cache.invalidate(k);
+        assertThrows(RuntimeException.class, () -> cache.get(k).block(Duration.ofSeconds(5)));
+        svc.close();
+    }
+
+    @Test
+    void unauthenticated() throws IOException {
+        final String self = "127.0.0.1:" + freePort();
+        final List<String> all = new ArrayList<>(nodes);
+        all.add(self);
+        for (byte[] secret : Arrays.asList("wrong".getBytes(StandardCharsets.UTF_8), null)) {
+            final PartitionService svc = new PartitionService(self, all, 160, Duration.ofSeconds(1), secret);
+            final PartitionedCache<String, String> cache = svc.partition(
+                NamedCache.scope.create("users", new CacheSpec(), null, null, null, null, null),
+                Serializer.string(), Serializer.string());
+            int key = 0;
+            while (!cache.ownerOf(String.valueOf(key)).equals(nodes.get(0))) key++;
+            final String k = String.valueOf(key);
+            assertThrows(RuntimeException.class, () -> cache.get(k).block(Duration.ofSeconds(5)));
+            svc.close();
+        }
+        assertEquals(0, loads.get(), "nothing served to unauthenticated peer");
+    }
+
+    @Test
+    void javaSerialization() {
+        final PartitionService svc = new PartitionService("127.0.0.1:1", Collections.singleton("127.0.0.1:1"));
+        final NamedCache<Integer, String> local = NamedCache.scope.create("users", new CacheSpec(), null, null, null, null, null);
+        assertThrows(IllegalStateException.class, () -> svc.partition(local, Serializer.java("java.lang.Integer"), Serializer.string()),
+            "java serialization requires a secret");
+        assertThrows(IllegalArgumentException.class, Serializer::java);
+        final Serializer<Object> integers = Serializer.java("java.lang.Integer");
+        assertEquals(7, integers.deserialize(integers.serialize(7)));
+        assertArrayEquals(new int[]{1, 2}, (int[]) integers.deserialize(integers.serialize(new int[]{1, 2})));
+        final byte[] list = integers.serialize(new ArrayList<>(Collections.singleton(1)));
+        assertThrows(UncheckedIOException.class, () -> integers.deserialize(list), "class not allowed");
+        final Serializer<Object> lists = Serializer.java("java.util.ArrayList", "java.lang.*");
+        assertEquals(Collections.singletonList(1), lists.deserialize(list));
+        svc.close();
+    }
+}
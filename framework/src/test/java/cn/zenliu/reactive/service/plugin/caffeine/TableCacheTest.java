@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TableCacheTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:15:30
+ */
+
+
+package cn.zenliu.reactive.service.plugin.caffeine;
+
+import cn.zenliu.reactive.service.plugin.hikari.ReactiveJdbc;
+import cn.zenliu.reactive.service.plugin.hikari.RoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableCacheTest {
+    static TableCache cache(String name) {
+        return new TableCache(CaffeineManagerTest.manager().getCache(name));
+    }
+
+    @Test
+    void parse() {
+        assertEquals(new HashSet<>(Arrays.asList("orders", "customer")),
+            TableCache.tablesOf("select o.id from app.Orders o join \"CUSTOMER\" c on c.id=o.cid where o.name='from x'"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")),
+            TableCache.tablesOf("select * from a, b as bb, c where a.id in (select id from c)"));
+        assertEquals(Collections.singleton("item"), TableCache.writtenTablesOf("UPDATE item set name=?"));
+        assertEquals(Collections.singleton("item"), TableCache.writtenTablesOf("insert into public.item values(?)"));
+        assertEquals(Collections.singleton("item"), TableCache.writtenTablesOf("delete from `item` where id=1"));
+        assertEquals(Collections.emptySet(), TableCache.writtenTablesOf("select * from item"));
+    }
+
+    @Test
+    void invalidate() {
+        final TableCache cache = cache("tables-invalidate");
+        final AtomicInteger loads = new AtomicInteger();
+        final Mono<Integer> get = cache.get("k", () -> Mono.fromCallable(() -> TableCache.Tagged.of(loads.incrementAndGet(), Collections.singleton("ITEM"))));
+        assertEquals(1, get.block());
+        assertEquals(1, get.block());
+        cache.touch("other");
+        assertEquals(1, get.block());
+        cache.touch("schema.Item");
+        assertEquals(2, get.block());
+        assertEquals(2, get.block());
+        assertEquals(1, cache.getStales());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void touchDuringLoad() {
+        final TableCache cache = cache("tables-during");
+        final AtomicInteger loads = new AtomicInteger();
+        final MonoProcessor<Integer> gate = MonoProcessor.create();
+        final Mono<Integer> slow = cache.get("k", () -> gate.map(v -> TableCache.Tagged.of(loads.incrementAndGet(), Collections.singleton("item"))));
+        final Mono<Integer> loading = slow.cache();
+        loading.subscribe();
+        cache.touch("item");
+        gate.onNext(0);
+        assertEquals(1, loading.block(Duration.ofSeconds(1)));
+        assertEquals(2, cache.get("k", () -> Mono.fromCallable(() -> TableCache.Tagged.of(loads.incrementAndGet(), Collections.singleton("item")))).block());
+    }
+
+    @Test
+    void jdbc() {
+        final HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:tables" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(2);
+        try (HikariDataSource ds = new HikariDataSource(cfg)) {
+            final ReactiveJdbc jdbc = ReactiveJdbc.of(ds).setTableCache(cache("tables-jdbc"));
+            jdbc.update("create table item(id int primary key, name varchar(32))").block();
+            jdbc.update("insert into item values(1,'a')").block();
+            final TableCache cache = jdbc.getTableCache().orElseThrow(IllegalStateException::new);
+            assertEquals(Collections.singletonList("a"), jdbc.queryCached("select name from item where id=?", rs -> rs.getString(1), 1).collectList().block());
+            assertEquals(Collections.singletonList("a"), jdbc.queryCached("select name from item where id=?", rs -> rs.getString(1), 1).collectList().block());
+            assertEquals(1, cache.getHits());
+            jdbc.update("update item set name=? where id=?", "b", 1).block();
+            assertEquals(Collections.singletonList("b"), jdbc.queryCached("select name from item where id=?", rs -> rs.getString(1), 1).collectList().block());
+            assertEquals(1, cache.getStales());
+            jdbc.close();
+        }
+    }
+
+    @Test
+    void trackCommits() throws Exception {
+        final HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:tracked" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(2);
+        try (HikariDataSource ds = new HikariDataSource(cfg)) {
+            final TableCache cache = cache("tables-tracked");
+            final DataSource tracked = cache.track(ds);
+            final AtomicInteger loads = new AtomicInteger();
+            final Mono<Integer> get = cache.get("k", () -> Mono.fromCallable(() -> TableCache.Tagged.of(loads.incrementAndGet(), Collections.singleton("item"))));
+            try (Connection c = tracked.getConnection(); Statement st = c.createStatement()) {
+                st.execute("create table item(id int primary key, name varchar(32))");
+            }
+            assertEquals(1, get.block());
+            try (Connection c = tracked.getConnection()) {
+                c.setAutoCommit(false);
+                try (PreparedStatement ps = c.prepareStatement("insert into item values(1,'a')")) {
+                    ps.executeUpdate();
+                }
+                c.rollback();
+                assertEquals(1, get.block(), "rolled back");
+                try (PreparedStatement ps = c.prepareStatement("insert into item values(1,'a')")) {
+                    ps.executeUpdate();
+                }
+                assertEquals(1, get.block(), "not committed yet");
+                c.commit();
+                assertEquals(2, get.block(), "committed");
+                c.setAutoCommit(true);
+            }
+            try (Connection c = tracked.getConnection(); PreparedStatement ps = c.prepareStatement("update item set name='b'")) {
+                ps.executeUpdate();
+            }
+            assertEquals(3, get.block(), "auto committed");
+            try (Connection c = tracked.getConnection(); PreparedStatement ps = c.prepareStatement("select * from item")) {
+                ps.executeQuery().close();
+            }
+            assertEquals(3, get.block(), "query not touch");
+        }
+    }
+
+    /**
+     * replica lags behind primary, a miss on read only facade must not cache what it has
+     */
+    @Test
+    void missOnReplicaLoadsPrimary() {
+        final HikariConfig p = new HikariConfig();
+        p.setJdbcUrl("jdbc:h2:mem:primary" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        p.setMaximumPoolSize(2);
+        final HikariConfig r = new HikariConfig();
+        r.setJdbcUrl("jdbc:h2:mem:replica" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        r.setMaximumPoolSize(2);
+        try (HikariDataSource primary = new HikariDataSource(p); HikariDataSource replica = new HikariDataSource(r)) {
+            final ReactiveJdbc jdbc = ReactiveJdbc.of(new RoutingDataSource(primary, Collections.singletonList(replica), RoutingDataSource.Policy.ROUND_ROBIN))
+                .setTableCache(cache("tables-replica"));
+            final ReactiveJdbc replicaJdbc = ReactiveJdbc.of(replica);
+            for (ReactiveJdbc j : Arrays.asList(jdbc, replicaJdbc)) {
+                j.update("create table item(id int primary key, name varchar(32))").block();
+                j.update("insert into item values(1,'a')").block();
+            }
+            jdbc.update("update item set name=? where id=?", "b", 1).block();
+            assertEquals(Collections.singletonList("a"), jdbc.readOnly().query("select name from item where id=?", rs -> rs.getString(1), 1).collectList().block(),
+                "replica not caught up");
+            assertEquals(Collections.singletonList("b"), jdbc.readOnly().queryCached("select name from item where id=?", rs -> rs.getString(1), 1).collectList().block());
+            replicaJdbc.close();
+            jdbc.close();
+        }
+    }
+}
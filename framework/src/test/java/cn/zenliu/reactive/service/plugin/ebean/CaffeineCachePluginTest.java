@@ -0,0 +1,121 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: CaffeineCachePluginTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:11:50
+ */
+
+package cn.zenliu.reactive.service.plugin.ebean;
+
+import cn.zenliu.reactive.service.plugin.PluginManager;
+import cn.zenliu.reactive.service.plugin.caffeine.CaffeineManager;
+import io.ebean.annotation.CacheBeanTuning;
+import io.ebean.cache.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaffeineCachePluginTest {
+    static CaffeineManager manager() {
+        final CaffeineManager m = PluginManager.getHardInstance().getPluginOfNeeded(CaffeineManager.class, false);
+        final Properties prop = new Properties();
+        prop.setProperty("caffeine.caches.ebean-Declared_B.maximumSize", "7");
+        m.configuration(prop);
+        return m;
+    }
+
+    static ServerCacheOptions options(int maxSize, int idle, int ttl) {
+        final ServerCacheOptions o = new ServerCacheOptions();
+        o.setMaxSize(maxSize);
+        o.setMaxIdleSecs(idle);
+        o.setMaxSecsToLive(ttl);
+        return o;
+    }
+
+    static ServerCache create(ServerCacheType type, String shortName, ServerCacheOptions options, QueryCacheEntryValidate validate) {
+        final ServerCacheFactory factory = new CaffeineCachePlugin(CaffeineCachePluginTest::manager).create(null, null);
+        return factory.createCache(new ServerCacheConfig(type, "x." + shortName, shortName, options, null, validate));
+    }
+
+    @Test
+    void spec() {
+        final CaffeineManager m = manager();
+        create(ServerCacheType.BEAN, "Customer_B", options(100, 60, 600), null);
+        assertEquals(100, m.getSpec("ebean-Customer_B").getMaximumSize());
+        assertEquals(Duration.ofMinutes(1), m.getSpec("ebean-Customer_B").getExpireAfterAccess());
+        assertEquals(Duration.ofMinutes(10), m.getSpec("ebean-Customer_B").getExpireAfterWrite());
+        assertTrue(m.getSpec("ebean-Customer_B").isRecordStats());
+        create(ServerCacheType.BEAN, "Declared_B", options(100, 0, 0), null);
+        assertEquals(7, m.getSpec("ebean-Declared_B").getMaximumSize(), "configuration wins");
+        assertNull(m.getSpec("ebean-Declared_B").getExpireAfterWrite());
+    }
+
+    @Test
+    void beanCache() {
+        final ServerCache cache = create(ServerCacheType.BEAN, "Order_B", options(10, 0, 0), null);
+        assertNull(cache.get(1L));
+        cache.put(1L, "order-1");
+        assertEquals("order-1", cache.get(1L));
+        assertEquals(1, cache.size());
+        assertEquals(50, cache.getHitRatio());
+        final ServerCacheStatistics stats = cache.getStatistics(true);
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getPutCount());
+        assertEquals(10, stats.getMaxSize());
+        assertEquals(0, cache.getStatistics(false).getPutCount(), "reset");
+        cache.remove(1L);
+        assertNull(cache.get(1L));
+        cache.put(2L, "order-2");
+        cache.clear();
+        assertNull(cache.get(2L));
+    }
+
+    @Test
+    void queryCache() {
+        final ServerCache cache = create(ServerCacheType.QUERY, "Order_Q", options(10, 0, 0),
+            entry -> !entry.getDependentTables().contains("stale"));
+        cache.put("q1", new QueryCacheEntry("rows", Collections.singleton("order"), System.currentTimeMillis()));
+        cache.put("q2", new QueryCacheEntry("rows2", Collections.singleton("stale"), System.currentTimeMillis()));
+        assertEquals("rows", cache.get("q1"), "entry unwrapped");
+        assertNull(cache.get("q2"), "invalid entry dropped");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void notifyTouched() {
+        final AtomicReference<Set<String>> touched = new AtomicReference<>();
+        final ServerCacheFactory factory = new CaffeineCachePlugin(CaffeineCachePluginTest::manager, touched::set).create(null, null);
+        factory.createCacheNotify(null).notify(new ServerCacheNotification(Collections.singleton("ORDERS")));
+        assertEquals(Collections.singleton("ORDERS"), touched.get());
+    }
+
+    @Test
+    void annotationTuning() {
+        assertEquals(5, CaffeineCachePlugin.specOf(new ServerCacheOptions(Tuned.class.getAnnotation(CacheBeanTuning.class)))
+            .getMaximumSize());
+    }
+
+    @CacheBeanTuning(maxSize = 5)
+    static class Tuned {
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: EbeanManagerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:11:50
+ */
+
+package cn.zenliu.reactive.service.plugin.ebean;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import cn.zenliu.reactive.service.plugin.hikari.StatementTiming;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.ebean.Database;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EbeanManagerTest {
+    private HikariDataSource dataSource;
+    private EbeanManager manager;
+    private Database db;
+    private String name;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> routes = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        CaffeineCachePluginTest.manager();
+        final HikariConfig cfg = new HikariConfig();
+        Metrics.addRegistry(registry);
+        name = "ebean" + System.nanoTime();
+        cfg.setJdbcUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(cfg);
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("create table ebean_item(id bigint auto_increment primary key, name varchar(64))");
+            st.execute("create sequence ebean_item_seq");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        manager = new EbeanManager.scope.EbeanManagerImpl();
+        final Properties conf = new Properties();
+        //flush by size only, so a batch is exactly the writes of a test
+        conf.setProperty(EbeanManager.PROP_WRITE_BEHIND_WINDOW, "60000");
+        conf.setProperty(EbeanManager.PROP_WRITE_BEHIND_MAX_BATCH, "3");
+        manager.init(conf, c -> {
+            c.setName(name);
+            c.setDataSource(recordRoute(dataSource));
+            c.setDefaultServer(false);
+            c.setRegister(false);
+            c.addClass(Item.class);
+            return c;
+        });
+        db = manager.getDatabase().orElseThrow(IllegalStateException::new);
+    }
+
+    /**
+     * record route bound when a connection taken
+     */
+    private DataSource recordRoute(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) routes.add(StatementTiming.route());
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    @AfterEach
+    void close() {
+        manager.stop();
+        db.shutdown(false, false);
+        dataSource.close();
+        Metrics.removeRegistry(registry);
+    }
+
+    private Mono<List<Item>> named(String name) {
+        return manager.findCached("named-" + name, db.find(Item.class).where().eq("name", name).query());
+    }
+
+    @Test
+    void writeDropsFindCached() {
+        final Item item = new Item("a");
+        db.save(item);
+        assertEquals(1, named("a").block(Duration.ofSeconds(5)).size());
+        assertEquals(1, named("a").block(Duration.ofSeconds(5)).size());
+        assertEquals(1, manager.getTableCache().getHits());
+        //plain entity, not cached by ebean
+        item.setName("b");
+        db.update(item);
+        assertEquals(0, named("a").block(Duration.ofSeconds(5)).size());
+        assertEquals(1, manager.getTableCache().getStales());
+        //sql update on table of entity
+        db.sqlUpdate("insert into ebean_item (id, name) values (100, 'a')").execute();
+        assertEquals(1, named("a").block(Duration.ofSeconds(5)).size());
+        assertEquals(2, manager.getTableCache().getStales());
+    }
+
+    @Test
+    void routeOfSubscriber() {
+        db.save(new Item("r"));
+        routes.clear();
+        assertEquals(1, named("r").subscriberContext(ctx -> ctx.put(RequestUtil.ROUTE, "main:/items")).block(Duration.ofSeconds(5)).size());
+        assertEquals(Collections.singletonList("main:/items"), routes);
+        routes.clear();
+        assertEquals(1, manager.stream(db.find(Item.class), 10)
+            .subscriberContext(ctx -> ctx.put(RequestUtil.ROUTE, "main:/stream")).count().block(Duration.ofSeconds(5)));
+        assertEquals(Collections.singletonList("main:/stream"), routes);
+        routes.clear();
+        assertEquals(1, manager.stream(db.find(Item.class), 10).count().block(Duration.ofSeconds(5)));
+        assertEquals(Collections.singletonList(StatementTiming.NO_ROUTE), routes);
+    }
+
+    private double commits() {
+        return registry.get(Meters.PREFIX + "writebehind.commits").tag("name", "ebean-" + name).functionCounter().count();
+    }
+
+    private double fallbacks() {
+        return registry.get(Meters.PREFIX + "writebehind.fallbacks").tag("name", "ebean-" + name).functionCounter().count();
+    }
+
+    private String nameOf(long id) {
+        return db.sqlQuery("select name from ebean_item where id = ?").setParameter(id).findOne().getString("name");
+    }
+
+    @Test
+    void writeBehindBatch() throws Exception {
+        final List<Item> items = Flux.range(0, 3)
+            .flatMap(i -> manager.insertBehind(new Item("w" + i)).subscribeOn(Schedulers.parallel()))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(items);
+        assertEquals(3, items.stream().map(Item::getId).filter(Objects::nonNull).distinct().count());
+        assertEquals(1, commits(), "concurrent inserts in one transaction");
+        items.forEach(i -> i.setName(i.getName() + "u"));
+        Flux.fromIterable(items).flatMap(manager::updateBehind).blockLast(Duration.ofSeconds(5));
+        assertEquals(2, commits());
+        for (Item i : items) assertEquals(i.getName(), nameOf(i.getId()));
+        manager.stop();
+        assertNull(registry.find(Meters.PREFIX + "writebehind.commits").tag("name", "ebean-" + name).meter(), "removed on stop");
+    }
+
+    @Test
+    void writeBehindRetry() {
+        final Item updated = new Item("u");
+        db.save(updated);
+        updated.setName("u2");
+        final Item inserted = new Item("i");
+        //too long for column: fails the batch, then itself when retried
+        final Item bad = new Item(String.join("", Collections.nCopies(65, "x")));
+        final Mono<Item> a = manager.updateBehind(updated).cache();
+        final Mono<Item> b = manager.insertBehind(inserted).cache();
+        final Mono<Item> c = manager.insertBehind(bad).cache();
+        a.subscribe(x -> {}, e -> {});
+        b.subscribe(x -> {}, e -> {});
+        assertThrows(Exception.class, () -> c.block(Duration.ofSeconds(5)));
+        assertSame(updated, a.block(Duration.ofSeconds(5)));
+        assertSame(inserted, b.block(Duration.ofSeconds(5)));
+        assertEquals("u2", nameOf(updated.getId()), "update not lost after rollback");
+        assertNotNull(inserted.getId());
+        assertEquals("i", nameOf(inserted.getId()));
+        assertEquals(2, db.find(Item.class).findCount(), "inserted once");
+        assertEquals(3, fallbacks());
+    }
+
+    @Test
+    void writeBehindRetryFlushedInserts() {
+        final Item bad = new Item("b");
+        db.save(bad);
+        bad.setName(String.join("", Collections.nCopies(65, "x")));
+        final Item first = new Item("f1");
+        final Item second = new Item("f2");
+        //inserts are executed and get ids before the update fails the transaction
+        final Mono<Item> a = manager.insertBehind(first).cache();
+        final Mono<Item> b = manager.insertBehind(second).cache();
+        final Mono<Item> c = manager.updateBehind(bad).cache();
+        a.subscribe(x -> {}, e -> {});
+        b.subscribe(x -> {}, e -> {});
+        assertThrows(Exception.class, () -> c.block(Duration.ofSeconds(5)));
+        assertSame(first, a.block(Duration.ofSeconds(5)));
+        assertSame(second, b.block(Duration.ofSeconds(5)));
+        assertTrue(first.getId() > bad.getId() + 2 && second.getId() > bad.getId() + 2, "generated again, not kept from rolled back batch");
+        assertEquals("f1", nameOf(first.getId()));
+        assertEquals("f2", nameOf(second.getId()));
+        assertEquals("b", nameOf(bad.getId()));
+        assertEquals(3, db.find(Item.class).findCount(), "inserted once");
+        //beans stay usable after retry
+        first.setName("f3");
+        manager.updateBehind(first).subscribe();
+        manager.insertBehind(new Item("f4")).subscribe();
+        manager.insertBehind(new Item("f5")).block(Duration.ofSeconds(5));
+        assertEquals("f3", nameOf(first.getId()));
+    }
+}
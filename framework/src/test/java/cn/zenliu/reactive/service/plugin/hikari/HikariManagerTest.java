@@ -0,0 +1,223 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: HikariManagerTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:00:54
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HikariManagerTest {
+    final HikariManager.scope.HikariManagerImpl manager = new HikariManager.scope.HikariManagerImpl();
+
+    @AfterEach
+    void stop() {
+        manager.stop();
+    }
+
+    static Properties conf(String policy) {
+        final String id = "r" + System.nanoTime();
+        final Properties p = new Properties();
+        p.setProperty("jdbcUrl", "jdbc:h2:mem:" + id + "p;DB_CLOSE_DELAY=-1");
+        p.setProperty("maximumPoolSize", "2");
+        p.setProperty("pools.replica1.jdbcUrl", "jdbc:h2:mem:" + id + "a;DB_CLOSE_DELAY=-1");
+        p.setProperty("pools.replica2.jdbcUrl", "jdbc:h2:mem:" + id + "b;DB_CLOSE_DELAY=-1");
+        p.setProperty("pools.replica2.maximumPoolSize", "3");
+        p.setProperty("replicas", "replica1, replica2");
+        p.setProperty("readPolicy", policy);
+        return p;
+    }
+
+    static void mark(DataSource ds, String name) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("create table node(name varchar(16))");
+            st.execute("insert into node values('" + name + "')");
+        }
+    }
+
+    static String nodeOf(Connection c) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("select name from node")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    void markAll() throws SQLException {
+        mark(manager.getPool(HikariManager.DEFAULT_POOL), "primary");
+        mark(manager.getPool("replica1"), "a");
+        mark(manager.getPool("replica2"), "b");
+    }
+
+    @Test
+    void namedPools() {
+        manager.configuration(conf("round-robin"));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("default", "replica1", "replica2")), manager.getPoolNames());
+        assertEquals(2, manager.getPool("replica1").getMaximumPoolSize(), "inherit from default");
+        assertEquals(3, manager.getPool("replica2").getMaximumPoolSize());
+        assertEquals("replica1", manager.getPool("replica1").getPoolName());
+        assertThrows(IllegalArgumentException.class, () -> manager.getPool("none"));
+        assertTrue(manager.getDataSource(null) instanceof RoutingDataSource);
+    }
+
+    @Test
+    void roundRobin() throws SQLException {
+        manager.configuration(conf("round-robin"));
+        final RoutingDataSource ds = (RoutingDataSource) manager.getDataSource(null);
+        markAll();
+        try (Connection c = ds.getConnection()) {
+            assertEquals("primary", nodeOf(c));
+        }
+        final Map<String, Integer> hits = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            try (Connection c = ds.readOnly().getConnection()) {
+                hits.merge(nodeOf(c), 1, Integer::sum);
+            }
+        }
+        assertEquals(5, hits.get("a"));
+        assertEquals(5, hits.get("b"));
+        assertEquals(Arrays.asList("a", "b"), manager.getReactiveJdbc(null).readOnly()
+            .query("select name from node", rs -> rs.getString(1)).repeat(1).collectSortedList().block());
+        assertEquals("primary", manager.getReactiveJdbc(null).queryOne("select name from node", rs -> rs.getString(1)).block());
+    }
+
+    @Test
+    void leastActive() throws SQLException {
+        manager.configuration(conf("least-active"));
+        final RoutingDataSource ds = (RoutingDataSource) manager.getDataSource(null);
+        markAll();
+        try (Connection held = ds.readOnly().getConnection()) {
+            final String busy = nodeOf(held);
+            for (int i = 0; i < 4; i++) {
+                try (Connection c = ds.readOnly().getConnection()) {
+                    assertNotEquals(busy, nodeOf(c));
+                }
+            }
+        }
+    }
+
+    @Test
+    void failedReplicaSkipped() throws SQLException {
+        final Properties p = conf("round-robin");
+        p.setProperty("replicaRetry", "1m");
+        manager.configuration(p);
+        final RoutingDataSource ds = (RoutingDataSource) manager.getDataSource(null);
+        markAll();
+        manager.getPool("replica1").close();
+        for (int i = 0; i < 4; i++) {
+            try (Connection c = ds.readOnly().getConnection()) {
+                assertEquals("b", nodeOf(c));
+            }
+        }
+        assertTrue(ds.isDown(0));
+        assertFalse(ds.isDown(1));
+        manager.getPool("replica2").close();
+        try (Connection c = ds.readOnly().getConnection()) {
+            assertEquals("primary", nodeOf(c));
+        }
+    }
+
+    @Test
+    void metersRemovedOnStop() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            manager.configuration(conf("round-robin"));
+            manager.getPool("replica1");
+            assertNotNull(registry.find(Meters.PREFIX + "hikari.active").tag("pool", "replica1").meter());
+            assertNotNull(registry.find(Meters.PREFIX + "hikari.acquire").tag("pool", "replica1").meter());
+            manager.stop();
+            assertTrue(registry.find(Meters.PREFIX + "hikari.active").tag("pool", "replica1").meters().isEmpty());
+            assertTrue(registry.getMeters().stream().noneMatch(m -> "replica1".equals(m.getId().getTag("pool"))));
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    void warmupAndMetrics() throws SQLException {
+        final Properties p = new Properties();
+        p.setProperty("jdbcUrl", "jdbc:h2:mem:w" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        p.setProperty("minimumIdle", "3");
+        p.setProperty("maximumPoolSize", "4");
+        p.setProperty("tuning.warmup", "true");
+        p.setProperty("tuning.statements", "select 1; select no_such_column from dual");
+        manager.configuration(p);
+        assertThrows(IllegalStateException.class, () -> manager.getPool(HikariManager.DEFAULT_POOL), "created by getDataSource only");
+        manager.getDataSource(null);
+        final PoolMetrics metrics = manager.getPoolMetrics(HikariManager.DEFAULT_POOL);
+        assertTrue(manager.getPool(HikariManager.DEFAULT_POOL).getHikariPoolMXBean().getTotalConnections() >= 3,
+            "warmed up before first use");
+        assertEquals(3, metrics.getAcquired());
+        try (Connection c = manager.getDataSource(null).getConnection()) {
+            assertEquals(1, metrics.getInUse());
+        }
+        assertEquals(0, metrics.getInUse());
+        assertEquals(4, metrics.getAcquired());
+    }
+
+    @Test
+    void adaptiveSizing() throws Exception {
+        final Properties p = new Properties();
+        p.setProperty("jdbcUrl", "jdbc:h2:mem:s" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        p.setProperty("minimumIdle", "1");
+        p.setProperty("maximumPoolSize", "2");
+        p.setProperty("connectionTimeout", "5000");
+        manager.configuration(p);
+        final PoolTuning tuning = new PoolTuning();
+        tuning.setMinSize(1);
+        tuning.setMaxSize(3);
+        manager.getDataSource(null);
+        final com.zaxxer.hikari.HikariDataSource ds = manager.getPool(HikariManager.DEFAULT_POOL);
+        final PoolController controller = new PoolController(ds, manager.getPoolMetrics(HikariManager.DEFAULT_POOL), tuning);
+        final Connection a = ds.getConnection();
+        final Connection b = ds.getConnection();
+        final java.util.concurrent.CompletableFuture<Connection> waiter =
+            java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ds.getConnection();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        while (ds.getHikariPoolMXBean().getThreadsAwaitingConnection() == 0) Thread.sleep(10);
+        assertEquals(3, controller.adjust(), "grow when someone waits");
+        final Connection c = waiter.get(5, java.util.concurrent.TimeUnit.SECONDS);
+        assertEquals(3, controller.adjust(), "bounded by maxSize");
+        a.close();
+        b.close();
+        c.close();
+        assertEquals(3, controller.adjust(), "peak of period still high");
+        assertEquals(2, controller.adjust(), "shrink when quiet");
+        assertEquals(1, controller.adjust());
+        assertEquals(1, controller.adjust(), "bounded by minSize");
+    }
+}
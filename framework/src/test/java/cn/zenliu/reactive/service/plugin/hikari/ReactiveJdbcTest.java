@@ -0,0 +1,193 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ReactiveJdbcTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:51:57
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import cn.zenliu.reactive.service.util.BatchLoader;
+import cn.zenliu.reactive.service.util.WriteBehind;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveJdbcTest {
+    HikariDataSource ds;
+    ReactiveJdbc jdbc;
+
+    @BeforeEach
+    void setup() {
+        final HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:jdbc" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(2);
+        cfg.setPoolName("test");
+        ds = new HikariDataSource(cfg);
+        jdbc = ReactiveJdbc.of(ds);
+        jdbc.update("create table item(id int primary key, name varchar(32))").block();
+    }
+
+    @AfterEach
+    void close() {
+        jdbc.close();
+        ds.close();
+    }
+
+    @Test
+    void helpers() {
+        final int[] rows = jdbc.batch("insert into item values(?,?)", Arrays.asList(new Object[]{1, "a"}, new Object[]{2, "b"}, new Object[]{3, "c"}))
+            .block(Duration.ofSeconds(5));
+        assertArrayEquals(new int[]{1, 1, 1}, rows);
+        assertEquals(Arrays.asList("a", "b", "c"), jdbc.query("select name from item order by id", rs -> rs.getString(1)).collectList().block());
+        assertEquals("b", jdbc.queryOne("select name from item where id=?", rs -> rs.getString(1), 2).block());
+        assertNull(jdbc.queryOne("select name from item where id=?", rs -> rs.getString(1), 9).block());
+        assertEquals(1, jdbc.update("update item set name=? where id=?", "x", 1).block());
+        assertThrows(RuntimeException.class, () -> jdbc.inTransaction(c -> {
+            c.createStatement().executeUpdate("delete from item");
+            throw new SQLException("abort");
+        }).block());
+        assertEquals(3, jdbc.queryOne("select count(*) from item", rs -> rs.getInt(1)).block());
+    }
+
+    @Test
+    void stream() {
+        jdbc.update("insert into item select x, 'n' || x from system_range(1, 1000)").block();
+        final AtomicLong requested = new AtomicLong();
+        final List<Integer> first = jdbc.stream("select id from item order by id", rs -> rs.getInt(1), 50)
+            .doOnRequest(requested::addAndGet)
+            .limitRequest(10)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertEquals(10, first.size());
+        assertTrue(requested.get() < 1000, "rows should be read on demand");
+        assertEquals(1000, jdbc.stream("select id from item", rs -> rs.getInt(1), 100).count().block(Duration.ofSeconds(5)));
+        //cursor closed and connection returned after cancel and complete, cleanup may run just after terminal signal
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (ds.getHikariPoolMXBean().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) Thread.yield();
+        assertEquals(0, ds.getHikariPoolMXBean().getActiveConnections());
+        assertEquals(0, jdbc.getPending());
+    }
+
+    @Test
+    void writeBehind() {
+        final WriteBehind<String, Object[], Integer> wb = jdbc.writeBehind(Duration.ofMillis(20), 1000);
+        final List<Integer> counts = Flux.range(0, 200)
+            .flatMap(i -> wb.submit("insert into item values(?,?)", new Object[]{i, "n" + i}))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(counts);
+        assertEquals(200, counts.size());
+        assertEquals(1, wb.commits());
+        assertEquals(200, jdbc.queryOne("select count(*) from item", rs -> rs.getInt(1)).block());
+        //duplicated key fails only its own caller
+        final List<String> results = Flux.mergeSequential(
+            wb.submit("insert into item values(?,?)", new Object[]{1000, "x"}).map(String::valueOf),
+            wb.submit("insert into item values(?,?)", new Object[]{1, "dup"}).map(String::valueOf).onErrorReturn("error"),
+            wb.submit("update item set name=? where id=?", new Object[]{"y", 2}).map(String::valueOf))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertEquals(Arrays.asList("1", "error", "1"), results);
+        assertEquals("y", jdbc.queryOne("select name from item where id=2", rs -> rs.getString(1)).block());
+        wb.close();
+    }
+
+    @Test
+    void loader() {
+        jdbc.update("insert into item select x, 'n' || x from system_range(1, 100)").block();
+        final BatchLoader<Integer, String> loader = jdbc.loader("select id, name from item where id in (%s)",
+            rs -> rs.getInt(1), rs -> rs.getString(2), Duration.ofMillis(10), 50);
+        final List<String> names = Flux.range(1, 120)
+            .flatMap(i -> loader.load(i).defaultIfEmpty("none"))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(names);
+        assertEquals(120, names.size());
+        assertEquals(20, names.stream().filter("none"::equals).count());
+        assertTrue(names.contains("n100"));
+        assertEquals(3, loader.batches());
+        loader.close();
+    }
+
+    @Test
+    void boundedByPool() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final List<Integer> done = Flux.range(0, 10)
+            .flatMap(i -> jdbc.withConnection(c -> {
+                max.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return i;
+            }))
+            .collectList()
+            .block(Duration.ofSeconds(10));
+        assertNotNull(done);
+        assertEquals(10, done.size());
+        assertEquals(2, max.get());
+        assertTrue(jdbc.getAcquired() >= 10);
+        assertTrue(jdbc.getWaitTime().toMillis() >= 100, "calls should wait for free threads");
+        assertEquals(0, jdbc.getPending());
+    }
+
+    @Test
+    void metersRemovedOnClose() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final ReactiveJdbc first = new ReactiveJdbc("metered", ds, 1, 16);
+            first.queryOne("select 1", rs -> rs.getInt(1)).block();
+            final Timer timer = registry.get(Meters.PREFIX + "jdbc.acquire").tag("pool", "metered").timer();
+            assertEquals(1, timer.count());
+            //reading never resets the max
+            final double max = timer.max(TimeUnit.NANOSECONDS);
+            assertTrue(max > 0);
+            assertEquals(max, timer.max(TimeUnit.NANOSECONDS));
+            first.close();
+            assertNull(registry.find(Meters.PREFIX + "jdbc.acquire").tag("pool", "metered").meter());
+            assertNull(registry.find(Meters.PREFIX + "jdbc.acquire.pending").tag("pool", "metered").meter());
+            final ReactiveJdbc second = new ReactiveJdbc("metered", ds, 1, 16);
+            second.queryOne("select 1", rs -> rs.getInt(1)).block();
+            second.queryOne("select 1", rs -> rs.getInt(1)).block();
+            assertEquals(2, registry.get(Meters.PREFIX + "jdbc.acquire").tag("pool", "metered").timer().count());
+            second.close();
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
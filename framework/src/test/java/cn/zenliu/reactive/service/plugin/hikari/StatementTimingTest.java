@@ -0,0 +1,156 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: StatementTimingTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:07:33
+ */
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.RequestUtil;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementTimingTest {
+    static HikariDataSource pool;
+
+    @BeforeAll
+    static void setup() throws SQLException {
+        final HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:timing" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        cfg.setMaximumPoolSize(2);
+        pool = new HikariDataSource(cfg);
+        try (Connection c = pool.getConnection(); Statement st = c.createStatement()) {
+            st.execute("create table item(id int primary key, name varchar(32))");
+            for (int i = 0; i < 100; i++) st.execute("insert into item values(" + i + ", 'n" + i + "')");
+        }
+    }
+
+    @AfterAll
+    static void teardown() {
+        pool.close();
+    }
+
+    @Test
+    void normalize() {
+        assertEquals("select * from t where a = ? and b = ?",
+            StatementTiming.normalize("select *\n  from t where a = 'x''y' and b = 12.5"));
+        assertEquals("select c1 from t2 where id in (?) limit ?",
+            StatementTiming.normalize("select c1 from t2 where id in (1, 2,3) limit 10"));
+        assertEquals("insert into t values (?)", StatementTiming.normalize("insert into t values (?, ?, ?)"));
+        assertEquals("select f(?, a) from t", StatementTiming.normalize("select f(?, a) from t"));
+    }
+
+    @Test
+    void stats() throws SQLException {
+        final StatementTiming timing = new StatementTiming("t", Duration.ofNanos(1), 2);
+        final DataSource ds = timing.wrap(pool);
+        try (Connection c = ds.getConnection()) {
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatement ps = c.prepareStatement("select name from item where id < ?")) {
+                    ps.setInt(1, 10);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) assertNotNull(rs.getString(1));
+                    }
+                }
+            }
+            try (Statement st = c.createStatement()) {
+                st.executeQuery("select name from item where id = 1").close();
+                st.executeQuery("select name from item where id = 2").close();
+                st.executeUpdate("update item set name = 'x' where id = 99");
+            }
+            assertTrue(c.isWrapperFor(Connection.class));
+        }
+        final StatementTiming.Stats prepared = timing.getStats().get("select name from item where id < ?");
+        assertEquals(3, prepared.getCount());
+        assertEquals(30, prepared.getRows());
+        assertTrue(prepared.getFetchNanos() > 0);
+        assertTrue(prepared.percentileNanos(0.5) > 0 && prepared.percentileNanos(1) <= prepared.getMaxNanos());
+        assertEquals(2, timing.getStats().get("select name from item where id = ?").getCount(), "literals normalized");
+        assertEquals(1, timing.getStats().get(StatementTiming.OTHER).getCount(), "bounded by maxQueries");
+        assertEquals(3, timing.getStats().size());
+        assertEquals(1, timing.top(1).size());
+    }
+
+    @Test
+    void route() {
+        final StatementTiming timing = new StatementTiming("r", Duration.ZERO, 10);
+        final ReactiveJdbc jdbc = ReactiveJdbc.of(timing.wrap(pool));
+        try {
+            final String[] seen = new String[1];
+            jdbc.withConnection(c -> seen[0] = StatementTiming.route())
+                .subscriberContext(ctx -> ctx.put(RequestUtil.ROUTE, "main:/items"))
+                .block();
+            assertEquals("main:/items", seen[0]);
+            assertEquals(StatementTiming.NO_ROUTE, jdbc.withConnection(c -> StatementTiming.route()).block());
+            assertEquals(100, jdbc.query("select id from item", rs -> rs.getInt(1)).count().block());
+            assertEquals(1, timing.getStats().get("select id from item").getCount());
+        } finally {
+            jdbc.close();
+        }
+    }
+
+    @Test
+    void reusedStatement() throws SQLException {
+        final StatementTiming timing = new StatementTiming("o", Duration.ZERO, 10);
+        loop(timing.wrap(pool), 1_000);
+        final StatementTiming.Stats stats = timing.getStats().get("select name from item where id = ?");
+        assertEquals(1_000, stats.getCount(), "every execution of a reused statement is timed");
+        assertEquals(1_000, stats.getRows());
+    }
+
+    @Test
+    void benchmark() throws SQLException {
+        System.out.println("raw vs timed point query (set, execute, next, close)");
+        final StatementTiming timing = new StatementTiming("b", Duration.ZERO, 10);
+        final DataSource timed = timing.wrap(pool);
+        final int n = 100_000;
+        for (int round = 0; round < 5; round++) {
+            final long t0 = System.nanoTime();
+            loop(pool, n);
+            final long t1 = System.nanoTime();
+            loop(timed, n);
+            final long t2 = System.nanoTime();
+            System.out.println("round " + round + " raw=" + (t1 - t0) / n + "ns timed=" + (t2 - t1) / n
+                + "ns overhead=" + ((t2 - t1) - (t1 - t0)) / n + "ns/query");
+        }
+    }
+
+    static void loop(DataSource ds, int n) throws SQLException {
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement("select name from item where id = ?")) {
+            for (int i = 0; i < n; i++) {
+                ps.setInt(1, i % 100);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+    }
+}
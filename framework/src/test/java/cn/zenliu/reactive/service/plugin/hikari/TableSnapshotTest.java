@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: TableSnapshotTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 10:18:01
+ */
+
+
+package cn.zenliu.reactive.service.plugin.hikari;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableSnapshotTest {
+    final HikariManager.scope.HikariManagerImpl manager = new HikariManager.scope.HikariManagerImpl();
+
+    @AfterEach
+    void stop() {
+        manager.stop();
+    }
+
+    ReactiveJdbc setup(String interval) {
+        final Properties p = new Properties();
+        p.setProperty("jdbcUrl", "jdbc:h2:mem:s" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        p.setProperty("maximumPoolSize", "2");
+        p.setProperty("snapshots.country.table", "country");
+        p.setProperty("snapshots.country.key", "code");
+        p.setProperty("snapshots.country.columns", "code, region, population");
+        p.setProperty("snapshots.country.version", "version");
+        p.setProperty("snapshots.country.deleted", "deleted");
+        p.setProperty("snapshots.country.hashIndexes", "region");
+        p.setProperty("snapshots.country.sortedIndexes", "population");
+        p.setProperty("snapshots.country.interval", interval);
+        manager.configuration(p);
+        final ReactiveJdbc jdbc = manager.getReactiveJdbc(null);
+        jdbc.update("create table country(code varchar(2) primary key, region varchar(8), population int, version bigint, deleted boolean default false)").block();
+        jdbc.batch("insert into country(code, region, population, version) values(?,?,?,?)", Arrays.asList(
+            new Object[]{"CN", "asia", 1400, 1},
+            new Object[]{"JP", "asia", 125, 1},
+            new Object[]{"FR", "europe", 67, 1})).block();
+        return jdbc;
+    }
+
+    static List<Object> codes(List<Map<String, Object>> rows) {
+        return rows.stream().map(r -> r.get("code")).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void lookups() {
+        setup("1h");
+        final TableSnapshot s = manager.getSnapshot("country").block(Duration.ofSeconds(5));
+        assertNotNull(s);
+        assertSame(s, manager.getSnapshot("country").block());
+        assertEquals(3, s.current().size());
+        assertEquals(125, s.get("JP").get("population"));
+        assertEquals(Arrays.asList("CN", "JP"), codes(s.find("Region", "asia")));
+        assertEquals(Collections.emptyList(), s.find("region", "africa"));
+        assertEquals(Arrays.asList("FR", "JP"), s.range("population", 50, true, 1400, false).stream()
+            .map(r -> r.get("code")).collect(Collectors.toList()), "ordered by index");
+        assertThrows(IllegalArgumentException.class, () -> s.find("population", 1));
+        assertThrows(UnsupportedOperationException.class, () -> s.get("CN").put("region", "x"));
+        assertThrows(IllegalArgumentException.class, () -> manager.getSnapshot("none"));
+    }
+
+    @Test
+    void incremental() {
+        final ReactiveJdbc jdbc = setup("1h");
+        final TableSnapshot s = manager.getSnapshot("country").block(Duration.ofSeconds(5));
+        final TableSnapshot.Snapshot before = s.current();
+        assertEquals(0, s.refresh().block(), "rows of seen version re-read but not changed");
+        assertSame(before, s.current());
+        jdbc.update("update country set region='eu', version=2 where code='FR'").block();
+        jdbc.update("insert into country(code, region, population, version) values('DE','eu',83,2)").block();
+        jdbc.update("update country set deleted=true, version=3 where code='JP'").block();
+        assertEquals(3, s.refresh().block());
+        assertEquals(3L, s.current().getVersion());
+        assertEquals(Arrays.asList("DE", "FR"), codes(s.find("region", "eu")));
+        assertNull(s.get("JP"));
+        assertEquals(3, before.size(), "old snapshot untouched");
+        assertEquals("europe", before.get("FR").get("region"));
+        jdbc.update("delete from country where code='CN'").block();
+        assertEquals(0, s.refresh().block(), "hard delete not seen by refresh");
+        assertEquals(2, s.reload().block());
+        assertNull(s.get("CN"));
+    }
+
+    @Test
+    void polling() throws InterruptedException {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final ReactiveJdbc jdbc = setup("50ms");
+            final TableSnapshot s = manager.getSnapshot("country").block(Duration.ofSeconds(5));
+            assertEquals(3, registry.get(Meters.PREFIX + "snapshot.rows").tag("snapshot", "country").gauge().value());
+            jdbc.update("update country set population=1410, version=2 where code='CN'").block();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!Integer.valueOf(1410).equals(s.get("CN").get("population")) && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertEquals(1410, s.get("CN").get("population"));
+            manager.stop();
+            assertTrue(s.isDisposed());
+            assertTrue(registry.find(Meters.PREFIX + "snapshot.rows").meters().isEmpty(), "removed on dispose");
+            assertTrue(registry.find(Meters.PREFIX + "snapshot.changes").meters().isEmpty());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: KeyValueStoreTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:41:55
+ */
+
+package cn.zenliu.reactive.service.plugin.kv;
+
+import cn.zenliu.reactive.service.plugin.PluginManager;
+import com.typesafe.config.ConfigMemorySize;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyValueStoreTest {
+    static byte[] b(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String s(byte[] b) {
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    static StoreSpec spec(int segmentSize) {
+        final StoreSpec spec = new StoreSpec();
+        spec.setSegmentSize(ConfigMemorySize.ofBytes(segmentSize));
+        spec.setAutoCompact(false);
+        return spec;
+    }
+
+    static long files(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.count();
+        }
+    }
+
+    @Test
+    void readWrite(@TempDir Path dir) {
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(1 << 20))) {
+            store.put(b("a"), b("alpha")).block();
+            store.put(b("b"), b("beta")).block();
+            store.put(b("a"), b("alpha2")).block();
+            assertEquals("alpha2", s(store.get(b("a")).block()));
+            assertNull(store.get(b("c")).block());
+            final ByteBuffer dst = ByteBuffer.allocateDirect(64);
+            assertEquals(4, store.read(b("b"), dst));
+            dst.flip();
+            assertEquals(ByteBuffer.wrap(b("beta")), dst);
+            assertEquals(ByteBuffer.wrap(b("alpha2")), store.view(b("a")));
+            assertEquals(2, store.size());
+            assertTrue(store.delete(b("b")).block());
+            assertFalse(store.delete(b("b")).block());
+            assertFalse(store.contains(b("b")));
+            assertEquals(-1, store.read(b("b"), dst));
+            assertEquals(1, store.scan().count().block());
+        }
+    }
+
+    @Test
+    void recover(@TempDir Path dir) throws IOException {
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(64 * 1024))) {
+            for (int i = 0; i < 5000; i++) store.put(b("k" + i), b("v" + i)).block();
+            for (int i = 0; i < 5000; i += 2) store.delete(b("k" + i)).block();
+            store.put(b("last"), b("torn")).block();
+        }
+        assertTrue(files(dir) > 1);
+        //break last record, as a crash in middle of write
+        final Path last;
+        try (Stream<Path> s = Files.list(dir)) {
+            last = s.sorted().reduce((a, x) -> x).get();
+        }
+        try (FileChannel ch = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            int pos = 0, prev = 0;
+            while (buf.getInt(pos + 4) > 0) {
+                prev = pos;
+                pos += 12 + buf.getInt(pos + 4) + Math.max(buf.getInt(pos + 8), 0);
+            }
+            buf.put(pos - 1, (byte) 'x');
+            assertEquals("last", new String(new byte[]{buf.get(prev + 12), buf.get(prev + 13), buf.get(prev + 14), buf.get(prev + 15)}));
+        }
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(64 * 1024))) {
+            assertEquals(2500, store.size());
+            assertNull(store.get(b("last")).block());
+            assertNull(store.get(b("k0")).block());
+            assertEquals("v4999", s(store.get(b("k4999")).block()));
+            //appends after a torn record are kept
+            store.put(b("after"), b("1")).block();
+        }
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(64 * 1024))) {
+            assertEquals("1", s(store.get(b("after")).block()));
+        }
+    }
+
+    @Test
+    void compact(@TempDir Path dir) throws IOException {
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(4096))) {
+            store.put(b("gone"), b("x")).block();
+            for (int round = 0; round < 50; round++)
+                for (int i = 0; i < 20; i++) store.put(b("k" + i), b("v" + i + "-" + round)).block();
+            store.delete(b("gone")).block();
+            final long before = files(dir);
+            assertTrue(store.compact().block() > 0);
+            assertTrue(files(dir) < before);
+            assertEquals("v7-49", s(store.get(b("k7")).block()));
+            assertEquals(20, store.size());
+        }
+        try (KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(4096))) {
+            assertEquals(20, store.size());
+            assertNull(store.get(b("gone")).block());
+            assertEquals("v19-49", s(store.get(b("k19")).block()));
+        }
+    }
+
+    /**
+     * store is reopened after compaction without close, as a crash right after it
+     */
+    @Test
+    void reopenAfterCompact(@TempDir Path dir) {
+        final KeyValueStore store = KeyValueStore.scope.open("t", dir, spec(4096));
+        for (int round = 0; round < 50; round++)
+            for (int i = 0; i < 40; i++) store.put(b("k" + i), b("v" + i + "-" + round)).block();
+        for (int i = 0; i < 40; i += 4) store.delete(b("k" + i)).block();
+        assertTrue(store.compact().block() > 0);
+        try (KeyValueStore reopened = KeyValueStore.scope.open("t", dir, spec(4096))) {
+            assertEquals(30, reopened.size());
+            assertNull(reopened.get(b("k0")).block());
+            assertEquals("v1-49", s(reopened.get(b("k1")).block()));
+            assertEquals("v39-49", s(reopened.get(b("k39")).block()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void manager(@TempDir Path dir) {
+        final KeyValueManager m = PluginManager.getHardInstance().getPluginOfNeeded(KeyValueManager.class, false);
+        final Properties prop = new Properties();
+        prop.setProperty("kv.default.dir", dir.toString());
+        prop.setProperty("kv.stores.geo.dir", dir.resolve("geo-data").toString());
+        m.configuration(prop);
+        m.getStore("geo").put(b("cn"), b("china")).block();
+        m.getStore("price").put(b("p"), b("1")).block();
+        assertTrue(Files.isDirectory(dir.resolve("geo-data")));
+        assertTrue(Files.isDirectory(dir.resolve("price")));
+        assertTrue(m.getStoreNames().contains("price"));
+        m.closeAll();
+        assertEquals("china", s(m.getStore("geo").get(b("cn")).block()));
+        m.closeAll();
+    }
+}
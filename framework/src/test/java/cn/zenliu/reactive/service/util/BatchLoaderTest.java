@@ -0,0 +1,141 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: BatchLoaderTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:57:52
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import cn.zenliu.reactive.service.framework.util.Meters;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchLoaderTest {
+    static final List<Set<Integer>> calls = Collections.synchronizedList(new ArrayList<>());
+
+    static Mono<Map<Integer, String>> batch(Set<Integer> keys) {
+        calls.add(new HashSet<>(keys));
+        return Mono.fromCallable(() -> keys.stream().filter(k -> k >= 0).collect(Collectors.toMap(Function.identity(), k -> "v" + k)));
+    }
+
+    @Test
+    void gather() {
+        calls.clear();
+        final BatchLoader<Integer, String> loader = BatchLoader.create("gather", BatchLoaderTest::batch, Duration.ofMillis(20), 100, Schedulers.parallel());
+        final List<String> values = Flux.range(0, 10)
+            .flatMap(i -> loader.load(i % 5).defaultIfEmpty("none"))
+            .concatWith(loader.load(-1).defaultIfEmpty("none"))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(values);
+        assertEquals(11, values.size());
+        assertTrue(values.contains("v4"));
+        assertEquals("none", values.get(10));
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3, 4)), calls.get(0));
+        assertEquals(2, loader.batches());
+        assertEquals(6, loader.keys());
+    }
+
+    @Test
+    void maxBatch() {
+        calls.clear();
+        final BatchLoader<Integer, String> loader = BatchLoader.create("max", BatchLoaderTest::batch, Duration.ofHours(1), 3, Schedulers.parallel());
+        final List<String> values = Flux.range(0, 6).flatMap(loader::load).collectList().block(Duration.ofSeconds(5));
+        assertNotNull(values);
+        assertEquals(6, values.size());
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    void requestCache() {
+        calls.clear();
+        final BatchLoader<Integer, String> loader = BatchLoader.create("cache", BatchLoaderTest::batch, Duration.ZERO, 100, Schedulers.parallel());
+        final Mono<String> request = loader.load(1)
+            .then(loader.load(1))
+            .then(loader.load(2))
+            .then(loader.load(1));
+        assertEquals("v1", request.subscriberContext(BatchLoader.requestScope()).block(Duration.ofSeconds(5)));
+        assertEquals(2, calls.size(), "key 1 loaded once in request");
+        //another request loads again
+        assertEquals("v1", loader.load(1).subscriberContext(BatchLoader.requestScope()).block(Duration.ofSeconds(5)));
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    void cancel() throws Exception {
+        final AtomicInteger keys = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final BatchLoader<Integer, String> loader = BatchLoader.create("cancel",
+            ks -> {
+                keys.addAndGet(ks.size());
+                return Mono.<Map<Integer, String>>never().doOnCancel(() -> cancelled.set(true));
+            },
+            Duration.ofMillis(100), 100, Schedulers.parallel());
+        //cancelled before dispatch: removed from batch
+        loader.load(1).subscribe().dispose();
+        final Disposable second = loader.load(2).subscribe();
+        Thread.sleep(300);
+        assertEquals(1, keys.get());
+        assertFalse(cancelled.get());
+        //all callers left: batch in flight cancelled
+        second.dispose();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void metersRemovedOnClose() throws Exception {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final BatchLoader<Integer, String> loader = BatchLoader.create("metered", BatchLoaderTest::batch, Duration.ZERO, 100, Schedulers.parallel());
+            Flux.range(0, 3).flatMap(loader::load).collectList().block(Duration.ofSeconds(5));
+            assertEquals(3, registry.get(Meters.PREFIX + "batchloader.wait").tag("name", "metered").timer().count());
+            final DistributionSummary sizes = registry.get(Meters.PREFIX + "batchloader.size").tag("name", "metered").summary();
+            assertEquals(loader.batches(), sizes.count());
+            assertEquals(3, sizes.totalAmount());
+            //pending loads are dispatched on close
+            final BatchLoader<Integer, String> pending = BatchLoader.create("pending", BatchLoaderTest::batch, Duration.ofHours(1), 100, Schedulers.parallel());
+            final CompletableFuture<String> value = pending.load(8).toFuture();
+            pending.close();
+            assertEquals("v8", value.get(5, TimeUnit.SECONDS));
+            loader.close();
+            assertNull(registry.find(Meters.PREFIX + "batchloader.wait").tag("name", "metered").meter());
+            assertNull(registry.find(Meters.PREFIX + "batchloader.size").tag("name", "metered").meter());
+            assertNull(registry.find(Meters.PREFIX + "batchloader.size").tag("name", "pending").meter());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
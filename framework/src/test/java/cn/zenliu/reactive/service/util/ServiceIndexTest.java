@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: ServiceIndexTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:50:27
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import cn.zenliu.reactive.service.framework.spi.Api;
+import com.google.auto.service.AutoService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceIndexTest {
+    static String pathOf(Class<?> clz) throws Exception {
+        return Paths.get(clz.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    @Test
+    void generateAndLoad(@TempDir Path dir) throws Exception {
+        final Path src = Files.createDirectories(dir.resolve("src/demo"));
+        final Path out = Files.createDirectories(dir.resolve("out"));
+        Files.write(src.resolve("Greeter.java"), "package demo;\npublic interface Greeter { String greet(); }\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve("Hello.java"), ("package demo;\n" +
+            "@com.google.auto.service.AutoService(Greeter.class)\n" +
+            "public class Hello implements Greeter { public String greet() { return \"hello\"; } }\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve("Outer.java"), ("package demo;\n" +
+            "public class Outer {\n" +
+            "  @com.google.auto.service.AutoService(Greeter.class)\n" +
+            "  public static class Hi implements Greeter { public String greet() { return \"hi\"; } }\n" +
+            "}\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve("Extra.java"), ("package demo;\n" +
+            "public class Extra implements Greeter { public String greet() { return \"extra\"; } }\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve("Hidden.java"), ("package demo;\n" +
+            "class Hidden implements Greeter { public String greet() { return \"hidden\"; } }\n").getBytes(StandardCharsets.UTF_8));
+        //provider files of class path: one already indexed, one only declared there, one missing, one not accessible
+        final Path ext = Files.createDirectories(dir.resolve("ext/META-INF/services"));
+        Files.write(ext.resolve("demo.Greeter"), "demo.Hello\ndemo.Extra # comment\ndemo.Missing\n".getBytes(StandardCharsets.UTF_8));
+        final Path jar = dir.resolve("ext.jar");
+        try (JarOutputStream j = new JarOutputStream(Files.newOutputStream(jar))) {
+            j.putNextEntry(new JarEntry("META-INF/services/demo.Greeter"));
+            j.write("demo.Hidden\n".getBytes(StandardCharsets.UTF_8));
+            j.closeEntry();
+        }
+        final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(javac, "tests should run on JDK");
+        try (StandardJavaFileManager fm = javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            fm.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(out.toFile()));
+            fm.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(out.toFile()));
+            fm.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(
+                new File(pathOf(ServiceIndex.class)),
+                new File(pathOf(AutoService.class))));
+            final JavaCompiler.CompilationTask task = javac.getTask(null, fm, null,
+                Arrays.asList("-Areactive.service.index=demo.Index",
+                    "-Areactive.service.classpath=" + dir.resolve("ext") + File.pathSeparator + jar),
+                null,
+                fm.getJavaFileObjects(src.resolve("Greeter.java").toFile(), src.resolve("Hello.java").toFile(), src.resolve("Outer.java").toFile(),
+                    src.resolve("Extra.java").toFile(), src.resolve("Hidden.java").toFile()));
+            task.setProcessors(Collections.singletonList(new ServiceIndexProcessor()));
+            assertTrue(task.call());
+        }
+        assertTrue(Files.exists(out.resolve("demo/Index.java")));
+        final String origin = System.getProperty(ServiceIndex.PROP_INDEX_CLASS);
+        System.setProperty(ServiceIndex.PROP_INDEX_CLASS, "demo.Index");
+        final List<String> lookups = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{out.toUri().toURL(), dir.resolve("ext").toUri().toURL()}, getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                if (name.startsWith("META-INF/services/")) lookups.add(name);
+                return super.getResources(name);
+            }
+        }) {
+            assertTrue(ServiceIndex.isIndexed(loader));
+            final Class<?> greeter = loader.loadClass("demo.Greeter");
+            final List<?> greeters = ServiceIndex.load(greeter, loader);
+            //ordered by class name, duplicate declaration merged, missing and non public skipped
+            assertEquals(3, greeters.size());
+            assertEquals("extra", greeter.getMethod("greet").invoke(greeters.get(0)));
+            assertEquals("hello", greeter.getMethod("greet").invoke(greeters.get(1)));
+            assertEquals("hi", greeter.getMethod("greet").invoke(greeters.get(2)));
+            assertTrue(ServiceIndex.load(Api.class, loader).isEmpty());
+            assertTrue(ServiceIndex.load(Runnable.class, loader).isEmpty());
+            assertEquals(Collections.emptyList(), lookups, "no service loader lookup with index");
+            //an empty property disables the index
+            System.setProperty(ServiceIndex.PROP_INDEX_CLASS, "");
+            try (URLClassLoader plain = new URLClassLoader(new URL[]{out.toUri().toURL(), dir.resolve("ext").toUri().toURL()}, getClass().getClassLoader())) {
+                assertFalse(ServiceIndex.isIndexed(plain));
+            }
+        } finally {
+            if (origin == null) System.clearProperty(ServiceIndex.PROP_INDEX_CLASS);
+            else System.setProperty(ServiceIndex.PROP_INDEX_CLASS, origin);
+        }
+    }
+
+    @Test
+    void withoutIndex() {
+        assertFalse(ServiceIndex.isIndexed(getClass().getClassLoader()));
+        assertTrue(ServiceIndex.load(Api.class).isEmpty());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: SingleFlightTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:11:01
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    @Test
+    void shareLoad() {
+        final SingleFlight<String, Integer> flight = SingleFlight.create();
+        final AtomicInteger loads = new AtomicInteger();
+        final Mono<Integer> call = flight.execute("k", () -> Mono.fromCallable(loads::incrementAndGet).delayElement(Duration.ofMillis(100)));
+        final List<Integer> values = Flux.range(0, 20)
+            .flatMap(i -> call)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(values);
+        assertEquals(20, values.size());
+        assertTrue(values.stream().allMatch(v -> v == 1));
+        assertEquals(1, loads.get());
+        assertEquals(19, flight.shared());
+        assertEquals(0, flight.inFlight());
+        //key released, next call load again
+        assertEquals(2, call.block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void cancel() throws Exception {
+        final SingleFlight<String, String> flight = SingleFlight.create();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final Mono<String> call = flight.execute("k", () -> Mono.just("v").delayElement(Duration.ofMillis(200))
+            .doOnCancel(() -> cancelled.set(true)));
+        final Disposable leaving = call.subscribe();
+        final Mono<String> staying = call.cache();
+        staying.subscribe();
+        leaving.dispose();
+        assertEquals("v", staying.block(Duration.ofSeconds(5)));
+        assertFalse(cancelled.get());
+        //all leave, load cancelled and key released
+        final Disposable a = call.subscribe();
+        final Disposable b = call.subscribe();
+        assertEquals(1, flight.inFlight());
+        a.dispose();
+        b.dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void error() {
+        final SingleFlight<String, String> flight = SingleFlight.create();
+        final Mono<String> call = flight.execute("k", () -> Mono.<String>error(new IllegalStateException()).delaySubscription(Duration.ofMillis(50)));
+        final List<String> values = Flux.merge(call.onErrorReturn("e"), call.onErrorReturn("e"))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(values);
+        assertEquals(2, values.size());
+        assertEquals(1, flight.shared());
+        assertEquals(0, flight.inFlight());
+    }
+
+    /**
+     * a caller finds the flight just before it terminates, then subscribes after:
+     * it must get the stored result instead of running loader of the flight again
+     */
+    @Test
+    void subscribeAfterTerminate() {
+        final SingleFlight<Object, Integer> flight = SingleFlight.create();
+        final AtomicInteger loads = new AtomicInteger();
+        final MonoProcessor<Integer> source = MonoProcessor.create();
+        final Mono<Integer> leader = flight.execute("k", () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        final AtomicReference<Integer> first = new AtomicReference<>();
+        leader.subscribe(first::set);
+        assertEquals(1, flight.inFlight());
+        //the load terminates while the late caller is looking up its flight
+        final Object late = new Object() {
+            @Override
+            public int hashCode() {
+                return "k".hashCode();
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!source.isTerminated()) source.onNext(1);
+                return "k".equals(o);
+            }
+        };
+        final Integer joined = flight.execute(late, () -> Mono.error(new IllegalStateException("never called")))
+            .block(Duration.ofSeconds(5));
+        assertEquals(1, first.get());
+        assertEquals(1, joined);
+        assertEquals(1, loads.get(), "loader of a finished flight never runs again");
+        assertEquals(1, flight.shared());
+        assertEquals(0, flight.inFlight());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: SingletonTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:48:11
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingletonTest {
+    public interface Service {
+    }
+
+    public static final class ServiceA implements Service {
+    }
+
+    public static final class ServiceB implements Service {
+    }
+
+    @Test
+    void concurrentFirstAccess() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final Singleton<Object> singleton = Singleton.generate(() -> {
+            created.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Object();
+        }, null);
+        final ExecutorService pool = Executors.newFixedThreadPool(16);
+        final CountDownLatch go = new CountDownLatch(1);
+        final Object[] seen = new Object[32];
+        for (int i = 0; i < seen.length; i++) {
+            final int n = i;
+            pool.execute(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                seen[n] = n % 2 == 0 ? singleton.getHardReference().orElse(null) : singleton.getSoftInstance().orElse(null);
+            });
+        }
+        go.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        //one for hard, one for soft
+        assertEquals(2, created.get());
+        for (int i = 2; i < seen.length; i++) assertSame(seen[i % 2], seen[i]);
+        assertNotSame(seen[0], seen[1]);
+    }
+
+    @Test
+    void spiCachedPerClassLoader(@TempDir Path dir) throws Exception {
+        final Path services = Files.createDirectories(dir.resolve("a/META-INF/services"));
+        Files.write(services.resolve(Service.class.getName()), (ServiceA.class.getName() + "\n" + ServiceB.class.getName()).getBytes(StandardCharsets.UTF_8));
+        final Path other = Files.createDirectories(dir.resolve("b/META-INF/services"));
+        Files.write(other.resolve(Service.class.getName()), ServiceB.class.getName().getBytes(StandardCharsets.UTF_8));
+        final ClassLoader origin = Thread.currentThread().getContextClassLoader();
+        final Singleton<Service> singleton = Singleton.generate(null, Service.class);
+        try (URLClassLoader a = new URLClassLoader(new URL[]{dir.resolve("a").toUri().toURL()}, origin);
+             URLClassLoader b = new URLClassLoader(new URL[]{dir.resolve("b").toUri().toURL()}, origin)) {
+            Thread.currentThread().setContextClassLoader(a);
+            final List<Service> all = singleton.allFromSPI().orElseThrow(IllegalStateException::new);
+            assertEquals(2, all.size());
+            assertSame(all, singleton.allFromSPI().orElse(null));
+            assertSame(all.get(0), singleton.oneFromSPI(null).orElse(null));
+            assertSame(all.get(1), singleton.oneFromSPI(ServiceB.class).orElse(null));
+            Thread.currentThread().setContextClassLoader(b);
+            final List<Service> fromB = singleton.allFromSPI().orElseThrow(IllegalStateException::new);
+            assertEquals(1, fromB.size());
+            assertFalse(singleton.oneFromSPI(ServiceA.class).isPresent());
+            Thread.currentThread().setContextClassLoader(a);
+            assertSame(all, singleton.allFromSPI().orElse(null));
+        } finally {
+            Thread.currentThread().setContextClassLoader(origin);
+        }
+    }
+}
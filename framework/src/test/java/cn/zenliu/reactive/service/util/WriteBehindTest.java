@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) 2020.  Zen.Liu .
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ *   @Project: reactive-service-framework
+ *   @Module: reactive-service-framework
+ *   @File: WriteBehindTest.java
+ *   @Author:  lcz20@163.com
+ *   @LastModified:  2026-10-19 09:56:08
+ */
+
+package cn.zenliu.reactive.service.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindTest {
+    @Test
+    void batchAndFallback() {
+        final List<Map<String, List<Integer>>> flushes = Collections.synchronizedList(new ArrayList<>());
+        final WriteBehind<String, Integer, String> wb = WriteBehind.create("test", Duration.ofMillis(50), 1000, Schedulers.single(),
+            groups -> {
+                flushes.add(groups);
+                final Map<String, List<String>> results = new HashMap<>();
+                groups.forEach((g, ws) -> {
+                    if (ws.contains(113)) throw new IllegalArgumentException("bad 113");
+                    results.put(g, ws.stream().map(w -> g + w).collect(Collectors.toList()));
+                });
+                return results;
+            });
+        final List<String> ok = Flux.range(0, 100)
+            .flatMap(i -> wb.submit(i % 2 == 0 ? "a" : "b", i))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        assertNotNull(ok);
+        assertEquals(100, ok.size());
+        assertTrue(ok.contains("a0") && ok.contains("b99"));
+        assertEquals(1, flushes.size(), "one flush for all concurrent writes");
+        assertEquals(2, flushes.get(0).size());
+        assertEquals(1, wb.commits());
+
+        final List<Mono<String>> calls = new ArrayList<>();
+        for (int i = 110; i < 115; i++) calls.add(wb.submit("a", i).onErrorResume(e -> Mono.just("error")));
+        assertEquals(Arrays.asList("a110", "a111", "a112", "error", "a114"), Flux.mergeSequential(calls).collectList().block(Duration.ofSeconds(5)));
+        assertEquals(5, wb.fallbacks());
+        wb.close();
+        assertThrows(IllegalStateException.class, () -> wb.submit("a", 1).block());
+    }
+
+    @Test
+    void sizeThreshold() {
+        final WriteBehind<String, Integer, Integer> wb = WriteBehind.create("size", Duration.ofHours(1), 10, Schedulers.single(),
+            groups -> Collections.singletonMap("a", groups.get("a")));
+        final List<Integer> done = Flux.range(0, 10).flatMap(i -> wb.submit("a", i)).collectList().block(Duration.ofSeconds(5));
+        assertNotNull(done);
+        assertEquals(10, done.size());
+        assertEquals(1, wb.commits());
+    }
+}